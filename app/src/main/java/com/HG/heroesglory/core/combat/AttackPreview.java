@@ -0,0 +1,165 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.dice.AttackProfile;
+import com.HG.heroesglory.core.dice.DiceExpression;
+import com.HG.heroesglory.core.dice.ProbabilityEngine;
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.systems.SkillPlan;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Прогноз атаки для пары атакующий - цель по каждому AttackType: шанс попадания,
+ * шанс крита и ожидаемый урон в замкнутой форме, без бросков.
+ * Считается по состояниям боя, как в CombatEngine: КД цели с изменениями и укрытием,
+ * бонусы атаки и урона от навыков. Значения лежат в плоской таблице пар и пересчитываются,
+ * только когда эти величины или состояния бойцов меняются.
+ */
+public final class AttackPreview {
+    private static final AttackType[] TYPES = AttackType.values();
+    private static final double NATURAL_20 = 1.0 / 20;
+
+    private final ProbabilityEngine probabilities;
+    private final Map<String, Integer> indices = new HashMap<>();
+    private Entry[] table = new Entry[0];
+    private int capacity;
+
+    public AttackPreview() {
+        this(ProbabilityEngine.getInstance());
+    }
+
+    public AttackPreview(ProbabilityEngine probabilities) {
+        this.probabilities = probabilities;
+    }
+
+    // Прогноз по паре; cover - бонус укрытия цели (CombatEngine.coverBonus).
+    // Повторный вызов без изменений бойцов ничего не считает
+    public Entry get(CombatantState attacker, CombatantState target, int cover) {
+        int row = indexOf(attacker);
+        int column = indexOf(target);
+        Entry entry = table[row * capacity + column];
+        if (entry == null) {
+            entry = new Entry();
+            table[row * capacity + column] = entry;
+        }
+        if (entry.isStale(attacker, target, cover)) {
+            compute(entry, attacker, target, cover);
+        }
+        return entry;
+    }
+
+    public void clear() {
+        indices.clear();
+        table = new Entry[0];
+        capacity = 0;
+    }
+
+    /**
+     * Ожидаемый урон атаки как в CombatSystem: попадание при d20 + бонус >= КД,
+     * натуральная 20 при попадании умножает урон, урон не меньше 1.
+     */
+    public static double expectedDamage(ProbabilityEngine probabilities, Combatant attacker, int armorClass,
+                                        AttackProfile profile, DiceExpression expression) {
+        return expectedDamage(probabilities, attacker, armorClass, profile, expression, 0);
+    }
+
+    // damageBonus добавляется после множителя крита, итог не меньше 0 (как в CombatEngine)
+    public static double expectedDamage(ProbabilityEngine probabilities, Combatant attacker, int armorClass,
+                                        AttackProfile profile, DiceExpression expression, int damageBonus) {
+        int bonus = profile.attackBonus(attacker);
+        double hit = probabilities.d20CheckChance(bonus, armorClass);
+        double critical = critChance(bonus, armorClass);
+        double damage = Math.max(1, probabilities.distribution(expression, attacker).mean());
+        return (hit - critical) * Math.max(0, damage + damageBonus)
+                + critical * Math.max(0, damage * profile.getCritMultiplier() + damageBonus);
+    }
+
+    // Крит - натуральная 20, если она попадает
+    public static double critChance(int attackBonus, int armorClass) {
+        return 20 + attackBonus >= armorClass ? NATURAL_20 : 0;
+    }
+
+    private void compute(Entry entry, CombatantState attacker, CombatantState target, int cover) {
+        Combatant base = attacker.getBase();
+        int attackBonus = attacker.statBonus(SkillPlan.Stat.ATTACK);
+        int damageBonus = attacker.statBonus(SkillPlan.Stat.DAMAGE);
+        // Бонус атаки от навыков - равное снижение КД цели, как в CombatEngine.performAttack
+        int armorClass = target.getArmorClass() + cover - attackBonus;
+        for (AttackType type : TYPES) {
+            AttackProfile profile = AttackProfile.of(type);
+            int bonus = profile.attackBonus(base);
+            int i = type.ordinal();
+            entry.hit[i] = probabilities.d20CheckChance(bonus, armorClass);
+            entry.crit[i] = critChance(bonus, armorClass);
+            entry.expected[i] = expectedDamage(probabilities, base, armorClass, profile, profile.getDamage(),
+                    damageBonus);
+        }
+        entry.attackerBase = base;
+        entry.attackBonus = attackBonus;
+        entry.damageBonus = damageBonus;
+        entry.attackerStatus = attacker.statusMask();
+        entry.targetArmor = target.getArmorClass() + cover;
+        entry.targetStatus = target.statusMask();
+    }
+
+    private int indexOf(CombatantState combatant) {
+        Integer index = indices.get(combatant.getId());
+        if (index != null) {
+            return index;
+        }
+        int next = indices.size();
+        if (next >= capacity) {
+            grow(Math.max(8, capacity * 2));
+        }
+        indices.put(combatant.getId(), next);
+        return next;
+    }
+
+    private void grow(int newCapacity) {
+        Entry[] grown = new Entry[newCapacity * newCapacity];
+        for (int row = 0; row < capacity; row++) {
+            System.arraycopy(table, row * capacity, grown, row * newCapacity, capacity);
+        }
+        table = grown;
+        capacity = newCapacity;
+    }
+
+    // Прогноз для одной пары; индексы массивов - AttackType.ordinal()
+    public static final class Entry {
+        private final double[] hit = new double[TYPES.length];
+        private final double[] crit = new double[TYPES.length];
+        private final double[] expected = new double[TYPES.length];
+        // Базовые бойцы в бою не меняются, поэтому их статы сравниваются по ссылке
+        private Combatant attackerBase;
+        private int attackBonus;
+        private int damageBonus;
+        private long attackerStatus;
+        private int targetArmor;
+        private long targetStatus;
+
+        boolean isStale(CombatantState attacker, CombatantState target, int cover) {
+            return attackerBase != attacker.getBase()
+                    || attackBonus != attacker.statBonus(SkillPlan.Stat.ATTACK)
+                    || damageBonus != attacker.statBonus(SkillPlan.Stat.DAMAGE)
+                    || attackerStatus != attacker.statusMask()
+                    || targetArmor != target.getArmorClass() + cover || targetStatus != target.statusMask();
+        }
+
+        public double hitChance(AttackType type) { return hit[type.ordinal()]; }
+        public double critChance(AttackType type) { return crit[type.ordinal()]; }
+        public double expectedDamage(AttackType type) { return expected[type.ordinal()]; }
+
+        // Тип атаки с наибольшим ожидаемым уроном
+        public AttackType bestType() {
+            AttackType best = TYPES[0];
+            for (AttackType type : TYPES) {
+                if (expected[type.ordinal()] > expected[best.ordinal()]) {
+                    best = type;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.Item;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.systems.CombatGrid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Допустимые действия текущего бойца: атаки каждого типа по живым противникам,
+ * навыки и предметы из снаряжения бойца, бегство и пропуск хода.
+ * Снаряжение задается по id бойца, потому что в Combatant его нет.
+ * С тактической сеткой атаки предлагаются только по видимым целям,
+ * а навыки - по видимым целям в пределах их дальности.
+ */
+public final class CombatActions {
+    private static final AttackType[] ATTACK_TYPES = {AttackType.MELEE, AttackType.RANGED, AttackType.SPELL};
+
+    private final Map<String, List<Skill>> skills = new HashMap<>();
+    private final Map<String, List<Item>> items = new HashMap<>();
+    private boolean fleeAllowed = true;
+    private CombatGrid grid;
+
+    public CombatActions setSkills(String combatantId, List<Skill> combatantSkills) {
+        skills.put(combatantId, new ArrayList<>(combatantSkills));
+        return this;
+    }
+
+    public CombatActions setItems(String combatantId, List<Item> combatantItems) {
+        items.put(combatantId, new ArrayList<>(combatantItems));
+        return this;
+    }
+
+    public CombatActions setFleeAllowed(boolean fleeAllowed) {
+        this.fleeAllowed = fleeAllowed;
+        return this;
+    }
+
+    public CombatActions setGrid(CombatGrid grid) {
+        this.grid = grid;
+        return this;
+    }
+
+    public List<Skill> skillsOf(String combatantId) {
+        List<Skill> list = skills.get(combatantId);
+        return list != null ? list : Collections.<Skill>emptyList();
+    }
+
+    public List<Item> itemsOf(String combatantId) {
+        List<Item> list = items.get(combatantId);
+        return list != null ? list : Collections.<Item>emptyList();
+    }
+
+    // Кандидаты для state.getCurrent(); пусто, если бой окончен
+    public List<CombatCommand> candidates(CombatState state) {
+        List<CombatCommand> result = new ArrayList<>();
+        CombatantState actor = state.getCurrent();
+        if (state.isOver() || actor == null || !actor.isAlive()) {
+            return result;
+        }
+        String actorId = actor.getId();
+        if (!actor.canAct()) {
+            // Лишенному хода движок разрешает только пропуск
+            result.add(CombatCommand.endTurn(actorId));
+            return result;
+        }
+        for (int slot = 0; slot < state.size(); slot++) {
+            CombatantState target = state.get(slot);
+            if (target.isAlive() && target.isPlayer() != actor.isPlayer() && inSight(actor, target)) {
+                for (AttackType type : ATTACK_TYPES) {
+                    result.add(CombatCommand.attack(actorId, target.getId(), type));
+                }
+            }
+        }
+        for (Skill skill : skillsOf(actorId)) {
+            // Те же откат, мана и очки действий, что проверит движок
+            if (skill.damageExpression() == null || CombatEngine.checkSkill(actor, skill, state.getRound()) != null) {
+                continue;
+            }
+            if (skill.targetKind().isMultiple()) {
+                // Цели навыка по площади выбирает движок
+                result.add(CombatCommand.useSkill(actorId, skill, null));
+                continue;
+            }
+            boolean heal = "HEAL".equals(skill.getType());
+            for (int slot = 0; slot < state.size(); slot++) {
+                CombatantState target = state.get(slot);
+                boolean ally = target.isPlayer() == actor.isPlayer();
+                if (target.isAlive() && ally == heal && inRange(actor, target, skill)) {
+                    result.add(CombatCommand.useSkill(actorId, skill, target.getId()));
+                }
+            }
+        }
+        for (Item item : itemsOf(actorId)) {
+            if (item.getQuantity() > 0 && CombatEngine.healAmount(item) > 0) {
+                result.add(CombatCommand.useItem(actorId, item, actorId));
+            }
+        }
+        if (fleeAllowed) {
+            result.add(CombatCommand.flee(actorId));
+        }
+        result.add(CombatCommand.endTurn(actorId));
+        return result;
+    }
+
+    private boolean inRange(CombatantState actor, CombatantState target, Skill skill) {
+        return inSight(actor, target) && (grid == null || skill.getRange() <= 0
+                || grid.inRange(actor.getBase(), target.getBase(), skill.getRange()));
+    }
+
+    private boolean inSight(CombatantState actor, CombatantState target) {
+        return grid == null || actor == target || grid.hasLineOfSight(actor.getBase(), target.getBase());
+    }
+}
@@ -0,0 +1,107 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.dice.AttackProfile;
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.Item;
+import com.HG.heroesglory.core.entities.Skill;
+
+/**
+ * Команды игрока или ИИ для CombatEngine. Бойцы задаются по id, так как
+ * команда может быть создана до того, как движок обработает предыдущие.
+ */
+public abstract class CombatCommand {
+
+    public enum Type {
+        ATTACK, USE_SKILL, USE_ITEM, FLEE, END_TURN
+    }
+
+    private final Type type;
+    private final String actorId;
+
+    CombatCommand(Type type, String actorId) {
+        this.type = type;
+        this.actorId = actorId;
+    }
+
+    public Type getType() { return type; }
+    public String getActorId() { return actorId; }
+
+    public static Attack attack(String actorId, String targetId, AttackType attackType) {
+        return new Attack(actorId, targetId, AttackProfile.of(attackType));
+    }
+
+    // Тип атаки из данных, включая зарегистрированные профили
+    public static Attack attack(String actorId, String targetId, String attackType) {
+        return new Attack(actorId, targetId, AttackProfile.forName(attackType));
+    }
+
+    public static UseSkill useSkill(String actorId, Skill skill, String targetId) {
+        return new UseSkill(actorId, skill, targetId);
+    }
+
+    public static UseItem useItem(String actorId, Item item, String targetId) {
+        return new UseItem(actorId, item, targetId);
+    }
+
+    public static Flee flee(String actorId) {
+        return new Flee(actorId);
+    }
+
+    public static EndTurn endTurn(String actorId) {
+        return new EndTurn(actorId);
+    }
+
+    public static final class Attack extends CombatCommand {
+        private final String targetId;
+        private final AttackProfile profile;
+
+        Attack(String actorId, String targetId, AttackProfile profile) {
+            super(Type.ATTACK, actorId);
+            this.targetId = targetId;
+            this.profile = profile;
+        }
+
+        public String getTargetId() { return targetId; }
+        public AttackProfile getProfile() { return profile; }
+    }
+
+    public static final class UseSkill extends CombatCommand {
+        private final Skill skill;
+        private final String targetId;
+
+        UseSkill(String actorId, Skill skill, String targetId) {
+            super(Type.USE_SKILL, actorId);
+            this.skill = skill;
+            this.targetId = targetId;
+        }
+
+        public Skill getSkill() { return skill; }
+        public String getTargetId() { return targetId; }
+    }
+
+    public static final class UseItem extends CombatCommand {
+        private final Item item;
+        private final String targetId;
+
+        UseItem(String actorId, Item item, String targetId) {
+            super(Type.USE_ITEM, actorId);
+            this.item = item;
+            this.targetId = targetId;
+        }
+
+        public Item getItem() { return item; }
+        public String getTargetId() { return targetId; }
+    }
+
+    public static final class Flee extends CombatCommand {
+        Flee(String actorId) {
+            super(Type.FLEE, actorId);
+        }
+    }
+
+    public static final class EndTurn extends CombatCommand {
+        EndTurn(String actorId) {
+            super(Type.END_TURN, actorId);
+        }
+    }
+}
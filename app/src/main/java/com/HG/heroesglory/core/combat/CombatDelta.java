@@ -0,0 +1,177 @@
+package com.HG.heroesglory.core.combat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Итог одного действия в бою: изменения HP, гибели, статусы и переход хода.
+ * UI применяет его одним пакетом точечных обновлений вместо перерисовки всей
+ * сетки на каждое событие.
+ */
+public final class CombatDelta {
+    private final List<CombatEvent> events;
+    private final Map<String, Integer> hpChanges;
+    private final Set<String> defeated;
+    private final Map<String, String> statusChanges;
+    private final String previousTurnId;
+    private final String currentTurnId;
+    private final int round;
+    private final boolean rosterChanged;
+
+    private CombatDelta(Builder builder) {
+        this.events = Collections.unmodifiableList(new ArrayList<>(builder.events));
+        this.hpChanges = Collections.unmodifiableMap(new LinkedHashMap<>(builder.hpChanges));
+        this.defeated = Collections.unmodifiableSet(new LinkedHashSet<>(builder.defeated));
+        this.statusChanges = Collections.unmodifiableMap(new LinkedHashMap<>(builder.statusChanges));
+        this.previousTurnId = builder.previousTurnId;
+        this.currentTurnId = builder.currentTurnId;
+        this.round = builder.round;
+        this.rosterChanged = builder.rosterChanged;
+    }
+
+    // Дельта по событиям одной команды движка; before - состояние до команды
+    public static CombatDelta fromEvents(CombatState before, List<CombatEvent> events, CombatState after) {
+        Builder builder = new Builder();
+        for (CombatEvent event : events) {
+            builder.addEvent(event);
+            switch (event.getType()) {
+                case COMBAT_STARTED:
+                case SUMMONED:
+                    builder.markRosterChanged();
+                    break;
+                case ATTACK_HIT: {
+                    CombatantState target = after.get(((CombatEvent.AttackHit) event).getTargetSlot());
+                    builder.recordHp(target.getId(), target.getCurrentHp());
+                    break;
+                }
+                case HEALED: {
+                    CombatantState target = after.get(((CombatEvent.Healed) event).getTargetSlot());
+                    builder.recordHp(target.getId(), target.getCurrentHp());
+                    break;
+                }
+                case SKILL_RESOLVED: {
+                    CombatEvent.SkillResolved resolved = (CombatEvent.SkillResolved) event;
+                    for (int i = 0; i < resolved.getTargetCount(); i++) {
+                        CombatantState target = after.get(resolved.getTargetSlot(i));
+                        builder.recordHp(target.getId(), target.getCurrentHp());
+                    }
+                    break;
+                }
+                case STATUS_APPLIED: {
+                    CombatantState target = after.get(((CombatEvent.StatusApplied) event).getTargetSlot());
+                    builder.recordStatus(target.getId(), target.statusLabel());
+                    break;
+                }
+                case STATUS_TICKED: {
+                    CombatantState target = after.get(((CombatEvent.StatusTicked) event).getSlot());
+                    builder.recordHp(target.getId(), target.getCurrentHp());
+                    builder.recordStatus(target.getId(), target.statusMask() != 0 ? target.statusLabel() : null);
+                    break;
+                }
+                case COMBATANT_DEFEATED:
+                    builder.recordDefeated(after.get(((CombatEvent.CombatantDefeated) event).getSlot()).getId());
+                    break;
+                case TURN_STARTED: {
+                    CombatEvent.TurnStarted turn = (CombatEvent.TurnStarted) event;
+                    CombatantState previous = before != null && before.size() > 0 ? before.getCurrent() : null;
+                    builder.recordTurn(previous != null ? previous.getId() : null,
+                            after.get(turn.getSlot()).getId(), turn.getRound());
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        return builder.build();
+    }
+
+    public List<CombatEvent> getEvents() { return events; }
+
+    // id бойца -> HP после действия
+    public Map<String, Integer> getHpChanges() { return hpChanges; }
+
+    public Set<String> getDefeated() { return defeated; }
+
+    // id бойца -> новый статус (null - статус снят)
+    public Map<String, String> getStatusChanges() { return statusChanges; }
+
+    public String getPreviousTurnId() { return previousTurnId; }
+    public String getCurrentTurnId() { return currentTurnId; }
+    public boolean isTurnChanged() { return currentTurnId != null; }
+    public int getRound() { return round; }
+
+    // Состав бойцов изменился (начало боя, призыв) - нужна полная перерисовка
+    public boolean isRosterChanged() { return rosterChanged; }
+
+    public boolean isEmpty() {
+        return events.isEmpty() && hpChanges.isEmpty() && defeated.isEmpty()
+                && statusChanges.isEmpty() && currentTurnId == null && !rosterChanged;
+    }
+
+    // Накопитель изменений одного действия; повторные записи по бойцу схлопываются
+    public static final class Builder {
+        private final List<CombatEvent> events = new ArrayList<>();
+        private final Map<String, Integer> hpChanges = new LinkedHashMap<>();
+        private final Set<String> defeated = new LinkedHashSet<>();
+        private final Map<String, String> statusChanges = new LinkedHashMap<>();
+        private String previousTurnId;
+        private String currentTurnId;
+        private int round;
+        private boolean rosterChanged;
+
+        public Builder addEvent(CombatEvent event) {
+            events.add(event);
+            return this;
+        }
+
+        public Builder recordHp(String combatantId, int hp) {
+            hpChanges.put(combatantId, hp);
+            return this;
+        }
+
+        public Builder recordDefeated(String combatantId) {
+            defeated.add(combatantId);
+            return this;
+        }
+
+        public Builder recordStatus(String combatantId, String status) {
+            statusChanges.put(combatantId, status);
+            return this;
+        }
+
+        // Несколько переходов подряд дают один: от первого бойца к последнему
+        public Builder recordTurn(String previousId, String currentId, int round) {
+            if (currentTurnId == null) {
+                previousTurnId = previousId;
+            }
+            currentTurnId = currentId;
+            this.round = round;
+            return this;
+        }
+
+        public Builder markRosterChanged() {
+            rosterChanged = true;
+            return this;
+        }
+
+        public CombatDelta build() {
+            return new CombatDelta(this);
+        }
+
+        public void clear() {
+            events.clear();
+            hpChanges.clear();
+            defeated.clear();
+            statusChanges.clear();
+            previousTurnId = null;
+            currentTurnId = null;
+            round = 0;
+            rosterChanged = false;
+        }
+    }
+}
@@ -0,0 +1,809 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.dice.AttackProfile;
+import com.HG.heroesglory.core.dice.CombatSystem;
+import com.HG.heroesglory.core.dice.DiceExpression;
+import com.HG.heroesglory.core.dice.DiceRollSystem;
+import com.HG.heroesglory.core.dice.PackedRoll;
+import com.HG.heroesglory.core.dice.SessionRng;
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.EnemyPrototype;
+import com.HG.heroesglory.core.entities.Item;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.entities.Squad;
+import com.HG.heroesglory.core.entities.StatusEffect;
+import com.HG.heroesglory.core.systems.CombatGrid;
+import com.HG.heroesglory.core.systems.EnemyRegistry;
+import com.HG.heroesglory.core.systems.SkillPlan;
+import com.HG.heroesglory.core.systems.StatusEngine;
+import com.HG.heroesglory.core.systems.TriggerRegistry;
+import com.HG.heroesglory.core.systems.TurnOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Безголовый движок боя на чистой Java.
+ * Команды попадают в очередь (submit можно вызывать из любого потока), движок
+ * проверяет их, бросает кубы через правила CombatSystem и выдает типизированные
+ * события; состояние - неизменяемый CombatState, свертка этих событий.
+ * Исходные Combatant движок не меняет: UI синхронизирует их по событиям.
+ * Ход передается по TurnOrder - кольцу живых, общему с TurnManager: конец хода
+ * уходящего бойца, начало хода следующего по правилам тиков StatusEngine;
+ * лишенный хода боец пропускается.
+ * Навык проходит SkillPlan.check и исполняется по операциям плана; призванные
+ * по шаблонам из EnemyRegistry встают в конец порядка ходов.
+ * Триггеры экипировки (TriggerRegistry) срабатывают по событиям движка: попадание,
+ * добивание, начало хода, переход HP ниже четверти. Их планы копятся в emit и
+ * исполняются перед проверкой конца боя, своими событиями, без новых срабатываний.
+ */
+public class CombatEngine {
+
+    // Вызывается в потоке, обрабатывающем команды
+    public interface Listener {
+        // Каждое событие сразу; state уже включает event
+        default void onCombatEvent(CombatEvent event, CombatState state) {}
+
+        // Все события одной команды одним пакетом - для UI
+        default void onCombatDelta(CombatDelta delta, CombatState state) {}
+    }
+
+    private static final AttackProfile SPELL = AttackProfile.of(AttackType.SPELL);
+    private static final StatusEffect[] EFFECTS = StatusEffect.values();
+
+    private final SessionRng rng;
+    private final CombatSystem rules;
+    private final DiceRollSystem initiativeDice;
+    private final Queue<CombatCommand> pending = new ConcurrentLinkedQueue<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile CombatState state;
+    // Кольцо живых по слотам состояния; следует за гибелью и призывом в emit
+    private final TurnOrder turnOrder = new TurnOrder();
+    private final EngineTurns turns = new EngineTurns();
+    private EnemyRegistry summons;
+    private TriggerRegistry triggers;
+    private final List<Reaction> reactions = new ArrayList<>();
+    // Последнее событие урона - по нему добивание засчитывается бойцу
+    private CombatEvent lastDamage;
+    private boolean firing;
+
+    public CombatEngine(SessionRng rng) {
+        this(rng, null);
+    }
+
+    // Продолжение боя с готового состояния (например, копия для поиска хода ИИ)
+    public CombatEngine(SessionRng rng, CombatState state) {
+        this.rng = rng;
+        this.rules = new CombatSystem(rng);
+        this.initiativeDice = new DiceRollSystem(rng.stream(SessionRng.Stream.INITIATIVE));
+        this.state = state;
+        if (state != null) {
+            indexTurns();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Тактическая сетка с картой видимости: укрытия и линия обзора для атак
+    public void setGrid(CombatGrid grid) {
+        rules.setGrid(grid);
+    }
+
+    // Бонус укрытия target к КД против attacker по сетке; без сетки - 0
+    public int coverBonus(CombatantState attacker, CombatantState target) {
+        return rules.coverBonus(attacker.getBase(), target.getBase());
+    }
+
+    // Шаблоны для операции summon; без реестра призыв не срабатывает
+    public void setSummons(EnemyRegistry summons) {
+        this.summons = summons;
+    }
+
+    // Реакции экипировки и пассивных навыков; индекс по id бойца.
+    // start() берет снимок, поэтому смена экипировки посреди боя на него не влияет
+    public void setTriggers(TriggerRegistry triggers) {
+        this.triggers = triggers;
+    }
+
+    // Снимок реакций, с которым идет бой - его же нужно отдать повтору
+    public synchronized TriggerRegistry getTriggers() {
+        return triggers;
+    }
+
+    public CombatState getState() {
+        return state;
+    }
+
+    // Генератор боя: его журнал (snapshot) сохраняется с результатом
+    public SessionRng getRng() {
+        return rng;
+    }
+
+    // Бросок инициативы (d20 + ловкость) и первый ход
+    public synchronized List<CombatEvent> start(List<Combatant> combatants) {
+        int size = combatants.size();
+        int[] initiative = new int[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            initiative[i] = PackedRoll.total(initiativeDice.rollDicePacked(20, combatants.get(i).getDexterityModifier()));
+            order[i] = i;
+        }
+        // Сортируются номера по локальной инициативе, сами бойцы не меняются.
+        // Сортировка устойчивая: при равной инициативе сохраняется исходный порядок
+        Arrays.sort(order, (a, b) -> Integer.compare(initiative[b], initiative[a]));
+        List<Combatant> ordered = new ArrayList<>(size);
+        for (int index : order) {
+            ordered.add(combatants.get(index));
+        }
+
+        state = CombatState.initial(ordered);
+        indexTurns();
+        if (triggers != null) {
+            triggers = triggers.snapshot();
+        }
+        List<CombatEvent> events = new ArrayList<>();
+        emit(events, new CombatEvent.CombatStarted());
+        if (!checkEnd(events)) {
+            startNextTurn(events, -1, 1);
+        }
+        publish(null, events);
+        return events;
+    }
+
+    /**
+     * Повтор записанного боя: движок создан с log.replay(), combatants - состав
+     * на момент start, commands - все выполненные команды по порядку. После повтора
+     * log.matches(getRng()) подтверждает, что бой прошел тем же путем бит в бит.
+     */
+    public synchronized List<CombatEvent> replay(List<Combatant> combatants, List<CombatCommand> commands) {
+        List<CombatEvent> events = new ArrayList<>(start(combatants));
+        for (CombatCommand command : commands) {
+            events.addAll(execute(command));
+        }
+        return events;
+    }
+
+    public void submit(CombatCommand command) {
+        pending.add(command);
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    // Обрабатывает все накопленные команды, например пачку ходов ИИ
+    public synchronized List<CombatEvent> processPending() {
+        List<CombatEvent> events = new ArrayList<>();
+        CombatCommand command;
+        while ((command = pending.poll()) != null) {
+            events.addAll(execute(command));
+        }
+        return events;
+    }
+
+    public synchronized List<CombatEvent> execute(CombatCommand command) {
+        List<CombatEvent> events = new ArrayList<>();
+        CombatState before = state;
+        String rejection = validate(command);
+        if (rejection != null) {
+            emit(events, new CombatEvent.CommandRejected(command, rejection));
+            publish(before, events);
+            return events;
+        }
+
+        int actorSlot = state.getCurrentSlot();
+        boolean endsCombat = false;
+        switch (command.getType()) {
+            case ATTACK: {
+                CombatCommand.Attack attack = (CombatCommand.Attack) command;
+                performAttack(events, actorSlot, state.indexOf(attack.getTargetId()),
+                        attack.getProfile(), null);
+                break;
+            }
+            case USE_SKILL:
+                useSkill(events, actorSlot, (CombatCommand.UseSkill) command);
+                break;
+            case USE_ITEM:
+                useItem(events, actorSlot, (CombatCommand.UseItem) command);
+                break;
+            case FLEE:
+                endsCombat = flee(events, actorSlot);
+                break;
+            case END_TURN:
+            default:
+                break;
+        }
+
+        if (!endsCombat && !checkEnd(events)) {
+            advanceTurn(events);
+        }
+        publish(before, events);
+        return events;
+    }
+
+    private String validate(CombatCommand command) {
+        CombatState current = state;
+        if (current == null) {
+            return "Combat not started";
+        }
+        if (current.isOver()) {
+            return "Combat is over";
+        }
+        CombatantState actor = current.getCurrent();
+        if (actor == null || !actor.getId().equals(command.getActorId())) {
+            return "Not this combatant's turn";
+        }
+        if (!actor.isAlive()) {
+            return "Combatant is defeated";
+        }
+        if (!actor.canAct() && command.getType() != CombatCommand.Type.END_TURN) {
+            return "Combatant cannot act";
+        }
+        String targetId = null;
+        if (command instanceof CombatCommand.Attack) {
+            targetId = ((CombatCommand.Attack) command).getTargetId();
+            if (targetId == null) {
+                return "Select a target first!";
+            }
+        } else if (command instanceof CombatCommand.UseSkill) {
+            CombatCommand.UseSkill use = (CombatCommand.UseSkill) command;
+            String rejection = checkSkill(actor, use.getSkill(), current.getRound());
+            if (rejection != null) {
+                return rejection;
+            }
+            targetId = use.getTargetId();
+        } else if (command instanceof CombatCommand.UseItem) {
+            targetId = ((CombatCommand.UseItem) command).getTargetId();
+        }
+        if (targetId != null) {
+            int target = current.indexOf(targetId);
+            if (target < 0) {
+                return "Unknown target";
+            }
+            if (!current.get(target).isAlive()) {
+                return "Target is already defeated!";
+            }
+            CombatGrid grid = rules.getGrid();
+            if (command instanceof CombatCommand.Attack && grid != null
+                    && !grid.hasLineOfSight(actor.getBase(), current.get(target).getBase())) {
+                return "Target is out of sight!";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Проверка навыка по SkillPlan.check с маной, состояниями и откатами из состояния боя.
+     * Команда занимает весь ход, поэтому доступен полный запас очков действий.
+     */
+    static String checkSkill(CombatantState actor, Skill skill, int round) {
+        SkillPlan plan;
+        try {
+            plan = SkillPlan.of(skill);
+        } catch (IllegalArgumentException e) {
+            return "Invalid skill effects";
+        }
+        SkillPlan.CastResult result = plan.check(actor.getBase(), actor.canAct(), actor.isSkillReady(skill, round),
+                actor.getMana(), actor.getBase().getMaxActionPoints());
+        return result.getReason();
+    }
+
+    private void performAttack(List<CombatEvent> events, int attackerSlot, int targetSlot,
+                               AttackProfile profile, DiceExpression damageExpression) {
+        CombatantState attackerState = state.get(attackerSlot);
+        Combatant attacker = attackerState.getBase();
+        CombatantState target = state.get(targetSlot);
+        // Бонус атаки от навыков учитывается как равное снижение КД цели
+        int armorClass = target.getArmorClass() + rules.coverBonus(attacker, target.getBase())
+                - attackerState.statBonus(SkillPlan.Stat.ATTACK);
+
+        // Отряд бьет бойцами, окружившими цель; залп - одно событие с суммарным уроном
+        int attacks = attacker instanceof Squad
+                ? ((Squad) attacker).attackersPerTarget(state.get(attackerSlot).getCurrentHp()) : 1;
+        long roll = attacks > 1
+                ? rules.rollVolley(attacker, armorClass, profile, damageExpression, attacks)
+                : rules.rollAttack(attacker, armorClass, profile);
+        if (!PackedRoll.isSuccess(roll)) {
+            emit(events, new CombatEvent.AttackMissed(attackerSlot, targetSlot, PackedRoll.naturalRoll(roll)));
+            return;
+        }
+
+        boolean critical = PackedRoll.isCritical(roll);
+        int damage;
+        if (attacks > 1) {
+            damage = PackedRoll.total(roll);
+        } else {
+            damage = damageExpression != null
+                    ? rules.rollDamage(attacker, profile, damageExpression, critical)
+                    : rules.rollDamage(attacker, profile, critical);
+        }
+        damage = Math.max(0, damage + attackerState.statBonus(SkillPlan.Stat.DAMAGE));
+        emit(events, new CombatEvent.AttackHit(attackerSlot, targetSlot, PackedRoll.naturalRoll(roll),
+                damage, critical));
+        if (state.get(targetSlot).getCurrentHp() <= 0) {
+            emit(events, new CombatEvent.CombatantDefeated(targetSlot));
+        }
+    }
+
+    private void useSkill(List<CombatEvent> events, int actorSlot, CombatCommand.UseSkill command) {
+        Skill skill = command.getSkill();
+        Combatant caster = state.get(actorSlot).getBase();
+        emit(events, new CombatEvent.SkillUsed(actorSlot, skill, caster.usesMana() ? skill.getManaCost() : 0));
+
+        // Навык по нескольким целям накрывает набор из selectTargets, а не выбранную цель
+        boolean multiple = skill.targetKind().isMultiple();
+        int[] targets = multiple ? skillTargets(actorSlot, skill)
+                : new int[]{command.getTargetId() != null ? state.indexOf(command.getTargetId()) : actorSlot};
+
+        executePlan(events, actorSlot, SkillPlan.of(skill), targets, multiple);
+    }
+
+    // Операции плана по целям; без площади - по первой цели, павшая цель операцию пропускает
+    private void executePlan(List<CombatEvent> events, int actorSlot, SkillPlan plan, int[] targets,
+                             boolean multiple) {
+        int[] self = {actorSlot};
+        for (int i = 0; i < plan.size(); i++) {
+            int[] opTargets = plan.isSelf(i) ? self : targets;
+            boolean area = multiple && !plan.isSelf(i);
+            if (!area && !state.get(opTargets[0]).isAlive()) {
+                continue;
+            }
+            switch (plan.opCode(i)) {
+                case SkillPlan.HEAL:
+                    if (area) {
+                        resolveArea(events, actorSlot, opTargets, plan.dice(i), true);
+                    } else {
+                        int amount = rules.rollAmount(state.get(actorSlot).getBase(), plan.dice(i));
+                        emit(events, new CombatEvent.Healed(actorSlot, opTargets[0], amount));
+                    }
+                    break;
+                case SkillPlan.DAMAGE:
+                    if (area) {
+                        resolveArea(events, actorSlot, opTargets, plan.dice(i), false);
+                    } else if (opTargets[0] != actorSlot) {
+                        performAttack(events, actorSlot, opTargets[0], SPELL, plan.dice(i));
+                    }
+                    break;
+                case SkillPlan.STATUS:
+                    for (int target : opTargets) {
+                        applyStatus(events, actorSlot, target, plan.status(i), plan.amount(i), plan.extra(i));
+                    }
+                    break;
+                case SkillPlan.MODIFY_STAT:
+                    for (int target : opTargets) {
+                        modifyStat(events, actorSlot, target, plan.stat(i), plan.amount(i), plan.extra(i));
+                    }
+                    break;
+                case SkillPlan.SUMMON:
+                    summon(events, actorSlot, plan.ref(i), plan.amount(i));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // Мана меняется сразу в пределах [0, maxMana]; остальное - изменение на rounds раундов или бессрочно
+    private void modifyStat(List<CombatEvent> events, int sourceSlot, int targetSlot,
+                            SkillPlan.Stat stat, int delta, int rounds) {
+        CombatantState target = state.get(targetSlot);
+        if (!target.isAlive() || delta == 0) {
+            return;
+        }
+        if (stat == SkillPlan.Stat.MANA) {
+            int mana = Math.max(0, Math.min(target.getBase().getMaxMana(), target.getMana() + delta));
+            if (mana != target.getMana()) {
+                emit(events, new CombatEvent.StatModified(sourceSlot, targetSlot, stat, mana - target.getMana(), 0));
+            }
+            return;
+        }
+        emit(events, new CombatEvent.StatModified(sourceSlot, targetSlot, stat, delta, Math.max(0, rounds)));
+    }
+
+    // Призванные встают на сторону заклинателя; id по слоту, поэтому повтор боя дает те же id
+    private void summon(List<CombatEvent> events, int casterSlot, String ref, int count) {
+        EnemyPrototype prototype = summons != null ? summons.get(ref) : null;
+        if (prototype == null) {
+            return;
+        }
+        CombatantState caster = state.get(casterSlot);
+        for (int i = 0; i < count; i++) {
+            int slot = state.size();
+            Combatant summoned = prototype.spawn();
+            summoned.setId(ref + "@" + caster.getId() + "#" + slot);
+            summoned.setType(caster.getType());
+            emit(events, new CombatEvent.Summoned(casterSlot, slot, summoned));
+        }
+    }
+
+    // Слоты целей навыка по правилам CombatSystem.selectTargets (с сеткой - дальность, обзор и зона)
+    private int[] skillTargets(int actorSlot, Skill skill) {
+        List<Combatant> roster = new ArrayList<>(state.size());
+        for (int slot = 0; slot < state.size(); slot++) {
+            if (state.get(slot).isAlive()) {
+                roster.add(state.get(slot).getBase());
+            }
+        }
+        List<Combatant> selected = CombatSystem.selectTargets(state.get(actorSlot).getBase(), skill, roster,
+                rules.getGrid());
+        int[] slots = new int[selected.size()];
+        int count = 0;
+        for (Combatant combatant : selected) {
+            int slot = slotOf(combatant);
+            if (slot >= 0 && state.get(slot).isAlive()) {
+                slots[count++] = slot;
+            }
+        }
+        return Arrays.copyOf(slots, count);
+    }
+
+    // Бойцы состояния - те же объекты, что в составе; поиск по ссылке
+    private int slotOf(Combatant combatant) {
+        for (int slot = 0; slot < state.size(); slot++) {
+            if (state.get(slot).getBase() == combatant) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Урон или лечение по набору целей: один бросок
+     * на каст, для урона - спасбросок ЛВК каждой цели (успех - половина), по отряду урон
+     * получает каждый живой боец. Одно событие SkillResolved на каст, затем гибели.
+     */
+    private void resolveArea(List<CombatEvent> events, int actorSlot, int[] targets,
+                             DiceExpression expression, boolean heal) {
+        if (targets.length == 0 || expression == null) {
+            return;
+        }
+        Combatant caster = state.get(actorSlot).getBase();
+        int roll = heal ? rules.rollAmount(caster, expression) : rules.rollDamage(caster, expression, false);
+        int saveDc = CombatSystem.saveDc(caster);
+        int[] amounts = new int[targets.length];
+        boolean[] saved = new boolean[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            CombatantState target = state.get(targets[i]);
+            if (!target.isAlive() || roll == 0) {
+                continue;
+            }
+            amounts[i] = roll;
+            if (!heal && rules.rollSave(target.getBase(), saveDc)) {
+                saved[i] = true;
+                amounts[i] = roll / 2;
+            }
+            if (!heal && target.getBase() instanceof Squad) {
+                amounts[i] = ((Squad) target.getBase()).areaDamage(amounts[i], target.getCurrentHp());
+            }
+        }
+        emit(events, new CombatEvent.SkillResolved(actorSlot, targets, amounts, saved, heal));
+        if (heal) {
+            return;
+        }
+        for (int target : targets) {
+            CombatantState combatant = state.get(target);
+            if (combatant.isAlive() && combatant.getCurrentHp() <= 0) {
+                emit(events, new CombatEvent.CombatantDefeated(target));
+            }
+        }
+    }
+
+    // Сложение с уже наложенным - по правилам StatusEngine.apply
+    private void applyStatus(List<CombatEvent> events, int sourceSlot, int targetSlot,
+                             StatusEffect effect, int duration, int stacks) {
+        CombatantState target = state.get(targetSlot);
+        if (!target.isAlive() || duration == 0 || stacks <= 0) {
+            return;
+        }
+        int newStacks = StatusEngine.stackedCount(effect, target.statusStacks(effect), stacks);
+        int newDuration = target.hasStatus(effect)
+                ? StatusEngine.stackedDuration(target.statusDuration(effect), duration) : duration;
+        emit(events, new CombatEvent.StatusApplied(sourceSlot, targetSlot, effect, newDuration, newStacks));
+    }
+
+    private void useItem(List<CombatEvent> events, int actorSlot, CombatCommand.UseItem command) {
+        Item item = command.getItem();
+        emit(events, new CombatEvent.ItemUsed(actorSlot, item.getId(), item.getName()));
+
+        int targetSlot = command.getTargetId() != null ? state.indexOf(command.getTargetId()) : actorSlot;
+        int amount = healAmount(item);
+        if (amount > 0) {
+            emit(events, new CombatEvent.Healed(actorSlot, targetSlot, amount));
+        }
+    }
+
+    // Лечение предмета: stats.heal, иначе значения известных расходников
+    static int healAmount(Item item) {
+        Object heal = item.getStats() != null ? item.getStats().get("heal") : null;
+        if (heal instanceof Number) {
+            return ((Number) heal).intValue();
+        }
+        if ("Health Potion".equals(item.getName())) return 10;
+        if ("Scroll of Healing".equals(item.getName())) return 15;
+        return 0;
+    }
+
+    private boolean flee(List<CombatEvent> events, int actorSlot) {
+        boolean actorIsPlayer = state.get(actorSlot).isPlayer();
+        List<Combatant> fleeing = new ArrayList<>();
+        int opponents = 0;
+        for (int i = 0; i < state.size(); i++) {
+            CombatantState combatant = state.get(i);
+            if (!combatant.isAlive()) {
+                continue;
+            }
+            if (combatant.isPlayer() == actorIsPlayer) {
+                fleeing.add(combatant.getBase());
+            } else {
+                opponents++;
+            }
+        }
+
+        boolean success = rules.attemptFlee(fleeing, opponents);
+        emit(events, new CombatEvent.FleeAttempted(success));
+        if (success) {
+            emit(events, new CombatEvent.CombatEnded(CombatState.Outcome.FLED));
+        }
+        return success;
+    }
+
+    // Сначала исполняются накопленные триггеры: их урон может решить исход
+    private boolean checkEnd(List<CombatEvent> events) {
+        fireTriggers(events);
+        if (state.getAlivePlayers() == 0) {
+            emit(events, new CombatEvent.CombatEnded(CombatState.Outcome.DEFEAT));
+            return true;
+        }
+        if (state.getAliveEnemies() == 0) {
+            emit(events, new CombatEvent.CombatEnded(CombatState.Outcome.VICTORY));
+            return true;
+        }
+        return false;
+    }
+
+    // Конец хода текущего бойца, затем ход следующего
+    private void advanceTurn(List<CombatEvent> events) {
+        int from = state.getCurrentSlot();
+        tickStatuses(events, from, TurnOrder.END_MASK);
+        if (!checkEnd(events)) {
+            startNextTurn(events, from, state.getRound());
+        }
+    }
+
+    private void indexTurns() {
+        turnOrder.clear();
+        for (int slot = 0; slot < state.size(); slot++) {
+            CombatantState combatant = state.get(slot);
+            turnOrder.add(combatant.getBase().typeCode(), combatant.isAlive());
+        }
+    }
+
+    // Ход следующего живого бойца после from по правилам TurnOrder.advance
+    private void startNextTurn(List<CombatEvent> events, int from, int round) {
+        turns.events = events;
+        turnOrder.advance(from, round, turns);
+        turns.events = null;
+    }
+
+    // Тик эффектов фазы: изменение HP (с учетом границ) и оставшаяся длительность одним событием
+    private void tickStatuses(List<CombatEvent> events, int slot, long phaseMask) {
+        long pending = state.get(slot).statusMask() & phaseMask;
+        while (pending != 0 && state.get(slot).isAlive()) {
+            StatusEffect effect = EFFECTS[Long.numberOfTrailingZeros(pending)];
+            pending &= pending - 1;
+
+            CombatantState combatant = state.get(slot);
+            int hp = combatant.getCurrentHp();
+            int newHp = StatusEngine.tickedHp(effect, combatant.statusStacks(effect), hp, combatant.getMaxHp());
+            int duration = combatant.statusDuration(effect);
+            if (duration == Combatant.STATUS_PERMANENT && newHp == hp) {
+                continue;
+            }
+            int remaining = StatusEngine.tickedDuration(duration);
+            emit(events, new CombatEvent.StatusTicked(slot, effect, newHp - hp, remaining));
+            if (newHp <= 0) {
+                emit(events, new CombatEvent.CombatantDefeated(slot));
+            }
+        }
+    }
+
+    private void publish(CombatState before, List<CombatEvent> events) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        CombatState snapshot = state;
+        CombatDelta delta;
+        if (snapshot != null) {
+            delta = CombatDelta.fromEvents(before, events, snapshot);
+        } else {
+            // Бой еще не начат: в дельте только отказ
+            CombatDelta.Builder builder = new CombatDelta.Builder();
+            for (CombatEvent event : events) {
+                builder.addEvent(event);
+            }
+            delta = builder.build();
+        }
+        for (Listener listener : listeners) {
+            listener.onCombatDelta(delta, snapshot);
+        }
+    }
+
+    private void emit(List<CombatEvent> events, CombatEvent event) {
+        CombatState before = state;
+        state = state != null ? state.apply(event) : null;
+        if (state != null) {
+            trackTurns(event);
+        }
+        events.add(event);
+        CombatState snapshot = state;
+        for (Listener listener : listeners) {
+            listener.onCombatEvent(event, snapshot);
+        }
+        if (triggers != null && !firing && before != null) {
+            collectTriggers(before, event);
+        }
+    }
+
+    private void trackTurns(CombatEvent event) {
+        if (event.getType() == CombatEvent.Type.COMBATANT_DEFEATED) {
+            turnOrder.setAlive(((CombatEvent.CombatantDefeated) event).getSlot(), false);
+        } else if (event.getType() == CombatEvent.Type.SUMMONED) {
+            CombatantState added = state.get(((CombatEvent.Summoned) event).getSlot());
+            turnOrder.add(added.getBase().typeCode(), added.isAlive());
+        }
+    }
+
+    private void collectTriggers(CombatState before, CombatEvent event) {
+        switch (event.getType()) {
+            case TURN_STARTED: {
+                int slot = ((CombatEvent.TurnStarted) event).getSlot();
+                lastDamage = null;
+                react(TriggerRegistry.Event.TURN_START, slot, slot);
+                break;
+            }
+            case ATTACK_HIT: {
+                CombatEvent.AttackHit hit = (CombatEvent.AttackHit) event;
+                lastDamage = event;
+                checkLowHp(before, hit.getTargetSlot(), hit.getAttackerSlot());
+                react(TriggerRegistry.Event.ON_HIT, hit.getAttackerSlot(), hit.getTargetSlot());
+                if (hit.isCritical()) {
+                    react(TriggerRegistry.Event.ON_CRIT, hit.getAttackerSlot(), hit.getTargetSlot());
+                }
+                break;
+            }
+            case SKILL_RESOLVED: {
+                CombatEvent.SkillResolved resolved = (CombatEvent.SkillResolved) event;
+                if (!resolved.isHeal()) {
+                    lastDamage = event;
+                    for (int i = 0; i < resolved.getTargetCount(); i++) {
+                        checkLowHp(before, resolved.getTargetSlot(i), resolved.getActorSlot());
+                    }
+                }
+                break;
+            }
+            case STATUS_TICKED: {
+                CombatEvent.StatusTicked tick = (CombatEvent.StatusTicked) event;
+                lastDamage = null;
+                if (tick.getHpDelta() < 0) {
+                    checkLowHp(before, tick.getSlot(), tick.getSlot());
+                }
+                break;
+            }
+            case COMBATANT_DEFEATED: {
+                int slot = ((CombatEvent.CombatantDefeated) event).getSlot();
+                int killer = killerOf(slot);
+                if (killer >= 0) {
+                    react(TriggerRegistry.Event.ON_KILL, killer, slot);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    // Добивание засчитывается автору последнего урона по бойцу; урон от состояний - никому
+    private int killerOf(int slot) {
+        if (lastDamage instanceof CombatEvent.AttackHit) {
+            CombatEvent.AttackHit hit = (CombatEvent.AttackHit) lastDamage;
+            return hit.getTargetSlot() == slot ? hit.getAttackerSlot() : -1;
+        }
+        if (lastDamage instanceof CombatEvent.SkillResolved) {
+            CombatEvent.SkillResolved resolved = (CombatEvent.SkillResolved) lastDamage;
+            for (int i = 0; i < resolved.getTargetCount(); i++) {
+                if (resolved.getTargetSlot(i) == slot && resolved.getAmount(i) > 0) {
+                    return resolved.getActorSlot();
+                }
+            }
+        }
+        return -1;
+    }
+
+    // LOW_HP владельца при переходе порога; цель эффектов - источник урона
+    private void checkLowHp(CombatState before, int slot, int sourceSlot) {
+        CombatantState combatant = state.get(slot);
+        if (TriggerRegistry.crossesLowHp(before.get(slot).getCurrentHp(), combatant.getCurrentHp(),
+                combatant.getMaxHp())) {
+            react(TriggerRegistry.Event.LOW_HP, slot, sourceSlot);
+        }
+    }
+
+    private void react(TriggerRegistry.Event event, int ownerSlot, int otherSlot) {
+        SkillPlan[] plans = triggers.plans(event, state.get(ownerSlot).getId());
+        if (plans != null) {
+            reactions.add(new Reaction(plans, ownerSlot, otherSlot));
+        }
+    }
+
+    // Планы сработавших триггеров по порядку событий; павший владелец не реагирует
+    private void fireTriggers(List<CombatEvent> events) {
+        if (reactions.isEmpty()) {
+            return;
+        }
+        firing = true;
+        try {
+            for (int i = 0; i < reactions.size(); i++) {
+                Reaction reaction = reactions.get(i);
+                if (!state.get(reaction.owner).isAlive()) {
+                    continue;
+                }
+                int[] target = {reaction.other};
+                for (SkillPlan plan : reaction.plans) {
+                    executePlan(events, reaction.owner, plan, target, false);
+                }
+            }
+        } finally {
+            reactions.clear();
+            firing = false;
+        }
+    }
+
+    private static final class Reaction {
+        final SkillPlan[] plans;
+        final int owner;
+        final int other;
+
+        Reaction(SkillPlan[] plans, int owner, int other) {
+            this.plans = plans;
+            this.owner = owner;
+            this.other = other;
+        }
+    }
+
+    // Передача хода событиями движка
+    private final class EngineTurns implements TurnOrder.Turns {
+        List<CombatEvent> events;
+
+        @Override
+        public void started(int slot, int round) {
+            emit(events, new CombatEvent.TurnStarted(slot, round));
+        }
+
+        @Override
+        public boolean tick(int slot, long phaseMask) {
+            tickStatuses(events, slot, phaseMask);
+            return checkEnd(events);
+        }
+
+        @Override
+        public boolean canAct(int slot) {
+            return state.get(slot).canAct();
+        }
+
+        @Override
+        public void skipped(int slot) {
+            emit(events, new CombatEvent.TurnSkipped(slot));
+        }
+    }
+}
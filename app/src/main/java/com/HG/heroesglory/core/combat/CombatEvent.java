@@ -0,0 +1,342 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.entities.StatusEffect;
+import com.HG.heroesglory.core.systems.SkillPlan;
+
+/**
+ * Типизированные события боя. Состояние боя - это свертка событий
+ * (CombatState.apply), поэтому журнал событий полностью описывает бой.
+ */
+public abstract class CombatEvent {
+
+    public enum Type {
+        COMBAT_STARTED, TURN_STARTED, ATTACK_HIT, ATTACK_MISSED, COMBATANT_DEFEATED,
+        HEALED, SKILL_RESOLVED, STATUS_APPLIED, STATUS_TICKED, TURN_SKIPPED, STAT_MODIFIED, SUMMONED,
+        SKILL_USED, ITEM_USED, FLEE_ATTEMPTED, COMBAT_ENDED, COMMAND_REJECTED
+    }
+
+    private final Type type;
+
+    CombatEvent(Type type) {
+        this.type = type;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public static final class CombatStarted extends CombatEvent {
+        CombatStarted() { super(Type.COMBAT_STARTED); }
+    }
+
+    public static final class TurnStarted extends CombatEvent {
+        private final int slot;
+        private final int round;
+
+        TurnStarted(int slot, int round) {
+            super(Type.TURN_STARTED);
+            this.slot = slot;
+            this.round = round;
+        }
+
+        public int getSlot() { return slot; }
+        public int getRound() { return round; }
+    }
+
+    public static final class AttackHit extends CombatEvent {
+        private final int attackerSlot;
+        private final int targetSlot;
+        private final int naturalRoll;
+        private final int damage;
+        private final boolean critical;
+
+        AttackHit(int attackerSlot, int targetSlot, int naturalRoll, int damage, boolean critical) {
+            super(Type.ATTACK_HIT);
+            this.attackerSlot = attackerSlot;
+            this.targetSlot = targetSlot;
+            this.naturalRoll = naturalRoll;
+            this.damage = damage;
+            this.critical = critical;
+        }
+
+        public int getAttackerSlot() { return attackerSlot; }
+        public int getTargetSlot() { return targetSlot; }
+        public int getNaturalRoll() { return naturalRoll; }
+        public int getDamage() { return damage; }
+        public boolean isCritical() { return critical; }
+    }
+
+    public static final class AttackMissed extends CombatEvent {
+        private final int attackerSlot;
+        private final int targetSlot;
+        private final int naturalRoll;
+
+        AttackMissed(int attackerSlot, int targetSlot, int naturalRoll) {
+            super(Type.ATTACK_MISSED);
+            this.attackerSlot = attackerSlot;
+            this.targetSlot = targetSlot;
+            this.naturalRoll = naturalRoll;
+        }
+
+        public int getAttackerSlot() { return attackerSlot; }
+        public int getTargetSlot() { return targetSlot; }
+        public int getNaturalRoll() { return naturalRoll; }
+    }
+
+    public static final class CombatantDefeated extends CombatEvent {
+        private final int slot;
+
+        CombatantDefeated(int slot) {
+            super(Type.COMBATANT_DEFEATED);
+            this.slot = slot;
+        }
+
+        public int getSlot() { return slot; }
+    }
+
+    public static final class Healed extends CombatEvent {
+        private final int sourceSlot;
+        private final int targetSlot;
+        private final int amount;
+
+        Healed(int sourceSlot, int targetSlot, int amount) {
+            super(Type.HEALED);
+            this.sourceSlot = sourceSlot;
+            this.targetSlot = targetSlot;
+            this.amount = amount;
+        }
+
+        public int getSourceSlot() { return sourceSlot; }
+        public int getTargetSlot() { return targetSlot; }
+        public int getAmount() { return amount; }
+    }
+
+    /**
+     * Урон или лечение навыка по набору целей (AREA, ALL_ENEMIES, ALL_ALLIES) одним событием:
+     * общий бросок, для урона - спасбросок каждой цели. Массивы параллельны, amount - уже
+     * с учетом спасброска; павшие идут следом отдельными CombatantDefeated.
+     */
+    public static final class SkillResolved extends CombatEvent {
+        private final int actorSlot;
+        private final int[] targetSlots;
+        private final int[] amounts;
+        private final boolean[] saved;
+        private final boolean heal;
+
+        SkillResolved(int actorSlot, int[] targetSlots, int[] amounts, boolean[] saved, boolean heal) {
+            super(Type.SKILL_RESOLVED);
+            this.actorSlot = actorSlot;
+            this.targetSlots = targetSlots;
+            this.amounts = amounts;
+            this.saved = saved;
+            this.heal = heal;
+        }
+
+        public int getActorSlot() { return actorSlot; }
+        public int getTargetCount() { return targetSlots.length; }
+        public int getTargetSlot(int index) { return targetSlots[index]; }
+        public int getAmount(int index) { return amounts[index]; }
+        public boolean isSaved(int index) { return saved[index]; }
+        public boolean isHeal() { return heal; }
+
+        public int getTotalAmount() {
+            int total = 0;
+            for (int amount : amounts) {
+                total += amount;
+            }
+            return total;
+        }
+    }
+
+    // Состояние наложено; duration и stacks - итог после сложения с уже наложенным
+    public static final class StatusApplied extends CombatEvent {
+        private final int sourceSlot;
+        private final int targetSlot;
+        private final StatusEffect effect;
+        private final int duration;
+        private final int stacks;
+
+        StatusApplied(int sourceSlot, int targetSlot, StatusEffect effect, int duration, int stacks) {
+            super(Type.STATUS_APPLIED);
+            this.sourceSlot = sourceSlot;
+            this.targetSlot = targetSlot;
+            this.effect = effect;
+            this.duration = duration;
+            this.stacks = stacks;
+        }
+
+        public int getSourceSlot() { return sourceSlot; }
+        public int getTargetSlot() { return targetSlot; }
+        public StatusEffect getEffect() { return effect; }
+        public int getDuration() { return duration; }
+        public int getStacks() { return stacks; }
+    }
+
+    /**
+     * Изменение характеристики операцией stat. rounds > 0 - временное: снимается
+     * в начале раунда, на rounds позже текущего. MANA меняет ману сразу, delta уже
+     * ограничена пределами [0, maxMana].
+     */
+    public static final class StatModified extends CombatEvent {
+        private final int sourceSlot;
+        private final int targetSlot;
+        private final SkillPlan.Stat stat;
+        private final int delta;
+        private final int rounds;
+
+        StatModified(int sourceSlot, int targetSlot, SkillPlan.Stat stat, int delta, int rounds) {
+            super(Type.STAT_MODIFIED);
+            this.sourceSlot = sourceSlot;
+            this.targetSlot = targetSlot;
+            this.stat = stat;
+            this.delta = delta;
+            this.rounds = rounds;
+        }
+
+        public int getSourceSlot() { return sourceSlot; }
+        public int getTargetSlot() { return targetSlot; }
+        public SkillPlan.Stat getStat() { return stat; }
+        public int getDelta() { return delta; }
+        public int getRounds() { return rounds; }
+    }
+
+    // Призванный боец встает в конец порядка ходов; из журнала - без бойца, только HP и мана
+    public static final class Summoned extends CombatEvent {
+        private final int casterSlot;
+        private final int slot;
+        private final Combatant combatant;
+        private final int maxHp;
+        private final int mana;
+
+        Summoned(int casterSlot, int slot, Combatant combatant) {
+            this(casterSlot, slot, combatant, combatant.getMaxHp(), combatant.getMana());
+        }
+
+        Summoned(int casterSlot, int slot, Combatant combatant, int maxHp, int mana) {
+            super(Type.SUMMONED);
+            this.casterSlot = casterSlot;
+            this.slot = slot;
+            this.combatant = combatant;
+            this.maxHp = maxHp;
+            this.mana = mana;
+        }
+
+        public int getCasterSlot() { return casterSlot; }
+        public int getSlot() { return slot; }
+        public Combatant getCombatant() { return combatant; }
+        public int getMaxHp() { return maxHp; }
+        public int getMana() { return mana; }
+    }
+
+    // Тик состояния в начале или конце хода носителя; remaining == 0 - состояние снято
+    public static final class StatusTicked extends CombatEvent {
+        private final int slot;
+        private final StatusEffect effect;
+        private final int hpDelta;
+        private final int remaining;
+
+        StatusTicked(int slot, StatusEffect effect, int hpDelta, int remaining) {
+            super(Type.STATUS_TICKED);
+            this.slot = slot;
+            this.effect = effect;
+            this.hpDelta = hpDelta;
+            this.remaining = remaining;
+        }
+
+        public int getSlot() { return slot; }
+        public StatusEffect getEffect() { return effect; }
+        // < 0 - урон, > 0 - лечение
+        public int getHpDelta() { return hpDelta; }
+        public int getRemaining() { return remaining; }
+        public boolean isExpired() { return remaining == 0; }
+    }
+
+    // Боец лишен хода (оглушен, парализован, спит): ход переходит дальше
+    public static final class TurnSkipped extends CombatEvent {
+        private final int slot;
+
+        TurnSkipped(int slot) {
+            super(Type.TURN_SKIPPED);
+            this.slot = slot;
+        }
+
+        public int getSlot() { return slot; }
+    }
+
+    // Навык применен; с этого события идет его откат. skill - null в событиях из журнала
+    // Навык применен: откат и списание маны заклинателя
+    public static final class SkillUsed extends CombatEvent {
+        private final int actorSlot;
+        private final Skill skill;
+        private final int manaCost;
+
+        SkillUsed(int actorSlot, Skill skill, int manaCost) {
+            super(Type.SKILL_USED);
+            this.actorSlot = actorSlot;
+            this.skill = skill;
+            this.manaCost = manaCost;
+        }
+
+        public int getActorSlot() { return actorSlot; }
+        public Skill getSkill() { return skill; }
+        public String getSkillName() { return skill != null ? skill.getName() : null; }
+        // Списанная мана; 0 - боец без маны или бесплатный навык
+        public int getManaCost() { return manaCost; }
+    }
+
+    public static final class ItemUsed extends CombatEvent {
+        private final int actorSlot;
+        private final String itemId;
+        private final String itemName;
+
+        ItemUsed(int actorSlot, String itemId, String itemName) {
+            super(Type.ITEM_USED);
+            this.actorSlot = actorSlot;
+            this.itemId = itemId;
+            this.itemName = itemName;
+        }
+
+        public int getActorSlot() { return actorSlot; }
+        public String getItemId() { return itemId; }
+        public String getItemName() { return itemName; }
+    }
+
+    public static final class FleeAttempted extends CombatEvent {
+        private final boolean success;
+
+        FleeAttempted(boolean success) {
+            super(Type.FLEE_ATTEMPTED);
+            this.success = success;
+        }
+
+        public boolean isSuccess() { return success; }
+    }
+
+    public static final class CombatEnded extends CombatEvent {
+        private final CombatState.Outcome outcome;
+
+        CombatEnded(CombatState.Outcome outcome) {
+            super(Type.COMBAT_ENDED);
+            this.outcome = outcome;
+        }
+
+        public CombatState.Outcome getOutcome() { return outcome; }
+        public boolean isVictory() { return outcome == CombatState.Outcome.VICTORY; }
+    }
+
+    public static final class CommandRejected extends CombatEvent {
+        private final CombatCommand command;
+        private final String reason;
+
+        CommandRejected(CombatCommand command, String reason) {
+            super(Type.COMMAND_REJECTED);
+            this.command = command;
+            this.reason = reason;
+        }
+
+        public CombatCommand getCommand() { return command; }
+        public String getReason() { return reason; }
+    }
+}
@@ -0,0 +1,456 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.entities.StatusEffect;
+import com.HG.heroesglory.core.systems.SkillPlan;
+
+import java.util.Arrays;
+
+/**
+ * Компактный двоичный журнал боя в кольцевом буфере фиксированного размера.
+ * Каждое событие - одна запись: код действия и четыре varint (актер, цель,
+ * бросок, величина); навык по площади пишется записью на каждую цель.
+ * Призыв добавляет слот бойца: записи после него могут ссылаться на слоты за заголовком.
+ * Запись не создает объектов. При переполнении старые
+ * записи вытесняются целиком, а их эффект переносится в заголовок, поэтому
+ * CombatLogReplayer восстанавливает состояние на любой сохраненной записи.
+ * Журнал пишется из потока движка; toBlob можно вызывать из любого потока.
+ */
+public final class CombatLog implements CombatEngine.Listener {
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    // 2 - состояния в заголовке и записи STATUS, TICK, SKIP, AREA;
+    // 3 - мана и изменения характеристик в заголовке, записи STAT и SUMMON
+    static final int FORMAT_VERSION = 3;
+    static final int FLAG_TRUNCATED = 1;
+
+    // Коды записей
+    static final int CODE_TURN = 1;    // actor = слот хода, roll = раунд
+    static final int CODE_HIT = 2;     // amount = урон
+    static final int CODE_CRIT = 3;
+    static final int CODE_MISS = 4;
+    static final int CODE_HEAL = 5;    // amount = лечение
+    static final int CODE_DEFEAT = 6;  // actor = павший
+    static final int CODE_SKILL = 7;   // amount = списанная мана
+    static final int CODE_ITEM = 8;
+    static final int CODE_FLEE = 9;    // amount = 1, если побег удался
+    static final int CODE_END = 10;    // amount = Outcome.ordinal()
+    static final int CODE_STATUS = 11; // roll = длительность, amount = (стаки << STATUS_BITS) | ordinal
+    static final int CODE_TICK = 12;   // target = ordinal, roll = изменение HP, amount = zigzag(остаток)
+    static final int CODE_SKIP = 13;   // actor = пропустивший ход
+    static final int CODE_AREA = 14;   // цель навыка по площади: roll = 1 при спасброске, amount = урон
+    static final int CODE_AREA_HEAL = 15; // amount = лечение
+    static final int CODE_STAT = 16;   // roll = изменение, amount = (раунды << STAT_BITS) | Stat.ordinal()
+    static final int CODE_SUMMON = 17; // target = новый слот, roll = мана, amount = HP
+
+    // Биты номера эффекта в amount записи STATUS; маска состояний - long
+    static final int STATUS_BITS = 6;
+    // Биты характеристики в amount записи STAT
+    static final int STAT_BITS = 4;
+
+    // Код + 4 varint по 5 байт максимум
+    private static final int MAX_RECORD_SIZE = 1 + 4 * 5;
+
+    private final byte[] ring;
+    private final byte[] scratch = new byte[MAX_RECORD_SIZE];
+    private int head;   // начало самой старой записи
+    private int used;   // занято байт
+    private int recordCount;
+    private boolean truncated;
+
+    // Заголовок: состояние перед первой сохраненной записью
+    private byte[] types = new byte[0];
+    private int[] maxHp = new int[0];
+    private int[] baseHp = new int[0];
+    private boolean[] baseAlive = new boolean[0];
+    private long[] baseStatus = new long[0];
+    private int[][] baseDuration = new int[0][];
+    private int[][] baseStacks = new int[0][];
+    private int[] baseMana = new int[0];
+    // Тройки (Stat.ordinal(), величина, раунд снятия) по слотам, как в CombatantState
+    private int[][] baseModifiers = new int[0][];
+    private int baseSlot;
+    private int baseRound;
+
+    public CombatLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CombatLog(int capacity) {
+        if (capacity < 2 * MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Capacity must be at least " + 2 * MAX_RECORD_SIZE + " bytes");
+        }
+        this.ring = new byte[capacity];
+    }
+
+    @Override
+    public void onCombatEvent(CombatEvent event, CombatState state) {
+        switch (event.getType()) {
+            case COMBAT_STARTED:
+                begin(state);
+                break;
+            case TURN_STARTED: {
+                CombatEvent.TurnStarted turn = (CombatEvent.TurnStarted) event;
+                append(CODE_TURN, turn.getSlot(), 0, turn.getRound(), 0);
+                break;
+            }
+            case ATTACK_HIT: {
+                CombatEvent.AttackHit hit = (CombatEvent.AttackHit) event;
+                append(hit.isCritical() ? CODE_CRIT : CODE_HIT, hit.getAttackerSlot(), hit.getTargetSlot(),
+                        hit.getNaturalRoll(), hit.getDamage());
+                break;
+            }
+            case ATTACK_MISSED: {
+                CombatEvent.AttackMissed miss = (CombatEvent.AttackMissed) event;
+                append(CODE_MISS, miss.getAttackerSlot(), miss.getTargetSlot(), miss.getNaturalRoll(), 0);
+                break;
+            }
+            case HEALED: {
+                CombatEvent.Healed healed = (CombatEvent.Healed) event;
+                append(CODE_HEAL, healed.getSourceSlot(), healed.getTargetSlot(), 0, healed.getAmount());
+                break;
+            }
+            case COMBATANT_DEFEATED:
+                append(CODE_DEFEAT, ((CombatEvent.CombatantDefeated) event).getSlot(), 0, 0, 0);
+                break;
+            case SKILL_USED: {
+                CombatEvent.SkillUsed used = (CombatEvent.SkillUsed) event;
+                append(CODE_SKILL, used.getActorSlot(), 0, 0, used.getManaCost());
+                break;
+            }
+            case STAT_MODIFIED: {
+                CombatEvent.StatModified modified = (CombatEvent.StatModified) event;
+                append(CODE_STAT, modified.getSourceSlot(), modified.getTargetSlot(), modified.getDelta(),
+                        (modified.getRounds() << STAT_BITS) | modified.getStat().ordinal());
+                break;
+            }
+            case SUMMONED: {
+                CombatEvent.Summoned summoned = (CombatEvent.Summoned) event;
+                append(CODE_SUMMON, summoned.getCasterSlot(), summoned.getSlot(), summoned.getMana(),
+                        summoned.getMaxHp());
+                break;
+            }
+            case ITEM_USED:
+                append(CODE_ITEM, ((CombatEvent.ItemUsed) event).getActorSlot(), 0, 0, 0);
+                break;
+            case FLEE_ATTEMPTED:
+                append(CODE_FLEE, 0, 0, 0, ((CombatEvent.FleeAttempted) event).isSuccess() ? 1 : 0);
+                break;
+            case SKILL_RESOLVED: {
+                CombatEvent.SkillResolved resolved = (CombatEvent.SkillResolved) event;
+                for (int i = 0; i < resolved.getTargetCount(); i++) {
+                    append(resolved.isHeal() ? CODE_AREA_HEAL : CODE_AREA, resolved.getActorSlot(),
+                            resolved.getTargetSlot(i), resolved.isSaved(i) ? 1 : 0, resolved.getAmount(i));
+                }
+                break;
+            }
+            case STATUS_APPLIED: {
+                CombatEvent.StatusApplied applied = (CombatEvent.StatusApplied) event;
+                append(CODE_STATUS, applied.getSourceSlot(), applied.getTargetSlot(), applied.getDuration(),
+                        (applied.getStacks() << STATUS_BITS) | applied.getEffect().ordinal());
+                break;
+            }
+            case STATUS_TICKED: {
+                CombatEvent.StatusTicked tick = (CombatEvent.StatusTicked) event;
+                append(CODE_TICK, tick.getSlot(), tick.getEffect().ordinal(), tick.getHpDelta(),
+                        zigZag(tick.getRemaining()));
+                break;
+            }
+            case TURN_SKIPPED:
+                append(CODE_SKIP, ((CombatEvent.TurnSkipped) event).getSlot(), 0, 0, 0);
+                break;
+            case COMBAT_ENDED:
+                append(CODE_END, 0, 0, 0, ((CombatEvent.CombatEnded) event).getOutcome().ordinal());
+                break;
+            default:
+                // Отклоненные команды состояние не меняют и в журнал не пишутся
+                break;
+        }
+    }
+
+    // Новый бой: сбрасывает буфер и запоминает стартовое состояние бойцов
+    public synchronized void begin(CombatState state) {
+        int size = state.size();
+        if (types.length != size) {
+            types = new byte[size];
+            maxHp = new int[size];
+            baseHp = new int[size];
+            baseAlive = new boolean[size];
+            baseStatus = new long[size];
+            baseDuration = new int[size][StatusEffect.COUNT];
+            baseStacks = new int[size][StatusEffect.COUNT];
+            baseMana = new int[size];
+            baseModifiers = new int[size][];
+        }
+        for (int slot = 0; slot < size; slot++) {
+            CombatantState combatant = state.get(slot);
+            types[slot] = combatant.getBase().typeCode();
+            maxHp[slot] = combatant.getMaxHp();
+            baseHp[slot] = combatant.getCurrentHp();
+            baseAlive[slot] = combatant.isAlive();
+            baseStatus[slot] = combatant.statusMask();
+            for (StatusEffect effect : StatusEffect.values()) {
+                baseDuration[slot][effect.ordinal()] = combatant.statusDuration(effect);
+                baseStacks[slot][effect.ordinal()] = combatant.statusStacks(effect);
+            }
+            baseMana[slot] = combatant.getMana();
+            baseModifiers[slot] = new int[combatant.modifierCount() * 3];
+            for (int i = 0; i < combatant.modifierCount(); i++) {
+                baseModifiers[slot][i * 3] = combatant.modifierStat(i);
+                baseModifiers[slot][i * 3 + 1] = combatant.modifierDelta(i);
+                baseModifiers[slot][i * 3 + 2] = combatant.modifierUntil(i);
+            }
+        }
+        baseSlot = state.getCurrentSlot();
+        baseRound = state.getRound();
+        head = 0;
+        used = 0;
+        recordCount = 0;
+        truncated = false;
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized int getSizeBytes() {
+        return used;
+    }
+
+    // Самые старые записи были вытеснены; заголовок описывает состояние после них
+    public synchronized boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Журнал одним блоком: версия, флаги, заголовок бойцов (тип, макс. HP, HP, жив,
+     * число состояний и по каждому номер, длительность, стаки; мана, число изменений
+     * характеристик и по каждому номер, величина, раунд снятия), слот и раунд начала,
+     * число записей и сами записи.
+     */
+    public synchronized byte[] toBlob() {
+        int size = types.length;
+        int modifierBytes = 0;
+        for (int[] modifiers : baseModifiers) {
+            modifierBytes += modifiers.length / 3 * 11;
+        }
+        byte[] header = new byte[24 + size * (23 + StatusEffect.COUNT * 11) + modifierBytes];
+        int pos = 0;
+        header[pos++] = (byte) FORMAT_VERSION;
+        header[pos++] = (byte) (truncated ? FLAG_TRUNCATED : 0);
+        pos = writeVarint(header, pos, size);
+        for (int slot = 0; slot < size; slot++) {
+            header[pos++] = types[slot];
+            pos = writeVarint(header, pos, maxHp[slot]);
+            pos = writeVarint(header, pos, baseHp[slot]);
+            header[pos++] = (byte) (baseAlive[slot] ? 1 : 0);
+            header[pos++] = (byte) Long.bitCount(baseStatus[slot]);
+            long mask = baseStatus[slot];
+            while (mask != 0) {
+                int effect = Long.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                header[pos++] = (byte) effect;
+                pos = writeVarint(header, pos, zigZag(baseDuration[slot][effect]));
+                pos = writeVarint(header, pos, baseStacks[slot][effect]);
+            }
+            pos = writeVarint(header, pos, baseMana[slot]);
+            int[] modifiers = baseModifiers[slot];
+            pos = writeVarint(header, pos, modifiers.length / 3);
+            for (int i = 0; i < modifiers.length; i += 3) {
+                header[pos++] = (byte) modifiers[i];
+                pos = writeVarint(header, pos, zigZag(modifiers[i + 1]));
+                pos = writeVarint(header, pos, modifiers[i + 2]);
+            }
+        }
+        pos = writeVarint(header, pos, baseSlot);
+        pos = writeVarint(header, pos, baseRound);
+        pos = writeVarint(header, pos, recordCount);
+
+        byte[] blob = new byte[pos + used];
+        System.arraycopy(header, 0, blob, 0, pos);
+        int first = Math.min(used, ring.length - head);
+        System.arraycopy(ring, head, blob, pos, first);
+        System.arraycopy(ring, 0, blob, pos + first, used - first);
+        return blob;
+    }
+
+    private synchronized void append(int code, int actor, int target, int roll, int amount) {
+        int length = 0;
+        scratch[length++] = (byte) code;
+        length = writeVarint(scratch, length, actor);
+        length = writeVarint(scratch, length, target);
+        length = writeVarint(scratch, length, zigZag(roll));
+        length = writeVarint(scratch, length, amount);
+
+        while (ring.length - used < length) {
+            dropOldest();
+        }
+        int tail = (head + used) % ring.length;
+        int first = Math.min(length, ring.length - tail);
+        System.arraycopy(scratch, 0, ring, tail, first);
+        System.arraycopy(scratch, first, ring, 0, length - first);
+        used += length;
+        recordCount++;
+    }
+
+    // Вытесняет самую старую запись и переносит ее эффект в заголовок
+    private void dropOldest() {
+        int pos = head;
+        int code = ring[pos] & 0xFF;
+        pos = (pos + 1) % ring.length;
+        int actor = readRingVarint(pos);
+        pos = skipRingVarint(pos);
+        int target = readRingVarint(pos);
+        pos = skipRingVarint(pos);
+        int roll = unZigZag(readRingVarint(pos));
+        pos = skipRingVarint(pos);
+        int amount = readRingVarint(pos);
+        pos = skipRingVarint(pos);
+
+        switch (code) {
+            case CODE_TURN:
+                if (roll != baseRound) {
+                    expireModifiers(roll);
+                }
+                baseSlot = actor;
+                baseRound = roll;
+                break;
+            case CODE_SKILL:
+                baseMana[actor] -= amount;
+                break;
+            case CODE_STAT: {
+                int stat = amount & ((1 << STAT_BITS) - 1);
+                int rounds = amount >>> STAT_BITS;
+                if (stat == SkillPlan.Stat.MANA.ordinal()) {
+                    baseMana[target] += roll;
+                } else {
+                    int[] modifiers = Arrays.copyOf(baseModifiers[target], baseModifiers[target].length + 3);
+                    modifiers[modifiers.length - 3] = stat;
+                    modifiers[modifiers.length - 2] = roll;
+                    modifiers[modifiers.length - 1] = rounds > 0 ? baseRound + rounds : 0;
+                    baseModifiers[target] = modifiers;
+                }
+                break;
+            }
+            case CODE_SUMMON:
+                addSlot(types[actor], amount, roll);
+                break;
+            case CODE_HIT:
+            case CODE_CRIT:
+            case CODE_AREA:
+                baseHp[target] = Math.max(0, baseHp[target] - amount);
+                break;
+            case CODE_HEAL:
+            case CODE_AREA_HEAL:
+                baseHp[target] = Math.min(maxHp[target], baseHp[target] + amount);
+                break;
+            case CODE_DEFEAT:
+                baseAlive[actor] = false;
+                baseStatus[actor] = 0;
+                break;
+            case CODE_STATUS: {
+                int effect = amount & ((1 << STATUS_BITS) - 1);
+                baseStatus[target] |= 1L << effect;
+                baseDuration[target][effect] = roll;
+                baseStacks[target][effect] = amount >>> STATUS_BITS;
+                break;
+            }
+            case CODE_TICK: {
+                int remaining = unZigZag(amount);
+                baseHp[actor] = Math.max(0, Math.min(maxHp[actor], baseHp[actor] + roll));
+                if (remaining == 0) {
+                    baseStatus[actor] &= ~(1L << target);
+                } else {
+                    baseDuration[actor][target] = remaining;
+                }
+                break;
+            }
+            default:
+                break;
+        }
+
+        int length = (pos - head + ring.length) % ring.length;
+        head = pos;
+        used -= length;
+        recordCount--;
+        truncated = true;
+    }
+
+    // Как CombatantState.withoutExpired: временные изменения со сроком не позже round
+    private void expireModifiers(int round) {
+        for (int slot = 0; slot < baseModifiers.length; slot++) {
+            int[] modifiers = baseModifiers[slot];
+            int kept = 0;
+            for (int i = 0; i < modifiers.length; i += 3) {
+                if (modifiers[i + 2] == 0 || modifiers[i + 2] > round) {
+                    System.arraycopy(modifiers, i, modifiers, kept, 3);
+                    kept += 3;
+                }
+            }
+            if (kept != modifiers.length) {
+                baseModifiers[slot] = Arrays.copyOf(modifiers, kept);
+            }
+        }
+    }
+
+    // Призванный из вытесненной записи становится бойцом заголовка: полное HP, без состояний
+    private void addSlot(byte type, int hp, int mana) {
+        int size = types.length + 1;
+        types = Arrays.copyOf(types, size);
+        maxHp = Arrays.copyOf(maxHp, size);
+        baseHp = Arrays.copyOf(baseHp, size);
+        baseAlive = Arrays.copyOf(baseAlive, size);
+        baseStatus = Arrays.copyOf(baseStatus, size);
+        baseDuration = Arrays.copyOf(baseDuration, size);
+        baseStacks = Arrays.copyOf(baseStacks, size);
+        baseMana = Arrays.copyOf(baseMana, size);
+        baseModifiers = Arrays.copyOf(baseModifiers, size);
+        int slot = size - 1;
+        types[slot] = type;
+        maxHp[slot] = hp;
+        baseHp[slot] = hp;
+        baseAlive[slot] = true;
+        baseDuration[slot] = new int[StatusEffect.COUNT];
+        baseStacks[slot] = new int[StatusEffect.COUNT];
+        baseMana[slot] = mana;
+        baseModifiers[slot] = new int[0];
+    }
+
+    private int readRingVarint(int pos) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            int b = ring[pos] & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            pos = (pos + 1) % ring.length;
+        }
+    }
+
+    private int skipRingVarint(int pos) {
+        while ((ring[pos] & 0x80) != 0) {
+            pos = (pos + 1) % ring.length;
+        }
+        return (pos + 1) % ring.length;
+    }
+
+    static int writeVarint(byte[] buffer, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    // Броски могут быть отрицательными (модификаторы), поэтому zigzag
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,318 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.entities.StatusEffect;
+import com.HG.heroesglory.core.systems.CombatantTable;
+import com.HG.heroesglory.core.systems.SkillPlan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Разбор блока CombatLog.toBlob и восстановление состояния боя после любой записи.
+ * Характеристики бойцов в журнал не пишутся: для точного разбора передается
+ * исходный состав в порядке инициативы, иначе используются заглушки по заголовку.
+ * Призванные в бою бойцы берутся из состава за слотами заголовка, если он их содержит.
+ */
+public final class CombatLogReplayer {
+    private static final StatusEffect[] EFFECTS = StatusEffect.values();
+    private static final SkillPlan.Stat[] STATS = SkillPlan.Stat.values();
+
+    private final boolean truncated;
+    private final byte[] types;
+    private final int[] maxHp;
+    private final int[] baseHp;
+    private final boolean[] baseAlive;
+    private final long[] baseStatus;
+    private final int[][] baseDuration;
+    private final int[][] baseStacks;
+    private final int[] baseMana;
+    private final int[][] baseModifiers;
+    private final int baseSlot;
+    private final int baseRound;
+    private final List<CombatEvent> events;
+
+    private CombatLogReplayer(boolean truncated, byte[] types, int[] maxHp, int[] baseHp,
+                              boolean[] baseAlive, long[] baseStatus, int[][] baseDuration, int[][] baseStacks,
+                              int[] baseMana, int[][] baseModifiers, int baseSlot, int baseRound,
+                              List<CombatEvent> events) {
+        this.truncated = truncated;
+        this.types = types;
+        this.maxHp = maxHp;
+        this.baseHp = baseHp;
+        this.baseAlive = baseAlive;
+        this.baseStatus = baseStatus;
+        this.baseDuration = baseDuration;
+        this.baseStacks = baseStacks;
+        this.baseMana = baseMana;
+        this.baseModifiers = baseModifiers;
+        this.baseSlot = baseSlot;
+        this.baseRound = baseRound;
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    public static CombatLogReplayer decode(byte[] blob) {
+        Reader in = new Reader(blob);
+        // Версия 1 - журнал до состояний: без них в заголовке и без записей STATUS, TICK, SKIP, AREA;
+        // версия 2 - без маны и изменений характеристик в заголовке и без записей STAT, SUMMON
+        int version = in.readByte();
+        if (version < 1 || version > CombatLog.FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported combat log version: " + version);
+        }
+        boolean truncated = (in.readByte() & CombatLog.FLAG_TRUNCATED) != 0;
+
+        // Заголовок бойца - не меньше 4 байт, запись - не меньше 5: счетчики проверяются до выделения
+        int size = in.readCount(4);
+        byte[] types = new byte[size];
+        int[] maxHp = new int[size];
+        int[] baseHp = new int[size];
+        boolean[] baseAlive = new boolean[size];
+        long[] baseStatus = new long[size];
+        int[][] baseDuration = new int[size][StatusEffect.COUNT];
+        int[][] baseStacks = new int[size][StatusEffect.COUNT];
+        int[] baseMana = new int[size];
+        int[][] baseModifiers = new int[size][];
+        for (int slot = 0; slot < size; slot++) {
+            types[slot] = (byte) in.readByte();
+            maxHp[slot] = in.readVarint();
+            baseHp[slot] = in.readVarint();
+            baseAlive[slot] = in.readByte() != 0;
+            int statuses = version > 1 ? in.readByte() : 0;
+            for (int i = 0; i < statuses; i++) {
+                int effect = checkEffect(in.readByte(), -1);
+                baseStatus[slot] |= 1L << effect;
+                baseDuration[slot][effect] = CombatLog.unZigZag(in.readVarint());
+                baseStacks[slot][effect] = in.readVarint();
+            }
+            baseMana[slot] = version > 2 ? in.readVarint() : 0;
+            // Изменение - не меньше 3 байт
+            int modifiers = version > 2 ? in.readCount(3) : 0;
+            baseModifiers[slot] = new int[modifiers * 3];
+            for (int i = 0; i < modifiers; i++) {
+                baseModifiers[slot][i * 3] = checkStat(in.readByte(), -1);
+                baseModifiers[slot][i * 3 + 1] = CombatLog.unZigZag(in.readVarint());
+                baseModifiers[slot][i * 3 + 2] = in.readVarint();
+            }
+        }
+        int baseSlot = in.readVarint();
+        int baseRound = in.readVarint();
+        if (size > 0 && baseSlot >= size) {
+            throw new IllegalArgumentException("Combat log turn slot " + baseSlot + " out of range");
+        }
+
+        int count = in.readCount(5);
+        List<CombatEvent> events = new ArrayList<>(count);
+        // Слоты растут с каждым призывом
+        int slots = size;
+        CombatState.Outcome[] outcomes = CombatState.Outcome.values();
+        for (int i = 0; i < count; i++) {
+            int code = in.readByte();
+            int actor = in.readVarint();
+            int target = in.readVarint();
+            int roll = CombatLog.unZigZag(in.readVarint());
+            int amount = in.readVarint();
+            if (code != CombatLog.CODE_FLEE && code != CombatLog.CODE_END) {
+                checkSlot(actor, slots, i);
+            }
+            if (code == CombatLog.CODE_HIT || code == CombatLog.CODE_CRIT
+                    || code == CombatLog.CODE_MISS || code == CombatLog.CODE_HEAL
+                    || code == CombatLog.CODE_STATUS || code == CombatLog.CODE_AREA
+                    || code == CombatLog.CODE_AREA_HEAL || code == CombatLog.CODE_STAT) {
+                checkSlot(target, slots, i);
+            }
+            switch (code) {
+                case CombatLog.CODE_TURN:
+                    events.add(new CombatEvent.TurnStarted(actor, roll));
+                    break;
+                case CombatLog.CODE_HIT:
+                case CombatLog.CODE_CRIT:
+                    events.add(new CombatEvent.AttackHit(actor, target, roll, amount,
+                            code == CombatLog.CODE_CRIT));
+                    break;
+                case CombatLog.CODE_MISS:
+                    events.add(new CombatEvent.AttackMissed(actor, target, roll));
+                    break;
+                case CombatLog.CODE_HEAL:
+                    events.add(new CombatEvent.Healed(actor, target, amount));
+                    break;
+                case CombatLog.CODE_DEFEAT:
+                    events.add(new CombatEvent.CombatantDefeated(actor));
+                    break;
+                case CombatLog.CODE_SKILL:
+                    // Названия навыков и предметов не хранятся - только факт действия и мана
+                    events.add(new CombatEvent.SkillUsed(actor, (Skill) null, amount));
+                    break;
+                case CombatLog.CODE_STAT:
+                    events.add(new CombatEvent.StatModified(actor, target,
+                            STATS[checkStat(amount & ((1 << CombatLog.STAT_BITS) - 1), i)], roll,
+                            amount >>> CombatLog.STAT_BITS));
+                    break;
+                case CombatLog.CODE_SUMMON:
+                    if (target != slots) {
+                        throw new IllegalArgumentException("Combat log summon slot " + target
+                                + " out of order in record " + i);
+                    }
+                    slots++;
+                    events.add(new CombatEvent.Summoned(actor, target, null, amount, roll));
+                    break;
+                case CombatLog.CODE_ITEM:
+                    events.add(new CombatEvent.ItemUsed(actor, null, null));
+                    break;
+                case CombatLog.CODE_STATUS:
+                    events.add(new CombatEvent.StatusApplied(actor, target,
+                            EFFECTS[checkEffect(amount & ((1 << CombatLog.STATUS_BITS) - 1), i)],
+                            roll, amount >>> CombatLog.STATUS_BITS));
+                    break;
+                case CombatLog.CODE_TICK:
+                    events.add(new CombatEvent.StatusTicked(actor, EFFECTS[checkEffect(target, i)], roll,
+                            CombatLog.unZigZag(amount)));
+                    break;
+                case CombatLog.CODE_AREA:
+                case CombatLog.CODE_AREA_HEAL:
+                    // Каждая цель - отдельное событие; на состояние это не влияет
+                    events.add(new CombatEvent.SkillResolved(actor, new int[]{target}, new int[]{amount},
+                            new boolean[]{roll == 1}, code == CombatLog.CODE_AREA_HEAL));
+                    break;
+                case CombatLog.CODE_SKIP:
+                    events.add(new CombatEvent.TurnSkipped(actor));
+                    break;
+                case CombatLog.CODE_FLEE:
+                    events.add(new CombatEvent.FleeAttempted(amount == 1));
+                    break;
+                case CombatLog.CODE_END:
+                    if (amount >= outcomes.length) {
+                        throw new IllegalArgumentException("Unknown combat outcome " + amount + " in record " + i);
+                    }
+                    events.add(new CombatEvent.CombatEnded(outcomes[amount]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown combat log record: " + code);
+            }
+        }
+        return new CombatLogReplayer(truncated, types, maxHp, baseHp, baseAlive,
+                baseStatus, baseDuration, baseStacks, baseMana, baseModifiers, baseSlot, baseRound, events);
+    }
+
+    private static int checkStat(int stat, int record) {
+        if (stat >= STATS.length) {
+            throw new IllegalArgumentException("Unknown stat " + stat
+                    + (record >= 0 ? " in record " + record : " in header"));
+        }
+        return stat;
+    }
+
+    // record < 0 - заголовок
+    private static int checkEffect(int effect, int record) {
+        if (effect >= EFFECTS.length) {
+            throw new IllegalArgumentException("Unknown status effect " + effect
+                    + (record >= 0 ? " in record " + record : " in header"));
+        }
+        return effect;
+    }
+
+    private static void checkSlot(int slot, int size, int record) {
+        if (slot >= size) {
+            throw new IllegalArgumentException("Combat log slot " + slot + " out of range in record " + record);
+        }
+    }
+
+    public boolean isTruncated() { return truncated; }
+    public int getCombatantCount() { return types.length; }
+    public int getRecordCount() { return events.size(); }
+    public List<CombatEvent> getEvents() { return events; }
+
+    // Состояние после первых recordCount записей по заглушкам из заголовка
+    public CombatState stateAt(int recordCount) {
+        return stateAt(null, recordCount);
+    }
+
+    /**
+     * roster - бойцы боя в порядке инициативы (как в CombatState), за ними могут идти
+     * призванные по слотам; null - заглушки. Призванные, которых нет в составе, - заглушки.
+     */
+    public CombatState stateAt(List<Combatant> roster, int recordCount) {
+        List<Combatant> ordered = roster != null ? roster : placeholders();
+        if (ordered.size() < types.length) {
+            throw new IllegalArgumentException("Roster size " + ordered.size()
+                    + " does not match combat log (" + types.length + ")");
+        }
+        CombatState state = CombatState.restore(ordered, baseHp, baseAlive,
+                baseStatus, baseDuration, baseStacks, baseMana, baseModifiers, baseSlot, baseRound);
+        int limit = Math.min(recordCount, events.size());
+        for (int i = 0; i < limit; i++) {
+            CombatEvent event = events.get(i);
+            if (event instanceof CombatEvent.Summoned) {
+                event = withCombatant((CombatEvent.Summoned) event, ordered, state);
+            }
+            state = state.apply(event);
+        }
+        return state;
+    }
+
+    // Призыв из журнала получает бойца из состава или заглушку стороны заклинателя
+    private static CombatEvent.Summoned withCombatant(CombatEvent.Summoned summoned, List<Combatant> ordered,
+                                                      CombatState state) {
+        Combatant combatant;
+        if (summoned.getSlot() < ordered.size()) {
+            combatant = ordered.get(summoned.getSlot());
+        } else {
+            combatant = new Combatant("slot_" + summoned.getSlot(), "Slot " + summoned.getSlot(),
+                    state.get(summoned.getCasterSlot()).getType(), summoned.getMaxHp(), 0);
+            combatant.setMana(summoned.getMana());
+        }
+        return new CombatEvent.Summoned(summoned.getCasterSlot(), summoned.getSlot(), combatant,
+                summoned.getMaxHp(), summoned.getMana());
+    }
+
+    public CombatState finalState(List<Combatant> roster) {
+        return stateAt(roster, events.size());
+    }
+
+    private List<Combatant> placeholders() {
+        List<Combatant> list = new ArrayList<>(types.length);
+        for (int slot = 0; slot < types.length; slot++) {
+            list.add(new Combatant("slot_" + slot, "Slot " + slot,
+                    CombatantTable.typeName(types[slot]), maxHp[slot], 0));
+        }
+        return list;
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() {
+            if (pos >= data.length) {
+                throw new IllegalArgumentException("Combat log is truncated");
+            }
+            return data[pos++] & 0xFF;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in combat log");
+        }
+
+        // Число элементов, каждый из которых занимает не меньше minBytes оставшихся байт
+        int readCount(int minBytes) {
+            int count = readVarint();
+            if (count < 0 || count > (data.length - pos) / minBytes) {
+                throw new IllegalArgumentException("Combat log count " + count + " exceeds data size");
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.entities.StatusEffect;
+import com.HG.heroesglory.core.systems.SkillPlan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Неизменяемый снимок боя. Новое состояние получается только через apply(event),
+ * поэтому снимок можно безопасно читать из любого потока.
+ */
+public final class CombatState {
+
+    public enum Outcome {
+        ONGOING, VICTORY, DEFEAT, FLED
+    }
+
+    private final CombatantState[] combatants; // в порядке инициативы
+    private final int currentSlot;
+    private final int round;
+    private final int alivePlayers;
+    private final int aliveEnemies;
+    private final Outcome outcome;
+
+    private CombatState(CombatantState[] combatants, int currentSlot, int round,
+                        int alivePlayers, int aliveEnemies, Outcome outcome) {
+        this.combatants = combatants;
+        this.currentSlot = currentSlot;
+        this.round = round;
+        this.alivePlayers = alivePlayers;
+        this.aliveEnemies = aliveEnemies;
+        this.outcome = outcome;
+    }
+
+    // Начальное состояние: бойцы уже отсортированы по инициативе
+    static CombatState initial(List<Combatant> ordered) {
+        CombatantState[] states = new CombatantState[ordered.size()];
+        int players = 0;
+        int enemies = 0;
+        for (int i = 0; i < states.length; i++) {
+            states[i] = CombatantState.of(ordered.get(i), i);
+            if (states[i].isAlive()) {
+                if (states[i].isPlayer()) players++;
+                else if (states[i].isEnemy()) enemies++;
+            }
+        }
+        return new CombatState(states, 0, 1, players, enemies, Outcome.ONGOING);
+    }
+
+    /**
+     * Состояние из журнала: HP, живость, состояния, мана и изменения характеристик
+     * по слотам задаются явно, характеристики берутся из первых hp.length бойцов ordered.
+     * durations и stacks - [слот][StatusEffect.ordinal()], учитываются только биты statusMask;
+     * modifiers[слот] - тройки (Stat.ordinal(), величина, раунд снятия).
+     */
+    static CombatState restore(List<Combatant> ordered, int[] hp, boolean[] alive, long[] statusMask,
+                               int[][] durations, int[][] stacks, int[] mana, int[][] modifiers,
+                               int currentSlot, int round) {
+        SkillPlan.Stat[] stats = SkillPlan.Stat.values();
+        CombatantState[] states = new CombatantState[hp.length];
+        int players = 0;
+        int enemies = 0;
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new CombatantState(ordered.get(i), i, hp[i], alive[i], mana[i]);
+            long mask = statusMask[i];
+            while (mask != 0) {
+                int effect = Long.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                states[i] = states[i].withStatus(StatusEffect.values()[effect], durations[i][effect], stacks[i][effect]);
+            }
+            for (int m = 0; m < modifiers[i].length; m += 3) {
+                states[i] = states[i].withModifier(stats[modifiers[i][m]], modifiers[i][m + 1], modifiers[i][m + 2]);
+            }
+            if (alive[i]) {
+                if (states[i].isPlayer()) players++;
+                else if (states[i].isEnemy()) enemies++;
+            }
+        }
+        return new CombatState(states, currentSlot, round, players, enemies, Outcome.ONGOING);
+    }
+
+    public CombatState apply(CombatEvent event) {
+        switch (event.getType()) {
+            case TURN_STARTED: {
+                CombatEvent.TurnStarted turn = (CombatEvent.TurnStarted) event;
+                CombatantState[] next = combatants;
+                if (turn.getRound() != round) {
+                    // Новый раунд снимает временные изменения характеристик с наступившим сроком
+                    for (int i = 0; i < combatants.length; i++) {
+                        CombatantState updated = combatants[i].withoutExpired(turn.getRound());
+                        if (updated != combatants[i]) {
+                            if (next == combatants) {
+                                next = combatants.clone();
+                            }
+                            next[i] = updated;
+                        }
+                    }
+                }
+                return new CombatState(next, turn.getSlot(), turn.getRound(),
+                        alivePlayers, aliveEnemies, outcome);
+            }
+            case ATTACK_HIT: {
+                CombatEvent.AttackHit hit = (CombatEvent.AttackHit) event;
+                CombatantState target = combatants[hit.getTargetSlot()];
+                return withCombatant(target.withHp(Math.max(0, target.getCurrentHp() - hit.getDamage())));
+            }
+            case HEALED: {
+                CombatEvent.Healed healed = (CombatEvent.Healed) event;
+                CombatantState target = combatants[healed.getTargetSlot()];
+                return withCombatant(target.withHp(
+                        Math.min(target.getMaxHp(), target.getCurrentHp() + healed.getAmount())));
+            }
+            case SKILL_USED: {
+                CombatEvent.SkillUsed used = (CombatEvent.SkillUsed) event;
+                Skill skill = used.getSkill();
+                CombatantState actor = combatants[used.getActorSlot()];
+                if (used.getManaCost() != 0) {
+                    actor = actor.withMana(actor.getMana() - used.getManaCost());
+                }
+                if (skill != null && skill.getCooldown() > 0) {
+                    actor = actor.withCooldown(skill, round + skill.getCooldown());
+                }
+                return actor != combatants[used.getActorSlot()] ? withCombatant(actor) : this;
+            }
+            case STAT_MODIFIED: {
+                CombatEvent.StatModified modified = (CombatEvent.StatModified) event;
+                CombatantState target = combatants[modified.getTargetSlot()];
+                if (modified.getStat() == SkillPlan.Stat.MANA) {
+                    return withCombatant(target.withMana(target.getMana() + modified.getDelta()));
+                }
+                return withCombatant(target.withModifier(modified.getStat(), modified.getDelta(),
+                        modified.getRounds() > 0 ? round + modified.getRounds() : 0));
+            }
+            case SUMMONED: {
+                CombatEvent.Summoned summoned = (CombatEvent.Summoned) event;
+                // HP и мана - из события: боец из состава мог уже измениться после боя
+                CombatantState added = new CombatantState(summoned.getCombatant(), combatants.length,
+                        summoned.getMaxHp(), true, summoned.getMana());
+                CombatantState[] next = Arrays.copyOf(combatants, combatants.length + 1);
+                next[added.getSlot()] = added;
+                return new CombatState(next, currentSlot, round,
+                        alivePlayers + (added.isPlayer() ? 1 : 0),
+                        aliveEnemies + (added.isEnemy() ? 1 : 0), outcome);
+            }
+            case SKILL_RESOLVED: {
+                CombatEvent.SkillResolved resolved = (CombatEvent.SkillResolved) event;
+                CombatState next = this;
+                for (int i = 0; i < resolved.getTargetCount(); i++) {
+                    CombatantState target = next.combatants[resolved.getTargetSlot(i)];
+                    int hp = resolved.isHeal()
+                            ? Math.min(target.getMaxHp(), target.getCurrentHp() + resolved.getAmount(i))
+                            : Math.max(0, target.getCurrentHp() - resolved.getAmount(i));
+                    next = next.withCombatant(target.withHp(hp));
+                }
+                return next;
+            }
+            case STATUS_APPLIED: {
+                CombatEvent.StatusApplied applied = (CombatEvent.StatusApplied) event;
+                return withCombatant(combatants[applied.getTargetSlot()]
+                        .withStatus(applied.getEffect(), applied.getDuration(), applied.getStacks()));
+            }
+            case STATUS_TICKED: {
+                CombatEvent.StatusTicked tick = (CombatEvent.StatusTicked) event;
+                CombatantState target = combatants[tick.getSlot()];
+                int hp = Math.max(0, Math.min(target.getMaxHp(), target.getCurrentHp() + tick.getHpDelta()));
+                target = target.withHp(hp);
+                target = tick.isExpired()
+                        ? target.withoutStatus(tick.getEffect())
+                        : target.withStatus(tick.getEffect(), tick.getRemaining(), target.statusStacks(tick.getEffect()));
+                return withCombatant(target);
+            }
+            case COMBATANT_DEFEATED: {
+                CombatantState defeated = combatants[((CombatEvent.CombatantDefeated) event).getSlot()];
+                if (!defeated.isAlive()) {
+                    return this;
+                }
+                CombatantState[] next = combatants.clone();
+                next[defeated.getSlot()] = defeated.withAlive(false);
+                return new CombatState(next, currentSlot, round,
+                        alivePlayers - (defeated.isPlayer() ? 1 : 0),
+                        aliveEnemies - (defeated.isEnemy() ? 1 : 0), outcome);
+            }
+            case COMBAT_ENDED:
+                return new CombatState(combatants, currentSlot, round, alivePlayers, aliveEnemies,
+                        ((CombatEvent.CombatEnded) event).getOutcome());
+            default:
+                // Остальные события информационные и состояние не меняют
+                return this;
+        }
+    }
+
+    private CombatState withCombatant(CombatantState combatant) {
+        CombatantState[] next = combatants.clone();
+        next[combatant.getSlot()] = combatant;
+        return new CombatState(next, currentSlot, round, alivePlayers, aliveEnemies, outcome);
+    }
+
+    public int size() { return combatants.length; }
+    public CombatantState get(int slot) { return combatants[slot]; }
+
+    public int indexOf(String combatantId) {
+        if (combatantId == null) {
+            return -1;
+        }
+        for (int i = 0; i < combatants.length; i++) {
+            if (combatantId.equals(combatants[i].getId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public List<CombatantState> getCombatants() {
+        List<CombatantState> list = new ArrayList<>(combatants.length);
+        Collections.addAll(list, combatants);
+        return list;
+    }
+
+    public CombatantState getCurrent() {
+        return combatants.length > 0 ? combatants[currentSlot] : null;
+    }
+
+    public int getCurrentSlot() { return currentSlot; }
+    public int getRound() { return round; }
+    public int getAlivePlayers() { return alivePlayers; }
+    public int getAliveEnemies() { return aliveEnemies; }
+    public Outcome getOutcome() { return outcome; }
+
+    public boolean isOver() { return outcome != Outcome.ONGOING; }
+    public boolean isPlayerVictory() { return outcome == Outcome.VICTORY; }
+}
@@ -0,0 +1,217 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.entities.StatusEffect;
+import com.HG.heroesglory.core.systems.SkillPlan;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Неизменяемое состояние бойца в CombatState.
+ * Характеристики (КД, сила и т.д.) читаются из исходного Combatant, который
+ * движок только читает; меняющиеся в бою значения хранятся здесь.
+ * Состояния - та же битовая маска и массивы, что в Combatant; массивы
+ * копируются при изменении и общие у снимков, где состояния не менялись.
+ * Откаты навыков - раунд готовности по id навыка; это единственный их учет, UI читает его отсюда.
+ * Мана и изменения характеристик навыками (операция stat) тоже живут здесь:
+ * getArmorClass и statBonus учитывают их поверх исходного бойца.
+ */
+public final class CombatantState {
+    private static final long INCAPACITATING_MASK = StatusEffect.incapacitatingMask();
+    private static final int[] NO_MODIFIERS = new int[0];
+    // Изменение характеристики в modifiers - тройка: Stat.ordinal(), величина, раунд снятия (0 - бессрочно)
+    private static final int MODIFIER_FIELDS = 3;
+
+    private final Combatant base;
+    private final int slot;
+    private final int currentHp;
+    private final boolean alive;
+    private final long statusMask;
+    private final short[] statusDurations;
+    private final byte[] statusStacks;
+    private final Map<String, Integer> cooldowns;
+    private final int mana;
+    private final int[] modifiers;
+
+    CombatantState(Combatant base, int slot, int currentHp, boolean alive, int mana) {
+        this(base, slot, currentHp, alive, 0, null, null, Collections.<String, Integer>emptyMap(),
+                mana, NO_MODIFIERS);
+    }
+
+    private CombatantState(Combatant base, int slot, int currentHp, boolean alive,
+                           long statusMask, short[] statusDurations, byte[] statusStacks,
+                           Map<String, Integer> cooldowns, int mana, int[] modifiers) {
+        this.base = base;
+        this.slot = slot;
+        this.currentHp = currentHp;
+        this.alive = alive;
+        this.statusMask = statusMask;
+        this.statusDurations = statusDurations;
+        this.statusStacks = statusStacks;
+        this.cooldowns = cooldowns;
+        this.mana = mana;
+        this.modifiers = modifiers;
+    }
+
+    // Состояния, наложенные до боя, переносятся из бойца
+    static CombatantState of(Combatant base, int slot) {
+        boolean alive = base.isAlive() && base.getCurrentHp() > 0;
+        CombatantState state = new CombatantState(base, slot, base.getCurrentHp(), alive, base.getMana());
+        long mask = alive ? base.statusMask() : 0;
+        while (mask != 0) {
+            StatusEffect effect = StatusEffect.values()[Long.numberOfTrailingZeros(mask)];
+            mask &= mask - 1;
+            state = state.withStatus(effect, base.statusDuration(effect), base.statusStacks(effect));
+        }
+        return state;
+    }
+
+    CombatantState withHp(int hp) {
+        return new CombatantState(base, slot, hp, alive, statusMask, statusDurations, statusStacks, cooldowns,
+                mana, modifiers);
+    }
+
+    // Гибель снимает все состояния, как Combatant.takeDamage
+    CombatantState withAlive(boolean alive) {
+        return alive
+                ? new CombatantState(base, slot, currentHp, true, statusMask, statusDurations, statusStacks, cooldowns,
+                        mana, modifiers)
+                : new CombatantState(base, slot, currentHp, false, 0, null, null, cooldowns, mana, modifiers);
+    }
+
+    // Навык снова готов в раунде readyRound
+    CombatantState withCooldown(Skill skill, int readyRound) {
+        Map<String, Integer> next = new HashMap<>(cooldowns);
+        next.put(skill.getId(), readyRound);
+        return new CombatantState(base, slot, currentHp, alive, statusMask, statusDurations, statusStacks,
+                Collections.unmodifiableMap(next), mana, modifiers);
+    }
+
+    CombatantState withMana(int mana) {
+        return new CombatantState(base, slot, currentHp, alive, statusMask, statusDurations, statusStacks, cooldowns,
+                mana, modifiers);
+    }
+
+    // Изменение характеристики до раунда untilRound (0 - бессрочно)
+    CombatantState withModifier(SkillPlan.Stat stat, int delta, int untilRound) {
+        int[] next = Arrays.copyOf(modifiers, modifiers.length + MODIFIER_FIELDS);
+        next[modifiers.length] = stat.ordinal();
+        next[modifiers.length + 1] = delta;
+        next[modifiers.length + 2] = untilRound;
+        return new CombatantState(base, slot, currentHp, alive, statusMask, statusDurations, statusStacks, cooldowns,
+                mana, next);
+    }
+
+    // Без временных изменений, срок которых наступил к раунду round
+    CombatantState withoutExpired(int round) {
+        int kept = 0;
+        int[] next = new int[modifiers.length];
+        for (int i = 0; i < modifiers.length; i += MODIFIER_FIELDS) {
+            int until = modifiers[i + 2];
+            if (until == 0 || until > round) {
+                System.arraycopy(modifiers, i, next, kept, MODIFIER_FIELDS);
+                kept += MODIFIER_FIELDS;
+            }
+        }
+        if (kept == modifiers.length) {
+            return this;
+        }
+        return new CombatantState(base, slot, currentHp, alive, statusMask, statusDurations, statusStacks, cooldowns,
+                mana, kept > 0 ? Arrays.copyOf(next, kept) : NO_MODIFIERS);
+    }
+
+    CombatantState withStatus(StatusEffect effect, int duration, int stacks) {
+        short[] durations = statusDurations != null ? statusDurations.clone() : new short[StatusEffect.COUNT];
+        byte[] stackCounts = statusStacks != null ? statusStacks.clone() : new byte[StatusEffect.COUNT];
+        durations[effect.ordinal()] = (short) duration;
+        stackCounts[effect.ordinal()] = (byte) stacks;
+        return new CombatantState(base, slot, currentHp, alive, statusMask | effect.bit(), durations, stackCounts,
+                cooldowns, mana, modifiers);
+    }
+
+    CombatantState withoutStatus(StatusEffect effect) {
+        return new CombatantState(base, slot, currentHp, alive, statusMask & ~effect.bit(),
+                statusDurations, statusStacks, cooldowns, mana, modifiers);
+    }
+
+    public Combatant getBase() { return base; }
+    public int getSlot() { return slot; }
+    public int getCurrentHp() { return currentHp; }
+    public boolean isAlive() { return alive; }
+
+    public long statusMask() { return statusMask; }
+
+    public boolean hasStatus(StatusEffect effect) {
+        return (statusMask & effect.bit()) != 0;
+    }
+
+    // Оставшиеся ходы; Combatant.STATUS_PERMANENT - бессрочно
+    public int statusDuration(StatusEffect effect) {
+        return hasStatus(effect) ? statusDurations[effect.ordinal()] : 0;
+    }
+
+    public int statusStacks(StatusEffect effect) {
+        return hasStatus(effect) ? statusStacks[effect.ordinal()] : 0;
+    }
+
+    // Жив и не оглушен, не парализован, не спит (как StatusEngine.canAct)
+    public boolean canAct() {
+        return alive && (statusMask & INCAPACITATING_MASK) == 0;
+    }
+
+    public int getMana() { return mana; }
+
+    // Сумма действующих изменений характеристики
+    public int statBonus(SkillPlan.Stat stat) {
+        int bonus = 0;
+        for (int i = 0; i < modifiers.length; i += MODIFIER_FIELDS) {
+            if (modifiers[i] == stat.ordinal()) {
+                bonus += modifiers[i + 1];
+            }
+        }
+        return bonus;
+    }
+
+    // Изменения для заголовка журнала: число и поля i-го
+    int modifierCount() { return modifiers.length / MODIFIER_FIELDS; }
+    int modifierStat(int index) { return modifiers[index * MODIFIER_FIELDS]; }
+    int modifierDelta(int index) { return modifiers[index * MODIFIER_FIELDS + 1]; }
+    int modifierUntil(int index) { return modifiers[index * MODIFIER_FIELDS + 2]; }
+
+    public boolean isSkillReady(Skill skill, int round) {
+        return cooldownLeft(skill, round) == 0;
+    }
+
+    // Сколько раундов до готовности навыка; 0 - готов
+    public int cooldownLeft(Skill skill, int round) {
+        Integer readyRound = cooldowns.get(skill.getId());
+        return readyRound != null ? Math.max(0, readyRound - round) : 0;
+    }
+
+    // Текст для UI: активные состояния через запятую
+    public String statusLabel() {
+        StringBuilder label = new StringBuilder();
+        for (StatusEffect effect : StatusEffect.values()) {
+            if (hasStatus(effect)) {
+                if (label.length() > 0) {
+                    label.append(", ");
+                }
+                label.append(effect.name());
+            }
+        }
+        return label.toString();
+    }
+
+    public String getId() { return base.getId(); }
+    public String getName() { return base.getName(); }
+    public String getType() { return base.getType(); }
+    public int getMaxHp() { return base.getMaxHp(); }
+    public int getArmorClass() { return base.getArmorClass() + statBonus(SkillPlan.Stat.AC); }
+
+    public boolean isPlayer() { return base.isPlayer(); }
+    public boolean isEnemy() { return base.isEnemy(); }
+}
@@ -0,0 +1,10 @@
+package com.HG.heroesglory.core.combat;
+
+/**
+ * Стратегия выбора действия бойца, которым управляет игра.
+ * Вызывается вне главного потока и не должна менять переданное состояние.
+ */
+public interface EnemyBrain {
+    // Действие для state.getCurrent()
+    CombatCommand chooseAction(CombatState state);
+}
@@ -0,0 +1,74 @@
+package com.HG.heroesglory.core.combat;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Планирует ход бойца под управлением игры на фоновом исполнителе.
+ * План запускается сразу, как только движок выдал новое состояние, и считается,
+ * пока UI проигрывает предыдущее действие; к началу хода команда уже готова.
+ */
+public class EnemyTurnPlanner {
+
+    // Какой ИИ управляет бойцом
+    public interface BrainSelector {
+        EnemyBrain brainFor(CombatantState actor);
+    }
+
+    private final ExecutorService executor;
+    private final BrainSelector selector;
+    private CombatState plannedState;
+    private Future<CombatCommand> plannedAction;
+
+    public EnemyTurnPlanner(ExecutorService executor, BrainSelector selector) {
+        this.executor = executor;
+        this.selector = selector;
+    }
+
+    // Обычные враги - UtilityBrain, боссы - MctsBrain с бюджетом DEFAULT_BUDGET_MS
+    public static BrainSelector bossAware(CombatActions actions) {
+        final EnemyBrain regular = new UtilityBrain(actions);
+        final EnemyBrain boss = new MctsBrain(actions);
+        return actor -> actor.getBase().isBoss() ? boss : regular;
+    }
+
+    // Нужно ли планировать ход в этом состоянии
+    public static boolean needsPlan(CombatState state) {
+        CombatantState current = state != null ? state.getCurrent() : null;
+        return current != null && !state.isOver() && current.isAlive() && !current.isPlayer();
+    }
+
+    // Повторный вызов с тем же состоянием возвращает уже запущенный план
+    public synchronized Future<CombatCommand> plan(final CombatState state) {
+        if (state == plannedState && plannedAction != null) {
+            return plannedAction;
+        }
+        cancel();
+        final EnemyBrain brain = selector.brainFor(state.getCurrent());
+        plannedState = state;
+        plannedAction = executor.submit(() -> brain.chooseAction(state));
+        return plannedAction;
+    }
+
+    public synchronized void cancel() {
+        if (plannedAction != null) {
+            plannedAction.cancel(true);
+        }
+        plannedState = null;
+        plannedAction = null;
+    }
+
+    // Готовая команда; при ошибке планирования боец пропускает ход
+    public static CombatCommand await(Future<CombatCommand> plan, CombatState state) {
+        try {
+            return plan.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            // Ошибка ИИ не должна останавливать бой
+        }
+        return CombatCommand.endTurn(state.getCurrent().getId());
+    }
+}
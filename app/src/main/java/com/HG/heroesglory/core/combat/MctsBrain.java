@@ -0,0 +1,309 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.dice.RngStream;
+import com.HG.heroesglory.core.dice.SessionRng;
+import com.HG.heroesglory.core.entities.Ability;
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Item;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.systems.CombatantTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ИИ для боссов: поиск Монте-Карло по дереву (UCT) поверх безголового CombatEngine
+ * со строгим бюджетом времени на ход. Дерево "open-loop": узлы - последовательности
+ * действий, а состояние заново разыгрывается бросками в каждой итерации, поэтому
+ * случайность кубов учитывается без узлов-шансов. Ветвление ограничено лучшими по
+ * UtilityBrain действиями, а их ранг дает узлам априорный бонус (progressive bias),
+ * который гаснет с числом посещений; доигровки идут дешевой эвристикой до конца боя.
+ * Кубы поиска идут из собственного генератора и не сдвигают потоки сессии.
+ */
+public class MctsBrain implements EnemyBrain {
+    public static final long DEFAULT_BUDGET_MS = 30;
+
+    private static final int MAX_ITERATIONS = 20000;
+    private static final int MAX_BRANCHING = 6;
+    private static final int TREE_DEPTH = 8;
+    private static final int ROLLOUT_DEPTH = 200;
+    private static final double EXPLORATION = 1.4;
+    private static final double PRIOR_WEIGHT = 2.0;
+    // Порог значимости (z) для отказа от лучшего по полезности действия
+    private static final double CONFIDENCE_Z = 2.0;
+    // Доля случайных ходов в доигровке, чтобы оценка не была слепа к ошибкам соперника
+    private static final double ROLLOUT_EPSILON = 0.15;
+
+    private final UtilityBrain policy;
+    private final long budgetNanos;
+    private final SessionRng rng;
+    private final RngStream choices;
+    // Характеристики состава на время поиска: модификаторы для доигровок посчитаны заранее
+    private final CombatantTable roster = new CombatantTable();
+    private int lastIterations;
+
+    public MctsBrain(CombatActions actions) {
+        this(actions, DEFAULT_BUDGET_MS, RngStream.randomSeed());
+    }
+
+    public MctsBrain(CombatActions actions, long budgetMillis, long seed) {
+        this.policy = new UtilityBrain(actions);
+        this.budgetNanos = budgetMillis * 1_000_000L;
+        this.rng = new SessionRng(seed);
+        this.choices = new RngStream(seed ^ 0x5DEECE66DL);
+    }
+
+    // Число итераций последнего поиска (для настройки бюджета)
+    public synchronized int getLastIterations() {
+        return lastIterations;
+    }
+
+    @Override
+    public synchronized CombatCommand chooseAction(CombatState state) {
+        long deadline = System.nanoTime() + budgetNanos;
+        List<CombatCommand> rootActions = ranked(state);
+        if (rootActions.size() <= 1) {
+            lastIterations = 0;
+            return rootActions.isEmpty() ? policy.chooseAction(state) : rootActions.get(0);
+        }
+
+        roster.clear();
+        for (CombatantState combatant : state.getCombatants()) {
+            roster.add(combatant.getBase());
+        }
+        Node root = new Node(null, null, state.getCurrent().isPlayer(), 0);
+        int iterations = 0;
+        // Прерывание - план отменен (бой закрыт или состояние устарело)
+        while (iterations < MAX_ITERATIONS && System.nanoTime() < deadline
+                && !Thread.currentThread().isInterrupted()) {
+            iterate(root, state);
+            iterations++;
+        }
+        lastIterations = iterations;
+
+        // Поиск меняет выбор UtilityBrain, только если уверен в выигрыше
+        Node baseline = root.child(keyOf(rootActions.get(0)));
+        Node best = null;
+        for (Node child : root.children) {
+            if (best == null || child.visits > best.visits) {
+                best = child;
+            }
+        }
+        if (best == null || baseline == null || best == baseline) {
+            return rootActions.get(0);
+        }
+        double margin = CONFIDENCE_Z * Math.sqrt(0.25 / best.visits + 0.25 / baseline.visits);
+        return best.value / best.visits - baseline.value / baseline.visits > margin
+                ? best.command : baseline.command;
+    }
+
+    private void iterate(Node root, CombatState start) {
+        CombatEngine engine = new CombatEngine(rng, start);
+        List<Node> path = new ArrayList<>(TREE_DEPTH + 1);
+        path.add(root);
+
+        // Спуск по дереву с раскрытием одного нового узла
+        Node node = root;
+        for (int depth = 0; depth < TREE_DEPTH && !engine.getState().isOver(); depth++) {
+            CombatState state = engine.getState();
+            List<CombatCommand> legal = ranked(state);
+            if (legal.isEmpty()) {
+                break;
+            }
+            boolean actorIsPlayer = state.getCurrent().isPlayer();
+            Node next = null;
+            boolean expanded = false;
+            for (int i = 0; i < legal.size(); i++) {
+                CombatCommand command = legal.get(i);
+                if (node.child(keyOf(command)) == null) {
+                    double prior = 1 - (double) i / legal.size();
+                    next = node.add(command, keyOf(command), actorIsPlayer, prior);
+                    expanded = true;
+                    break;
+                }
+            }
+            if (next == null) {
+                next = select(node, legal);
+            }
+            if (!advance(engine, next.command)) {
+                break;
+            }
+            path.add(next);
+            node = next;
+            if (expanded) {
+                break;
+            }
+        }
+
+        // Доигровка
+        for (int step = 0; step < ROLLOUT_DEPTH && !engine.getState().isOver(); step++) {
+            if (!advance(engine, rolloutAction(engine.getState()))) {
+                break;
+            }
+        }
+
+        double playerValue = evaluate(engine.getState());
+        for (Node visited : path) {
+            visited.visits++;
+            visited.value += visited.actorIsPlayer ? playerValue : 1 - playerValue;
+        }
+    }
+
+    // UCT с априорным бонусом среди детей, допустимых в текущем разыгранном состоянии
+    private Node select(Node node, List<CombatCommand> legal) {
+        double logParent = Math.log(Math.max(1, node.visits));
+        Node best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (CombatCommand command : legal) {
+            Node child = node.child(keyOf(command));
+            double score = child.value / child.visits + EXPLORATION * Math.sqrt(logParent / child.visits)
+                    + PRIOR_WEIGHT * child.prior / (child.visits + 1);
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // Полная оценка полезности слишком дорога для тысяч ходов доигровки, поэтому здесь
+    // эвристика: лечение себя ниже половины HP, иначе лучшая характеристика по самому
+    // слабому противнику, как в симуляторе
+    private CombatCommand rolloutAction(CombatState state) {
+        CombatantState actor = state.getCurrent();
+        if (choices.nextDouble() < ROLLOUT_EPSILON) {
+            List<CombatCommand> legal = policy.getActions().candidates(state);
+            if (!legal.isEmpty()) {
+                return legal.get(choices.nextInt(legal.size()));
+            }
+        }
+        if (actor.getCurrentHp() * 2 < actor.getMaxHp()) {
+            for (Skill skill : policy.getActions().skillsOf(actor.getId())) {
+                // Готовность, мана и оглушение - по состоянию поиска, как у движка
+                if ("HEAL".equals(skill.getType()) && skill.damageExpression() != null
+                        && CombatEngine.checkSkill(actor, skill, state.getRound()) == null) {
+                    return CombatCommand.useSkill(actor.getId(), skill, actor.getId());
+                }
+            }
+        }
+        CombatantState weakest = null;
+        for (int slot = 0; slot < state.size(); slot++) {
+            CombatantState target = state.get(slot);
+            if (target.isAlive() && target.isPlayer() != actor.isPlayer()
+                    && (weakest == null || target.getCurrentHp() < weakest.getCurrentHp())) {
+                weakest = target;
+            }
+        }
+        if (weakest == null) {
+            return CombatCommand.endTurn(actor.getId());
+        }
+        // Призванные во время поиска бойцы в таблицу не попали
+        int slot = state.getCurrentSlot();
+        Combatant base = actor.getBase();
+        AttackType type = slot < roster.size() ? roster.bestAttackType(slot)
+                : CombatantTable.bestAttackType(base.getModifier(Ability.STR), base.getModifier(Ability.DEX),
+                        base.getModifier(Ability.SPELL));
+        return CombatCommand.attack(actor.getId(), weakest.getId(), type);
+    }
+
+    // false - команда отклонена и состояние не изменилось
+    private static boolean advance(CombatEngine engine, CombatCommand command) {
+        CombatState before = engine.getState();
+        engine.execute(command);
+        return engine.getState() != before;
+    }
+
+    // Не больше MAX_BRANCHING лучших по полезности действий, лучшие первыми
+    private List<CombatCommand> ranked(CombatState state) {
+        List<CombatCommand> candidates = policy.getActions().candidates(state);
+        if (candidates.size() <= 1) {
+            return candidates;
+        }
+        final double[] scores = new double[candidates.size()];
+        List<Integer> order = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            scores[i] = policy.score(state, candidates.get(i));
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(scores[b], scores[a]);
+            }
+        });
+        int count = Math.min(MAX_BRANCHING, candidates.size());
+        List<CombatCommand> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(candidates.get(order.get(i)));
+        }
+        return result;
+    }
+
+    // Ценность для стороны игроков: исход боя или доля оставшегося HP
+    private static double evaluate(CombatState state) {
+        switch (state.getOutcome()) {
+            case VICTORY: return 1;
+            case DEFEAT: return 0;
+            case FLED: return 0.5;
+            default: {
+                double players = UtilityBrain.hpShare(state, true);
+                double enemies = UtilityBrain.hpShare(state, false);
+                return players + enemies > 0 ? players / (players + enemies) : 0.5;
+            }
+        }
+    }
+
+    private static String keyOf(CombatCommand command) {
+        switch (command.getType()) {
+            case ATTACK: {
+                CombatCommand.Attack attack = (CombatCommand.Attack) command;
+                return "A:" + attack.getProfile().getName() + ":" + attack.getTargetId();
+            }
+            case USE_SKILL: {
+                CombatCommand.UseSkill use = (CombatCommand.UseSkill) command;
+                return "S:" + use.getSkill().getName() + ":" + use.getTargetId();
+            }
+            case USE_ITEM: {
+                Item item = ((CombatCommand.UseItem) command).getItem();
+                return "I:" + item.getId();
+            }
+            default:
+                return command.getType().name();
+        }
+    }
+
+    private static final class Node {
+        final CombatCommand command;
+        final String key;
+        final boolean actorIsPlayer; // сторона, выбравшая действие этого узла
+        final double prior;          // 1 - лучшее по полезности действие
+        final List<Node> children = new ArrayList<>();
+        int visits;
+        double value;
+
+        Node(CombatCommand command, String key, boolean actorIsPlayer, double prior) {
+            this.command = command;
+            this.key = key;
+            this.actorIsPlayer = actorIsPlayer;
+            this.prior = prior;
+        }
+
+        Node child(String childKey) {
+            for (Node child : children) {
+                if (child.key.equals(childKey)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        Node add(CombatCommand childCommand, String childKey, boolean childActorIsPlayer, double prior) {
+            Node child = new Node(childCommand, childKey, childActorIsPlayer, prior);
+            children.add(child);
+            return child;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.dice.AttackProfile;
+import com.HG.heroesglory.core.dice.CombatSystem;
+import com.HG.heroesglory.core.dice.DiceExpression;
+import com.HG.heroesglory.core.dice.ProbabilityEngine;
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Skill;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ИИ на функциях полезности: каждое допустимое действие получает оценку в
+ * "очках HP" (ожидаемый урон, добивание, угроза цели, лечение, бегство),
+ * выбирается лучшее. Оценки точные (ProbabilityEngine), без бросков.
+ */
+public class UtilityBrain implements EnemyBrain {
+    // Бонус за ожидаемое добивание цели
+    private static final double FINISH_BONUS = 6.0;
+    // Вес угрозы: опасную цель выгоднее бить
+    private static final double THREAT_WEIGHT = 0.1;
+    // Лечение союзника ниже половины HP ценнее урона
+    private static final double LOW_HP_HEAL_WEIGHT = 1.5;
+    // Бегство рассматривается, когда у своей стороны осталось меньше этой доли HP
+    private static final double FLEE_THRESHOLD = 0.2;
+    private static final AttackType[] THREAT_TYPES = {AttackType.MELEE, AttackType.RANGED, AttackType.SPELL};
+
+    private final CombatActions actions;
+    private final ProbabilityEngine probabilities = ProbabilityEngine.getInstance();
+    // Угроза бойца по КД цели; пересчитывается при смене характеристик (statsVersion)
+    private final Map<Combatant, ThreatCache> threats = new IdentityHashMap<>();
+
+    public UtilityBrain(CombatActions actions) {
+        this.actions = actions;
+    }
+
+    public CombatActions getActions() {
+        return actions;
+    }
+
+    @Override
+    public CombatCommand chooseAction(CombatState state) {
+        List<CombatCommand> candidates = actions.candidates(state);
+        if (candidates.isEmpty()) {
+            CombatantState actor = state.getCurrent();
+            return CombatCommand.endTurn(actor != null ? actor.getId() : null);
+        }
+        CombatCommand best = candidates.get(0);
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (CombatCommand candidate : candidates) {
+            double score = score(state, candidate);
+            if (score > bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    // Полезность действия для текущего бойца; выше - лучше
+    public double score(CombatState state, CombatCommand command) {
+        CombatantState actor = state.getCurrent();
+        switch (command.getType()) {
+            case ATTACK: {
+                CombatCommand.Attack attack = (CombatCommand.Attack) command;
+                CombatantState target = state.get(state.indexOf(attack.getTargetId()));
+                AttackProfile profile = attack.getProfile();
+                return damageUtility(state, actor, target, profile, profile.getDamage());
+            }
+            case USE_SKILL: {
+                CombatCommand.UseSkill use = (CombatCommand.UseSkill) command;
+                Skill skill = use.getSkill();
+                DiceExpression expression = skill.damageExpression();
+                if (skill.targetKind().isMultiple()) {
+                    return areaUtility(state, actor, skill, expression);
+                }
+                CombatantState target = state.get(state.indexOf(use.getTargetId()));
+                if ("HEAL".equals(skill.getType())) {
+                    double amount = probabilities.distribution(expression, actor.getBase()).mean();
+                    return healUtility(target, amount);
+                }
+                return damageUtility(state, actor, target, AttackProfile.of(AttackType.SPELL), expression);
+            }
+            case USE_ITEM: {
+                CombatCommand.UseItem use = (CombatCommand.UseItem) command;
+                return healUtility(actor, CombatEngine.healAmount(use.getItem()));
+            }
+            case FLEE:
+                return fleeUtility(state, actor);
+            case END_TURN:
+            default:
+                return 0;
+        }
+    }
+
+    private double damageUtility(CombatState state, CombatantState actor, CombatantState target,
+                                 AttackProfile profile, DiceExpression expression) {
+        double expected = expectedDamage(actor.getBase(), target.getArmorClass(), profile, expression);
+        double utility = Math.min(expected, target.getCurrentHp());
+        if (expected >= target.getCurrentHp()) {
+            utility += FINISH_BONUS;
+        }
+        return utility * (1 + THREAT_WEIGHT * threat(target.getBase(), actor.getArmorClass()));
+    }
+
+    // Навык по площади: сумма по всем целям стороны, урон - с учетом спасброска каждой цели
+    private double areaUtility(CombatState state, CombatantState actor, Skill skill, DiceExpression expression) {
+        boolean heal = "HEAL".equals(skill.getType());
+        boolean hostile = skill.targetKind().isHostile();
+        double amount = probabilities.distribution(expression, actor.getBase()).mean();
+        int saveDc = CombatSystem.saveDc(actor.getBase());
+        double utility = 0;
+        for (int slot = 0; slot < state.size(); slot++) {
+            CombatantState target = state.get(slot);
+            if (!target.isAlive() || (target.isPlayer() != actor.isPlayer()) != hostile) {
+                continue;
+            }
+            if (heal) {
+                utility += healUtility(target, amount);
+                continue;
+            }
+            double saveChance = probabilities.d20CheckChance(target.getBase().getDexterityModifier(), saveDc);
+            double expected = amount * (1 - saveChance / 2);
+            double value = Math.min(expected, target.getCurrentHp());
+            if (expected >= target.getCurrentHp()) {
+                value += FINISH_BONUS;
+            }
+            utility += value * (1 + THREAT_WEIGHT * threat(target.getBase(), actor.getArmorClass()));
+        }
+        return utility;
+    }
+
+    private static double healUtility(CombatantState target, double amount) {
+        int missing = target.getMaxHp() - target.getCurrentHp();
+        double utility = Math.min(amount, missing);
+        return target.getCurrentHp() * 2 < target.getMaxHp() ? utility * LOW_HP_HEAL_WEIGHT : utility;
+    }
+
+    // Бежать стоит, только если своя сторона почти разбита, а противник - нет
+    private static double fleeUtility(CombatState state, CombatantState actor) {
+        double own = hpShare(state, actor.isPlayer());
+        double opponents = hpShare(state, !actor.isPlayer());
+        return own < FLEE_THRESHOLD ? (opponents - own) * 10 : -1;
+    }
+
+    static double hpShare(CombatState state, boolean players) {
+        int hp = 0;
+        int max = 0;
+        for (int slot = 0; slot < state.size(); slot++) {
+            CombatantState combatant = state.get(slot);
+            if (combatant.isPlayer() == players) {
+                hp += combatant.isAlive() ? combatant.getCurrentHp() : 0;
+                max += combatant.getMaxHp();
+            }
+        }
+        return max > 0 ? (double) hp / max : 0;
+    }
+
+    // Лучший ожидаемый урон, который target наносит бойцу с таким КД
+    private double threat(Combatant target, int armorClass) {
+        if (armorClass < 0 || armorClass >= ThreatCache.MAX_ARMOR_CLASS) {
+            return computeThreat(target, armorClass);
+        }
+        synchronized (threats) {
+            ThreatCache cache = threats.get(target);
+            if (cache == null || cache.statsVersion != target.statsVersion()) {
+                cache = new ThreatCache(target.statsVersion());
+                threats.put(target, cache);
+            }
+            double value = cache.byArmorClass[armorClass];
+            if (Double.isNaN(value)) {
+                value = computeThreat(target, armorClass);
+                cache.byArmorClass[armorClass] = value;
+            }
+            return value;
+        }
+    }
+
+    private double computeThreat(Combatant target, int armorClass) {
+        double best = 0;
+        for (AttackType type : THREAT_TYPES) {
+            AttackProfile profile = AttackProfile.of(type);
+            best = Math.max(best, expectedDamage(target, armorClass, profile, profile.getDamage()));
+        }
+        return best;
+    }
+
+    // Ожидаемый урон атаки по правилам CombatSystem (см. AttackPreview.expectedDamage)
+    public double expectedDamage(Combatant attacker, int armorClass, AttackProfile profile,
+                                 DiceExpression expression) {
+        return AttackPreview.expectedDamage(probabilities, attacker, armorClass, profile, expression);
+    }
+
+    private static final class ThreatCache {
+        static final int MAX_ARMOR_CLASS = 40;
+
+        final int statsVersion;
+        final double[] byArmorClass = new double[MAX_ARMOR_CLASS];
+
+        ThreatCache(int statsVersion) {
+            this.statsVersion = statsVersion;
+            Arrays.fill(byArmorClass, Double.NaN);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.HG.heroesglory.core.dice;
+
+import com.HG.heroesglory.core.entities.Ability;
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.Combatant;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Правила атаки: характеристика для бонуса, кубы урона и множитель критического урона.
+ * Встроенные профили берутся по AttackType из массива; дизайнеры могут
+ * регистрировать свои профили по имени (например, "BREATH" для дракона).
+ */
+public final class AttackProfile {
+    public static final int DEFAULT_CRIT_MULTIPLIER = 2;
+
+    private static final AttackProfile[] BUILT_IN = new AttackProfile[AttackType.values().length];
+    private static final Map<String, AttackProfile> CUSTOM = new ConcurrentHashMap<>();
+
+    static {
+        for (AttackType type : AttackType.values()) {
+            BUILT_IN[type.ordinal()] = new AttackProfile(type.name(), type.getAbility(),
+                    DiceExpression.compile(type.getDamageDice()), DEFAULT_CRIT_MULTIPLIER);
+        }
+    }
+
+    private final String name;
+    private final Ability ability;
+    private final DiceExpression damage;
+    private final int critMultiplier;
+
+    public AttackProfile(String name, Ability ability, DiceExpression damage, int critMultiplier) {
+        if (critMultiplier < 1) {
+            throw new IllegalArgumentException("Crit multiplier must be at least 1: " + critMultiplier);
+        }
+        this.name = name;
+        this.ability = ability;
+        this.damage = damage;
+        this.critMultiplier = critMultiplier;
+    }
+
+    public static AttackProfile of(AttackType type) {
+        return BUILT_IN[type.ordinal()];
+    }
+
+    // Профиль по имени из данных: сначала пользовательские, затем встроенные
+    public static AttackProfile forName(String name) {
+        if (name != null) {
+            AttackProfile custom = CUSTOM.get(name.toUpperCase(Locale.ROOT));
+            if (custom != null) {
+                return custom;
+            }
+        }
+        return of(AttackType.fromName(name));
+    }
+
+    public static void register(AttackProfile profile) {
+        CUSTOM.put(profile.name.toUpperCase(Locale.ROOT), profile);
+    }
+
+    public static void unregister(String name) {
+        CUSTOM.remove(name.toUpperCase(Locale.ROOT));
+    }
+
+    public int attackBonus(Combatant attacker) {
+        int bonus = attacker.getAttackBonus();
+        return ability != null ? bonus + attacker.getModifier(ability) : bonus;
+    }
+
+    public String getName() { return name; }
+    public Ability getAbility() { return ability; }
+    public DiceExpression getDamage() { return damage; }
+    public int getCritMultiplier() { return critMultiplier; }
+}
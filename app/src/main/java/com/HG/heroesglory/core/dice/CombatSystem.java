@@ -1,21 +1,68 @@
 package com.HG.heroesglory.core.dice;
 
+import com.HG.heroesglory.core.combat.CombatDelta;
 import com.HG.heroesglory.core.dice.DiceRollSystem;
 import com.HG.heroesglory.core.dice.RollResult;
+import com.HG.heroesglory.core.entities.Ability;
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.CheckSkill;
 import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.entities.SkillTarget;
+import com.HG.heroesglory.core.entities.Squad;
+import com.HG.heroesglory.core.entities.StatusEffect;
+import com.HG.heroesglory.core.systems.CombatGrid;
+import com.HG.heroesglory.core.systems.StatusEngine;
 import com.HG.heroesglory.core.systems.TurnManager;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class CombatSystem {
+    // Сложность спасброска от навыка: 8 + бонус атаки + заклинательная характеристика
+    public static final int SAVE_DC_BASE = 8;
+
     private DiceRollSystem diceRollSystem;
     private TurnManager turnManager;
     private List<CombatEventListener> listeners;
 
+    private DiceRollSystem damageRollSystem;
+    // Изменения с последнего drainDelta: UI применяет их одним пакетом
+    private final CombatDelta.Builder pendingDelta = new CombatDelta.Builder();
+    // Тактическая сетка: укрытие цели добавляется к ее КД
+    private CombatGrid grid;
+    // Буфер бросков залпа отряда; растет до размера самого большого отряда
+    private long[] volleyBuffer = new long[0];
+    // Тики и наложение состояний попадают в ту же дельту
+    private final StatusEngine.Listener statusRecorder = new StatusEngine.Listener() {
+        @Override
+        public void onStatusApplied(Combatant combatant, StatusEffect effect, int stacks) {
+            pendingDelta.recordStatus(combatant.getId(), combatant.statusLabel());
+        }
+
+        @Override
+        public void onStatusTick(Combatant combatant, StatusEffect effect, int hpDelta) {
+            pendingDelta.recordHp(combatant.getId(), combatant.getCurrentHp());
+            if (!combatant.isAlive()) {
+                pendingDelta.recordDefeated(combatant.getId());
+                pendingDelta.recordStatus(combatant.getId(), combatant.getStatusEffect());
+            }
+        }
+
+        @Override
+        public void onStatusExpired(Combatant combatant, StatusEffect effect) {
+            pendingDelta.recordStatus(combatant.getId(), combatant.statusLabel());
+        }
+    };
+
     public CombatSystem() {
-        this.diceRollSystem = new DiceRollSystem();
-        this.turnManager = new TurnManager();
+        this(new SessionRng(RngStream.randomSeed()));
+    }
+
+    // Атака и урон берут числа из отдельных потоков сессии, чтобы бой воспроизводился
+    public CombatSystem(SessionRng rng) {
+        this.diceRollSystem = new DiceRollSystem(rng.stream(SessionRng.Stream.ATTACK));
+        this.damageRollSystem = new DiceRollSystem(rng.stream(SessionRng.Stream.DAMAGE));
         this.listeners = new ArrayList<>();
     }
 
@@ -23,50 +70,218 @@ public class CombatSystem {
         listeners.add(listener);
     }
 
-    // Атака одного бойца по другому
+    public void removeListener(CombatEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Накопленные с прошлого вызова изменения одним пакетом (например, за ход или за AoE)
+    public CombatDelta drainDelta() {
+        CombatDelta delta = pendingDelta.build();
+        pendingDelta.clear();
+        return delta;
+    }
+
+    // Привязанный TurnManager узнает о гибели бойцов сразу после урона,
+    // а его тики состояний попадают в дельту
+    public void bindTurnManager(TurnManager turnManager) {
+        if (this.turnManager != null) {
+            this.turnManager.getStatusEngine().removeListener(statusRecorder);
+        }
+        this.turnManager = turnManager;
+        if (turnManager != null) {
+            turnManager.getStatusEngine().addListener(statusRecorder);
+        }
+    }
+
+    public void setGrid(CombatGrid grid) {
+        this.grid = grid;
+    }
+
+    public CombatGrid getGrid() {
+        return grid;
+    }
+
+    // Бонус укрытия цели к КД против этого атакующего; без сетки - 0
+    public int coverBonus(Combatant attacker, Combatant target) {
+        return grid != null ? grid.cover(attacker, target).getArmorBonus() : 0;
+    }
+
+    // Атака одного бойца по другому; строковый тип - совместимость со старыми вызовами
     public AttackResult performAttack(Combatant attacker, Combatant target, String attackType) {
-        int attackBonus = calculateAttackBonus(attacker, attackType);
-        int targetAC = target.getArmorClass();
+        return performAttack(attacker, target, AttackProfile.forName(attackType));
+    }
+
+    public AttackResult performAttack(Combatant attacker, Combatant target, AttackType attackType) {
+        return performAttack(attacker, target, AttackProfile.of(attackType));
+    }
+
+    public AttackResult performAttack(Combatant attacker, Combatant target, AttackProfile profile) {
+        return performAttack(attacker, target, profile, profile.getDamage());
+    }
+
+    // Атака с уроном из данных (оружие, навык, шаблон врага), например "2d8+STR"
+    public AttackResult performAttack(Combatant attacker, Combatant target, String attackType,
+                                      DiceExpression damageExpression) {
+        return performAttack(attacker, target, AttackProfile.forName(attackType), damageExpression);
+    }
 
-        // Бросок атаки d20
-        RollResult attackRoll = diceRollSystem.rollD20(attackBonus, targetAC);
+    public AttackResult performAttack(Combatant attacker, Combatant target, AttackProfile profile,
+                                      DiceExpression damageExpression) {
+        AttackOutcome outcome = new AttackOutcome();
+        resolve(attacker, target, profile, damageExpression, outcome, true);
 
         AttackResult result = new AttackResult();
         result.setAttacker(attacker);
         result.setTarget(target);
-        result.setAttackRoll(attackRoll);
-        result.setHit(attackRoll.isSuccess());
-        result.setCritical(attackRoll.isCritical());
+        result.setAttackRoll(outcome.toRollResult());
+        result.setHit(outcome.isHit());
+        result.setCritical(outcome.isCritical());
+        result.setDamage(outcome.getDamage());
+        return result;
+    }
+
+    /**
+     * Атака без создания объектов: итог пишется в переданный AttackOutcome
+     * (например, один на поток симуляции), возвращается нанесенный урон, 0 - промах.
+     * Правила и слушатели те же, что у performAttack, но в дельту для UI ничего не пишется.
+     */
+    public int resolveAttack(Combatant attacker, Combatant target, AttackProfile profile, AttackOutcome out) {
+        return resolve(attacker, target, profile, profile.getDamage(), out, false);
+    }
+
+    public int resolveAttack(Combatant attacker, Combatant target, AttackProfile profile,
+                             DiceExpression damageExpression, AttackOutcome out) {
+        return resolve(attacker, target, profile, damageExpression, out, false);
+    }
 
-        if (result.isHit()) {
+    private int resolve(Combatant attacker, Combatant target, AttackProfile profile,
+                        DiceExpression damageExpression, AttackOutcome out, boolean recordDelta) {
+        int attackBonus = profile.attackBonus(attacker);
+        int targetAC = target.getArmorClass() + coverBonus(attacker, target);
+
+        // Отряд атакует бойцами, окружившими цель, итог - одна атака с суммарным уроном
+        int attacks = attacker instanceof Squad ? ((Squad) attacker).attackersPerTarget() : 1;
+        long roll;
+        int damage = 0;
+        if (attacks > 1) {
+            long volley = rollVolley(attacker, targetAC, profile, damageExpression, attacks);
+            int natural = PackedRoll.naturalRoll(volley);
+            long flags = volley & (PackedRoll.SUCCESS | PackedRoll.CRITICAL);
+            roll = PackedRoll.pack(natural, natural + attackBonus, flags);
+            damage = PackedRoll.total(volley);
+        } else {
+            // Бросок атаки d20
+            roll = diceRollSystem.rollD20Packed(attackBonus, targetAC);
+        }
+
+        boolean hit = PackedRoll.isSuccess(roll);
+        boolean critical = PackedRoll.isCritical(roll);
+        if (hit && attacks == 1) {
             // Расчет урона при успешной атаке
-            int damage = calculateDamage(attacker, attackType, result.isCritical());
-            result.setDamage(damage);
-            target.takeDamage(damage);
+            damage = calculateDamage(attacker, damageExpression, critical, profile.getCritMultiplier());
+        }
+        out.attacker = attacker;
+        out.target = target;
+        out.roll = roll;
+        out.attackBonus = attackBonus;
+        out.armorClass = targetAC;
+        out.damage = hit ? damage : 0;
+        out.defeated = false;
+
+        // Слушатели обходятся по индексу: на этом пути не создается даже итератор
+        if (!hit) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onAttackMiss(attacker, target);
+            }
+            return 0;
+        }
 
-            // Уведомляем слушателей о попадании
-            for (CombatEventListener listener : listeners) {
-                listener.onAttackHit(attacker, target, damage, result.isCritical());
+        target.takeDamage(damage);
+        if (turnManager != null) {
+            turnManager.refreshCombatant(target);
+        }
+        out.defeated = !target.isAlive();
+        if (recordDelta) {
+            pendingDelta.recordHp(target.getId(), target.getCurrentHp());
+            if (out.defeated) {
+                pendingDelta.recordDefeated(target.getId());
+                pendingDelta.recordStatus(target.getId(), target.getStatusEffect());
             }
+        }
 
-            if (!target.isAlive()) {
-                for (CombatEventListener listener : listeners) {
-                    listener.onCombatantDefeated(target);
-                }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onAttackHit(attacker, target, damage, critical);
+        }
+        if (out.defeated) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onCombatantDefeated(target);
             }
-        } else {
-            // Уведомляем о промахе
-            for (CombatEventListener listener : listeners) {
-                listener.onAttackMiss(attacker, target);
+        }
+        return damage;
+    }
+
+    // Цели навыка из состава боя: живые противники или союзники заклинателя, либо он сам.
+    // Для AREA это кандидаты; кого накрывает зона, решает вызывающий код
+    public static List<Combatant> selectTargets(Combatant caster, Skill skill, List<Combatant> roster) {
+        SkillTarget kind = skill.targetKind();
+        List<Combatant> targets = new ArrayList<>();
+        if (kind == SkillTarget.SELF) {
+            targets.add(caster);
+            return targets;
+        }
+        for (Combatant combatant : roster) {
+            boolean ally = combatant.isPlayer() == caster.isPlayer();
+            if (combatant.isAlive() && ally != kind.isHostile()) {
+                targets.add(combatant);
             }
         }
+        return targets;
+    }
 
-        return result;
+    /**
+     * Цели навыка с учетом тактической сетки: одиночные и "все" цели ограничены
+     * дальностью навыка и линией обзора, а AREA накрывает зону AREA_RADIUS вокруг ближайшего противника
+     * (для союзной зоны - вокруг заклинателя), если он в пределах дальности.
+     * Без сетки или позиции заклинателя - как selectTargets без сетки.
+     */
+    public static List<Combatant> selectTargets(Combatant caster, Skill skill, List<Combatant> roster,
+                                                CombatGrid grid) {
+        SkillTarget kind = skill.targetKind();
+        if (grid == null || !grid.contains(caster) || kind == SkillTarget.SELF) {
+            return selectTargets(caster, skill, roster);
+        }
+        int range = skill.getRange();
+        List<Combatant> targets = new ArrayList<>();
+        if (kind == SkillTarget.AREA) {
+            Combatant anchor = kind.isHostile() ? grid.nearestEnemy(caster) : caster;
+            if (anchor != null && (range <= 0 || grid.distance(caster, anchor) <= range)) {
+                grid.areaTargets(caster, kind, grid.xOf(anchor), grid.yOf(anchor), CombatGrid.AREA_RADIUS, targets);
+            }
+            return targets;
+        }
+        for (Combatant combatant : selectTargets(caster, skill, roster)) {
+            if ((range <= 0 || grid.inRange(caster, combatant, range))
+                    && (combatant == caster || grid.hasLineOfSight(caster, combatant))) {
+                targets.add(combatant);
+            }
+        }
+        return targets;
     }
 
     // Проверка навыка (например, для бегства или использования умения)
     public SkillCheckResult performSkillCheck(Combatant combatant, String skill, int difficultyClass) {
-        int skillModifier = calculateSkillModifier(combatant, skill);
+        CheckSkill checkSkill = CheckSkill.fromName(skill);
+        // Неизвестный навык проверяется без модификатора
+        int skillModifier = checkSkill != null ? checkSkill.modifierOf(combatant) : 0;
+        return performSkillCheck(combatant, skill, skillModifier, difficultyClass);
+    }
+
+    public SkillCheckResult performSkillCheck(Combatant combatant, CheckSkill skill, int difficultyClass) {
+        return performSkillCheck(combatant, skill.name(), skill.modifierOf(combatant), difficultyClass);
+    }
+
+    private SkillCheckResult performSkillCheck(Combatant combatant, String skill, int skillModifier,
+                                               int difficultyClass) {
         RollResult skillRoll = diceRollSystem.rollD20(skillModifier, difficultyClass);
 
         SkillCheckResult result = new SkillCheckResult();
@@ -78,6 +293,99 @@ public class CombatSystem {
         return result;
     }
 
+    // Проверка без создания объектов: итог в out, возвращается успех
+    public boolean resolveSkillCheck(Combatant combatant, CheckSkill skill, int difficultyClass,
+                                     SkillCheckOutcome out) {
+        int modifier = skill.modifierOf(combatant);
+        out.combatant = combatant;
+        out.skill = skill;
+        out.modifier = modifier;
+        out.difficultyClass = difficultyClass;
+        out.roll = diceRollSystem.rollD20Packed(modifier, difficultyClass);
+        return out.isSuccess();
+    }
+
+    // Правила без побочных эффектов и слушателей - для CombatEngine и симуляций
+
+    // Бросок атаки d20 против КД цели, результат упакован (см. PackedRoll)
+    public long rollAttack(Combatant attacker, int targetArmorClass, AttackProfile profile) {
+        return diceRollSystem.rollD20Packed(profile.attackBonus(attacker), targetArmorClass);
+    }
+
+    public int rollDamage(Combatant attacker, AttackProfile profile, boolean critical) {
+        return calculateDamage(attacker, profile.getDamage(), critical, profile.getCritMultiplier());
+    }
+
+    public int rollDamage(Combatant attacker, DiceExpression damageExpression, boolean critical) {
+        return calculateDamage(attacker, damageExpression, critical, AttackProfile.DEFAULT_CRIT_MULTIPLIER);
+    }
+
+    // Урон из данных с множителем крита профиля атаки
+    public int rollDamage(Combatant attacker, AttackProfile profile, DiceExpression damageExpression,
+                          boolean critical) {
+        return calculateDamage(attacker, damageExpression, critical, profile.getCritMultiplier());
+    }
+
+    /**
+     * Залп отряда: attacks бросков атаки одной серией и урон каждого попадания.
+     * Упаковано как PackedRoll: лучший натуральный бросок среди попаданий (или всех,
+     * если попаданий нет), суммарный урон вместо итога, SUCCESS - было попадание,
+     * CRITICAL - был крит.
+     */
+    public long rollVolley(Combatant attacker, int targetArmorClass, AttackProfile profile,
+                           DiceExpression damageExpression, int attacks) {
+        if (volleyBuffer.length < attacks) {
+            volleyBuffer = new long[Math.max(attacks, volleyBuffer.length * 2)];
+        }
+        DiceExpression expression = damageExpression != null ? damageExpression : profile.getDamage();
+        diceRollSystem.rollD20(attacks, profile.attackBonus(attacker), targetArmorClass, volleyBuffer, 0);
+        int bestHit = 0;
+        int bestMiss = 0;
+        int damage = 0;
+        long flags = 0;
+        for (int i = 0; i < attacks; i++) {
+            long roll = volleyBuffer[i];
+            int natural = PackedRoll.naturalRoll(roll);
+            if (!PackedRoll.isSuccess(roll)) {
+                bestMiss = Math.max(bestMiss, natural);
+                continue;
+            }
+            boolean critical = PackedRoll.isCritical(roll);
+            damage += calculateDamage(attacker, expression, critical, profile.getCritMultiplier());
+            flags |= PackedRoll.SUCCESS | (critical ? PackedRoll.CRITICAL : 0);
+            bestHit = Math.max(bestHit, natural);
+        }
+        return PackedRoll.pack(flags != 0 ? bestHit : bestMiss, damage, flags);
+    }
+
+    // Сложность спасброска от навыков заклинателя
+    public static int saveDc(Combatant caster) {
+        return SAVE_DC_BASE + caster.getAttackBonus() + caster.getModifier(Ability.SPELL);
+    }
+
+    // Спасбросок ЛВК цели; успех - половина урона навыка по площади
+    public boolean rollSave(Combatant target, int saveDc) {
+        return PackedRoll.isSuccess(diceRollSystem.rollD20Packed(target.getDexterityModifier(), saveDc));
+    }
+
+    // Бросок без урона, например лечение: без удвоения и минимума в 1
+    public int rollAmount(Combatant source, DiceExpression expression) {
+        return Math.max(0, expression.roll(damageRollSystem, source));
+    }
+
+    // Бегство живых членов группы от enemyCount врагов: DC = 10 + число врагов
+    public boolean attemptFlee(List<Combatant> partyMembers, int enemyCount) {
+        if (partyMembers.isEmpty()) {
+            return false;
+        }
+        int totalDexterity = 0;
+        for (Combatant member : partyMembers) {
+            totalDexterity += member.getDexterityModifier();
+        }
+        int averageDexterity = totalDexterity / partyMembers.size();
+        return PackedRoll.isSuccess(diceRollSystem.rollD20Packed(averageDexterity, 10 + enemyCount));
+    }
+
     // Попытка бегства из боя
     public boolean attemptFlee(List<Combatant> partyMembers) {
         // Считаем среднюю ловкость группы
@@ -89,7 +397,7 @@ public class CombatSystem {
 
         // Сложность бегства = 10 + количество врагов
         long enemyCount = partyMembers.stream()
-                .filter(c -> "ENEMY".equals(c.getType()))
+                .filter(Combatant::isEnemy)
                 .count();
         int fleeDC = 10 + (int) enemyCount;
 
@@ -97,74 +405,17 @@ public class CombatSystem {
         return fleeRoll.isSuccess();
     }
 
-    private int calculateAttackBonus(Combatant attacker, String attackType) {
-        int baseBonus = attacker.getAttackBonus();
-
-        switch (attackType) {
-            case "MELEE":
-                return baseBonus + attacker.getStrengthModifier();
-            case "RANGED":
-            case "FINESSE":
-                return baseBonus + attacker.getDexterityModifier();
-            case "SPELL":
-                return baseBonus + Math.max(attacker.getIntelligenceModifier(),
-                        attacker.getWisdomModifier());
-            default:
-                return baseBonus;
-        }
-    }
-
-    private int calculateDamage(Combatant attacker, String attackType, boolean isCritical) {
-        int baseDamage = 0;
-        int damageBonus = 0;
-
-        switch (attackType) {
-            case "MELEE":
-                baseDamage = 6; // 1d6
-                damageBonus = attacker.getStrengthModifier();
-                break;
-            case "RANGED":
-                baseDamage = 4; // 1d4
-                damageBonus = attacker.getDexterityModifier();
-                break;
-            case "SPELL":
-                baseDamage = 8; // 1d8
-                damageBonus = Math.max(attacker.getIntelligenceModifier(),
-                        attacker.getWisdomModifier());
-                break;
-        }
-
-        RollResult damageRoll = diceRollSystem.rollDice(baseDamage, damageBonus);
-        int totalDamage = damageRoll.getTotal();
+    private int calculateDamage(Combatant attacker, DiceExpression damageExpression, boolean isCritical,
+                                int critMultiplier) {
+        int totalDamage = damageExpression.roll(damageRollSystem, attacker);
 
         if (isCritical) {
-            totalDamage *= 2; // Критический урон удваивается
+            totalDamage *= critMultiplier; // Критический урон умножается (по умолчанию удваивается)
         }
 
         return Math.max(1, totalDamage); // Минимальный урон 1
     }
 
-    private int calculateSkillModifier(Combatant combatant, String skill) {
-        switch (skill) {
-            case "STEALTH":
-            case "ACROBATICS":
-                return combatant.getDexterityModifier();
-            case "ATHLETICS":
-                return combatant.getStrengthModifier();
-            case "ARCANA":
-            case "INVESTIGATION":
-                return combatant.getIntelligenceModifier();
-            case "PERCEPTION":
-            case "INSIGHT":
-                return combatant.getWisdomModifier();
-            case "PERSUASION":
-            case "DECEPTION":
-                return combatant.getCharismaModifier();
-            default:
-                return 0;
-        }
-    }
-
     public interface CombatEventListener {
         void onAttackHit(Combatant attacker, Combatant target, int damage, boolean critical);
         void onAttackMiss(Combatant attacker, Combatant target);
@@ -200,6 +451,38 @@ public class CombatSystem {
         public void setDamage(int damage) { this.damage = damage; }
     }
 
+    /**
+     * Изменяемый итог атаки для resolveAttack: объект переиспользуется между атаками,
+     * бросок хранится упакованным (см. PackedRoll).
+     */
+    public static final class AttackOutcome {
+        private Combatant attacker;
+        private Combatant target;
+        private long roll;
+        private int attackBonus;
+        private int armorClass;
+        private int damage;
+        private boolean defeated;
+
+        public Combatant getAttacker() { return attacker; }
+        public Combatant getTarget() { return target; }
+        public long getRoll() { return roll; }
+        public int getNaturalRoll() { return PackedRoll.naturalRoll(roll); }
+        public int getAttackBonus() { return attackBonus; }
+
+        // КД цели с учетом укрытия
+        public int getArmorClass() { return armorClass; }
+        public boolean isHit() { return PackedRoll.isSuccess(roll); }
+        public boolean isCritical() { return PackedRoll.isCritical(roll); }
+        public int getDamage() { return damage; }
+        public boolean isDefeated() { return defeated; }
+
+        // Бросок как RollResult для старого API; создает объект
+        public RollResult toRollResult() {
+            return PackedRoll.toRollResult(roll, attackBonus, armorClass);
+        }
+    }
+
     public static class SkillCheckResult {
         private Combatant combatant;
         private String skill;
@@ -219,4 +502,28 @@ public class CombatSystem {
         public boolean isSuccess() { return success; }
         public void setSuccess(boolean success) { this.success = success; }
     }
-}
\ No newline at end of file
+
+    // Изменяемый итог проверки для resolveSkillCheck
+    public static final class SkillCheckOutcome {
+        private Combatant combatant;
+        private CheckSkill skill;
+        private long roll;
+        private int modifier;
+        private int difficultyClass;
+
+        public Combatant getCombatant() { return combatant; }
+        public CheckSkill getSkill() { return skill; }
+        public long getRoll() { return roll; }
+        public int getNaturalRoll() { return PackedRoll.naturalRoll(roll); }
+        public int getTotal() { return PackedRoll.total(roll); }
+        public int getModifier() { return modifier; }
+        public int getDifficultyClass() { return difficultyClass; }
+        public boolean isSuccess() { return PackedRoll.isSuccess(roll); }
+        public boolean isCritical() { return PackedRoll.isCritical(roll); }
+        public boolean isCriticalFail() { return PackedRoll.isCriticalFail(roll); }
+
+        public RollResult toRollResult() {
+            return PackedRoll.toRollResult(roll, modifier, difficultyClass);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.HG.heroesglory.core.dice;
+
+import java.util.Arrays;
+
+/**
+ * Точное распределение суммы броска: вероятность каждого значения от min до max.
+ * Неизменяемо; операции возвращают новые распределения.
+ */
+public final class DiceDistribution {
+    private static final DiceDistribution ZERO = new DiceDistribution(0, new double[]{1.0});
+    // Пределы точной динамики keep: ячейки одного буфера и шаги всего расчета
+    static final long MAX_KEEP_CELLS = 1L << 18;
+    static final long MAX_KEEP_WORK = 1L << 25;
+    // Ширина носителя нормального приближения в стандартных отклонениях
+    private static final double NORMAL_SPAN_SD = 8.0;
+
+    private final int min;
+    private final double[] probabilities;
+
+    private DiceDistribution(int min, double[] probabilities) {
+        this.min = min;
+        this.probabilities = probabilities;
+    }
+
+    public static DiceDistribution constant(int value) {
+        return ZERO.shift(value);
+    }
+
+    public static DiceDistribution uniform(int sides) {
+        double[] p = new double[sides];
+        Arrays.fill(p, 1.0 / sides);
+        return new DiceDistribution(1, p);
+    }
+
+    // Один взрывающийся куб: максимум добавляет еще бросок, не более maxExplosions раз
+    public static DiceDistribution exploding(int sides, int maxExplosions) {
+        double[] p = new double[sides * (maxExplosions + 1)];
+        double chain = 1.0;
+        for (int depth = 0; depth <= maxExplosions; depth++) {
+            int base = depth * sides;
+            int last = depth == maxExplosions ? sides : sides - 1;
+            for (int face = 1; face <= last; face++) {
+                p[base + face - 1] += chain / sides;
+            }
+            chain /= sides;
+        }
+        return new DiceDistribution(1, p);
+    }
+
+    // Сумма count независимых кубов с распределением die
+    public static DiceDistribution sum(DiceDistribution die, int count) {
+        DiceDistribution result = ZERO;
+        DiceDistribution power = die;
+        int n = count;
+        while (n > 0) {
+            if ((n & 1) != 0) result = result.convolve(power);
+            n >>= 1;
+            if (n > 0) power = power.convolve(power);
+        }
+        return result;
+    }
+
+    /**
+     * Сумма keep лучших (или худших) из count независимых кубов с распределением die.
+     * Динамика по значениям от лучшего к худшему: сколько кубов выпало на значение
+     * (биномиально среди оставшихся) и сколько из них попало в отбор. Динамика идет
+     * в двух переиспользуемых буферах, биномиальные веса - в логарифмах (без переполнения
+     * на больших пулах). Пулы сверх MAX_KEEP_CELLS/MAX_KEEP_WORK - нормальное приближение.
+     */
+    public static DiceDistribution keep(DiceDistribution die, int count, int keep, boolean highest) {
+        if (keep >= count) {
+            return sum(die, count);
+        }
+        // Суммы отобранных значений считаем в смещении от die.min, чтобы индексы были неотрицательны
+        int span = die.probabilities.length - 1;
+        int maxSum = keep * span;
+        long cells = (long) (count + 1) * (keep + 1) * (maxSum + 1);
+        if (cells > MAX_KEEP_CELLS || cells * (count + 1) * (span + 1) > MAX_KEEP_WORK) {
+            return keepApproximation(die, count, keep, highest);
+        }
+        int sums = maxSum + 1;
+        int rows = (keep + 1) * sums;
+        // state[(r * (keep + 1) + k) * sums + s]: осталось r кубов, отобрано k, сумма смещений отобранных s
+        double[] state = new double[(int) cells];
+        double[] next = new double[(int) cells];
+        state[count * rows] = 1.0;
+        double[] logFactorial = logFactorials(count);
+        double remainingMass = 1.0;
+
+        for (int step = 0; step <= span; step++) {
+            int offset = highest ? span - step : step;
+            double mass = die.probabilities[offset];
+            if (mass == 0) continue;
+            // Вероятность значения при условии, что куб не выпал на уже пройденные значения
+            double p = remainingMass - mass <= 1e-12 ? 1.0 : mass / remainingMass;
+            remainingMass -= mass;
+            double logP = Math.log(p);
+            double logQ = Math.log1p(-p);
+            for (int r = 0; r <= count; r++) {
+                for (int k = 0; k <= keep; k++) {
+                    int from = r * rows + k * sums;
+                    for (int s = 0; s < sums; s++) {
+                        double w = state[from + s];
+                        if (w == 0) continue;
+                        for (int c = 0; c <= r; c++) {
+                            double pc = p >= 1.0
+                                    ? (c == r ? 1.0 : 0.0)
+                                    : Math.exp(logFactorial[r] - logFactorial[c] - logFactorial[r - c]
+                                            + c * logP + (r - c) * logQ);
+                            if (pc == 0) continue;
+                            int taken = Math.min(c, keep - k);
+                            next[(r - c) * rows + (k + taken) * sums + s + taken * offset] += w * pc;
+                        }
+                    }
+                }
+            }
+            double[] swap = state;
+            state = next;
+            next = swap;
+            Arrays.fill(next, 0.0);
+        }
+
+        double[] p = new double[sums];
+        System.arraycopy(state, keep * sums, p, 0, sums);
+        return new DiceDistribution(keep * die.min, p);
+    }
+
+    /**
+     * Нормальное приближение суммы keep лучших из count. Сумма раскладывается по порогам:
+     * keep * min + сумма по t min(N_t, keep), где N_t ~ Bin(count, P(X >= min + t)).
+     * Среднее и дисперсии слагаемых точные (биномиальные веса в логарифмах по окну
+     * +-NORMAL_SPAN_SD отклонений), ковариации - линеаризацией min в точке keep.
+     * Носитель ограничен точным диапазоном и +-NORMAL_SPAN_SD отклонениями.
+     */
+    private static DiceDistribution keepApproximation(DiceDistribution die, int count, int keep, boolean highest) {
+        if (!highest) {
+            return keepApproximation(die.negate(), count, keep, true).negate();
+        }
+        int span = die.probabilities.length - 1;
+        double[] logFactorial = logFactorials(count);
+        double mean = keep * (double) die.min;
+        double variance = 0;
+        // Сумма a_t * (1 - p_t) по уже пройденным (меньшим) порогам
+        double lowerWeights = 0;
+        double tail = 1.0;
+        for (int t = 1; t <= span; t++) {
+            tail -= die.probabilities[t - 1];
+            double p = Math.max(0, Math.min(1, tail));
+            double expected = 0;
+            double squares = 0;
+            double below = 0;
+            if (p == 0 || p == 1) {
+                int n = p == 0 ? 0 : count;
+                expected = Math.min(n, keep);
+                squares = expected * expected;
+                below = n < keep ? 1 : 0;
+            } else {
+                double logP = Math.log(p);
+                double logQ = Math.log1p(-p);
+                double sd = Math.sqrt(count * p * (1 - p));
+                int from = (int) Math.max(0, Math.floor(count * p - NORMAL_SPAN_SD * sd - 1));
+                int to = (int) Math.min(count, Math.ceil(count * p + NORMAL_SPAN_SD * sd + 1));
+                for (int j = from; j <= to; j++) {
+                    double w = Math.exp(logFactorial[count] - logFactorial[j] - logFactorial[count - j]
+                            + j * logP + (count - j) * logQ);
+                    int m = Math.min(j, keep);
+                    expected += w * m;
+                    squares += w * m * (double) m;
+                    if (j < keep) below += w;
+                }
+            }
+            mean += expected;
+            variance += Math.max(0, squares - expected * expected)
+                    + 2 * below * p * count * lowerWeights;
+            lowerWeights += below * (1 - p);
+        }
+        double sd = Math.sqrt(Math.max(0, variance));
+        int low = keep * die.min;
+        int high = keep * die.getMax();
+        if (sd < 1e-9) {
+            return constant((int) Math.max(low, Math.min(high, Math.round(mean))));
+        }
+        int from = (int) Math.max(low, Math.floor(mean - NORMAL_SPAN_SD * sd));
+        int to = (int) Math.min(high, Math.ceil(mean + NORMAL_SPAN_SD * sd));
+        double[] p = new double[to - from + 1];
+        double total = 0;
+        // Масса значения x - нормальная вероятность отрезка [x - 0.5, x + 0.5)
+        double upper = LargePoolSampler.normalUpper((from - 0.5 - mean) / sd);
+        for (int i = 0; i < p.length; i++) {
+            double nextUpper = LargePoolSampler.normalUpper((from + i + 0.5 - mean) / sd);
+            p[i] = Math.max(0, upper - nextUpper);
+            total += p[i];
+            upper = nextUpper;
+        }
+        for (int i = 0; i < p.length; i++) {
+            p[i] /= total;
+        }
+        return new DiceDistribution(from, p);
+    }
+
+    public DiceDistribution convolve(DiceDistribution other) {
+        double[] p = new double[probabilities.length + other.probabilities.length - 1];
+        for (int i = 0; i < probabilities.length; i++) {
+            double a = probabilities[i];
+            if (a == 0) continue;
+            for (int j = 0; j < other.probabilities.length; j++) {
+                p[i + j] += a * other.probabilities[j];
+            }
+        }
+        return new DiceDistribution(min + other.min, p);
+    }
+
+    public DiceDistribution negate() {
+        double[] p = new double[probabilities.length];
+        for (int i = 0; i < p.length; i++) {
+            p[i] = probabilities[probabilities.length - 1 - i];
+        }
+        return new DiceDistribution(-getMax(), p);
+    }
+
+    public DiceDistribution shift(int offset) {
+        return new DiceDistribution(min + offset, probabilities);
+    }
+
+    public int getMin() { return min; }
+    public int getMax() { return min + probabilities.length - 1; }
+
+    public double probabilityOf(int value) {
+        int i = value - min;
+        return i >= 0 && i < probabilities.length ? probabilities[i] : 0.0;
+    }
+
+    // P(X >= threshold)
+    public double probabilityAtLeast(int threshold) {
+        if (threshold <= min) return 1.0;
+        double total = 0;
+        for (int i = Math.max(0, threshold - min); i < probabilities.length; i++) {
+            total += probabilities[i];
+        }
+        return Math.min(1.0, total);
+    }
+
+    public double mean() {
+        double mean = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            mean += (min + i) * probabilities[i];
+        }
+        return mean;
+    }
+
+    public double variance() {
+        double mean = mean();
+        double variance = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            double d = min + i - mean;
+            variance += d * d * probabilities[i];
+        }
+        return variance;
+    }
+
+    // ln(i!) для i = 0..n
+    private static double[] logFactorials(int n) {
+        double[] f = new double[n + 1];
+        for (int i = 2; i <= n; i++) {
+            f[i] = f[i - 1] + Math.log(i);
+        }
+        return f;
+    }
+}
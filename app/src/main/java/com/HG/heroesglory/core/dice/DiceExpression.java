@@ -0,0 +1,264 @@
+package com.HG.heroesglory.core.dice;
+
+import com.HG.heroesglory.core.entities.Ability;
+import com.HG.heroesglory.core.entities.Combatant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Скомпилированное выражение броска: "2d8+STR", "1d20adv", "4d6kh3", "1d6!".
+ *
+ * Строка разбирается один раз в неизменяемый список слагаемых и кэшируется по
+ * исходной строке в LRU на CACHE_CAPACITY выражений (строки приходят из Firestore,
+ * их число не ограничено); вычисление готового выражения не создает объектов.
+ *
+ * Синтаксис: слагаемые через + и -. Слагаемое - число, характеристика
+ * (STR, DEX, CON, INT, WIS, CHA, SPELL) или кубы NdS с суффиксами:
+ * khK/klK - оставить K лучших/худших, adv/dis - бросить вдвое больше и
+ * оставить лучшие/худшие, ! - взрывающиеся кубы.
+ */
+public final class DiceExpression {
+    public static final int MAX_DICE = 10000;
+    public static final int MAX_SIDES = 1000;
+    // Сколько раз подряд может взорваться один куб; дальше значение просто прибавляется
+    public static final int MAX_EXPLOSIONS = 10;
+
+    public static final int CACHE_CAPACITY = 1024;
+
+    private static final Logger LOG = Logger.getLogger(DiceExpression.class.getName());
+    private static final LruCache<String, DiceExpression> CACHE = new LruCache<>(CACHE_CAPACITY);
+    // Строки, которые уже не разобрались: ошибка пишется в лог один раз
+    private static final LruCache<String, Boolean> MALFORMED = new LruCache<>(CACHE_CAPACITY);
+
+    private final String source;
+    private final Term[] terms;
+
+    private DiceExpression(String source, Term[] terms) {
+        this.source = source;
+        this.terms = terms;
+    }
+
+    public static DiceExpression compile(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Dice expression is null");
+        }
+        DiceExpression cached = CACHE.get(source);
+        if (cached != null) {
+            return cached;
+        }
+        return CACHE.putIfAbsent(source, new Parser(source).parse());
+    }
+
+    /**
+     * Выражение из данных (Firestore, Room): ошибка разбора не роняет бой -
+     * она пишется в лог и возвращается fallback. null или пустая строка - тоже fallback.
+     */
+    public static DiceExpression compileOrDefault(String source, DiceExpression fallback) {
+        if (source == null || source.isEmpty() || MALFORMED.get(source) != null) {
+            return fallback;
+        }
+        try {
+            return compile(source);
+        } catch (IllegalArgumentException e) {
+            MALFORMED.putIfAbsent(source, Boolean.TRUE);
+            LOG.warning(e.getMessage());
+            return fallback;
+        }
+    }
+
+    public int roll(DiceRollSystem dice) {
+        return roll(dice, null);
+    }
+
+    // Характеристики берутся у source; без бойца они равны нулю
+    public int roll(DiceRollSystem dice, Combatant source) {
+        int total = 0;
+        for (Term term : terms) {
+            total += term.sign * term.evaluate(dice, source);
+        }
+        return total;
+    }
+
+    // Сумма всех слагаемых без кубов (числа и характеристики)
+    public int staticBonus(Combatant source) {
+        int bonus = 0;
+        for (Term term : terms) {
+            if (term.kind != Term.DICE) {
+                bonus += term.sign * term.evaluate(null, source);
+            }
+        }
+        return bonus;
+    }
+
+    // Вклад только характеристик бойца (без чисел и кубов)
+    public int abilityBonus(Combatant source) {
+        int bonus = 0;
+        for (Term term : terms) {
+            if (term.kind == Term.ABILITY) {
+                bonus += term.sign * term.ability.modifierOf(source);
+            }
+        }
+        return bonus;
+    }
+
+    public String getSource() { return source; }
+    public int getTermCount() { return terms.length; }
+    public Term getTerm(int index) { return terms[index]; }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    public static final class Term {
+        public static final int CONSTANT = 0;
+        public static final int ABILITY = 1;
+        public static final int DICE = 2;
+
+        private final int kind;
+        private final int sign;
+        private final int constant;
+        private final Ability ability;
+        private final int count;
+        private final int sides;
+        private final int keep;
+        private final boolean keepHighest;
+        private final boolean exploding;
+
+        private Term(int kind, int sign, int constant, Ability ability,
+                     int count, int sides, int keep, boolean keepHighest, boolean exploding) {
+            this.kind = kind;
+            this.sign = sign;
+            this.constant = constant;
+            this.ability = ability;
+            this.count = count;
+            this.sides = sides;
+            this.keep = keep;
+            this.keepHighest = keepHighest;
+            this.exploding = exploding;
+        }
+
+        private int evaluate(DiceRollSystem dice, Combatant source) {
+            switch (kind) {
+                case CONSTANT:
+                    return constant;
+                case ABILITY:
+                    return ability.modifierOf(source);
+                default:
+                    return dice.rollPool(count, sides, keep, keepHighest, exploding);
+            }
+        }
+
+        public int getKind() { return kind; }
+        public int getSign() { return sign; }
+        public int getConstant() { return constant; }
+        public Ability getAbility() { return ability; }
+        public int getCount() { return count; }
+        public int getSides() { return sides; }
+        // Сколько кубов из count учитывается (count - без отбора)
+        public int getKeep() { return keep; }
+        public boolean isKeepHighest() { return keepHighest; }
+        public boolean isExploding() { return exploding; }
+    }
+
+    private static final class Parser {
+        private final String source;
+        private final String text;
+        private int pos;
+
+        Parser(String source) {
+            this.source = source;
+            this.text = source.replace(" ", "").toUpperCase(Locale.ROOT);
+        }
+
+        DiceExpression parse() {
+            if (text.isEmpty()) {
+                throw error("empty expression");
+            }
+            List<Term> terms = new ArrayList<>();
+            int sign = 1;
+            if (peek() == '+' || peek() == '-') {
+                sign = text.charAt(pos++) == '-' ? -1 : 1;
+            }
+            terms.add(parseTerm(sign));
+            while (pos < text.length()) {
+                char op = text.charAt(pos++);
+                if (op != '+' && op != '-') {
+                    throw error("unexpected '" + op + "'");
+                }
+                terms.add(parseTerm(op == '-' ? -1 : 1));
+            }
+            return new DiceExpression(source, terms.toArray(new Term[0]));
+        }
+
+        private Term parseTerm(int sign) {
+            boolean dice = peek() == 'D' && pos + 1 < text.length() && Character.isDigit(text.charAt(pos + 1));
+            if (Character.isLetter(peek()) && !dice) {
+                int start = pos;
+                while (Character.isLetter(peek())) pos++;
+                Ability ability = Ability.fromToken(text.substring(start, pos));
+                if (ability == null) {
+                    throw error("unknown ability '" + text.substring(start, pos) + "'");
+                }
+                return new Term(Term.ABILITY, sign, 0, ability, 0, 0, 0, false, false);
+            }
+
+            int count = Character.isDigit(peek()) ? readInt() : -1;
+            if (peek() != 'D') {
+                if (count < 0) throw error("number expected");
+                return new Term(Term.CONSTANT, sign, count, null, 0, 0, 0, false, false);
+            }
+            pos++;
+            if (count < 0) count = 1;
+            if (!Character.isDigit(peek())) throw error("die size expected");
+            int sides = readInt();
+            if (count < 1 || count > MAX_DICE) throw error("dice count out of range");
+            if (sides < 1 || sides > MAX_SIDES) throw error("die size out of range");
+
+            int rolled = count;
+            int keep = count;
+            boolean keepHighest = true;
+            boolean exploding = false;
+            while (pos < text.length() && peek() != '+' && peek() != '-') {
+                if (text.startsWith("KH", pos) || text.startsWith("KL", pos)) {
+                    keepHighest = text.charAt(pos + 1) == 'H';
+                    pos += 2;
+                    if (!Character.isDigit(peek())) throw error("keep count expected");
+                    keep = readInt();
+                } else if (text.startsWith("ADV", pos) || text.startsWith("DIS", pos)) {
+                    keepHighest = text.charAt(pos) == 'A';
+                    pos += 3;
+                    rolled = count * 2;
+                    keep = count;
+                } else if (peek() == '!') {
+                    pos++;
+                    exploding = true;
+                } else {
+                    throw error("unknown suffix at " + pos);
+                }
+            }
+            if (keep < 1 || keep > rolled) throw error("keep count out of range");
+            if (rolled > MAX_DICE) throw error("dice count out of range");
+            if (exploding && sides < 2) throw error("d1 cannot explode");
+            return new Term(Term.DICE, sign, 0, null, rolled, sides, keep, keepHighest, exploding);
+        }
+
+        private int readInt() {
+            int start = pos;
+            while (Character.isDigit(peek())) pos++;
+            if (pos - start > 6) throw error("number too large");
+            return Integer.parseInt(text.substring(start, pos));
+        }
+
+        private char peek() {
+            return pos < text.length() ? text.charAt(pos) : '\0';
+        }
+
+        private IllegalArgumentException error(String reason) {
+            return new IllegalArgumentException("Invalid dice expression '" + source + "': " + reason);
+        }
+    }
+}
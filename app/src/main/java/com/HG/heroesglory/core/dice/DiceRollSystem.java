@@ -1,38 +1,197 @@
 package com.HG.heroesglory.core.dice;
 
-import java.util.Random;
-
 public class DiceRollSystem {
-    private Random random;
+    private RngStream random;
+    // Буфер отбора лучших/худших кубов для rollPool, растет по требованию
+    private int[] keepBuffer = new int[8];
+
+    public static final int DEFAULT_LARGE_POOL_THRESHOLD = 16;
+    // Пулы больше порога выбираются целиком (LargePoolSampler), а не по одному кубу
+    private int largePoolThreshold = DEFAULT_LARGE_POOL_THRESHOLD;
+    private LargePoolSampler.AliasTable lastPoolTable;
+    private int lastPoolCount;
+    private int lastPoolType;
+    private LargePoolSampler.Tails lastPoolTails;
 
     public DiceRollSystem() {
-        this.random = new Random();
+        this(new RngStream(RngStream.randomSeed()));
+    }
+
+    public DiceRollSystem(RngStream stream) {
+        this.random = stream;
+    }
+
+    public RngStream getStream() {
+        return random;
+    }
+
+    public int getLargePoolThreshold() {
+        return largePoolThreshold;
+    }
+
+    public void setLargePoolThreshold(int largePoolThreshold) {
+        this.largePoolThreshold = Math.max(1, largePoolThreshold);
     }
 
     public RollResult rollD20(int modifier, int difficultyClass) {
+        return PackedRoll.toRollResult(rollD20Packed(modifier, difficultyClass), modifier, difficultyClass);
+    }
+
+    public RollResult rollDice(int diceType, int modifier) {
+        return PackedRoll.toRollResult(rollDicePacked(diceType, modifier), modifier, 0);
+    }
+
+    public RollResult rollMultipleDice(int diceCount, int diceType, int modifier) {
+        return PackedRoll.toRollResult(rollMultipleDicePacked(diceCount, diceType, modifier), modifier, 0);
+    }
+
+    // Одиночные броски без создания RollResult (см. PackedRoll)
+    public long rollD20Packed(int modifier, int difficultyClass) {
         int naturalRoll = random.nextInt(20) + 1;
         int total = naturalRoll + modifier;
-        boolean success = total >= difficultyClass;
-        boolean critical = (naturalRoll == 20);
-        boolean criticalFail = (naturalRoll == 1);
 
-        return new RollResult(naturalRoll, modifier, total, difficultyClass, success, critical, criticalFail);
+        long flags = 0;
+        if (total >= difficultyClass) flags |= PackedRoll.SUCCESS;
+        if (naturalRoll == 20) flags |= PackedRoll.CRITICAL;
+        if (naturalRoll == 1) flags |= PackedRoll.CRITICAL_FAIL;
+
+        return PackedRoll.pack(naturalRoll, total, flags);
     }
 
-    public RollResult rollDice(int diceType, int modifier) {
+    public long rollDicePacked(int diceType, int modifier) {
         int naturalRoll = random.nextInt(diceType) + 1;
-        int total = naturalRoll + modifier;
+        return PackedRoll.pack(naturalRoll, naturalRoll + modifier, 0);
+    }
 
-        return new RollResult(naturalRoll, modifier, total, 0, false, false, false);
+    public long rollMultipleDicePacked(int diceCount, int diceType, int modifier) {
+        int totalNatural = sumDice(diceCount, diceType);
+        return PackedRoll.pack(totalNatural, totalNatural + modifier, 0);
     }
 
-    public RollResult rollMultipleDice(int diceCount, int diceType, int modifier) {
+    // Пакетные броски: count результатов пишутся в буфер вызывающего кода начиная с offset
+
+    public void rollD20(int count, int modifier, int difficultyClass, long[] out, int offset) {
+        checkBuffer(count, out.length, offset);
+        for (int i = 0; i < count; i++) {
+            out[offset + i] = rollD20Packed(modifier, difficultyClass);
+        }
+    }
+
+    public void rollDice(int count, int diceType, int modifier, long[] out, int offset) {
+        checkBuffer(count, out.length, offset);
+        for (int i = 0; i < count; i++) {
+            out[offset + i] = rollDicePacked(diceType, modifier);
+        }
+    }
+
+    public void rollMultipleDice(int count, int diceCount, int diceType, int modifier, long[] out, int offset) {
+        checkBuffer(count, out.length, offset);
+        for (int i = 0; i < count; i++) {
+            out[offset + i] = rollMultipleDicePacked(diceCount, diceType, modifier);
+        }
+    }
+
+    // Только натуральные значения, когда флаги не нужны (урон, инициатива)
+    public void rollNatural(int count, int diceType, int[] out, int offset) {
+        checkBuffer(count, out.length, offset);
+        for (int i = 0; i < count; i++) {
+            out[offset + i] = random.nextInt(diceType) + 1;
+        }
+    }
+
+    /**
+     * Бросок пула кубов с отбором keep лучших (или худших) и взрывом на максимуме.
+     * Используется скомпилированными DiceExpression; не создает объектов после прогрева буфера.
+     */
+    public int rollPool(int diceCount, int diceType, int keep, boolean keepHighest, boolean exploding) {
+        if (keep >= diceCount && !exploding) {
+            return sumDice(diceCount, diceType);
+        }
+        if (keep >= diceCount) {
+            int total = 0;
+            for (int i = 0; i < diceCount; i++) {
+                total += rollDie(diceType, true);
+            }
+            return total;
+        }
+
+        if (keepBuffer.length < keep) {
+            keepBuffer = new int[Math.max(keep, keepBuffer.length * 2)];
+        }
+        // keepBuffer[0..kept) упорядочен от худшего к лучшему с точки зрения отбора
+        int[] kept = keepBuffer;
+        int size = 0;
+        for (int i = 0; i < diceCount; i++) {
+            int value = rollDie(diceType, exploding);
+            int rank = keepHighest ? value : -value;
+            if (size < keep) {
+                int j = size++;
+                while (j > 0 && (keepHighest ? kept[j - 1] : -kept[j - 1]) > rank) {
+                    kept[j] = kept[j - 1];
+                    j--;
+                }
+                kept[j] = value;
+            } else if (rank > (keepHighest ? kept[0] : -kept[0])) {
+                int j = 0;
+                while (j + 1 < size && (keepHighest ? kept[j + 1] : -kept[j + 1]) < rank) {
+                    kept[j] = kept[j + 1];
+                    j++;
+                }
+                kept[j] = value;
+            }
+        }
+
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += kept[i];
+        }
+        return total;
+    }
+
+    private int rollDie(int diceType, boolean exploding) {
+        int value = random.nextInt(diceType) + 1;
+        if (!exploding) {
+            return value;
+        }
+        int total = value;
+        for (int i = 0; i < DiceExpression.MAX_EXPLOSIONS && value == diceType; i++) {
+            value = random.nextInt(diceType) + 1;
+            total += value;
+        }
+        return total;
+    }
+
+    private int sumDice(int diceCount, int diceType) {
+        if (diceCount > largePoolThreshold && diceType > 1) {
+            return sampleLargePool(diceCount, diceType);
+        }
         int totalNatural = 0;
         for (int i = 0; i < diceCount; i++) {
             totalNatural += random.nextInt(diceType) + 1;
         }
-        int total = totalNatural + modifier;
+        return totalNatural;
+    }
 
-        return new RollResult(totalNatural, modifier, total, 0, false, false, false);
+    private int sampleLargePool(int diceCount, int diceType) {
+        if (!LargePoolSampler.usesTable(diceCount, diceType)) {
+            if (lastPoolTails == null || lastPoolTails.n != diceCount || lastPoolTails.sides != diceType) {
+                lastPoolTails = LargePoolSampler.tails(diceCount, diceType);
+            }
+            return lastPoolTails.sample(random);
+        }
+        // Обычно подряд бросается один и тот же пул - таблицу держим под рукой без поиска
+        if (lastPoolTable == null || lastPoolCount != diceCount || lastPoolType != diceType) {
+            lastPoolTable = LargePoolSampler.table(diceCount, diceType);
+            lastPoolCount = diceCount;
+            lastPoolType = diceType;
+        }
+        return lastPoolTable.sample(random);
+    }
+
+    private static void checkBuffer(int count, int length, int offset) {
+        if (count < 0 || offset < 0 || offset + count > length) {
+            throw new IndexOutOfBoundsException("Roll buffer too small: offset=" + offset
+                    + ", count=" + count + ", length=" + length);
+        }
     }
 }
@@ -0,0 +1,269 @@
+package com.HG.heroesglory.core.dice;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Выборка суммы большого пула одинаковых кубов (200d6) за O(1) вместо броска каждого куба.
+ *
+ * Пока у суммы не больше MAX_TABLE_OUTCOMES значений, используется точная
+ * alias-таблица (метод Уолкера), построенная по DiceDistribution. Для больших
+ * пулов - нормальное приближение с поправкой на непрерывность в центре
+ * (|z| < TAIL_Z) и седловая оценка Лугананни-Райса для решетки в хвостах:
+ * нормальное приближение там ошибается на десятки процентов (у кубов нет
+ * длинных хвостов), седловая - на доли процента. Результат всегда остается
+ * в точном диапазоне [count, count * sides].
+ */
+public final class LargePoolSampler {
+    public static final int MAX_TABLE_OUTCOMES = 4096;
+    private static final int MAX_CACHED_TABLES = 64;
+    // Граница хвоста в стандартных отклонениях
+    static final double TAIL_Z = 3.0;
+
+    private static final ConcurrentHashMap<Long, AliasTable> TABLES = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Long, Tails> TAILS = new ConcurrentHashMap<>();
+
+    private LargePoolSampler() {}
+
+    public static boolean usesTable(int diceCount, int diceType) {
+        return (long) diceCount * (diceType - 1) + 1 <= MAX_TABLE_OUTCOMES;
+    }
+
+    static AliasTable table(int diceCount, int diceType) {
+        Long key = ((long) diceCount << 32) | diceType;
+        AliasTable table = TABLES.get(key);
+        if (table == null) {
+            if (TABLES.size() >= MAX_CACHED_TABLES) {
+                TABLES.clear();
+            }
+            table = TABLES.computeIfAbsent(key, k -> new AliasTable(
+                    DiceDistribution.sum(DiceDistribution.uniform(diceType), diceCount)));
+        }
+        return table;
+    }
+
+    static Tails tails(int diceCount, int diceType) {
+        Long key = ((long) diceCount << 32) | diceType;
+        Tails tails = TAILS.get(key);
+        if (tails == null) {
+            if (TAILS.size() >= MAX_CACHED_TABLES) {
+                TAILS.clear();
+            }
+            tails = TAILS.computeIfAbsent(key, k -> new Tails(diceCount, diceType));
+        }
+        return tails;
+    }
+
+    // P(сумма >= value) для пула вне таблицы: седловая оценка в хвостах
+    public static double probabilityAtLeast(int diceCount, int diceType, int value) {
+        return tails(diceCount, diceType).upper(value);
+    }
+
+    static int sampleNormal(int diceCount, int diceType, RngStream random) {
+        return tails(diceCount, diceType).sample(random);
+    }
+
+    /**
+     * Хвосты суммы n кубов d s. Кумулянтная функция центрированного куба
+     * K(t) = ln(sh(st/2) / (s sh(t/2))), точка перевала - решение n K'(t) = x - 1/2 - среднее;
+     * вероятность P(S >= x) - формула Лугананни-Райса со второй поправкой Дэниелса для решетки.
+     */
+    static final class Tails {
+        final int n;
+        final int sides;
+        final int min;
+        final int max;
+        final double mean;
+        final double sd;
+        // Хвост - значения >= cut (и симметрично <= min + max - cut)
+        final int cut;
+        // Суммарная вероятность обоих хвостов
+        final double mass;
+        private final double variance;
+
+        Tails(int n, int sides) {
+            this.n = n;
+            this.sides = sides;
+            this.min = n;
+            this.max = n * sides;
+            this.mean = n * (sides + 1) / 2.0;
+            this.variance = ((double) sides * sides - 1) / 12.0;
+            this.sd = Math.sqrt(n * variance);
+            this.cut = (int) Math.min(max + 1L, (long) Math.ceil(mean + TAIL_Z * sd));
+            this.mass = 2.0 * upper(cut);
+        }
+
+        int sample(RngStream random) {
+            // Хвосты симметричны: одна равномерная выборка выбирает и сторону, и точку хвоста
+            double u = random.nextDouble();
+            if (u < mass) {
+                double v = u / mass * 2.0;
+                return v < 1.0 ? sampleUpper(v) : min + max - sampleUpper(v - 1.0);
+            }
+
+            // Центр: нормальное приближение, усеченное до (min + max - cut, cut)
+            long lowCut = (long) min + max - cut;
+            while (true) {
+                // Бокс-Мюллер без второго значения: два равномерных числа на выборку
+                double u1 = 1.0 - random.nextDouble();
+                double u2 = random.nextDouble();
+                double z = Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
+
+                long value = Math.round(mean + z * sd);
+                if (value > lowCut && value < cut) {
+                    return (int) value;
+                }
+            }
+        }
+
+        // P(S >= x)
+        double upper(int x) {
+            if (x <= min) return 1.0;
+            if (x > max) return 0.0;
+            if (x == max) return Math.exp(-n * Math.log(sides));
+            if (x <= min + max + 1 - cut) {
+                // Левый хвост через симметрию: P(S >= x) = 1 - P(S >= min + max + 1 - x)
+                return 1.0 - upper(min + max + 1 - x);
+            }
+            if (x < cut) {
+                return normalUpper((x - 0.5 - mean) / sd);
+            }
+            double y = (x - 0.5) / n - (sides + 1) / 2.0;
+            double t = saddlepoint(y);
+            double w = Math.sqrt(2.0 * n * Math.max(0.0, t * y - cumulant(t)));
+            double u = 2.0 * Math.sinh(t / 2.0) * Math.sqrt(n * cumulant2(t));
+            double p = normalUpper(w) + normalDensity(w) * (1.0 / u - 1.0 / w);
+            return Math.max(0.0, Math.min(1.0, p));
+        }
+
+        // Обратная функция хвоста: значение x >= cut с P(S >= x) > v * P(S >= cut) >= P(S >= x + 1)
+        int sampleUpper(double v) {
+            double target = v * mass / 2.0;
+            int low = cut;
+            int high = max + 1;
+            while (high - low > 1) {
+                int mid = (low + high) >>> 1;
+                if (upper(mid) > target) low = mid;
+                else high = mid;
+            }
+            return low;
+        }
+
+        // Решение K'(t) = y (y > 0): Ньютон, защищенный вилкой
+        private double saddlepoint(double y) {
+            double low = 0.0;
+            double high = 1.0;
+            while (cumulant1(high) < y) {
+                low = high;
+                high *= 2.0;
+            }
+            double t = Math.min(y / variance, (low + high) / 2.0);
+            for (int i = 0; i < 100; i++) {
+                double f = cumulant1(t) - y;
+                if (f < 0) low = t;
+                else high = t;
+                double next = t - f / cumulant2(t);
+                if (!(next > low && next < high)) {
+                    next = (low + high) / 2.0;
+                }
+                if (Math.abs(next - t) <= 1e-14 * t) {
+                    return next;
+                }
+                t = next;
+            }
+            return t;
+        }
+
+        // Около нуля - ряды Тейлора, иначе разность гиперболических функций теряет точность
+        private double cumulant(double t) {
+            double s2 = (double) sides * sides;
+            if (sides * t < 0.1) {
+                double t2 = t * t;
+                return t2 * (s2 - 1) / 24.0 - t2 * t2 * (s2 * s2 - 1) / 2880.0
+                        + t2 * t2 * t2 * (s2 * s2 * s2 - 1) / 181440.0;
+            }
+            return logSinh(sides * t / 2.0) - logSinh(t / 2.0) - Math.log(sides);
+        }
+
+        private double cumulant1(double t) {
+            double s2 = (double) sides * sides;
+            if (sides * t < 0.1) {
+                double t2 = t * t;
+                return t * (s2 - 1) / 12.0 - t * t2 * (s2 * s2 - 1) / 720.0
+                        + t * t2 * t2 * (s2 * s2 * s2 - 1) / 30240.0;
+            }
+            return sides / (2.0 * Math.tanh(sides * t / 2.0)) - 1.0 / (2.0 * Math.tanh(t / 2.0));
+        }
+
+        private double cumulant2(double t) {
+            double s2 = (double) sides * sides;
+            if (sides * t < 0.1) {
+                double t2 = t * t;
+                return (s2 - 1) / 12.0 - t2 * (s2 * s2 - 1) / 240.0 + t2 * t2 * (s2 * s2 * s2 - 1) / 6048.0;
+            }
+            double a = Math.sinh(t / 2.0);
+            double b = Math.sinh(sides * t / 2.0);
+            return 0.25 / (a * a) - s2 / 4.0 / (b * b);
+        }
+
+        private static double logSinh(double x) {
+            return x > 20.0 ? x - Math.log(2.0) : Math.log(Math.sinh(x));
+        }
+    }
+
+    private static double normalDensity(double z) {
+        return Math.exp(-z * z / 2.0) / Math.sqrt(2.0 * Math.PI);
+    }
+
+    // 1 - Ф(z) через erfc (Чебышевская аппроксимация, относительная ошибка < 1.2e-7)
+    static double normalUpper(double z) {
+        double x = Math.abs(z) / Math.sqrt(2.0);
+        double t = 1.0 / (1.0 + 0.5 * x);
+        double erfc = t * Math.exp(-x * x - 1.26551223 + t * (1.00002368 + t * (0.37409196
+                + t * (0.09678418 + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398
+                + t * (1.48851587 + t * (-0.82215223 + t * 0.17087277)))))))));
+        return z >= 0 ? erfc / 2.0 : 1.0 - erfc / 2.0;
+    }
+
+    // Таблица Уолкера: одна равномерная выборка дает значение с точной вероятностью
+    static final class AliasTable {
+        private final int min;
+        private final double[] probability;
+        private final int[] alias;
+
+        AliasTable(DiceDistribution distribution) {
+            int n = distribution.getMax() - distribution.getMin() + 1;
+            this.min = distribution.getMin();
+            this.probability = new double[n];
+            this.alias = new int[n];
+
+            double[] scaled = new double[n];
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int smallSize = 0;
+            int largeSize = 0;
+            for (int i = 0; i < n; i++) {
+                scaled[i] = distribution.probabilityOf(min + i) * n;
+                if (scaled[i] < 1.0) small[smallSize++] = i;
+                else large[largeSize++] = i;
+            }
+            while (smallSize > 0 && largeSize > 0) {
+                int s = small[--smallSize];
+                int l = large[--largeSize];
+                probability[s] = scaled[s];
+                alias[s] = l;
+                scaled[l] = scaled[l] + scaled[s] - 1.0;
+                if (scaled[l] < 1.0) small[smallSize++] = l;
+                else large[largeSize++] = l;
+            }
+            // Остатки равны единице с точностью до округления
+            while (largeSize > 0) probability[large[--largeSize]] = 1.0;
+            while (smallSize > 0) probability[small[--smallSize]] = 1.0;
+        }
+
+        int sample(RngStream random) {
+            double u = random.nextDouble() * probability.length;
+            int i = (int) u;
+            return min + (u - i < probability[i] ? i : alias[i]);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.HG.heroesglory.core.dice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Потокобезопасный LRU-кэш ограниченного размера: самая давно не запрошенная
+ * запись вытесняется при переполнении. Поиск и вставка не создают объектов,
+ * кроме самой записи.
+ */
+final class LruCache<K, V> {
+    private final Map<K, V> map;
+
+    LruCache(final int capacity) {
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    // Уже лежащее значение остается; возвращается то, что в кэше после вызова
+    synchronized V putIfAbsent(K key, V value) {
+        V previous = map.get(key);
+        if (previous != null) {
+            return previous;
+        }
+        map.put(key, value);
+        return value;
+    }
+
+    synchronized int size() {
+        return map.size();
+    }
+
+    synchronized void clear() {
+        map.clear();
+    }
+}
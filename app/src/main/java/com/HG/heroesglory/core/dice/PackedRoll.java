@@ -0,0 +1,49 @@
+package com.HG.heroesglory.core.dice;
+
+/**
+ * Упаковка результата броска в один long для пакетных API {@link DiceRollSystem}.
+ *
+ * Биты 0..31 - итог (int со знаком), биты 32..55 - натуральный бросок (без знака),
+ * биты 56..58 - флаги успеха, крита и критического провала.
+ */
+public final class PackedRoll {
+    public static final long SUCCESS = 1L << 56;
+    public static final long CRITICAL = 1L << 57;
+    public static final long CRITICAL_FAIL = 1L << 58;
+
+    public static final int MAX_NATURAL = 0xFFFFFF;
+
+    private PackedRoll() {}
+
+    public static long pack(int naturalRoll, int total, long flags) {
+        return (total & 0xFFFFFFFFL)
+                | ((long) (naturalRoll & MAX_NATURAL) << 32)
+                | flags;
+    }
+
+    public static int naturalRoll(long packed) {
+        return (int) (packed >>> 32) & MAX_NATURAL;
+    }
+
+    public static int total(long packed) {
+        return (int) packed;
+    }
+
+    public static boolean isSuccess(long packed) {
+        return (packed & SUCCESS) != 0;
+    }
+
+    public static boolean isCritical(long packed) {
+        return (packed & CRITICAL) != 0;
+    }
+
+    public static boolean isCriticalFail(long packed) {
+        return (packed & CRITICAL_FAIL) != 0;
+    }
+
+    // Модификатор и сложность в упаковку не входят - их знает вызывающий код
+    public static RollResult toRollResult(long packed, int modifier, int difficultyClass) {
+        return new RollResult(naturalRoll(packed), modifier, total(packed), difficultyClass,
+                isSuccess(packed), isCritical(packed), isCriticalFail(packed));
+    }
+}
@@ -0,0 +1,103 @@
+package com.HG.heroesglory.core.dice;
+
+import com.HG.heroesglory.core.entities.Combatant;
+
+/**
+ * Точные шансы бросков вместо оценки тысячами прогонов DiceRollSystem.
+ * Распределения строятся сверткой и хранятся в ограниченном LRU-кэше
+ * по паре (выражение, модификатор), поэтому повторный запрос из UI или
+ * инструментов баланса занимает микросекунды.
+ */
+public final class ProbabilityEngine {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final ProbabilityEngine INSTANCE = new ProbabilityEngine(DEFAULT_CAPACITY);
+    private static final DiceExpression D20 = DiceExpression.compile("1d20");
+
+    private final LruCache<Key, DiceDistribution> cache;
+
+    public ProbabilityEngine(int capacity) {
+        this.cache = new LruCache<>(capacity);
+    }
+
+    public static ProbabilityEngine getInstance() {
+        return INSTANCE;
+    }
+
+    // Распределение выражения; характеристики в нем считаются нулевыми и входят в modifier
+    public DiceDistribution distribution(DiceExpression expression, int modifier) {
+        Key key = new Key(expression.getSource(), modifier);
+        DiceDistribution cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return cache.putIfAbsent(key, compute(expression).shift(modifier));
+    }
+
+    public DiceDistribution distribution(DiceExpression expression, Combatant source) {
+        return distribution(expression, expression.abilityBonus(source));
+    }
+
+    // P(итог >= target)
+    public double chanceAtLeast(DiceExpression expression, int modifier, int target) {
+        return distribution(expression, modifier).probabilityAtLeast(target);
+    }
+
+    // Шанс успеха проверки как в DiceRollSystem.rollD20: d20 + modifier >= difficultyClass
+    public double d20CheckChance(int modifier, int difficultyClass) {
+        return chanceAtLeast(D20, modifier, difficultyClass);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    private static DiceDistribution compute(DiceExpression expression) {
+        DiceDistribution result = DiceDistribution.constant(0);
+        for (int i = 0; i < expression.getTermCount(); i++) {
+            DiceExpression.Term term = expression.getTerm(i);
+            DiceDistribution part;
+            switch (term.getKind()) {
+                case DiceExpression.Term.CONSTANT:
+                    part = DiceDistribution.constant(term.getConstant());
+                    break;
+                case DiceExpression.Term.DICE:
+                    DiceDistribution die = term.isExploding()
+                            ? DiceDistribution.exploding(term.getSides(), DiceExpression.MAX_EXPLOSIONS)
+                            : DiceDistribution.uniform(term.getSides());
+                    part = DiceDistribution.keep(die, term.getCount(), term.getKeep(), term.isKeepHighest());
+                    break;
+                default:
+                    continue; // характеристики приходят через modifier
+            }
+            result = result.convolve(term.getSign() < 0 ? part.negate() : part);
+        }
+        return result;
+    }
+
+    private static final class Key {
+        private final String source;
+        private final int modifier;
+
+        Key(String source, int modifier) {
+            this.source = source;
+            this.modifier = modifier;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return modifier == other.modifier && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * source.hashCode() + modifier;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.HG.heroesglory.core.dice;
+
+import java.util.SplittableRandom;
+
+/**
+ * Детерминированный поток случайных чисел без блокировок.
+ * Не потокобезопасен: каждый поток (бой, симуляция) владеет своим экземпляром.
+ */
+public final class RngStream {
+    private static final SplittableRandom SEEDER = new SplittableRandom();
+
+    private final long seed;
+    private final SplittableRandom random;
+    private long draws;
+
+    public RngStream(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    // Случайное зерно для потоков, которым не нужно воспроизведение
+    public static synchronized long randomSeed() {
+        return SEEDER.nextLong();
+    }
+
+    public int nextInt(int bound) {
+        draws++;
+        return random.nextInt(bound);
+    }
+
+    public long nextLong() {
+        draws++;
+        return random.nextLong();
+    }
+
+    public double nextDouble() {
+        draws++;
+        return random.nextDouble();
+    }
+
+    public long getSeed() { return seed; }
+    public long getDraws() { return draws; }
+}
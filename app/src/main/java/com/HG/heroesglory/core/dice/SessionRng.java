@@ -0,0 +1,119 @@
+package com.HG.heroesglory.core.dice;
+
+import com.HG.heroesglory.core.entities.GameSession;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Корневой генератор игровой сессии. Из одного зерна выводятся независимые
+ * потоки (инициатива, атака, урон, добыча), поэтому параллельные бои не делят
+ * общий генератор, а любую сессию можно воспроизвести бит в бит.
+ */
+public final class SessionRng {
+
+    public enum Stream {
+        INITIATIVE, ATTACK, DAMAGE, LOOT
+    }
+
+    private final long rootSeed;
+    private final RngStream[] streams;
+
+    public SessionRng(long rootSeed) {
+        this.rootSeed = rootSeed;
+        this.streams = new RngStream[Stream.values().length];
+
+        // Зерна потоков выводятся в фиксированном порядке, поэтому не зависят
+        // от того, какой поток запросили первым
+        SplittableRandom root = new SplittableRandom(rootSeed);
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = new RngStream(root.split().nextLong());
+        }
+    }
+
+    public static SessionRng forSession(GameSession session) {
+        Long seed = session.getRngSeed();
+        if (seed == null) {
+            seed = RngStream.randomSeed();
+            session.setRngSeed(seed);
+        }
+        return new SessionRng(seed);
+    }
+
+    public RngStream stream(Stream stream) {
+        return streams[stream.ordinal()];
+    }
+
+    // Дочерний генератор, например для отдельного боя или прогона симуляции
+    public SessionRng fork(long index) {
+        return new SessionRng(new SplittableRandom(rootSeed ^ (index * 0x9E3779B97F4A7C15L)).nextLong());
+    }
+
+    public long getRootSeed() {
+        return rootSeed;
+    }
+
+    public Log snapshot() {
+        long[] draws = new long[streams.length];
+        for (int i = 0; i < streams.length; i++) {
+            draws[i] = streams[i].getDraws();
+        }
+        return new Log(rootSeed, draws);
+    }
+
+    /**
+     * Компактный журнал: корневое зерно и число выборок по каждому потоку.
+     * Воспроизведение - новый SessionRng с тем же зерном и те же команды;
+     * совпадение счетчиков подтверждает, что прогон пошел тем же путем.
+     */
+    public static final class Log {
+        private final long rootSeed;
+        private final long[] draws;
+
+        public Log(long rootSeed, long[] draws) {
+            this.rootSeed = rootSeed;
+            this.draws = draws.clone();
+        }
+
+        public long getRootSeed() { return rootSeed; }
+
+        public long getDraws(Stream stream) {
+            return stream.ordinal() < draws.length ? draws[stream.ordinal()] : 0;
+        }
+
+        public SessionRng replay() {
+            return new SessionRng(rootSeed);
+        }
+
+        public boolean matches(SessionRng rng) {
+            if (rng.getRootSeed() != rootSeed) return false;
+            for (Stream stream : Stream.values()) {
+                if (rng.stream(stream).getDraws() != getDraws(stream)) return false;
+            }
+            return true;
+        }
+
+        // Зерно хранится строкой: MapConverter и Firestore теряют точность long через double
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("seed", Long.toString(rootSeed));
+            for (Stream stream : Stream.values()) {
+                map.put(stream.name().toLowerCase(), getDraws(stream));
+            }
+            return map;
+        }
+
+        public static Log fromMap(Map<String, Object> map) {
+            long seed = Long.parseLong(String.valueOf(map.get("seed")));
+            long[] draws = new long[Stream.values().length];
+            for (Stream stream : Stream.values()) {
+                Object value = map.get(stream.name().toLowerCase());
+                if (value instanceof Number) {
+                    draws[stream.ordinal()] = ((Number) value).longValue();
+                }
+            }
+            return new Log(seed, draws);
+        }
+    }
+}
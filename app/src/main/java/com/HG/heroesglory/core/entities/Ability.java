@@ -0,0 +1,27 @@
+package com.HG.heroesglory.core.entities;
+
+import java.util.Locale;
+
+// Характеристики D&D, на которые могут ссылаться выражения бросков ("2d8+STR")
+public enum Ability {
+    STR, DEX, CON, INT, WIS, CHA,
+    SPELL; // заклинательная характеристика: лучшая из INT и WIS
+
+    public int modifierOf(Combatant combatant) {
+        return combatant != null ? combatant.getModifier(this) : 0;
+    }
+
+    // Принимает как короткие ("STR"), так и полные ("strength") названия
+    public static Ability fromToken(String token) {
+        switch (token.toUpperCase(Locale.ROOT)) {
+            case "STR": case "STRENGTH": return STR;
+            case "DEX": case "DEXTERITY": return DEX;
+            case "CON": case "CONSTITUTION": return CON;
+            case "INT": case "INTELLIGENCE": return INT;
+            case "WIS": case "WISDOM": return WIS;
+            case "CHA": case "CHARISMA": return CHA;
+            case "SPELL": return SPELL;
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.HG.heroesglory.core.entities;
+
+import java.util.Locale;
+
+// Встроенные типы атак; правила атаки задает AttackProfile
+public enum AttackType {
+    MELEE(Ability.STR, "1d6+STR"),
+    RANGED(Ability.DEX, "1d4+DEX"),
+    FINESSE(Ability.DEX, "1d4"),
+    SPELL(Ability.SPELL, "1d8+SPELL"),
+    UNARMED(null, "1d4");
+
+    private final Ability ability;
+    private final String damageDice;
+
+    AttackType(Ability ability, String damageDice) {
+        this.ability = ability;
+        this.damageDice = damageDice;
+    }
+
+    // Характеристика для бонуса атаки; null - только собственный бонус бойца
+    public Ability getAbility() { return ability; }
+    public String getDamageDice() { return damageDice; }
+
+    // Неизвестные названия считаются безоружной атакой, как раньше в CombatSystem
+    public static AttackType fromName(String name) {
+        if (name == null) {
+            return UNARMED;
+        }
+        switch (name.toUpperCase(Locale.ROOT)) {
+            case "MELEE": return MELEE;
+            case "RANGED": return RANGED;
+            case "FINESSE": return FINESSE;
+            case "SPELL": return SPELL;
+            default: return UNARMED;
+        }
+    }
+}
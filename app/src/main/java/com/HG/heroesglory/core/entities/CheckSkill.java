@@ -0,0 +1,44 @@
+package com.HG.heroesglory.core.entities;
+
+import java.util.Locale;
+
+// Навыки для проверок (скрытность, атлетика и т.д.) и их характеристики
+public enum CheckSkill {
+    STEALTH(Ability.DEX),
+    ACROBATICS(Ability.DEX),
+    ATHLETICS(Ability.STR),
+    ARCANA(Ability.INT),
+    INVESTIGATION(Ability.INT),
+    PERCEPTION(Ability.WIS),
+    INSIGHT(Ability.WIS),
+    PERSUASION(Ability.CHA),
+    DECEPTION(Ability.CHA);
+
+    private static final CheckSkill[] VALUES = values();
+
+    private final Ability ability;
+
+    CheckSkill(Ability ability) {
+        this.ability = ability;
+    }
+
+    public Ability getAbility() { return ability; }
+
+    public int modifierOf(Combatant combatant) {
+        return ability.modifierOf(combatant);
+    }
+
+    // null для неизвестного навыка: проверка идет без модификатора
+    public static CheckSkill fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String upper = name.toUpperCase(Locale.ROOT);
+        for (CheckSkill skill : VALUES) {
+            if (skill.name().equals(upper)) {
+                return skill;
+            }
+        }
+        return null;
+    }
+}
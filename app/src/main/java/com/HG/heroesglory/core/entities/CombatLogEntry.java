@@ -0,0 +1,64 @@
+package com.HG.heroesglory.core.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Двоичный журнал одного боя (CombatLog.toBlob) - несколько сотен байт на бой.
+ * rosterIds - id бойцов в порядке слотов журнала через запятую.
+ */
+@Entity(tableName = "combat_logs", indices = {@Index("sessionId")})
+public class CombatLogEntry {
+    @PrimaryKey @NonNull
+    private String id;
+
+    private String sessionId;
+    private String encounterId;
+    private long createdAt;
+    private String rngSeed; // long в строке, как в журнале SessionRng
+    private boolean victory;
+    private int rounds;
+    private String rosterIds;
+    private byte[] data;
+
+    public CombatLogEntry() {}
+
+    public CombatLogEntry(@NonNull String id, String sessionId, String encounterId, byte[] data) {
+        this.id = id;
+        this.sessionId = sessionId;
+        this.encounterId = encounterId;
+        this.data = data;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    // Getters and Setters
+    @NonNull
+    public String getId() { return id; }
+    public void setId(@NonNull String id) { this.id = id; }
+
+    public String getSessionId() { return sessionId; }
+    public void setSessionId(String sessionId) { this.sessionId = sessionId; }
+
+    public String getEncounterId() { return encounterId; }
+    public void setEncounterId(String encounterId) { this.encounterId = encounterId; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public String getRngSeed() { return rngSeed; }
+    public void setRngSeed(String rngSeed) { this.rngSeed = rngSeed; }
+
+    public boolean isVictory() { return victory; }
+    public void setVictory(boolean victory) { this.victory = victory; }
+
+    public int getRounds() { return rounds; }
+    public void setRounds(int rounds) { this.rounds = rounds; }
+
+    public String getRosterIds() { return rosterIds; }
+    public void setRosterIds(String rosterIds) { this.rosterIds = rosterIds; }
+
+    public byte[] getData() { return data; }
+    public void setData(byte[] data) { this.data = data; }
+}
@@ -2,6 +2,7 @@ package com.HG.heroesglory.core.entities;
 
 import androidx.annotation.NonNull;
 import androidx.room.Entity;
+import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
 
 import java.util.HashMap;
@@ -9,6 +10,12 @@ import java.util.Map;
 
 @Entity(tableName = "combatants")
 public class Combatant {
+    public static final byte TYPE_PLAYER = 0;
+    public static final byte TYPE_ENEMY = 1;
+    public static final byte TYPE_NPC = 2;
+    public static final int DEFAULT_ACTION_POINTS = 1;
+    private static final int ABILITY_COUNT = Ability.values().length;
+
     @PrimaryKey
     @NonNull
     private String id;
@@ -23,6 +30,7 @@ public class Combatant {
     private boolean isCurrentTurn;
     private String imageUrl;
     private String statusEffect;
+    private boolean boss; // боссы получают более сильный ИИ (MctsBrain)
 
     // Характеристики D&D
     private int strength;
@@ -36,6 +44,31 @@ public class Combatant {
     private int attackBonus;
     private int damageBonus;
 
+    // Ресурсы навыков: мана (maxMana 0 - боец без маны, стоимость не проверяется)
+    // и очки действий, восстанавливаемые в начале хода
+    private int mana;
+    private int maxMana;
+    private int actionPoints = DEFAULT_ACTION_POINTS;
+    private int maxActionPoints = DEFAULT_ACTION_POINTS;
+
+    // Кэш модификаторов по Ability.ordinal(); сбрасывается при изменении характеристик
+    @Ignore
+    private int[] modifiers;
+    @Ignore
+    private int statsVersion;
+    @Ignore
+    private byte typeCode = -1;
+    // Состояния: бит на StatusEffect, оставшиеся ходы (STATUS_PERMANENT - бессрочно) и стаки.
+    // Массивы создаются при первом наложении и дальше не пересоздаются
+    @Ignore
+    private long statusMask;
+    @Ignore
+    private short[] statusDurations;
+    @Ignore
+    private byte[] statusStacks;
+
+    public static final int STATUS_PERMANENT = -1;
+
     public Combatant() {}
 
     public Combatant(@NonNull String id, String name, String type, int maxHp, int armorClass) {
@@ -58,7 +91,10 @@ public class Combatant {
     public void setName(String name) { this.name = name; }
 
     public String getType() { return type; }
-    public void setType(String type) { this.type = type; }
+    public void setType(String type) {
+        this.type = type;
+        this.typeCode = -1;
+    }
 
     public int getCurrentHp() { return currentHp; }
     public void setCurrentHp(int currentHp) { this.currentHp = currentHp; }
@@ -81,46 +117,142 @@ public class Combatant {
     public String getImageUrl() { return imageUrl; }
     public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
 
+    public boolean isBoss() { return boss; }
+    public void setBoss(boolean boss) { this.boss = boss; }
+
     public String getStatusEffect() { return statusEffect; }
     public void setStatusEffect(String statusEffect) { this.statusEffect = statusEffect; }
 
     public int getStrength() { return strength; }
-    public void setStrength(int strength) { this.strength = strength; }
+    public void setStrength(int strength) {
+        this.strength = strength;
+        invalidateStats();
+    }
 
     public int getDexterity() { return dexterity; }
-    public void setDexterity(int dexterity) { this.dexterity = dexterity; }
+    public void setDexterity(int dexterity) {
+        this.dexterity = dexterity;
+        invalidateStats();
+    }
 
     public int getConstitution() { return constitution; }
-    public void setConstitution(int constitution) { this.constitution = constitution; }
+    public void setConstitution(int constitution) {
+        this.constitution = constitution;
+        invalidateStats();
+    }
 
     public int getIntelligence() { return intelligence; }
-    public void setIntelligence(int intelligence) { this.intelligence = intelligence; }
+    public void setIntelligence(int intelligence) {
+        this.intelligence = intelligence;
+        invalidateStats();
+    }
 
     public int getWisdom() { return wisdom; }
-    public void setWisdom(int wisdom) { this.wisdom = wisdom; }
+    public void setWisdom(int wisdom) {
+        this.wisdom = wisdom;
+        invalidateStats();
+    }
 
     public int getCharisma() { return charisma; }
-    public void setCharisma(int charisma) { this.charisma = charisma; }
+    public void setCharisma(int charisma) {
+        this.charisma = charisma;
+        invalidateStats();
+    }
 
     public int getAttackBonus() { return attackBonus; }
-    public void setAttackBonus(int attackBonus) { this.attackBonus = attackBonus; }
+    public void setAttackBonus(int attackBonus) {
+        this.attackBonus = attackBonus;
+        invalidateStats();
+    }
 
     public int getDamageBonus() { return damageBonus; }
-    public void setDamageBonus(int damageBonus) { this.damageBonus = damageBonus; }
+    public void setDamageBonus(int damageBonus) {
+        this.damageBonus = damageBonus;
+        invalidateStats();
+    }
 
     // Вспомогательные методы
-    public int getStrengthModifier() { return (strength - 10) / 2; }
-    public int getDexterityModifier() { return (dexterity - 10) / 2; }
-    public int getConstitutionModifier() { return (constitution - 10) / 2; }
-    public int getIntelligenceModifier() { return (intelligence - 10) / 2; }
-    public int getWisdomModifier() { return (wisdom - 10) / 2; }
-    public int getCharismaModifier() { return (charisma - 10) / 2; }
+    public int getMana() { return mana; }
+    public void setMana(int mana) { this.mana = mana; }
+
+    public int getMaxMana() { return maxMana; }
+    public void setMaxMana(int maxMana) { this.maxMana = maxMana; }
+
+    public int getActionPoints() { return actionPoints; }
+    public void setActionPoints(int actionPoints) { this.actionPoints = actionPoints; }
+
+    public int getMaxActionPoints() { return maxActionPoints; }
+    public void setMaxActionPoints(int maxActionPoints) { this.maxActionPoints = maxActionPoints; }
+
+    public boolean usesMana() {
+        return maxMana > 0;
+    }
+
+    public void restoreActionPoints() {
+        actionPoints = maxActionPoints;
+    }
+
+    public int getStrengthModifier() { return getModifier(Ability.STR); }
+    public int getDexterityModifier() { return getModifier(Ability.DEX); }
+    public int getConstitutionModifier() { return getModifier(Ability.CON); }
+    public int getIntelligenceModifier() { return getModifier(Ability.INT); }
+    public int getWisdomModifier() { return getModifier(Ability.WIS); }
+    public int getCharismaModifier() { return getModifier(Ability.CHA); }
+
+    // Модификатор из кэша; таблица пересчитывается только после изменения характеристик
+    public int getModifier(Ability ability) {
+        int[] table = modifiers;
+        if (table == null) {
+            table = computeModifiers();
+            modifiers = table;
+        }
+        return table[ability.ordinal()];
+    }
+
+    // Растет при каждом изменении характеристик - для кэшей, зависящих от бойца
+    public int statsVersion() {
+        return statsVersion;
+    }
+
+    public byte typeCode() {
+        if (typeCode < 0) {
+            typeCode = typeCodeOf(type);
+        }
+        return typeCode;
+    }
+
+    public boolean isPlayer() { return typeCode() == TYPE_PLAYER; }
+    public boolean isEnemy() { return typeCode() == TYPE_ENEMY; }
+
+    public static byte typeCodeOf(String type) {
+        if ("PLAYER".equals(type)) return TYPE_PLAYER;
+        if ("ENEMY".equals(type)) return TYPE_ENEMY;
+        return TYPE_NPC;
+    }
+
+    private void invalidateStats() {
+        modifiers = null;
+        statsVersion++;
+    }
+
+    private int[] computeModifiers() {
+        int[] table = new int[ABILITY_COUNT];
+        table[Ability.STR.ordinal()] = (strength - 10) / 2;
+        table[Ability.DEX.ordinal()] = (dexterity - 10) / 2;
+        table[Ability.CON.ordinal()] = (constitution - 10) / 2;
+        table[Ability.INT.ordinal()] = (intelligence - 10) / 2;
+        table[Ability.WIS.ordinal()] = (wisdom - 10) / 2;
+        table[Ability.CHA.ordinal()] = (charisma - 10) / 2;
+        table[Ability.SPELL.ordinal()] = Math.max(table[Ability.INT.ordinal()], table[Ability.WIS.ordinal()]);
+        return table;
+    }
 
     public void takeDamage(int damage) {
         currentHp = Math.max(0, currentHp - damage);
         if (currentHp <= 0) {
             isAlive = false;
             statusEffect = "DEAD";
+            statusMask = 0;
         }
     }
 
@@ -133,7 +265,94 @@ public class Combatant {
     }
 
     public boolean hasStatusEffect() {
-        return statusEffect != null && !statusEffect.isEmpty();
+        return statusMask != 0 || (statusEffect != null && !statusEffect.isEmpty());
+    }
+
+    public long statusMask() {
+        return statusMask;
+    }
+
+    public boolean hasStatus(StatusEffect effect) {
+        return (statusMask & effect.bit()) != 0;
+    }
+
+    public int statusDuration(StatusEffect effect) {
+        return hasStatus(effect) ? statusDurations[effect.ordinal()] : 0;
+    }
+
+    public int statusStacks(StatusEffect effect) {
+        return hasStatus(effect) ? statusStacks[effect.ordinal()] : 0;
+    }
+
+    // Низкоуровневая запись состояния; правила наложения и тики - в StatusEngine
+    public void setStatus(StatusEffect effect, int duration, int stacks) {
+        if (statusDurations == null) {
+            statusDurations = new short[StatusEffect.COUNT];
+            statusStacks = new byte[StatusEffect.COUNT];
+        }
+        statusDurations[effect.ordinal()] = (short) duration;
+        statusStacks[effect.ordinal()] = (byte) stacks;
+        statusMask |= effect.bit();
+    }
+
+    public void clearStatus(StatusEffect effect) {
+        statusMask &= ~effect.bit();
+    }
+
+    public void clearStatuses() {
+        statusMask = 0;
+    }
+
+    // Текст для UI: "DEAD" или активные состояния через запятую
+    public String statusLabel() {
+        if (statusEffect != null && !statusEffect.isEmpty()) {
+            return statusEffect;
+        }
+        StringBuilder label = new StringBuilder();
+        for (StatusEffect effect : StatusEffect.values()) {
+            if (hasStatus(effect)) {
+                if (label.length() > 0) {
+                    label.append(", ");
+                }
+                label.append(effect.name());
+            }
+        }
+        return label.toString();
+    }
+
+    // Независимая копия бойца (для симуляций и порождения врагов по шаблону)
+    public Combatant copy() {
+        Combatant copy = new Combatant(id, name, type, maxHp, armorClass);
+        copyStateTo(copy);
+        return copy;
+    }
+
+    // Перенос состояния и характеристик в копию (в том числе копию подкласса)
+    protected void copyStateTo(Combatant copy) {
+        copy.currentHp = currentHp;
+        copy.initiative = initiative;
+        copy.isAlive = isAlive;
+        copy.isCurrentTurn = isCurrentTurn;
+        copy.imageUrl = imageUrl;
+        copy.statusEffect = statusEffect;
+        copy.boss = boss;
+        copy.statusMask = statusMask;
+        if (statusDurations != null) {
+            copy.statusDurations = statusDurations.clone();
+            copy.statusStacks = statusStacks.clone();
+        }
+        copy.strength = strength;
+        copy.dexterity = dexterity;
+        copy.constitution = constitution;
+        copy.intelligence = intelligence;
+        copy.wisdom = wisdom;
+        copy.charisma = charisma;
+        copy.attackBonus = attackBonus;
+        copy.damageBonus = damageBonus;
+        copy.mana = mana;
+        copy.maxMana = maxMana;
+        copy.actionPoints = actionPoints;
+        copy.maxActionPoints = maxActionPoints;
     }
 
     public Map<String, Object> toMap() {
@@ -0,0 +1,195 @@
+package com.HG.heroesglory.core.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.PrimaryKey;
+
+import com.HG.heroesglory.core.dice.AttackProfile;
+import com.HG.heroesglory.core.dice.DiceExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Неизменяемый шаблон врага, собранный из данных Firestore один раз: характеристики,
+ * профиль атаки, выражение урона и готовый боец-образец с посчитанными модификаторами.
+ * spawn() копирует образец, поэтому каждый бой получает свое HP, инициативу и состояния
+ * без повторного разбора Map с приведениями типов.
+ * Изменение шаблона в Firestore видно по полям: matches сравнивает их с данными напрямую,
+ * а не по hashCode, у которого бывают совпадения.
+ */
+@Entity(tableName = "enemy_prototypes")
+public final class EnemyPrototype {
+    private static final int DEFAULT_MAX_HP = 20;
+    private static final int DEFAULT_ARMOR_CLASS = 10;
+
+    @PrimaryKey
+    @NonNull
+    private final String id;
+
+    private final String name;
+    private final int maxHp;
+    private final int armorClass;
+    private final int strength;
+    private final int dexterity;
+    private final int constitution;
+    private final int intelligence;
+    private final int wisdom;
+    private final int charisma;
+    private final int attackBonus;
+    private final int damageBonus;
+    private final boolean boss;
+    private final String imageUrl;
+    private final int squadSize;
+    private final String attackType; // null - ближний бой
+    private final String damage;     // null - урон профиля атаки
+
+    @Ignore
+    private final AttackProfile attackProfile;
+    @Ignore
+    private final DiceExpression damageExpression;
+    @Ignore
+    private final Combatant template;
+
+    public EnemyPrototype(@NonNull String id, String name, int maxHp, int armorClass, int strength,
+                          int dexterity, int constitution, int intelligence, int wisdom, int charisma,
+                          int attackBonus, int damageBonus, boolean boss, String imageUrl, int squadSize,
+                          String attackType, String damage) {
+        this.id = id;
+        this.name = name;
+        this.maxHp = maxHp;
+        this.armorClass = armorClass;
+        this.strength = strength;
+        this.dexterity = dexterity;
+        this.constitution = constitution;
+        this.intelligence = intelligence;
+        this.wisdom = wisdom;
+        this.charisma = charisma;
+        this.attackBonus = attackBonus;
+        this.damageBonus = damageBonus;
+        this.boss = boss;
+        this.imageUrl = imageUrl;
+        this.squadSize = squadSize;
+        this.attackType = attackType;
+        this.damage = damage;
+
+        this.attackProfile = AttackProfile.forName(attackType);
+        this.damageExpression = compileDamage(damage, attackProfile);
+        this.template = buildTemplate();
+    }
+
+    /**
+     * Шаблон из документа Firestore. Отсутствующие поля получают те же значения
+     * по умолчанию, что и раньше в EnemyRepository: 20 HP, КД 10, остальное 0.
+     */
+    public static EnemyPrototype fromMap(@NonNull String id, Map<String, Object> data) {
+        return new EnemyPrototype(id,
+                (String) data.get("name"),
+                intValue(data, "maxHP", DEFAULT_MAX_HP),
+                intValue(data, "armorClass", DEFAULT_ARMOR_CLASS),
+                intValue(data, "strength", 0),
+                intValue(data, "dexterity", 0),
+                intValue(data, "constitution", 0),
+                intValue(data, "intelligence", 0),
+                intValue(data, "wisdom", 0),
+                intValue(data, "charisma", 0),
+                intValue(data, "attackBonus", 0),
+                intValue(data, "damageBonus", 0),
+                Boolean.TRUE.equals(data.get("isBoss")),
+                (String) data.get("imageUrl"),
+                intValue(data, "squadSize", 1),
+                (String) data.get("attackType"),
+                (String) data.get("damage"));
+    }
+
+    // Данные Firestore дают те же поля, из которых собран шаблон (значения по умолчанию - как в fromMap)
+    public boolean matches(Map<String, Object> data) {
+        return data != null
+                && Objects.equals(name, data.get("name"))
+                && maxHp == intValue(data, "maxHP", DEFAULT_MAX_HP)
+                && armorClass == intValue(data, "armorClass", DEFAULT_ARMOR_CLASS)
+                && strength == intValue(data, "strength", 0)
+                && dexterity == intValue(data, "dexterity", 0)
+                && constitution == intValue(data, "constitution", 0)
+                && intelligence == intValue(data, "intelligence", 0)
+                && wisdom == intValue(data, "wisdom", 0)
+                && charisma == intValue(data, "charisma", 0)
+                && attackBonus == intValue(data, "attackBonus", 0)
+                && damageBonus == intValue(data, "damageBonus", 0)
+                && boss == Boolean.TRUE.equals(data.get("isBoss"))
+                && Objects.equals(imageUrl, data.get("imageUrl"))
+                && squadSize == intValue(data, "squadSize", 1)
+                && Objects.equals(attackType, data.get("attackType"))
+                && Objects.equals(damage, data.get("damage"));
+    }
+
+    // Новый боец для боя; при squadSize > 1 - отряд орды
+    public Combatant spawn() {
+        return squadSize > 1 ? Squad.of(template, squadSize) : template.copy();
+    }
+
+    // count бойцов; повторы получают id вида "goblin#2", как в EncounterBalancer
+    public List<Combatant> spawn(int count) {
+        List<Combatant> spawned = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Combatant enemy = spawn();
+            if (i > 1) {
+                enemy.setId(id + "#" + i);
+            }
+            spawned.add(enemy);
+        }
+        return spawned;
+    }
+
+    private Combatant buildTemplate() {
+        Combatant enemy = new Combatant(id, name, "ENEMY", maxHp, armorClass);
+        enemy.setStrength(strength);
+        enemy.setDexterity(dexterity);
+        enemy.setConstitution(constitution);
+        enemy.setIntelligence(intelligence);
+        enemy.setWisdom(wisdom);
+        enemy.setCharisma(charisma);
+        enemy.setAttackBonus(attackBonus);
+        enemy.setDamageBonus(damageBonus);
+        enemy.setBoss(boss);
+        if (imageUrl != null) {
+            enemy.setImageUrl(imageUrl);
+        }
+        return enemy;
+    }
+
+    // Ошибка в выражении урона из данных не должна ломать загрузку шаблона
+    private static DiceExpression compileDamage(String damage, AttackProfile profile) {
+        return DiceExpression.compileOrDefault(damage, profile.getDamage());
+    }
+
+    private static int intValue(Map<String, Object> data, String key, int fallback) {
+        Object value = data.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : fallback;
+    }
+
+    @NonNull
+    public String getId() { return id; }
+    public String getName() { return name; }
+    public int getMaxHp() { return maxHp; }
+    public int getArmorClass() { return armorClass; }
+    public int getStrength() { return strength; }
+    public int getDexterity() { return dexterity; }
+    public int getConstitution() { return constitution; }
+    public int getIntelligence() { return intelligence; }
+    public int getWisdom() { return wisdom; }
+    public int getCharisma() { return charisma; }
+    public int getAttackBonus() { return attackBonus; }
+    public int getDamageBonus() { return damageBonus; }
+    public boolean isBoss() { return boss; }
+    public String getImageUrl() { return imageUrl; }
+    public int getSquadSize() { return squadSize; }
+    public String getAttackType() { return attackType; }
+    public String getDamage() { return damage; }
+
+    public AttackProfile attackProfile() { return attackProfile; }
+    public DiceExpression damageExpression() { return damageExpression; }
+}
@@ -135,4 +135,30 @@ public class GameSession {
         }
         sessionData.put("currentPlayerId", playerId);
     }
+
+    // Зерно генератора сессии (см. SessionRng); хранится строкой, чтобы не терять точность long
+    public Long getRngSeed() {
+        if (sessionData != null && sessionData.get("rngSeed") != null) {
+            return Long.parseLong(sessionData.get("rngSeed").toString());
+        }
+        return null;
+    }
+
+    public void setRngSeed(long seed) {
+        if (sessionData == null) {
+            sessionData = new HashMap<>();
+        }
+        sessionData.put("rngSeed", Long.toString(seed));
+    }
+
+    // Номер следующего боя сессии: SessionRng.fork(номер) дает каждому бою свое зерно
+    public long nextCombatIndex() {
+        if (sessionData == null) {
+            sessionData = new HashMap<>();
+        }
+        Object stored = sessionData.get("combatCount");
+        long index = stored != null ? Long.parseLong(stored.toString()) : 0;
+        sessionData.put("combatCount", Long.toString(index + 1));
+        return index;
+    }
 }
@@ -5,6 +5,8 @@ import androidx.room.Entity;
 import androidx.room.PrimaryKey;
 import androidx.room.TypeConverters;
 
+import com.HG.heroesglory.core.dice.AttackProfile;
+import com.HG.heroesglory.core.dice.DiceExpression;
 import com.HG.heroesglory.data.local.converters.MapConverter;
 
 import java.io.Serializable;
@@ -103,4 +105,13 @@ public class Item implements Serializable {
     public void setStats(Map<String, Object> stats) {
         this.stats = stats;
     }
+
+    // Урон оружия из stats.damage ("1d8+STR"); выражение компилируется один раз и кэшируется.
+    // Битая строка из Firestore пишется в лог и заменяется кубом ближнего боя
+    public DiceExpression damageExpression() {
+        Object damage = stats != null ? stats.get("damage") : null;
+        return damage instanceof String
+                ? DiceExpression.compileOrDefault((String) damage, AttackProfile.of(AttackType.MELEE).getDamage())
+                : null;
+    }
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package com.HG.heroesglory.core.entities;
 
+import com.HG.heroesglory.core.dice.AttackProfile;
+import com.HG.heroesglory.core.dice.DiceExpression;
+
 public class Skill {
     private String id;
     private String name;
@@ -13,6 +16,9 @@ public class Skill {
     private String targetType; // SELF, SINGLE_ENEMY, SINGLE_ALLY, AREA, ALL_ENEMIES, ALL_ALLIES
     private boolean isAvailable;
     private int requiredLevel;
+    private String damageDice; // выражение урона/лечения, например "2d6+SPELL"
+    private String effects; // конвейер эффектов, например "damage 8d6; status BURNING 2" (см. SkillPlan)
+    private String trigger; // событие пассивного навыка: ON_HIT, ON_CRIT, ON_KILL, TURN_START, LOW_HP
 
     public Skill() {}
 
@@ -61,7 +67,38 @@ public class Skill {
     public int getRequiredLevel() { return requiredLevel; }
     public void setRequiredLevel(int requiredLevel) { this.requiredLevel = requiredLevel; }
 
+    public String getDamageDice() { return damageDice; }
+    public void setDamageDice(String damageDice) { this.damageDice = damageDice; }
+
+    public String getEffects() { return effects; }
+    public void setEffects(String effects) { this.effects = effects; }
+
+    public String getTrigger() { return trigger; }
+    public void setTrigger(String trigger) { this.trigger = trigger; }
+
     // Utility methods
+    // Битая damageDice из Firestore пишется в лог и заменяется кубом заклинания
+    public DiceExpression damageExpression() {
+        return damageDice != null && !damageDice.isEmpty()
+                ? DiceExpression.compileOrDefault(damageDice, AttackProfile.of(AttackType.SPELL).getDamage())
+                : null;
+    }
+
+    // Эффекты навыка; без них - урон или лечение из damageDice, как раньше
+    public String effectsSource() {
+        if (effects != null && !effects.isEmpty()) {
+            return effects;
+        }
+        if (damageDice == null || damageDice.isEmpty()) {
+            return "";
+        }
+        return ("HEAL".equals(type) ? "heal " : "damage ") + damageDice;
+    }
+
+    public SkillTarget targetKind() {
+        return SkillTarget.fromName(targetType);
+    }
+
     public boolean isOnCooldown() {
         return currentCooldown > 0;
     }
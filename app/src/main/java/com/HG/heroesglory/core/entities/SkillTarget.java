@@ -0,0 +1,42 @@
+package com.HG.heroesglory.core.entities;
+
+import java.util.Locale;
+
+// Цели навыка (Skill.targetType): одна, несколько или все бойцы стороны
+public enum SkillTarget {
+    SELF(false, false),
+    SINGLE_ENEMY(false, true),
+    SINGLE_ALLY(false, false),
+    AREA(true, true),
+    ALL_ENEMIES(true, true),
+    ALL_ALLIES(true, false);
+
+    private final boolean multiple;
+    private final boolean hostile;
+
+    SkillTarget(boolean multiple, boolean hostile) {
+        this.multiple = multiple;
+        this.hostile = hostile;
+    }
+
+    // Навык разрешается по набору целей за один проход
+    public boolean isMultiple() { return multiple; }
+
+    // Цели - противники заклинателя
+    public boolean isHostile() { return hostile; }
+
+    // Неизвестные и пустые значения считаются одиночной целью-противником
+    public static SkillTarget fromName(String name) {
+        if (name == null) {
+            return SINGLE_ENEMY;
+        }
+        switch (name.toUpperCase(Locale.ROOT)) {
+            case "SELF": return SELF;
+            case "SINGLE_ALLY": return SINGLE_ALLY;
+            case "AREA": return AREA;
+            case "ALL_ENEMIES": return ALL_ENEMIES;
+            case "ALL_ALLIES": return ALL_ALLIES;
+            default: return SINGLE_ENEMY;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.HG.heroesglory.core.entities;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Отряд одинаковых врагов для режима орды: одна инициатива, один блок характеристик
+ * и общий запас HP. Урон переливается внутри отряда - ранен всегда только передний
+ * боец, поэтому число живых выводится из HP без массива по бойцам.
+ * Для TurnManager, CombatEngine и сетки боя отряд - один боец.
+ */
+public class Squad extends Combatant {
+    // Больше врагов в бою - враги собираются в отряды (groupHorde)
+    public static final int HORDE_THRESHOLD = 12;
+    public static final int MAX_SQUAD_SIZE = 50;
+    // Сколько бойцов отряда успевают окружить одну цель (8 клеток вокруг нее)
+    public static final int MAX_ATTACKERS_PER_TARGET = 8;
+
+    private final int size;
+    private final int memberHp;
+
+    private Squad(@NonNull String id, String name, String type, int size, int memberHp, int armorClass) {
+        super(id, name, type, size * memberHp, armorClass);
+        this.size = size;
+        this.memberHp = memberHp;
+    }
+
+    // Отряд из size копий statBlock
+    public static Squad of(Combatant statBlock, int size) {
+        int memberHp = Math.max(1, statBlock.getMaxHp());
+        Squad squad = new Squad(statBlock.getId(), statBlock.getName(), statBlock.getType(), size, memberHp,
+                statBlock.getArmorClass());
+        statBlock.copyStateTo(squad);
+        squad.setCurrentHp(size * memberHp);
+        squad.setAlive(true);
+        squad.setStatusEffect(null);
+        return squad;
+    }
+
+    /**
+     * Враги орды, собранные в отряды по шаблону EnemyPrototype: id копии шаблона -
+     * id шаблона или "goblin#2" (EnemyPrototype.spawn, EncounterBalancer). Враги разных
+     * шаблонов не смешиваются, даже если совпадают имя и HP. Готовые отряды не перегруппируются.
+     * До HORDE_THRESHOLD врагов список возвращается как есть.
+     */
+    public static List<Combatant> groupHorde(List<Combatant> enemies) {
+        if (enemies.size() <= HORDE_THRESHOLD) {
+            return enemies;
+        }
+        Map<String, List<Combatant>> byTemplate = new LinkedHashMap<>();
+        List<Combatant> result = new ArrayList<>();
+        for (Combatant enemy : enemies) {
+            if (enemy instanceof Squad) {
+                result.add(enemy);
+                continue;
+            }
+            String key = templateId(enemy.getId());
+            List<Combatant> group = byTemplate.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                byTemplate.put(key, group);
+            }
+            group.add(enemy);
+        }
+        for (List<Combatant> group : byTemplate.values()) {
+            for (int from = 0; from < group.size(); from += MAX_SQUAD_SIZE) {
+                int count = Math.min(MAX_SQUAD_SIZE, group.size() - from);
+                Combatant first = group.get(from);
+                if (count == 1 || first.isBoss()) {
+                    result.addAll(group.subList(from, from + count));
+                    continue;
+                }
+                Squad squad = of(first, count);
+                squad.setId(first.getId() + "#squad" + (from / MAX_SQUAD_SIZE + 1));
+                result.add(squad);
+            }
+        }
+        return result;
+    }
+
+    // "goblin#2" -> "goblin"
+    static String templateId(String id) {
+        int mark = id.indexOf('#');
+        return mark < 0 ? id : id.substring(0, mark);
+    }
+
+    public int getSize() { return size; }
+    public int getMemberHp() { return memberHp; }
+
+    public int aliveMembers() {
+        return aliveMembers(getCurrentHp());
+    }
+
+    // Живые при заданном HP отряда (например, из CombatantState)
+    public int aliveMembers(int currentHp) {
+        return currentHp <= 0 ? 0 : (currentHp + memberHp - 1) / memberHp;
+    }
+
+    // HP раненого переднего бойца
+    public int frontHp() {
+        return frontHp(getCurrentHp());
+    }
+
+    public int frontHp(int currentHp) {
+        int rest = currentHp % memberHp;
+        return currentHp > 0 && rest == 0 ? memberHp : rest;
+    }
+
+    // Бойцы, атакующие одну цель залпом: не больше MAX_ATTACKERS_PER_TARGET
+    public int attackersPerTarget() {
+        return attackersPerTarget(getCurrentHp());
+    }
+
+    public int attackersPerTarget(int currentHp) {
+        return Math.min(aliveMembers(currentHp), MAX_ATTACKERS_PER_TARGET);
+    }
+
+    /**
+     * Потеря HP отряда от навыка по площади: amount получает каждый живой боец,
+     * но не больше своего HP. Урон не меньше HP бойца выбивает весь отряд.
+     */
+    public int areaDamage(int amount, int currentHp) {
+        int alive = aliveMembers(currentHp);
+        if (alive == 0 || amount <= 0) {
+            return 0;
+        }
+        long total = Math.min(amount, frontHp(currentHp)) + (long) (alive - 1) * Math.min(amount, memberHp);
+        return (int) Math.min(total, currentHp);
+    }
+
+    // "Goblin ×37" для сетки боя
+    public String countLabel() {
+        return String.format(Locale.ROOT, "%s ×%d", getName(), aliveMembers());
+    }
+
+    @Override
+    public Squad copy() {
+        Squad copy = new Squad(getId(), getName(), getType(), size, memberHp, getArmorClass());
+        copyStateTo(copy);
+        return copy;
+    }
+}
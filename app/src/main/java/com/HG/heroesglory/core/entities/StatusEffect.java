@@ -0,0 +1,77 @@
+package com.HG.heroesglory.core.entities;
+
+import java.util.Locale;
+
+/**
+ * Состояния бойца. Порядковый номер - бит в Combatant.statusMask(), поэтому
+ * констант не больше 64. Эффект срабатывает в начале или в конце хода своего
+ * носителя: меняет HP на hpPerStack за каждый стак и уменьшает длительность.
+ */
+public enum StatusEffect {
+    //            фаза        HP/стак  макс. стаков  лишает хода
+    POISONED(Phase.TURN_START, -2, 5, false),
+    BURNING(Phase.TURN_START, -3, 3, false),
+    BLEEDING(Phase.TURN_END, -1, 10, false),
+    REGENERATING(Phase.TURN_START, 2, 5, false),
+    STUNNED(Phase.TURN_END, 0, 1, true),
+    PARALYZED(Phase.TURN_END, 0, 1, true),
+    ASLEEP(Phase.TURN_END, 0, 1, true),
+    FRIGHTENED(Phase.TURN_END, 0, 1, false),
+    BLINDED(Phase.TURN_END, 0, 1, false),
+    PRONE(Phase.TURN_START, 0, 1, false),
+    SLOWED(Phase.TURN_END, 0, 1, false),
+    HASTED(Phase.TURN_END, 0, 1, false),
+    WEAKENED(Phase.TURN_END, 0, 3, false),
+    BLESSED(Phase.TURN_END, 0, 1, false),
+    SHIELDED(Phase.TURN_END, 0, 1, false),
+    INVISIBLE(Phase.TURN_END, 0, 1, false);
+
+    public enum Phase {
+        TURN_START, TURN_END
+    }
+
+    public static final int COUNT = values().length;
+
+    private final Phase phase;
+    private final int hpPerStack;
+    private final int maxStacks;
+    private final boolean preventsAction;
+
+    StatusEffect(Phase phase, int hpPerStack, int maxStacks, boolean preventsAction) {
+        this.phase = phase;
+        this.hpPerStack = hpPerStack;
+        this.maxStacks = maxStacks;
+        this.preventsAction = preventsAction;
+    }
+
+    public long bit() {
+        return 1L << ordinal();
+    }
+
+    public Phase getPhase() { return phase; }
+    public int getHpPerStack() { return hpPerStack; }
+    public int getMaxStacks() { return maxStacks; }
+    public boolean preventsAction() { return preventsAction; }
+
+    // Маска всех эффектов, лишающих хода
+    public static long incapacitatingMask() {
+        long mask = 0;
+        for (StatusEffect effect : values()) {
+            if (effect.preventsAction) {
+                mask |= effect.bit();
+            }
+        }
+        return mask;
+    }
+
+    public static StatusEffect fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.HG.heroesglory.core.simulation;
+
+import com.HG.heroesglory.core.combat.AttackPreview;
+import com.HG.heroesglory.core.dice.AttackProfile;
+import com.HG.heroesglory.core.dice.ProbabilityEngine;
+import com.HG.heroesglory.core.entities.Combatant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Подбор врагов из пула под целевую сложность: вероятность победы группы или длину боя.
+ * Комбинации перебираются лучевым поиском и упорядочиваются аналитической моделью
+ * (ожидаемый урон за раунд из ProbabilityEngine, кешируется на бойца и КД), затем
+ * бинарный поиск по этой шкале с короткими прогонами EncounterSimulator находит
+ * комбинацию в пределах допуска. Итог кешируется по подписи группы и локации,
+ * поэтому повторная генерация на шаге квеста занимает миллисекунды.
+ */
+public class EncounterBalancer {
+    public static final int DEFAULT_MAX_ENEMIES = 6;
+
+    private static final int BEAM_WIDTH = 16;
+    private static final int VERIFY_FIGHTS = 200;
+
+    public enum Metric {
+        WIN_RATE, ROUNDS
+    }
+
+    // Цель подбора с допуском
+    public static final class Target {
+        public static final double DEFAULT_WIN_RATE_TOLERANCE = 0.05;
+        public static final double DEFAULT_ROUNDS_TOLERANCE = 1.0;
+
+        private final Metric metric;
+        private final double value;
+        private final double tolerance;
+
+        public Target(Metric metric, double value, double tolerance) {
+            this.metric = metric;
+            this.value = value;
+            this.tolerance = tolerance;
+        }
+
+        public static Target winRate(double winRate) {
+            return new Target(Metric.WIN_RATE, winRate, DEFAULT_WIN_RATE_TOLERANCE);
+        }
+
+        public static Target rounds(double rounds) {
+            return new Target(Metric.ROUNDS, rounds, DEFAULT_ROUNDS_TOLERANCE);
+        }
+
+        public Metric getMetric() { return metric; }
+        public double getValue() { return value; }
+        public double getTolerance() { return tolerance; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s=%.3f±%.3f", metric, value, tolerance);
+        }
+    }
+
+    private final EncounterSimulator simulator;
+    private final ProbabilityEngine probabilities = ProbabilityEngine.getInstance();
+    private final Map<String, BalancedEncounter> cache = new ConcurrentHashMap<>();
+    // Ожидаемый урон за раунд по КД; запись живет, пока жив боец, и пересчитывается при смене
+    // статов (statsVersion). Combatant не переопределяет equals, поэтому ключи сравниваются по ссылке
+    private final Map<Combatant, DamageCache> damageCache = new WeakHashMap<>();
+    private int maxEnemies = DEFAULT_MAX_ENEMIES;
+
+    public EncounterBalancer() {
+        this(new EncounterSimulator());
+    }
+
+    public EncounterBalancer(EncounterSimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    public void setMaxEnemies(int maxEnemies) {
+        this.maxEnemies = maxEnemies;
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Враги из pool для группы party в локации locationId. Пул локации считается
+     * неизменным: при его изменении нужно вызвать clearCache.
+     */
+    public BalancedEncounter balance(String locationId, List<Combatant> party, List<Combatant> pool,
+                                     Target target) {
+        String key = partySignature(party) + "@" + locationId + "#" + target;
+        BalancedEncounter cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        BalancedEncounter result = search(party, pool, target, key.hashCode());
+        if (result != null) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    // Подпись группы: id и боевые параметры участников без учета порядка
+    public static String partySignature(List<Combatant> party) {
+        List<String> members = new ArrayList<>(party.size());
+        for (Combatant member : party) {
+            members.add(String.format(Locale.ROOT, "%s:%d:%d:%d:%d:%d:%d",
+                    member.getId(), member.getMaxHp(), member.getArmorClass(), member.getAttackBonus(),
+                    member.getStrength(), member.getDexterity(), Math.max(member.getIntelligence(), member.getWisdom())));
+        }
+        Collections.sort(members);
+        return String.join(",", members);
+    }
+
+    private synchronized BalancedEncounter search(List<Combatant> party, List<Combatant> pool, Target target,
+                                                  long seed) {
+        if (party.isEmpty() || pool.isEmpty()) {
+            return null;
+        }
+        // Лучевой поиск по мультимножествам индексов пула (неубывающие последовательности);
+        // на каждом размере луч берется равномерно по сложности, чтобы покрыть весь диапазон
+        List<Candidate> candidates = new ArrayList<>();
+        List<Candidate> beam = Collections.singletonList(new Candidate(new int[0], 0));
+        for (int size = 1; size <= maxEnemies; size++) {
+            List<Candidate> next = new ArrayList<>();
+            for (Candidate parent : beam) {
+                int from = parent.indices.length > 0 ? parent.indices[parent.indices.length - 1] : 0;
+                for (int index = from; index < pool.size(); index++) {
+                    int[] indices = Arrays.copyOf(parent.indices, size);
+                    indices[size - 1] = index;
+                    next.add(new Candidate(indices, difficulty(party, pool, indices, target.metric)));
+                }
+            }
+            Collections.sort(next, (x, y) -> Double.compare(x.difficulty, y.difficulty));
+            beam = spread(next, BEAM_WIDTH);
+            candidates.addAll(beam);
+        }
+        Collections.sort(candidates, (x, y) -> Double.compare(x.difficulty, y.difficulty));
+
+        // Модель только упорядочивает кандидатов; точку на шкале сложности
+        // находит бинарный поиск с проверкой симуляцией
+        BalancedEncounter best = null;
+        int low = 0;
+        int high = candidates.size() - 1;
+        int probe = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            List<Combatant> enemies = new ArrayList<>();
+            for (int index : candidates.get(mid).indices) {
+                enemies.add(pool.get(index));
+            }
+            SimulationReport report = simulator.simulate(party, enemies, VERIFY_FIGHTS, seed + probe++);
+            double measured = target.metric == Metric.WIN_RATE ? report.getWinRate() : report.getAverageRounds();
+            double error = Math.abs(measured - target.value);
+            if (best == null || error < Math.abs(best.measured - target.value)) {
+                best = new BalancedEncounter(enemies, measured, report, error <= target.tolerance);
+            }
+            if (error <= target.tolerance) {
+                break;
+            }
+            // Победы с ростом сложности падают, а раунды растут
+            boolean tooEasy = target.metric == Metric.WIN_RATE
+                    ? measured > target.value : measured < target.value;
+            if (tooEasy) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return best;
+    }
+
+    // count элементов, равномерно взятых из упорядоченного списка
+    private static List<Candidate> spread(List<Candidate> sorted, int count) {
+        if (sorted.size() <= count) {
+            return sorted;
+        }
+        List<Candidate> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(sorted.get((int) ((long) i * (sorted.size() - 1) / (count - 1))));
+        }
+        return result;
+    }
+
+    /**
+     * Модель боя в ожидаемых значениях с фокусом на самом слабом, как в симуляторе:
+     * каждый раунд стороны наносят свой ожидаемый урон, погибшие перестают бить.
+     * Для WIN_RATE сложность - доля HP врагов минус доля HP группы в конце,
+     * для ROUNDS - длина боя в раундах.
+     */
+    private double difficulty(List<Combatant> party, List<Combatant> pool, int[] indices, Metric metric) {
+        int enemyArmor = 0;
+        for (int index : indices) {
+            enemyArmor += pool.get(index).getArmorClass();
+        }
+        enemyArmor = Math.round((float) enemyArmor / indices.length);
+        int partyArmor = 0;
+        for (Combatant member : party) {
+            partyArmor += member.getArmorClass();
+        }
+        partyArmor = Math.round((float) partyArmor / party.size());
+
+        double[] enemyHp = new double[indices.length];
+        double[] enemyDamage = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            Combatant enemy = pool.get(indices[i]);
+            enemyHp[i] = enemy.getMaxHp();
+            enemyDamage[i] = damagePerRound(enemy, partyArmor);
+        }
+        double[] partyHp = new double[party.size()];
+        double[] partyDamage = new double[party.size()];
+        for (int i = 0; i < party.size(); i++) {
+            partyHp[i] = party.get(i).getMaxHp();
+            partyDamage[i] = damagePerRound(party.get(i), enemyArmor);
+        }
+        sortTogether(enemyHp, enemyDamage);
+        sortTogether(partyHp, partyDamage);
+        double enemyTotal = sum(enemyHp);
+        double partyTotal = sum(partyHp);
+
+        int rounds = 0;
+        while (rounds < EncounterSimulator.DEFAULT_MAX_ROUNDS) {
+            rounds++;
+            double toEnemies = aliveDamage(partyHp, partyDamage);
+            double toParty = aliveDamage(enemyHp, enemyDamage);
+            dealFocused(enemyHp, toEnemies);
+            dealFocused(partyHp, toParty);
+            if (aliveDamage(enemyHp, enemyDamage) == 0 || aliveDamage(partyHp, partyDamage) == 0) {
+                break;
+            }
+        }
+        if (metric == Metric.ROUNDS) {
+            return rounds;
+        }
+        return sum(enemyHp) / enemyTotal - sum(partyHp) / partyTotal;
+    }
+
+    private static double aliveDamage(double[] hp, double[] damage) {
+        double total = 0;
+        for (int i = 0; i < hp.length; i++) {
+            if (hp[i] > 0) {
+                total += Math.max(damage[i], 1e-3);
+            }
+        }
+        return total;
+    }
+
+    // Урон уходит самому слабому живому, излишек - следующему
+    private static void dealFocused(double[] hp, double amount) {
+        for (int i = 0; i < hp.length && amount > 0; i++) {
+            if (hp[i] > 0) {
+                double dealt = Math.min(hp[i], amount);
+                hp[i] -= dealt;
+                amount -= dealt;
+            }
+        }
+    }
+
+    // Сортировка вставками по HP с сохранением пар (списки короткие)
+    private static void sortTogether(double[] hp, double[] damage) {
+        for (int i = 1; i < hp.length; i++) {
+            double h = hp[i];
+            double d = damage[i];
+            int j = i - 1;
+            while (j >= 0 && hp[j] > h) {
+                hp[j + 1] = hp[j];
+                damage[j + 1] = damage[j];
+                j--;
+            }
+            hp[j + 1] = h;
+            damage[j + 1] = d;
+        }
+    }
+
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += Math.max(0, value);
+        }
+        return total;
+    }
+
+    private double damagePerRound(Combatant attacker, int armorClass) {
+        DamageCache entry = damageCache.get(attacker);
+        if (entry == null || entry.statsVersion != attacker.statsVersion()) {
+            entry = new DamageCache(attacker.statsVersion());
+            damageCache.put(attacker, entry);
+        }
+        int slot = Math.max(0, Math.min(DamageCache.MAX_ARMOR_CLASS - 1, armorClass));
+        double value = entry.byArmorClass[slot];
+        if (Double.isNaN(value)) {
+            AttackProfile profile = AttackProfile.of(EncounterSimulator.bestAttackType(attacker));
+            value = AttackPreview.expectedDamage(probabilities, attacker, slot, profile, profile.getDamage());
+            entry.byArmorClass[slot] = value;
+        }
+        return value;
+    }
+
+    private static final class Candidate {
+        final int[] indices;
+        final double difficulty;
+
+        Candidate(int[] indices, double difficulty) {
+            this.indices = indices;
+            this.difficulty = difficulty;
+        }
+    }
+
+    private static final class DamageCache {
+        static final int MAX_ARMOR_CLASS = 40;
+
+        final int statsVersion;
+        final double[] byArmorClass = new double[MAX_ARMOR_CLASS];
+
+        DamageCache(int statsVersion) {
+            this.statsVersion = statsVersion;
+            Arrays.fill(byArmorClass, Double.NaN);
+        }
+    }
+
+    // Подобранное столкновение: шаблоны врагов и результат проверочной симуляции
+    public static final class BalancedEncounter {
+        private final List<Combatant> enemies;
+        private final double measured;
+        private final SimulationReport report;
+        private final boolean withinTolerance;
+
+        BalancedEncounter(List<Combatant> enemies, double measured, SimulationReport report,
+                          boolean withinTolerance) {
+            this.enemies = Collections.unmodifiableList(enemies);
+            this.measured = measured;
+            this.report = report;
+            this.withinTolerance = withinTolerance;
+        }
+
+        // Шаблоны из пула; повторяющийся враг встречается несколько раз
+        public List<Combatant> getEnemies() { return enemies; }
+
+        // Доля побед или средняя длина боя по симуляции, в зависимости от цели
+        public double getMeasured() { return measured; }
+        public SimulationReport getReport() { return report; }
+        public boolean isWithinTolerance() { return withinTolerance; }
+
+        // Свежие копии врагов для боя; повторы получают id вида "goblin#2"
+        public List<Combatant> spawn() {
+            List<Combatant> spawned = new ArrayList<>(enemies.size());
+            Map<String, Integer> seen = new HashMap<>();
+            for (Combatant template : enemies) {
+                Combatant enemy = template.copy();
+                Integer count = seen.get(template.getId());
+                int number = count != null ? count + 1 : 1;
+                seen.put(template.getId(), number);
+                if (number > 1) {
+                    enemy.setId(template.getId() + "#" + number);
+                }
+                spawned.add(enemy);
+            }
+            return spawned;
+        }
+    }
+}
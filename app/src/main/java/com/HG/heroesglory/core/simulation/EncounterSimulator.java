@@ -0,0 +1,255 @@
+package com.HG.heroesglory.core.simulation;
+
+import com.HG.heroesglory.core.dice.AttackProfile;
+import com.HG.heroesglory.core.dice.CombatSystem;
+import com.HG.heroesglory.core.dice.SessionRng;
+import com.HG.heroesglory.core.entities.Ability;
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.CharacterClass;
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Player;
+import com.HG.heroesglory.core.systems.CombatantTable;
+import com.HG.heroesglory.core.systems.TurnManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Безголовый симулятор боев Монте-Карло поверх CombatSystem и TurnManager.
+ * Бои раскладываются по ядрам через fork/join; каждый бой получает свой
+ * детерминированный генератор, поэтому прогон с тем же зерном повторяется.
+ * Выбор целей и итоги боя считаются по CombatantTable: таблица одна на задачу
+ * fork/join и переиспользуется между боями, модификаторы в ней уже посчитаны.
+ * Не зависит от Android UI и Firestore.
+ */
+public class EncounterSimulator {
+    public static final int DEFAULT_MAX_ROUNDS = 50;
+    private static final int FIGHTS_PER_TASK = 64;
+
+    private final ForkJoinPool pool;
+    private int maxRounds = DEFAULT_MAX_ROUNDS;
+
+    public EncounterSimulator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public EncounterSimulator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void setMaxRounds(int maxRounds) {
+        this.maxRounds = maxRounds;
+    }
+
+    public SimulationReport simulate(List<Combatant> party, List<Combatant> enemies, int fights, long seed) {
+        long start = System.nanoTime();
+        Tally tally = pool.invoke(new FightTask(party, enemies, new SessionRng(seed), 0, fights));
+        return tally.toReport(System.nanoTime() - start);
+    }
+
+    // Прогон группы по всем столкновениям истории: id столкновения -> отчет
+    public Map<String, SimulationReport> sweep(List<Combatant> party, Map<String, List<Combatant>> encounters,
+                                               int fights, long seed) {
+        Map<String, SimulationReport> reports = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Combatant>> encounter : encounters.entrySet()) {
+            reports.put(encounter.getKey(), simulate(party, encounter.getValue(), fights, seed));
+        }
+        return reports;
+    }
+
+    /**
+     * Боец игрока из Player и его класса: базовые характеристики класса,
+     * переопределенные статами игрока, если они заданы.
+     */
+    public static Combatant toCombatant(Player player, CharacterClass characterClass) {
+        Map<String, Object> stats = player.getStats();
+
+        int strength = stat(stats, "strength", characterClass.getBaseStats().get("strength"));
+        int dexterity = stat(stats, "dexterity", characterClass.getBaseStats().get("dexterity"));
+        int constitution = stat(stats, "constitution", characterClass.getBaseStats().get("constitution"));
+
+        int maxHp = stat(stats, "maxHP", characterClass.calculateHP(constitution));
+        int armorClass = stat(stats, "armorClass", characterClass.calculateAC(dexterity));
+
+        Combatant combatant = new Combatant(player.getUserId(), player.getPlayerName(), "PLAYER", maxHp, armorClass);
+        combatant.setStrength(strength);
+        combatant.setDexterity(dexterity);
+        combatant.setConstitution(constitution);
+        combatant.setIntelligence(stat(stats, "intelligence", characterClass.getBaseStats().get("intelligence")));
+        combatant.setWisdom(stat(stats, "wisdom", characterClass.getBaseStats().get("wisdom")));
+        combatant.setCharisma(stat(stats, "charisma", characterClass.getBaseStats().get("charisma")));
+        combatant.setAttackBonus(stat(stats, "attackBonus", 0));
+        combatant.setImageUrl(characterClass.getImageUrl());
+        return combatant;
+    }
+
+    public static List<Combatant> toParty(List<Player> players, Map<String, CharacterClass> classesById) {
+        List<Combatant> party = new ArrayList<>();
+        for (Player player : players) {
+            CharacterClass characterClass = classesById.get(player.getClassId());
+            if (characterClass != null) {
+                party.add(toCombatant(player, characterClass));
+            }
+        }
+        return party;
+    }
+
+    // Тип атаки с наибольшим бонусом для характеристик бойца
+    static AttackType bestAttackType(Combatant combatant) {
+        return CombatantTable.bestAttackType(combatant.getModifier(Ability.STR),
+                combatant.getModifier(Ability.DEX), combatant.getModifier(Ability.SPELL));
+    }
+
+    private static int stat(Map<String, Object> stats, String key, Integer fallback) {
+        Object value = stats != null ? stats.get(key) : null;
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return fallback != null ? fallback : 10;
+    }
+
+    private FightOutcome runFight(List<Combatant> party, List<Combatant> enemies, SessionRng rng,
+                                  CombatantTable table) {
+        List<Combatant> combatants = new ArrayList<>(party.size() + enemies.size());
+        for (Combatant member : party) combatants.add(member.copy());
+        for (Combatant enemy : enemies) combatants.add(enemy.copy());
+        // Слоты таблицы совпадают с порядком combatants
+        table.clear();
+        for (Combatant combatant : combatants) table.add(combatant);
+
+        CombatSystem combatSystem = new CombatSystem(rng);
+        TurnManager turnManager = new TurnManager(rng.stream(SessionRng.Stream.INITIATIVE));
+        turnManager.initializeCombat(combatants);
+        turnManager.rollInitiative();
+        combatSystem.bindTurnManager(turnManager);
+
+        FightOutcome outcome = new FightOutcome();
+        CombatSystem.AttackOutcome attack = new CombatSystem.AttackOutcome();
+        while (!turnManager.isCombatOver() && turnManager.getCurrentRound() <= maxRounds) {
+            Combatant actor = turnManager.getCurrentCombatant();
+            int actorSlot = slotOf(combatants, actor);
+            if (actorSlot >= 0 && table.isAlive(actorSlot)) {
+                int targetSlot = table.weakestOpponent(actorSlot);
+                if (targetSlot >= 0) {
+                    Combatant target = combatants.get(targetSlot);
+                    combatSystem.resolveAttack(actor, target,
+                            AttackProfile.of(table.bestAttackType(actorSlot)), attack);
+                    table.setCurrentHp(targetSlot, target.getCurrentHp());
+                    if (attack.isDefeated() && target.isEnemy()) {
+                        outcome.killRounds += turnManager.getCurrentRound();
+                        outcome.kills++;
+                    }
+                }
+            }
+            if (turnManager.isCombatOver()) {
+                break; // раунд окончания боя не должен сдвигаться лишним ходом
+            }
+            turnManager.nextTurn();
+        }
+
+        outcome.victory = turnManager.isPlayerVictory();
+        outcome.rounds = turnManager.getCurrentRound();
+
+        int hpLeft = table.totalHp(CombatantTable.TYPE_PLAYER);
+        int hpMax = table.totalMaxHp(CombatantTable.TYPE_PLAYER);
+        outcome.hpLeft = hpMax > 0 ? (double) hpLeft / hpMax : 0.0;
+        return outcome;
+    }
+
+    // Простая тактика для обеих сторон (weakestOpponent): добивать самого раненого противника.
+    // Слот бойца ищется по ссылке: TurnManager ходит в порядке инициативы, таблица - в порядке состава
+    private static int slotOf(List<Combatant> combatants, Combatant combatant) {
+        for (int slot = 0; slot < combatants.size(); slot++) {
+            if (combatants.get(slot) == combatant) return slot;
+        }
+        return -1;
+    }
+
+    private static class FightOutcome {
+        boolean victory;
+        int rounds;
+        int kills;
+        long killRounds;
+        double hpLeft;
+    }
+
+    private static class Tally {
+        final double[] hpLeft;
+        int count;
+        int victories;
+        long rounds;
+        long kills;
+        long killRounds;
+
+        Tally(int capacity) {
+            this.hpLeft = new double[capacity];
+        }
+
+        void add(FightOutcome outcome) {
+            hpLeft[count++] = outcome.hpLeft;
+            if (outcome.victory) victories++;
+            rounds += outcome.rounds;
+            kills += outcome.kills;
+            killRounds += outcome.killRounds;
+        }
+
+        Tally merge(Tally other) {
+            Tally merged = new Tally(count + other.count);
+            System.arraycopy(hpLeft, 0, merged.hpLeft, 0, count);
+            System.arraycopy(other.hpLeft, 0, merged.hpLeft, count, other.count);
+            merged.count = count + other.count;
+            merged.victories = victories + other.victories;
+            merged.rounds = rounds + other.rounds;
+            merged.kills = kills + other.kills;
+            merged.killRounds = killRounds + other.killRounds;
+            return merged;
+        }
+
+        SimulationReport toReport(long elapsedNanos) {
+            return new SimulationReport(count, victories,
+                    count > 0 ? (double) rounds / count : 0.0,
+                    kills > 0 ? (double) killRounds / kills : 0.0,
+                    hpLeft, elapsedNanos);
+        }
+    }
+
+    // Задача живет только внутри ForkJoinPool и никогда не сериализуется
+    @SuppressWarnings("serial")
+    private class FightTask extends RecursiveTask<Tally> {
+        private final List<Combatant> party;
+        private final List<Combatant> enemies;
+        private final SessionRng rootRng;
+        private final int from;
+        private final int to;
+
+        FightTask(List<Combatant> party, List<Combatant> enemies, SessionRng rootRng, int from, int to) {
+            this.party = party;
+            this.enemies = enemies;
+            this.rootRng = rootRng;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (to - from <= FIGHTS_PER_TASK) {
+                Tally tally = new Tally(to - from);
+                CombatantTable table = new CombatantTable(party.size() + enemies.size());
+                for (int i = from; i < to; i++) {
+                    // Генератор боя зависит только от зерна прогона и номера боя
+                    tally.add(runFight(party, enemies, rootRng.fork(i), table));
+                }
+                return tally;
+            }
+            int mid = (from + to) >>> 1;
+            FightTask left = new FightTask(party, enemies, rootRng, from, mid);
+            left.fork();
+            Tally right = new FightTask(party, enemies, rootRng, mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.HG.heroesglory.core.simulation;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Сводка прогона EncounterSimulator
+public class SimulationReport {
+    private final int fights;
+    private final int victories;
+    private final double averageRounds;
+    private final double averageTimeToKill;
+    private final double[] sortedHpLeft;
+    private final long elapsedNanos;
+
+    public SimulationReport(int fights, int victories, double averageRounds, double averageTimeToKill,
+                            double[] hpLeft, long elapsedNanos) {
+        this.fights = fights;
+        this.victories = victories;
+        this.averageRounds = averageRounds;
+        this.averageTimeToKill = averageTimeToKill;
+        this.sortedHpLeft = hpLeft.clone();
+        Arrays.sort(this.sortedHpLeft);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getFights() { return fights; }
+    public int getVictories() { return victories; }
+    public double getWinRate() { return fights > 0 ? (double) victories / fights : 0.0; }
+    public double getAverageRounds() { return averageRounds; }
+
+    // Средний раунд, в котором погибает враг
+    public double getAverageTimeToKill() { return averageTimeToKill; }
+
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    // Доля HP группы (0..1), оставшаяся после боя, на заданном процентиле (0..100)
+    public double getHpLeftPercentile(double percentile) {
+        if (sortedHpLeft.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedHpLeft.length) - 1;
+        return sortedHpLeft[Math.max(0, Math.min(sortedHpLeft.length - 1, index))];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "fights=%d win=%.1f%% rounds=%.2f ttk=%.2f hp[p10/p50/p90]=%.2f/%.2f/%.2f",
+                fights, getWinRate() * 100, averageRounds, averageTimeToKill,
+                getHpLeftPercentile(10), getHpLeftPercentile(50), getHpLeftPercentile(90));
+    }
+}
@@ -0,0 +1,351 @@
+package com.HG.heroesglory.core.systems;
+
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.SkillTarget;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Необязательная тактическая сетка боя: боец занимает клетку, индекс - пространственный
+ * хеш из корзин BUCKET_SIZE x BUCKET_SIZE клеток. Перемещение обновляет индекс за O(1)
+ * (удаление из корзины обменом с последним), запросы "в радиусе", "конус" и
+ * "ближайший противник" смотрят только корзины, пересекающие область.
+ * Расстояние - по правилам D&D 5e: диагональ стоит как прямой шаг (Чебышев).
+ * С картой видимости сетка сообщает ей о занятых клетках, а укрытия и линия обзора
+ * берутся из ее кеша полей зрения.
+ */
+public class CombatGrid {
+    public static final int BUCKET_SIZE = 8;
+    // Радиус зоны навыка AREA в клетках (квадрат 5x5)
+    public static final int AREA_RADIUS = 2;
+
+    private final Map<Long, Bucket> buckets = new HashMap<>();
+    private final Map<Long, Combatant> cells = new HashMap<>();
+    private final Map<Combatant, Position> positions = new IdentityHashMap<>();
+    private VisibilityMap visibility;
+    // Границы занятых когда-либо корзин - предел колец в nearestEnemy
+    private int minBx = Integer.MAX_VALUE;
+    private int maxBx = Integer.MIN_VALUE;
+    private int minBy = Integer.MAX_VALUE;
+    private int maxBy = Integer.MIN_VALUE;
+
+    // Ставит бойца в клетку или перемещает его; false - клетка занята другим
+    public boolean place(Combatant combatant, int x, int y) {
+        long cell = key(x, y);
+        Combatant occupant = cells.get(cell);
+        if (occupant != null && occupant != combatant) {
+            return false;
+        }
+        Position position = positions.get(combatant);
+        if (position == null) {
+            position = new Position(combatant);
+            positions.put(combatant, position);
+        } else {
+            cells.remove(key(position.x, position.y));
+            if (visibility != null) {
+                visibility.setOccupied(position.x, position.y, false);
+            }
+        }
+        int bx = Math.floorDiv(x, BUCKET_SIZE);
+        int by = Math.floorDiv(y, BUCKET_SIZE);
+        long bucketKey = key(bx, by);
+        if (position.bucket == null || position.bucketKey != bucketKey) {
+            if (position.bucket != null) {
+                position.bucket.remove(position);
+            }
+            Bucket bucket = buckets.get(bucketKey);
+            if (bucket == null) {
+                bucket = new Bucket();
+                buckets.put(bucketKey, bucket);
+            }
+            bucket.add(position);
+            position.bucketKey = bucketKey;
+            minBx = Math.min(minBx, bx);
+            maxBx = Math.max(maxBx, bx);
+            minBy = Math.min(minBy, by);
+            maxBy = Math.max(maxBy, by);
+        }
+        position.x = x;
+        position.y = y;
+        cells.put(cell, combatant);
+        if (visibility != null) {
+            visibility.setOccupied(x, y, true);
+        }
+        return true;
+    }
+
+    public void remove(Combatant combatant) {
+        Position position = positions.remove(combatant);
+        if (position != null) {
+            cells.remove(key(position.x, position.y));
+            position.bucket.remove(position);
+            if (visibility != null) {
+                visibility.setOccupied(position.x, position.y, false);
+            }
+        }
+    }
+
+    // Подключает карту видимости и отмечает на ней уже стоящих бойцов
+    public void setVisibility(VisibilityMap visibility) {
+        this.visibility = visibility;
+        if (visibility != null) {
+            for (Position position : positions.values()) {
+                visibility.setOccupied(position.x, position.y, true);
+            }
+        }
+    }
+
+    public VisibilityMap getVisibility() {
+        return visibility;
+    }
+
+    public void clear() {
+        if (visibility != null) {
+            for (Position position : positions.values()) {
+                visibility.setOccupied(position.x, position.y, false);
+            }
+        }
+        buckets.clear();
+        cells.clear();
+        positions.clear();
+        minBx = Integer.MAX_VALUE;
+        maxBx = Integer.MIN_VALUE;
+        minBy = Integer.MAX_VALUE;
+        maxBy = Integer.MIN_VALUE;
+    }
+
+    public boolean contains(Combatant combatant) {
+        return positions.containsKey(combatant);
+    }
+
+    public Combatant occupant(int x, int y) {
+        return cells.get(key(x, y));
+    }
+
+    // Координаты бойца; -1 - бойца нет на сетке
+    public int xOf(Combatant combatant) {
+        Position position = positions.get(combatant);
+        return position != null ? position.x : -1;
+    }
+
+    public int yOf(Combatant combatant) {
+        Position position = positions.get(combatant);
+        return position != null ? position.y : -1;
+    }
+
+    public int distance(Combatant a, Combatant b) {
+        Position from = positions.get(a);
+        Position to = positions.get(b);
+        if (from == null || to == null) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(Math.abs(from.x - to.x), Math.abs(from.y - to.y));
+    }
+
+    // Цель в пределах range клеток; без позиций ограничение не действует
+    public boolean inRange(Combatant attacker, Combatant target, int range) {
+        if (!contains(attacker) || !contains(target)) {
+            return true;
+        }
+        return distance(attacker, target) <= range;
+    }
+
+    // Укрытие цели от атакующего; без карты или позиций - укрытия нет
+    public VisibilityMap.Cover cover(Combatant attacker, Combatant target) {
+        Position from = positions.get(attacker);
+        Position to = positions.get(target);
+        if (visibility == null || from == null || to == null) {
+            return VisibilityMap.Cover.NONE;
+        }
+        return visibility.cover(from.x, from.y, to.x, to.y);
+    }
+
+    public boolean hasLineOfSight(Combatant attacker, Combatant target) {
+        return cover(attacker, target) != VisibilityMap.Cover.TOTAL;
+    }
+
+    // Живые бойцы не дальше radius клеток от (x, y); результат дописывается в out
+    public List<Combatant> withinRadius(int x, int y, int radius, List<Combatant> out) {
+        int fromBx = Math.floorDiv(x - radius, BUCKET_SIZE);
+        int toBx = Math.floorDiv(x + radius, BUCKET_SIZE);
+        int fromBy = Math.floorDiv(y - radius, BUCKET_SIZE);
+        int toBy = Math.floorDiv(y + radius, BUCKET_SIZE);
+        for (int bx = fromBx; bx <= toBx; bx++) {
+            for (int by = fromBy; by <= toBy; by++) {
+                Bucket bucket = buckets.get(key(bx, by));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.size; i++) {
+                    Position position = bucket.items[i];
+                    if (position.combatant.isAlive()
+                            && Math.max(Math.abs(position.x - x), Math.abs(position.y - y)) <= radius) {
+                        out.add(position.combatant);
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Конус длиной length от source в сторону (towardX, towardY): ширина на расстоянии d
+     * равна d, как в 5e. Сам source в конус не входит.
+     */
+    public List<Combatant> cone(Combatant source, int towardX, int towardY, int length, List<Combatant> out) {
+        Position origin = positions.get(source);
+        if (origin == null) {
+            return out;
+        }
+        long dirX = towardX - origin.x;
+        long dirY = towardY - origin.y;
+        long dirSquared = dirX * dirX + dirY * dirY;
+        if (dirSquared == 0) {
+            return out;
+        }
+        int fromBx = Math.floorDiv(origin.x - length, BUCKET_SIZE);
+        int toBx = Math.floorDiv(origin.x + length, BUCKET_SIZE);
+        int fromBy = Math.floorDiv(origin.y - length, BUCKET_SIZE);
+        int toBy = Math.floorDiv(origin.y + length, BUCKET_SIZE);
+        long lengthSquared = (long) length * length;
+        for (int bx = fromBx; bx <= toBx; bx++) {
+            for (int by = fromBy; by <= toBy; by++) {
+                Bucket bucket = buckets.get(key(bx, by));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.size; i++) {
+                    Position position = bucket.items[i];
+                    long vx = position.x - origin.x;
+                    long vy = position.y - origin.y;
+                    long squared = vx * vx + vy * vy;
+                    if (position == origin || !position.combatant.isAlive() || squared > lengthSquared) {
+                        continue;
+                    }
+                    long dot = vx * dirX + vy * dirY;
+                    // Ширина на расстоянии d равна d: tg половины угла = 1/2, cos^2 = 4/5
+                    if (dot > 0 && 5 * dot * dot >= 4 * squared * dirSquared) {
+                        out.add(position.combatant);
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Цели области навыка вокруг (x, y): противники или союзники заклинателя
+     * в зависимости от типа цели навыка.
+     */
+    public List<Combatant> areaTargets(Combatant caster, SkillTarget kind, int x, int y, int radius,
+                                       List<Combatant> out) {
+        int start = out.size();
+        withinRadius(x, y, radius, out);
+        int write = start;
+        for (int read = start; read < out.size(); read++) {
+            Combatant candidate = out.get(read);
+            boolean ally = candidate.isPlayer() == caster.isPlayer();
+            if (ally != kind.isHostile()) {
+                out.set(write++, candidate);
+            }
+        }
+        while (out.size() > write) {
+            out.remove(out.size() - 1);
+        }
+        return out;
+    }
+
+    // Ближайший живой противник: корзины просматриваются кольцами, пока кольцо ближе лучшего
+    public Combatant nearestEnemy(Combatant combatant) {
+        Position origin = positions.get(combatant);
+        if (origin == null) {
+            return null;
+        }
+        int originBx = Math.floorDiv(origin.x, BUCKET_SIZE);
+        int originBy = Math.floorDiv(origin.y, BUCKET_SIZE);
+        int maxRing = ringLimit(originBx, originBy);
+        Combatant best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Любая клетка кольца ring не ближе (ring - 1) * BUCKET_SIZE + 1
+            if (best != null && (ring - 1) * BUCKET_SIZE + 1 > bestDistance) {
+                break;
+            }
+            for (int bx = originBx - ring; bx <= originBx + ring; bx++) {
+                for (int by = originBy - ring; by <= originBy + ring; by++) {
+                    if (Math.max(Math.abs(bx - originBx), Math.abs(by - originBy)) != ring) {
+                        continue;
+                    }
+                    Bucket bucket = buckets.get(key(bx, by));
+                    if (bucket == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < bucket.size; i++) {
+                        Position position = bucket.items[i];
+                        Combatant candidate = position.combatant;
+                        if (!candidate.isAlive() || candidate.isPlayer() == combatant.isPlayer()) {
+                            continue;
+                        }
+                        int distance = Math.max(Math.abs(position.x - origin.x), Math.abs(position.y - origin.y));
+                        if (distance < bestDistance) {
+                            bestDistance = distance;
+                            best = candidate;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    // Кольцо, за которым корзин уже нет
+    private int ringLimit(int originBx, int originBy) {
+        return Math.max(Math.max(originBx - minBx, maxBx - originBx),
+                Math.max(originBy - minBy, maxBy - originBy));
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static final class Position {
+        final Combatant combatant;
+        int x;
+        int y;
+        long bucketKey;
+        Bucket bucket;
+        int index; // место в bucket.items
+
+        Position(Combatant combatant) {
+            this.combatant = combatant;
+        }
+    }
+
+    private static final class Bucket {
+        Position[] items = new Position[4];
+        int size;
+
+        void add(Position position) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            position.bucket = this;
+            position.index = size;
+            items[size++] = position;
+        }
+
+        // Обмен с последним элементом - O(1)
+        void remove(Position position) {
+            int last = --size;
+            Position moved = items[last];
+            items[position.index] = moved;
+            moved.index = position.index;
+            items[last] = null;
+            position.bucket = null;
+        }
+    }
+}
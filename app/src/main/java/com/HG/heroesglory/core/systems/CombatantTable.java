@@ -0,0 +1,310 @@
+package com.HG.heroesglory.core.systems;
+
+import com.HG.heroesglory.core.entities.Ability;
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.Combatant;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Бойцы в виде параллельных примитивных массивов (struct-of-arrays), индексированных слотом.
+ * Модификаторы характеристик считаются один раз при записи значения, поэтому
+ * симуляции и ИИ могут перебирать сотни бойцов простыми циклами без упаковки и
+ * без обращения к Combatant.
+ */
+public class CombatantTable {
+    public static final byte TYPE_PLAYER = Combatant.TYPE_PLAYER;
+    public static final byte TYPE_ENEMY = Combatant.TYPE_ENEMY;
+    public static final byte TYPE_NPC = Combatant.TYPE_NPC;
+
+    private static final Ability[] ABILITIES = Ability.values();
+    // Модификаторы хранятся строкой на слот: STR..CHA и SPELL
+    private static final int STRIDE = ABILITIES.length;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int size;
+
+    private String[] ids;
+    private String[] names;
+    private byte[] types;
+    private boolean[] alive;
+    private int[] currentHp;
+    private int[] maxHp;
+    private int[] armorClass;
+    private int[] initiative;
+    private int[] attackBonus;
+    private int[] damageBonus;
+    private int[] scores;
+    private int[] modifiers;
+
+    public CombatantTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CombatantTable(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+    public static CombatantTable fromCombatants(List<Combatant> combatants) {
+        CombatantTable table = new CombatantTable(combatants.size());
+        for (Combatant combatant : combatants) {
+            table.add(combatant);
+        }
+        return table;
+    }
+
+    public static byte typeCode(String type) {
+        return Combatant.typeCodeOf(type);
+    }
+
+    public static String typeName(byte code) {
+        switch (code) {
+            case TYPE_PLAYER: return "PLAYER";
+            case TYPE_ENEMY: return "ENEMY";
+            default: return "NPC";
+        }
+    }
+
+    // Добавляет бойца в конец таблицы и возвращает его слот
+    public int add(Combatant combatant) {
+        if (size == ids.length) {
+            grow(size * 2);
+        }
+        int slot = size++;
+        ids[slot] = combatant.getId();
+        names[slot] = combatant.getName();
+        types[slot] = combatant.typeCode();
+        alive[slot] = combatant.isAlive();
+        currentHp[slot] = combatant.getCurrentHp();
+        maxHp[slot] = combatant.getMaxHp();
+        armorClass[slot] = combatant.getArmorClass();
+        initiative[slot] = combatant.getInitiative();
+        attackBonus[slot] = combatant.getAttackBonus();
+        damageBonus[slot] = combatant.getDamageBonus();
+
+        int base = slot * STRIDE;
+        scores[base + Ability.STR.ordinal()] = combatant.getStrength();
+        scores[base + Ability.DEX.ordinal()] = combatant.getDexterity();
+        scores[base + Ability.CON.ordinal()] = combatant.getConstitution();
+        scores[base + Ability.INT.ordinal()] = combatant.getIntelligence();
+        scores[base + Ability.WIS.ordinal()] = combatant.getWisdom();
+        scores[base + Ability.CHA.ordinal()] = combatant.getCharisma();
+        refreshModifiers(slot);
+        return slot;
+    }
+
+    // Новый Combatant из слота
+    public Combatant toCombatant(int slot) {
+        Combatant combatant = new Combatant(ids[slot], names[slot], typeName(types[slot]),
+                maxHp[slot], armorClass[slot]);
+        writeBack(slot, combatant);
+        return combatant;
+    }
+
+    // Переносит состояние слота в существующего бойца (например, после симуляции)
+    public void writeBack(int slot, Combatant combatant) {
+        combatant.setCurrentHp(currentHp[slot]);
+        combatant.setMaxHp(maxHp[slot]);
+        combatant.setArmorClass(armorClass[slot]);
+        combatant.setInitiative(initiative[slot]);
+        combatant.setAlive(alive[slot]);
+        combatant.setAttackBonus(attackBonus[slot]);
+        combatant.setDamageBonus(damageBonus[slot]);
+
+        int base = slot * STRIDE;
+        combatant.setStrength(scores[base + Ability.STR.ordinal()]);
+        combatant.setDexterity(scores[base + Ability.DEX.ordinal()]);
+        combatant.setConstitution(scores[base + Ability.CON.ordinal()]);
+        combatant.setIntelligence(scores[base + Ability.INT.ordinal()]);
+        combatant.setWisdom(scores[base + Ability.WIS.ordinal()]);
+        combatant.setCharisma(scores[base + Ability.CHA.ordinal()]);
+    }
+
+    // Слоты совпадают с порядком списка, из которого построена таблица
+    public void writeBack(List<Combatant> combatants) {
+        int count = Math.min(size, combatants.size());
+        for (int slot = 0; slot < count; slot++) {
+            writeBack(slot, combatants.get(slot));
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(ids, 0, size, null);
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+    }
+
+    public int size() { return size; }
+
+    public String getId(int slot) { return ids[slot]; }
+    public String getName(int slot) { return names[slot]; }
+    public byte getType(int slot) { return types[slot]; }
+    public boolean isPlayer(int slot) { return types[slot] == TYPE_PLAYER; }
+    public boolean isEnemy(int slot) { return types[slot] == TYPE_ENEMY; }
+    public boolean isAlive(int slot) { return alive[slot]; }
+    public int getCurrentHp(int slot) { return currentHp[slot]; }
+    public int getMaxHp(int slot) { return maxHp[slot]; }
+    public int getArmorClass(int slot) { return armorClass[slot]; }
+    public int getInitiative(int slot) { return initiative[slot]; }
+    public int getAttackBonus(int slot) { return attackBonus[slot]; }
+    public int getDamageBonus(int slot) { return damageBonus[slot]; }
+
+    public void setCurrentHp(int slot, int hp) {
+        currentHp[slot] = hp;
+        alive[slot] = hp > 0;
+    }
+
+    public void setArmorClass(int slot, int value) { armorClass[slot] = value; }
+    public void setInitiative(int slot, int value) { initiative[slot] = value; }
+
+    public int getScore(int slot, Ability ability) {
+        return scores[slot * STRIDE + ability.ordinal()];
+    }
+
+    // SPELL - производная характеристика, ее значение не задается
+    public void setScore(int slot, Ability ability, int value) {
+        if (ability == Ability.SPELL) {
+            throw new IllegalArgumentException("SPELL is derived from INT and WIS");
+        }
+        scores[slot * STRIDE + ability.ordinal()] = value;
+        refreshModifiers(slot);
+    }
+
+    public int getModifier(int slot, Ability ability) {
+        return modifiers[slot * STRIDE + ability.ordinal()];
+    }
+
+    // Тип атаки с наибольшим бонусом по уже посчитанным модификаторам слота
+    public AttackType bestAttackType(int slot) {
+        int base = slot * STRIDE;
+        return bestAttackType(modifiers[base + Ability.STR.ordinal()], modifiers[base + Ability.DEX.ordinal()],
+                modifiers[base + Ability.SPELL.ordinal()]);
+    }
+
+    public static AttackType bestAttackType(int melee, int ranged, int spell) {
+        if (spell > melee && spell > ranged) return AttackType.SPELL;
+        if (ranged > melee) return AttackType.RANGED;
+        return AttackType.MELEE;
+    }
+
+    // Урон как в Combatant.takeDamage; возвращает true, если боец погиб от этого удара
+    public boolean applyDamage(int slot, int damage) {
+        boolean wasAlive = alive[slot];
+        currentHp[slot] = Math.max(0, currentHp[slot] - damage);
+        if (currentHp[slot] == 0) {
+            alive[slot] = false;
+        }
+        return wasAlive && !alive[slot];
+    }
+
+    public void heal(int slot, int amount) {
+        currentHp[slot] = Math.min(maxHp[slot], currentHp[slot] + amount);
+        if (currentHp[slot] > 0) {
+            alive[slot] = true;
+        }
+    }
+
+    // Сканирующие запросы по всей таблице
+
+    public int countAlive(byte type) {
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (alive[slot] && types[slot] == type) count++;
+        }
+        return count;
+    }
+
+    public int totalHp(byte type) {
+        int total = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (alive[slot] && types[slot] == type) total += currentHp[slot];
+        }
+        return total;
+    }
+
+    // Живой боец типа type с наименьшим HP; -1, если таких нет
+    public int weakestAlive(byte type) {
+        int best = -1;
+        for (int slot = 0; slot < size; slot++) {
+            if (alive[slot] && types[slot] == type && (best < 0 || currentHp[slot] < currentHp[best])) {
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    // Самый раненый живой противник бойца slot (игроки против всех остальных); -1, если таких нет
+    public int weakestOpponent(int slot) {
+        boolean player = types[slot] == TYPE_PLAYER;
+        int best = -1;
+        for (int other = 0; other < size; other++) {
+            if (alive[other] && (types[other] == TYPE_PLAYER) != player
+                    && (best < 0 || currentHp[other] < currentHp[best])) {
+                best = other;
+            }
+        }
+        return best;
+    }
+
+    public int totalMaxHp(byte type) {
+        int total = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (types[slot] == type) total += maxHp[slot];
+        }
+        return total;
+    }
+
+    public int firstAlive(byte type) {
+        for (int slot = 0; slot < size; slot++) {
+            if (alive[slot] && types[slot] == type) return slot;
+        }
+        return -1;
+    }
+
+    public int indexOf(String id) {
+        for (int slot = 0; slot < size; slot++) {
+            if (ids[slot].equals(id)) return slot;
+        }
+        return -1;
+    }
+
+    private void refreshModifiers(int slot) {
+        int base = slot * STRIDE;
+        for (int i = 0; i < 6; i++) {
+            modifiers[base + i] = (scores[base + i] - 10) / 2;
+        }
+        modifiers[base + Ability.SPELL.ordinal()] = Math.max(
+                modifiers[base + Ability.INT.ordinal()], modifiers[base + Ability.WIS.ordinal()]);
+    }
+
+    private void allocate(int capacity) {
+        ids = new String[capacity];
+        names = new String[capacity];
+        types = new byte[capacity];
+        alive = new boolean[capacity];
+        currentHp = new int[capacity];
+        maxHp = new int[capacity];
+        armorClass = new int[capacity];
+        initiative = new int[capacity];
+        attackBonus = new int[capacity];
+        damageBonus = new int[capacity];
+        scores = new int[capacity * STRIDE];
+        modifiers = new int[capacity * STRIDE];
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        names = Arrays.copyOf(names, capacity);
+        types = Arrays.copyOf(types, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        currentHp = Arrays.copyOf(currentHp, capacity);
+        maxHp = Arrays.copyOf(maxHp, capacity);
+        armorClass = Arrays.copyOf(armorClass, capacity);
+        initiative = Arrays.copyOf(initiative, capacity);
+        attackBonus = Arrays.copyOf(attackBonus, capacity);
+        damageBonus = Arrays.copyOf(damageBonus, capacity);
+        scores = Arrays.copyOf(scores, capacity * STRIDE);
+        modifiers = Arrays.copyOf(modifiers, capacity * STRIDE);
+    }
+}
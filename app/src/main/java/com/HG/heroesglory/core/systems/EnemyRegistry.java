@@ -0,0 +1,55 @@
+package com.HG.heroesglory.core.systems;
+
+import com.HG.heroesglory.core.entities.EnemyPrototype;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Шаблоны врагов в памяти по id врага. Шаблоны неизменяемы, поэтому реестр
+ * безопасно читать из UI и фоновых потоков (балансировщик, симуляции).
+ */
+public class EnemyRegistry {
+    private final Map<String, EnemyPrototype> prototypes = new ConcurrentHashMap<>();
+
+    public EnemyPrototype get(String enemyId) {
+        return enemyId != null ? prototypes.get(enemyId) : null;
+    }
+
+    public void put(EnemyPrototype prototype) {
+        prototypes.put(prototype.getId(), prototype);
+    }
+
+    // Сохраненные шаблоны не вытесняют уже собранные из свежих данных
+    public void putAllAbsent(Collection<EnemyPrototype> loaded) {
+        for (EnemyPrototype prototype : loaded) {
+            prototypes.putIfAbsent(prototype.getId(), prototype);
+        }
+    }
+
+    /**
+     * Шаблон для данных врага: готовый, если данные не изменились, иначе собранный заново.
+     * Возвращает null при ошибке в данных.
+     */
+    public EnemyPrototype resolve(String enemyId, Map<String, Object> data) {
+        if (enemyId == null || data == null) {
+            return null;
+        }
+        EnemyPrototype prototype = prototypes.get(enemyId);
+        if (prototype != null && prototype.matches(data)) {
+            return prototype;
+        }
+        prototype = EnemyPrototype.fromMap(enemyId, data);
+        prototypes.put(enemyId, prototype);
+        return prototype;
+    }
+
+    public int size() {
+        return prototypes.size();
+    }
+
+    public void clear() {
+        prototypes.clear();
+    }
+}
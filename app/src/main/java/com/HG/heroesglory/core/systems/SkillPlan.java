@@ -0,0 +1,214 @@
+package com.HG.heroesglory.core.systems;
+
+import com.HG.heroesglory.core.dice.DiceExpression;
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.entities.StatusEffect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Навык, скомпилированный из строки эффектов (Skill.effectsSource) в массив операций.
+ * Операции разделяются ";", приставка "self" направляет операцию на заклинателя:
+ * <pre>
+ *   damage 8d6                  урон (одна цель - бросок атаки SPELL, несколько - общий бросок и спасброски)
+ *   heal 2d8+WIS                лечение
+ *   status BURNING 2 1          состояние: длительность в ходах, стаки
+ *   stat AC 2 3                 изменение характеристики; с числом раундов - временное
+ *   summon skeleton 2           призыв по шаблону из EnemyRegistry
+ * </pre>
+ * Компиляция идет один раз на id навыка; план - только проверка стоимости (check)
+ * и массив операций без разбора строк, исполняет его CombatEngine.
+ */
+public final class SkillPlan {
+
+    public enum CastResult {
+        OK(null),
+        INCAPACITATED("Combatant cannot act"),
+        ON_COOLDOWN("Skill is on cooldown"),
+        NOT_ENOUGH_MANA("Not enough mana"),
+        NOT_ENOUGH_ACTIONS("Not enough action points");
+
+        private final String reason;
+
+        CastResult(String reason) {
+            this.reason = reason;
+        }
+
+        // Текст отказа для игрока; null - каст разрешен
+        public String getReason() { return reason; }
+    }
+
+    // Что меняет операция stat
+    public enum Stat {
+        STR, DEX, CON, INT, WIS, CHA, AC, ATTACK, DAMAGE, MANA
+    }
+
+    public static final int DAMAGE = 0;
+    public static final int HEAL = 1;
+    public static final int STATUS = 2;
+    public static final int MODIFY_STAT = 3;
+    public static final int SUMMON = 4;
+
+    private static final Map<String, SkillPlan> CACHE = new ConcurrentHashMap<>();
+
+    private final Skill skill;
+    private final String source;
+    private final Op[] ops;
+
+    private SkillPlan(Skill skill, String source, Op[] ops) {
+        this.skill = skill;
+        this.source = source;
+        this.ops = ops;
+    }
+
+    /**
+     * План навыка из кеша по id; компилируется заново, только если строка эффектов изменилась.
+     * Ошибка в эффектах - IllegalArgumentException с текстом операции.
+     */
+    public static SkillPlan of(Skill skill) {
+        String source = skill.effectsSource();
+        String key = skill.getId() != null ? skill.getId() : skill.getName();
+        SkillPlan cached = key != null ? CACHE.get(key) : null;
+        if (cached != null && cached.source.equals(source)) {
+            return cached;
+        }
+        SkillPlan plan = compile(skill, source);
+        if (key != null) {
+            CACHE.put(key, plan);
+        }
+        return plan;
+    }
+
+    public static SkillPlan compile(Skill skill, String source) {
+        List<Op> ops = new ArrayList<>();
+        for (String part : source.split(";")) {
+            String text = part.trim();
+            if (!text.isEmpty()) {
+                ops.add(parse(text));
+            }
+        }
+        return new SkillPlan(skill, source, ops.toArray(new Op[0]));
+    }
+
+    public Skill getSkill() { return skill; }
+    public String getSource() { return source; }
+    public int size() { return ops.length; }
+
+    // Доступ к операциям для исполнителя - CombatEngine
+    public int opCode(int index) { return ops[index].code; }
+    public boolean isSelf(int index) { return ops[index].self; }
+    public DiceExpression dice(int index) { return ops[index].dice; }
+    public StatusEffect status(int index) { return ops[index].status; }
+    public Stat stat(int index) { return ops[index].stat; }
+    // Длительность состояния, изменение характеристики или число призванных
+    public int amount(int index) { return ops[index].amount; }
+    // Стаки состояния или раунды временного изменения
+    public int extra(int index) { return ops[index].extra; }
+    public String ref(int index) { return ops[index].ref; }
+
+    /**
+     * Проверка без списания: может ли боец действовать, готов ли навык, хватает ли
+     * маны и очков действий. Значения берутся из CombatState движка; списание и
+     * операции исполняет CombatEngine.
+     */
+    public CastResult check(Combatant caster, boolean canAct, boolean ready, int mana, int actionPoints) {
+        if (!canAct) {
+            return CastResult.INCAPACITATED;
+        }
+        if (!ready) {
+            return CastResult.ON_COOLDOWN;
+        }
+        if (caster.usesMana() && mana < skill.getManaCost()) {
+            return CastResult.NOT_ENOUGH_MANA;
+        }
+        if (actionPoints < skill.getActionCost()) {
+            return CastResult.NOT_ENOUGH_ACTIONS;
+        }
+        return CastResult.OK;
+    }
+
+    private static Op parse(String text) {
+        String[] tokens = text.split("\\s+");
+        int at = 0;
+        boolean self = false;
+        if ("self".equalsIgnoreCase(tokens[0])) {
+            self = true;
+            at = 1;
+        }
+        if (tokens.length <= at + 1) {
+            throw new IllegalArgumentException("Incomplete skill effect: " + text);
+        }
+        String keyword = tokens[at].toLowerCase(Locale.ROOT);
+        String argument = tokens[at + 1];
+        switch (keyword) {
+            case "damage":
+            case "heal":
+            case "status":
+            case "stat":
+            case "summon":
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown skill effect: " + text);
+        }
+        try {
+            switch (keyword) {
+                case "damage":
+                    return new Op(DAMAGE, self, diceArg(tokens, at + 1), null, null, 0, 0, null);
+                case "heal":
+                    return new Op(HEAL, self, diceArg(tokens, at + 1), null, null, 0, 0, null);
+                case "status":
+                    return new Op(STATUS, self, null, StatusEffect.valueOf(argument.toUpperCase(Locale.ROOT)),
+                            null, intArg(tokens, at + 2, 1), intArg(tokens, at + 3, 1), null);
+                case "stat":
+                    return new Op(MODIFY_STAT, self, null, null, Stat.valueOf(argument.toUpperCase(Locale.ROOT)),
+                            intArg(tokens, at + 2, 0), intArg(tokens, at + 3, 0), null);
+                default:
+                    return new Op(SUMMON, self, null, null, null, intArg(tokens, at + 2, 1), 0, argument);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid skill effect: " + text, e);
+        }
+    }
+
+    // Выражение кубов - весь остаток операции: "2d6 + 3" допускает пробелы
+    private static DiceExpression diceArg(String[] tokens, int from) {
+        StringBuilder expression = new StringBuilder();
+        for (int i = from; i < tokens.length; i++) {
+            expression.append(tokens[i]);
+        }
+        return DiceExpression.compile(expression.toString());
+    }
+
+    private static int intArg(String[] tokens, int index, int fallback) {
+        return index < tokens.length ? Integer.parseInt(tokens[index]) : fallback;
+    }
+
+    // Одна операция плана; поля, не нужные коду операции, пусты
+    private static final class Op {
+        final int code;
+        final boolean self;
+        final DiceExpression dice;
+        final StatusEffect status;
+        final Stat stat;
+        final int amount; // длительность, изменение или число призванных
+        final int extra;  // стаки или раунды временного изменения
+        final String ref; // id шаблона призыва
+
+        Op(int code, boolean self, DiceExpression dice, StatusEffect status, Stat stat, int amount, int extra,
+           String ref) {
+            this.code = code;
+            this.self = self;
+            this.dice = dice;
+            this.status = status;
+            this.stat = stat;
+            this.amount = amount;
+            this.extra = extra;
+            this.ref = ref;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.HG.heroesglory.core.systems;
+
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.StatusEffect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Наложение и тики состояний бойцов.
+ * Состояния хранятся в самом Combatant (битовая маска и примитивные массивы),
+ * тик перебирает только установленные биты нужной фазы и ничего не создает.
+ * TurnManager тикает фазы при передаче хода по TurnOrder; CombatEngine считает
+ * тики по тем же правилам (tickedHp, tickedDuration) на своем состоянии.
+ */
+public class StatusEngine {
+
+    public interface Listener {
+        default void onStatusApplied(Combatant combatant, StatusEffect effect, int stacks) {}
+
+        // hpDelta < 0 - урон, > 0 - лечение
+        default void onStatusTick(Combatant combatant, StatusEffect effect, int hpDelta) {}
+
+        default void onStatusExpired(Combatant combatant, StatusEffect effect) {}
+    }
+
+    private static final StatusEffect[] EFFECTS = StatusEffect.values();
+    private static final long INCAPACITATING_MASK = StatusEffect.incapacitatingMask();
+
+    private final List<Listener> listeners = new ArrayList<>();
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Накладывает эффект: стаки складываются до максимума эффекта, длительность
+     * берется наибольшая из старой и новой (Combatant.STATUS_PERMANENT - бессрочно).
+     */
+    public void apply(Combatant target, StatusEffect effect, int duration, int stacks) {
+        if (!target.isAlive() || duration == 0 || stacks <= 0) {
+            return;
+        }
+        int newStacks = stackedCount(effect, target.statusStacks(effect), stacks);
+        int newDuration = target.hasStatus(effect)
+                ? stackedDuration(target.statusDuration(effect), duration) : duration;
+        target.setStatus(effect, newDuration, newStacks);
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onStatusApplied(target, effect, newStacks);
+        }
+    }
+
+    public void apply(Combatant target, StatusEffect effect, int duration) {
+        apply(target, effect, duration, 1);
+    }
+
+    public void remove(Combatant target, StatusEffect effect) {
+        if (target.hasStatus(effect)) {
+            target.clearStatus(effect);
+            notifyExpired(target, effect);
+        }
+    }
+
+    // Правила сложения при повторном наложении; их же использует CombatEngine
+    public static int stackedCount(StatusEffect effect, int current, int added) {
+        return Math.min(current + added, effect.getMaxStacks());
+    }
+
+    public static int stackedDuration(int current, int added) {
+        return current == Combatant.STATUS_PERMANENT || added == Combatant.STATUS_PERMANENT
+                ? Combatant.STATUS_PERMANENT : Math.max(current, added);
+    }
+
+    // HP после тика эффекта со stacks стаками, в пределах [0, maxHp]
+    public static int tickedHp(StatusEffect effect, int stacks, int hp, int maxHp) {
+        return Math.max(0, Math.min(maxHp, hp + effect.getHpPerStack() * stacks));
+    }
+
+    // Длительность после тика: бессрочные не убывают, 0 - эффект снят
+    public static int tickedDuration(int duration) {
+        return duration == Combatant.STATUS_PERMANENT ? duration : Math.max(0, duration - 1);
+    }
+
+    // Может ли боец действовать (жив и не оглушен, не парализован, не спит)
+    public static boolean canAct(Combatant combatant) {
+        return combatant.isAlive() && (combatant.statusMask() & INCAPACITATING_MASK) == 0;
+    }
+
+    // Эффекты фазы phaseMask (TurnOrder.START_MASK или END_MASK) у одного бойца
+    public void tick(Combatant combatant, long phaseMask) {
+        long pending = combatant.statusMask() & phaseMask;
+        while (pending != 0 && combatant.isAlive()) {
+            int index = Long.numberOfTrailingZeros(pending);
+            pending &= pending - 1;
+            StatusEffect effect = EFFECTS[index];
+
+            int hp = combatant.getCurrentHp();
+            int hpDelta = tickedHp(effect, combatant.statusStacks(effect), hp, combatant.getMaxHp()) - hp;
+            if (hpDelta < 0) {
+                combatant.takeDamage(-hpDelta);
+            } else if (hpDelta > 0) {
+                combatant.heal(hpDelta);
+            }
+            if (hpDelta != 0) {
+                for (int i = 0; i < listeners.size(); i++) {
+                    listeners.get(i).onStatusTick(combatant, effect, hpDelta);
+                }
+            }
+            if (!combatant.isAlive()) {
+                // Смерть уже сняла все состояния (Combatant.takeDamage)
+                return;
+            }
+
+            int duration = combatant.statusDuration(effect);
+            if (duration == Combatant.STATUS_PERMANENT) {
+                continue;
+            }
+            int remaining = tickedDuration(duration);
+            if (remaining == 0) {
+                combatant.clearStatus(effect);
+                notifyExpired(combatant, effect);
+            } else {
+                combatant.setStatus(effect, remaining, combatant.statusStacks(effect));
+            }
+        }
+    }
+
+    private void notifyExpired(Combatant combatant, StatusEffect effect) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onStatusExpired(combatant, effect);
+        }
+    }
+
+    // Биты эффектов, которые тикают в фазе phase
+    public static long phaseMask(StatusEffect.Phase phase) {
+        long mask = 0;
+        for (StatusEffect effect : StatusEffect.values()) {
+            if (effect.getPhase() == phase) {
+                mask |= effect.bit();
+            }
+        }
+        return mask;
+    }
+}
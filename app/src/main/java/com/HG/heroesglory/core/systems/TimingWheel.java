@@ -0,0 +1,230 @@
+package com.HG.heroesglory.core.systems;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Иерархическое колесо таймеров по раундам: окончание эффектов и отложенные
+ * действия ("взорвется через 2 раунда"). Откаты навыков в бою ведет CombatState.
+ * Три уровня по 64 ячейки покрывают 262144 раунда, более дальние таймеры ждут
+ * в отдельном списке. Переход раунда стоит O(истекающих таймеров) плюс редкий
+ * перенос ячейки старшего уровня вниз; отмена и проверка готовности по ключу - O(1).
+ */
+public class TimingWheel {
+
+    public interface Task {
+        void onDue(long round);
+    }
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 3;
+
+    private final Timer[][] wheel = new Timer[LEVELS][SLOTS];
+    private final Timer[] overflow = new Timer[1];
+    private final Map<Object, Timer> keyed = new HashMap<>();
+    private long now;
+    private int size;
+
+    public TimingWheel() {
+        this(0);
+    }
+
+    public TimingWheel(long startRound) {
+        this.now = startRound;
+    }
+
+    public long getRound() {
+        return now;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Сброс всех таймеров, например при новом бою
+    public void reset(long startRound) {
+        for (Timer[] level : wheel) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = clearList(level[i]);
+            }
+        }
+        overflow[0] = clearList(overflow[0]);
+        keyed.clear();
+        size = 0;
+        now = startRound;
+    }
+
+    // Задача сработает через delayRounds раундов (не меньше одного)
+    public Timer schedule(int delayRounds, Task task) {
+        return schedule(null, delayRounds, task);
+    }
+
+    /**
+     * Таймер с ключом: новый таймер с тем же ключом заменяет старый,
+     * а isReady/roundsLeft отвечают по ключу без перебора.
+     */
+    public Timer schedule(Object key, int delayRounds, Task task) {
+        if (key != null) {
+            cancel(key);
+        }
+        Timer timer = new Timer(now + Math.max(1, delayRounds), key, task);
+        if (key != null) {
+            keyed.put(key, timer);
+        }
+        insert(timer);
+        size++;
+        return timer;
+    }
+
+    public boolean cancel(Object key) {
+        Timer timer = keyed.get(key);
+        return timer != null && cancel(timer);
+    }
+
+    public boolean cancel(Timer timer) {
+        if (!timer.isActive()) {
+            return false;
+        }
+        unlink(timer);
+        if (timer.key != null) {
+            keyed.remove(timer.key);
+        }
+        size--;
+        return true;
+    }
+
+    public boolean isReady(Object key) {
+        return !keyed.containsKey(key);
+    }
+
+    // Сколько раундов до срабатывания таймера с ключом; 0 - таймера нет
+    public int roundsLeft(Object key) {
+        Timer timer = keyed.get(key);
+        return timer != null ? (int) (timer.deadline - now) : 0;
+    }
+
+    // Переход к раунду round; задачи срабатывают в порядке раундов
+    public void advanceTo(long round) {
+        while (now < round) {
+            advance();
+        }
+    }
+
+    public void advance() {
+        now++;
+        int index = (int) (now & SLOT_MASK);
+        if (index == 0) {
+            cascade();
+        }
+        Timer due = wheel[0][index];
+        wheel[0][index] = null;
+        while (due != null) {
+            Timer timer = due;
+            due = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            timer.bucket = null;
+            if (timer.key != null) {
+                keyed.remove(timer.key);
+            }
+            size--;
+            if (timer.task != null) {
+                timer.task.onDue(now);
+            }
+        }
+    }
+
+    // Ячейки старших уровней, чей диапазон начался, переносятся на уровень ниже
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int index = (int) ((now >>> (SLOT_BITS * level)) & SLOT_MASK);
+            reinsert(wheel[level], index);
+            if (index != 0) {
+                return;
+            }
+        }
+        reinsert(overflow, 0);
+    }
+
+    private void reinsert(Timer[] bucket, int index) {
+        Timer timer = bucket[index];
+        bucket[index] = null;
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            insert(timer);
+            timer = next;
+        }
+    }
+
+    private void insert(Timer timer) {
+        long delta = timer.deadline - now;
+        Timer[] bucket = overflow;
+        int index = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (SLOT_BITS * (level + 1))) {
+                bucket = wheel[level];
+                index = (int) ((timer.deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+                break;
+            }
+        }
+        Timer head = bucket[index];
+        timer.next = head;
+        if (head != null) {
+            head.prev = timer;
+        }
+        bucket[index] = timer;
+        timer.bucket = bucket;
+        timer.index = index;
+    }
+
+    private static void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            timer.bucket[timer.index] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.bucket = null;
+    }
+
+    private static Timer clearList(Timer head) {
+        while (head != null) {
+            Timer next = head.next;
+            head.prev = null;
+            head.next = null;
+            head.bucket = null;
+            head = next;
+        }
+        return null;
+    }
+
+    // Запланированная задача; элемент двусвязного списка своей ячейки
+    public static final class Timer {
+        private final long deadline;
+        private final Object key;
+        private final Task task;
+        private Timer prev;
+        private Timer next;
+        private Timer[] bucket;
+        private int index;
+
+        private Timer(long deadline, Object key, Task task) {
+            this.deadline = deadline;
+            this.key = key;
+            this.task = task;
+        }
+
+        public long getDeadline() { return deadline; }
+
+        // false - таймер сработал или отменен
+        public boolean isActive() { return bucket != null; }
+    }
+}
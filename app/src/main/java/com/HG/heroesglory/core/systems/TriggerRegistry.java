@@ -0,0 +1,149 @@
+package com.HG.heroesglory.core.systems;
+
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Item;
+import com.HG.heroesglory.core.entities.Skill;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реакции экипировки и пассивных навыков на события боя. Индекс - по событию и бойцу:
+ * для каждого события отдельная карта "id бойца -> массив планов", поэтому событие
+ * трогает только подписанных на него. Индекс бойца пересобирается в equip() -
+ * то есть только при смене экипировки, а не на каждом событии.
+ * Планы исполняет CombatEngine по своим событиям (см. CombatEngine.setTriggers):
+ * операции без "self" направлены на второго участника события (цель удара, убитого,
+ * атакующего), для начала хода - на самого владельца.
+ * Ключ - id, поэтому один реестр годится и для копий бойцов при повторе боя.
+ */
+public class TriggerRegistry {
+
+    public enum Event {
+        ON_HIT,      // владелец попал
+        ON_CRIT,     // владелец попал критически
+        ON_KILL,     // владелец добил цель
+        TURN_START,  // начало хода владельца
+        LOW_HP;      // HP владельца опустилось ниже четверти
+
+        // "on_hit", "onHit", "ON_HIT"; неизвестное - null
+        public static Event fromName(String name) {
+            if (name == null) {
+                return null;
+            }
+            String normalized = name.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+            for (Event event : EVENTS) {
+                if (event.name().equals(normalized)) {
+                    return event;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Ключ stats предмета: карта "событие -> эффекты", например {"on_hit": "status BURNING 2"}
+    public static final String ITEM_TRIGGERS_KEY = "triggers";
+
+    private static final Event[] EVENTS = Event.values();
+    private static final SkillPlan[] NONE = new SkillPlan[0];
+
+    // Экипировку меняет UI, а читает поток движка - карты потокобезопасные
+    private final List<Map<String, SkillPlan[]>> index = new ArrayList<>(EVENTS.length);
+
+    public TriggerRegistry() {
+        for (int i = 0; i < EVENTS.length; i++) {
+            index.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Пересобирает триггеры бойца по экипированным предметам и пассивным навыкам
+     * (Skill.trigger). Вызывается при смене экипировки; ошибочный эффект
+     * дает IllegalArgumentException с текстом операции.
+     */
+    public void equip(Combatant owner, List<Item> items, List<Skill> passives) {
+        List<List<SkillPlan>> plans = new ArrayList<>(EVENTS.length);
+        for (int i = 0; i < EVENTS.length; i++) {
+            plans.add(new ArrayList<>());
+        }
+        if (items != null) {
+            for (Item item : items) {
+                if (item.isEquipped()) {
+                    addItemTriggers(item, plans);
+                }
+            }
+        }
+        if (passives != null) {
+            for (Skill passive : passives) {
+                Event event = Event.fromName(passive.getTrigger());
+                if (event != null) {
+                    plans.get(event.ordinal()).add(SkillPlan.of(passive));
+                }
+            }
+        }
+        for (int i = 0; i < EVENTS.length; i++) {
+            List<SkillPlan> eventPlans = plans.get(i);
+            if (eventPlans.isEmpty()) {
+                index.get(i).remove(owner.getId());
+            } else {
+                index.get(i).put(owner.getId(), eventPlans.toArray(NONE));
+            }
+        }
+    }
+
+    public void unequip(Combatant owner) {
+        for (Map<String, SkillPlan[]> handlers : index) {
+            handlers.remove(owner.getId());
+        }
+    }
+
+    // Копия индекса: бой и его повтор читают экипировку на момент начала боя
+    public TriggerRegistry snapshot() {
+        TriggerRegistry copy = new TriggerRegistry();
+        for (int i = 0; i < EVENTS.length; i++) {
+            copy.index.get(i).putAll(index.get(i));
+        }
+        return copy;
+    }
+
+    public void clear() {
+        for (Map<String, SkillPlan[]> handlers : index) {
+            handlers.clear();
+        }
+    }
+
+    // Сколько бойцов подписано на событие
+    public int subscribers(Event event) {
+        return index.get(event.ordinal()).size();
+    }
+
+    // Планы бойца на событие; null - не подписан
+    public SkillPlan[] plans(Event event, String ownerId) {
+        return ownerId != null ? index.get(event.ordinal()).get(ownerId) : null;
+    }
+
+    // HP перешло порог четверти сверху вниз и боец еще жив (для LOW_HP)
+    public static boolean crossesLowHp(int before, int after, int maxHp) {
+        return after > 0 && after * 4 < maxHp && before * 4 >= maxHp;
+    }
+
+    private static void addItemTriggers(Item item, List<List<SkillPlan>> plans) {
+        Object triggers = item.getStats() != null ? item.getStats().get(ITEM_TRIGGERS_KEY) : null;
+        if (!(triggers instanceof Map)) {
+            return;
+        }
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) triggers).entrySet()) {
+            Event event = Event.fromName(String.valueOf(entry.getKey()));
+            if (event == null || !(entry.getValue() instanceof String)) {
+                continue;
+            }
+            // Навык-носитель эффекта; id держит план в кеше SkillPlan между пересборками
+            Skill carrier = new Skill(item.getId() + "@" + event.name(), item.getName(), null, "ITEM");
+            carrier.setEffects((String) entry.getValue());
+            plans.get(event.ordinal()).add(SkillPlan.of(carrier));
+        }
+    }
+}
@@ -1,141 +1,338 @@
 package com.HG.heroesglory.core.systems;
 
+import com.HG.heroesglory.core.dice.DiceRollSystem;
+import com.HG.heroesglory.core.dice.PackedRoll;
+import com.HG.heroesglory.core.dice.RngStream;
 import com.HG.heroesglory.core.entities.Combatant;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.TreeSet;
 
+/**
+ * Порядок ходов по инициативе для бойцов-объектов (симулятор).
+ * Позиции и передача хода - TurnOrder, как в CombatEngine: кольцо живых дает переход
+ * хода за O(1), счетчики живых по сторонам - isCombatOver за O(1), а тики состояний
+ * и пропуск лишенных хода идут по тем же правилам. Отсортированное множество держит
+ * порядок для вставки подкреплений; после вставки позиции перенумеровываются.
+ * Если HP бойца меняется в обход CombatSystem, нужно вызвать refreshCombatant.
+ * Откаты и отложенные действия по раундам - в TimingWheel (getTimers).
+ */
 public class TurnManager {
-    private List<Combatant> combatants;
-    private int currentTurnIndex;
+
+    // Инициатива по убыванию, при равенстве - порядок добавления
+    private static final Comparator<Slot> ORDER = (a, b) -> {
+        if (a.initiative != b.initiative) {
+            return Integer.compare(b.initiative, a.initiative);
+        }
+        return Long.compare(a.seq, b.seq);
+    };
+
+    private final Map<Combatant, Slot> slots = new LinkedHashMap<>(); // в порядке добавления
+    private final TreeSet<Slot> order = new TreeSet<>(ORDER);
+    private final TurnOrder turnOrder = new TurnOrder();
+    // Слот по позиции в TurnOrder
+    private final List<Slot> positions = new ArrayList<>();
+    private final TurnOrder.Turns turns = new SlotTurns();
+    private Slot current;
     private int currentRound;
+    private long nextSeq;
+
+    // Списки пересобираются лениво, только после изменения порядка
+    private List<Combatant> orderedView;
+    private List<Combatant> playersView;
+    private List<Combatant> enemiesView;
+
+    private DiceRollSystem initiativeDice;
+    private final StatusEngine statusEngine = new StatusEngine();
+    private final TimingWheel timers = new TimingWheel(1);
 
     public TurnManager() {
-        this.combatants = new ArrayList<>();
-        this.currentTurnIndex = 0;
+        this(new RngStream(RngStream.randomSeed()));
+    }
+
+    public TurnManager(RngStream initiativeStream) {
+        this.initiativeDice = new DiceRollSystem(initiativeStream);
         this.currentRound = 1;
     }
 
     public void initializeCombat(List<Combatant> allCombatants) {
-        this.combatants.clear();
-        this.combatants.addAll(allCombatants);
-        this.currentTurnIndex = 0;
-        this.currentRound = 1;
+        slots.clear();
+        order.clear();
+        current = null;
+        currentRound = 1;
+        timers.reset(currentRound);
+        nextSeq = 0;
 
-        // Сбрасываем индикаторы ходов
-        for (Combatant combatant : combatants) {
+        // До броска инициативы бойцы ходят в порядке списка
+        for (Combatant combatant : allCombatants) {
             combatant.setCurrentTurn(false);
+            Slot slot = new Slot(combatant, 0, nextSeq++);
+            slots.put(combatant, slot);
+            order.add(slot);
         }
+        reindex();
 
         // Устанавливаем первого бойца
-        if (!combatants.isEmpty()) {
-            combatants.get(0).setCurrentTurn(true);
-        }
+        setCurrent(slotAt(turnOrder.successor(-1)));
     }
 
     public void rollInitiative() {
         // Каждый боец бросает инициативу (d20 + модификатор ловкости)
-        for (Combatant combatant : combatants) {
-            int initiativeRoll = (int) (Math.random() * 20) + 1 + combatant.getDexterityModifier();
-            combatant.setInitiative(initiativeRoll);
+        List<Slot> roster = new ArrayList<>(slots.values());
+        order.clear();
+        for (Slot slot : roster) {
+            long initiativeRoll = initiativeDice.rollDicePacked(20, slot.combatant.getDexterityModifier());
+            slot.initiative = PackedRoll.total(initiativeRoll);
+            slot.combatant.setInitiative(slot.initiative);
+            order.add(slot);
         }
+        reindex();
 
-        // Сортируем по инициативе (от высокой к низкой)
-        combatants.sort(Comparator.comparingInt(Combatant::getInitiative).reversed());
+        // Ход переходит к бойцу с наибольшей инициативой, как в начале боя CombatEngine
+        setCurrent(null);
+        turnOrder.advance(-1, currentRound, turns);
+    }
+
+    public StatusEngine getStatusEngine() {
+        return statusEngine;
+    }
+
+    // Таймеры по раундам; срабатывают, когда TurnManager начинает новый раунд
+    public TimingWheel getTimers() {
+        return timers;
     }
 
     public Combatant getCurrentCombatant() {
-        if (combatants.isEmpty() || currentTurnIndex >= combatants.size()) {
-            return null;
-        }
-        return combatants.get(currentTurnIndex);
+        return current != null ? current.combatant : null;
     }
 
+    // Конец хода текущего бойца и передача хода по правилам TurnOrder
     public void nextTurn() {
-        // Сбрасываем текущий ход
-        Combatant current = getCurrentCombatant();
-        if (current != null) {
-            current.setCurrentTurn(false);
+        if (current == null) {
+            return;
         }
+        // Бойцы, выбывшие в обход refreshCombatant, обнаруживаются здесь
+        refresh(current);
+        if (!turns.tick(current.position, TurnOrder.END_MASK)) {
+            turnOrder.advance(current.position, currentRound, turns);
+        }
+    }
 
-        // Переходим к следующему бойцу
-        currentTurnIndex++;
+    // Подкрепление или призванное существо: бросает инициативу и встает в порядок
+    public void addCombatant(Combatant combatant) {
+        long initiativeRoll = initiativeDice.rollDicePacked(20, combatant.getDexterityModifier());
+        addCombatant(combatant, PackedRoll.total(initiativeRoll));
+    }
 
-        // Если дошли до конца раунда, начинаем новый раунд
-        if (currentTurnIndex >= combatants.size()) {
-            currentTurnIndex = 0;
-            currentRound++;
+    public void addCombatant(Combatant combatant, int initiative) {
+        if (slots.containsKey(combatant)) {
+            return;
         }
-
-        // Устанавливаем нового текущего бойца
-        Combatant next = getCurrentCombatant();
-        if (next != null) {
-            next.setCurrentTurn(true);
+        combatant.setInitiative(initiative);
+        combatant.setCurrentTurn(false);
+        Slot slot = new Slot(combatant, initiative, nextSeq++);
+        slots.put(combatant, slot);
+        order.add(slot);
+        reindex();
+        if (current == null && turnOrder.isAlive(slot.position)) {
+            setCurrent(slot);
         }
     }
 
     public void removeCombatant(Combatant combatant) {
-        int index = combatants.indexOf(combatant);
-        if (index != -1) {
-            combatants.remove(index);
-
-            // Корректируем индекс текущего хода если нужно
-            if (currentTurnIndex >= index && currentTurnIndex > 0) {
-                currentTurnIndex--;
-            }
+        Slot slot = slots.get(combatant);
+        if (slot == null) {
+            return;
+        }
+        // Если удаляем текущего бойца, ход переходит к следующему
+        Slot next = slot == current ? slotAt(turnOrder.successor(slot.position)) : null;
+        if (next == slot) {
+            next = null;
+        }
+        slots.remove(combatant);
+        order.remove(slot);
+        reindex();
+        if (slot == current) {
+            advanceTo(next);
+        }
+    }
 
-            // Если удалили текущего бойца, переходим к следующему
-            if (index == currentTurnIndex) {
-                nextTurn();
-            }
+    /**
+     * Сообщает об изменении HP бойца (урон, лечение, воскрешение).
+     * CombatSystem вызывает его сам, если привязан через bindTurnManager.
+     */
+    public void refreshCombatant(Combatant combatant) {
+        Slot slot = slots.get(combatant);
+        if (slot != null) {
+            refresh(slot);
         }
     }
 
     public List<Combatant> getCombatants() {
-        return new ArrayList<>(combatants);
+        ensureViews();
+        return orderedView;
     }
 
     public List<Combatant> getAliveCombatants() {
-        return combatants.stream()
-                .filter(Combatant::isAlive)
-                .collect(Collectors.toList());
+        List<Combatant> alive = new ArrayList<>(turnOrder.size());
+        for (Slot slot : positions) {
+            if (turnOrder.isAlive(slot.position)) {
+                alive.add(slot.combatant);
+            }
+        }
+        return alive;
     }
 
     public List<Combatant> getEnemies() {
-        return combatants.stream()
-                .filter(c -> "ENEMY".equals(c.getType()))
-                .collect(Collectors.toList());
+        ensureViews();
+        return enemiesView;
     }
 
     public List<Combatant> getPlayers() {
-        return combatants.stream()
-                .filter(c -> "PLAYER".equals(c.getType()))
-                .collect(Collectors.toList());
+        ensureViews();
+        return playersView;
     }
 
     public int getCurrentRound() {
         return currentRound;
     }
 
-    public boolean isCombatOver() {
-        long alivePlayers = getPlayers().stream().filter(Combatant::isAlive).count();
-        long aliveEnemies = getEnemies().stream().filter(Combatant::isAlive).count();
+    public int getAlivePlayerCount() {
+        return turnOrder.getAlivePlayers();
+    }
 
-        return alivePlayers == 0 || aliveEnemies == 0;
+    public int getAliveEnemyCount() {
+        return turnOrder.getAliveEnemies();
+    }
+
+    public boolean isCombatOver() {
+        return turnOrder.isOver();
     }
 
     public boolean isPlayerVictory() {
-        return getPlayers().stream().anyMatch(Combatant::isAlive) &&
-                getEnemies().stream().noneMatch(Combatant::isAlive);
+        return turnOrder.getAlivePlayers() > 0 && turnOrder.getAliveEnemies() == 0;
     }
 
     public void skipIncapacitatedCombatants() {
-        Combatant current = getCurrentCombatant();
-        while (current != null && !current.isAlive()) {
+        if (current != null && !StatusEngine.canAct(current.combatant)) {
             nextTurn();
-            current = getCurrentCombatant();
         }
     }
-}
\ No newline at end of file
+
+    // Позиции TurnOrder заново в порядке инициативы
+    private void reindex() {
+        turnOrder.clear();
+        positions.clear();
+        for (Slot slot : order) {
+            slot.position = turnOrder.add(slot.type, slot.combatant.isAlive());
+            positions.add(slot);
+        }
+        invalidateViews();
+    }
+
+    private void refresh(Slot slot) {
+        turnOrder.setAlive(slot.position, slot.combatant.isAlive());
+    }
+
+    private Slot slotAt(int position) {
+        return position >= 0 ? positions.get(position) : null;
+    }
+
+    private void advanceTo(Slot next) {
+        if (current != null) {
+            current.combatant.setCurrentTurn(false);
+        }
+        // Переход через начало порядка - новый раунд
+        if (next != null && current != null && ORDER.compare(next, current) <= 0) {
+            currentRound++;
+            timers.advanceTo(currentRound);
+        }
+        setCurrent(next);
+    }
+
+    private void setCurrent(Slot slot) {
+        if (current != null) {
+            current.combatant.setCurrentTurn(false);
+        }
+        current = slot;
+        if (current != null) {
+            current.combatant.setCurrentTurn(true);
+            current.combatant.restoreActionPoints();
+        }
+    }
+
+    private void invalidateViews() {
+        orderedView = null;
+        playersView = null;
+        enemiesView = null;
+    }
+
+    private void ensureViews() {
+        if (orderedView != null) {
+            return;
+        }
+        List<Combatant> all = new ArrayList<>(order.size());
+        List<Combatant> players = new ArrayList<>();
+        List<Combatant> enemies = new ArrayList<>();
+        for (Slot slot : order) {
+            all.add(slot.combatant);
+            if (slot.type == Combatant.TYPE_PLAYER) {
+                players.add(slot.combatant);
+            } else if (slot.type == Combatant.TYPE_ENEMY) {
+                enemies.add(slot.combatant);
+            }
+        }
+        orderedView = Collections.unmodifiableList(all);
+        playersView = Collections.unmodifiableList(players);
+        enemiesView = Collections.unmodifiableList(enemies);
+    }
+
+    // Тики и смена хода на самих бойцах
+    private final class SlotTurns implements TurnOrder.Turns {
+        @Override
+        public void started(int position, int round) {
+            if (round != currentRound) {
+                currentRound = round;
+                timers.advanceTo(currentRound);
+            }
+            setCurrent(positions.get(position));
+        }
+
+        @Override
+        public boolean tick(int position, long phaseMask) {
+            Slot slot = positions.get(position);
+            statusEngine.tick(slot.combatant, phaseMask);
+            refresh(slot);
+            return turnOrder.isOver();
+        }
+
+        @Override
+        public boolean canAct(int position) {
+            return StatusEngine.canAct(positions.get(position).combatant);
+        }
+
+        @Override
+        public void skipped(int position) {
+        }
+    }
+
+    private static final class Slot {
+        final Combatant combatant;
+        final byte type;
+        final long seq;
+        int initiative;
+        int position;
+
+        Slot(Combatant combatant, int initiative, long seq) {
+            this.combatant = combatant;
+            this.type = combatant.typeCode();
+            this.initiative = initiative;
+            this.seq = seq;
+        }
+    }
+}
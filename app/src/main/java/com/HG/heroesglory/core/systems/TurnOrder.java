@@ -0,0 +1,179 @@
+package com.HG.heroesglory.core.systems;
+
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.StatusEffect;
+
+import java.util.Arrays;
+
+/**
+ * Порядок ходов по позициям инициативы (0 - первый в раунде) - общий для CombatEngine
+ * и TurnManager. Живые позиции связаны в кольцо, поэтому переход хода - O(1), счетчики
+ * живых по сторонам дают конец боя за O(1). Новые позиции добавляются в конец порядка.
+ * advance задает единые правила передачи хода: тик эффектов начала хода, пропуск
+ * лишенного хода с тиком конца хода, новый раунд при переходе через начало порядка.
+ */
+public final class TurnOrder {
+    // Не больше стольких пропусков подряд: если лишены хода все, ход все равно передается
+    public static final int MAX_SKIPPED_TURNS = 64;
+    public static final long START_MASK = StatusEngine.phaseMask(StatusEffect.Phase.TURN_START);
+    public static final long END_MASK = StatusEngine.phaseMask(StatusEffect.Phase.TURN_END);
+
+    // Владелец бойцов: применяет тики и сообщает о смене хода
+    public interface Turns {
+        // Ход перешел к позиции slot в раунде round
+        void started(int slot, int round);
+
+        // Эффекты фазы phaseMask у бойца slot; true - бой окончен.
+        // Гибель бойца нужно отметить через setAlive до возврата
+        boolean tick(int slot, long phaseMask);
+
+        boolean canAct(int slot);
+
+        void skipped(int slot);
+    }
+
+    private int[] next = new int[8];
+    private int[] prev = new int[8];
+    private boolean[] alive = new boolean[8];
+    private byte[] types = new byte[8];
+    private int size;
+    private int aliveCount;
+    private int alivePlayers;
+    private int aliveEnemies;
+
+    public void clear() {
+        size = 0;
+        aliveCount = 0;
+        alivePlayers = 0;
+        aliveEnemies = 0;
+    }
+
+    // Новая позиция в конце порядка; возвращает ее номер
+    public int add(byte type, boolean isAlive) {
+        if (size == next.length) {
+            int capacity = size * 2;
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            alive = Arrays.copyOf(alive, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        int slot = size++;
+        types[slot] = type;
+        alive[slot] = false;
+        if (isAlive) {
+            setAlive(slot, true);
+        }
+        return slot;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isAlive(int slot) {
+        return alive[slot];
+    }
+
+    public void setAlive(int slot, boolean isAlive) {
+        if (alive[slot] == isAlive) {
+            return;
+        }
+        alive[slot] = isAlive;
+        if (isAlive) {
+            link(slot);
+        } else {
+            next[prev[slot]] = next[slot];
+            prev[next[slot]] = prev[slot];
+        }
+        int delta = isAlive ? 1 : -1;
+        aliveCount += delta;
+        if (types[slot] == Combatant.TYPE_PLAYER) {
+            alivePlayers += delta;
+        } else if (types[slot] == Combatant.TYPE_ENEMY) {
+            aliveEnemies += delta;
+        }
+    }
+
+    public int getAlivePlayers() {
+        return alivePlayers;
+    }
+
+    public int getAliveEnemies() {
+        return aliveEnemies;
+    }
+
+    public boolean isOver() {
+        return alivePlayers == 0 || aliveEnemies == 0;
+    }
+
+    /**
+     * Следующая живая позиция после slot (-1 - до первой); -1, если живых нет.
+     * Для живой позиции - O(1); выбывшая позиция ищется просмотром вперед.
+     */
+    public int successor(int slot) {
+        if (aliveCount == 0) {
+            return -1;
+        }
+        if (slot >= 0 && alive[slot]) {
+            return next[slot];
+        }
+        for (int step = 1; step <= size; step++) {
+            int candidate = (slot + step + size) % size;
+            if (alive[candidate]) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Передает ход после позиции from (-1 - начало боя) в раунде round.
+     * Возвращает позицию, получившую ход, или -1, если бой закончился при передаче.
+     */
+    public int advance(int from, int round, Turns turns) {
+        for (int skipped = 0; ; skipped++) {
+            int slot = successor(from);
+            if (slot < 0) {
+                return -1;
+            }
+            if (slot <= from) {
+                round++;
+            }
+            turns.started(slot, round);
+            if (turns.tick(slot, START_MASK)) {
+                return -1;
+            }
+            if (turns.canAct(slot) || skipped >= MAX_SKIPPED_TURNS) {
+                return slot;
+            }
+            if (alive[slot]) {
+                turns.skipped(slot);
+                if (turns.tick(slot, END_MASK)) {
+                    return -1;
+                }
+            }
+            from = slot;
+        }
+    }
+
+    // Вставка в кольцо после ближайшей живой позиции перед slot
+    private void link(int slot) {
+        int before = -1;
+        for (int step = 1; step < size; step++) {
+            int candidate = (slot - step + size) % size;
+            if (alive[candidate]) {
+                before = candidate;
+                break;
+            }
+        }
+        if (before < 0) {
+            next[slot] = slot;
+            prev[slot] = slot;
+        } else {
+            prev[slot] = before;
+            next[slot] = next[before];
+            prev[next[before]] = slot;
+            next[before] = slot;
+        }
+    }
+}
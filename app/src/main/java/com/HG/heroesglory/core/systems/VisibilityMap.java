@@ -0,0 +1,236 @@
+package com.HG.heroesglory.core.systems;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Видимость и укрытия на карте боя. Поле зрения из клетки считается рекурсивным
+ * shadowcasting по восьми октантам в три прохода: стены, стены и высокие укрытия,
+ * затем еще низкие укрытия и бойцы. Проход, в котором клетка перестала быть видна,
+ * дает уровень укрытия (5e: половинное +2 КД, на три четверти +5, полное - нет линии обзора).
+ * Shadowcasting несимметричен, поэтому укрытие между двумя клетками - худшее из полей
+ * обеих: если A видит B, то и B видит A.
+ * Поле кешируется по клетке-источнику. Изменение клетки сбрасывает только те поля,
+ * из которых эта клетка была видна: за стеной она ни на что не влияет.
+ */
+public class VisibilityMap {
+
+    public enum Terrain {
+        OPEN,
+        LOW,    // бочки, низкая стена: половинное укрытие
+        HIGH,   // бойница, решетка: укрытие на три четверти
+        WALL    // перекрывает обзор
+    }
+
+    public enum Cover {
+        NONE(0),
+        HALF(2),
+        THREE_QUARTERS(5),
+        TOTAL(0);
+
+        private final int armorBonus;
+
+        Cover(int armorBonus) {
+            this.armorBonus = armorBonus;
+        }
+
+        public int getArmorBonus() { return armorBonus; }
+    }
+
+    private static final Terrain[] TERRAINS = Terrain.values();
+    private static final Cover[] COVERS = Cover.values();
+    private static final byte NOT_VISIBLE = (byte) Cover.TOTAL.ordinal();
+    // Множители октантов: xx, xy, yx, yy
+    private static final int[][] OCTANTS = {
+            {1, 0, 0, -1, -1, 0, 0, 1},
+            {0, 1, -1, 0, 0, -1, 1, 0},
+            {0, 1, 1, 0, 0, -1, -1, 0},
+            {1, 0, 0, 1, -1, 0, 0, -1}
+    };
+
+    private final int width;
+    private final int height;
+    private final int radius;
+    private final byte[] terrain;
+    private final boolean[] occupied;
+    private final Field[] fields;
+    // Посчитанные поля - их проверяет инвалидация
+    private final List<Field> cached = new ArrayList<>();
+
+    public VisibilityMap(int width, int height) {
+        this(width, height, Math.max(width, height));
+    }
+
+    public VisibilityMap(int width, int height, int radius) {
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        this.terrain = new byte[width * height];
+        this.occupied = new boolean[width * height];
+        this.fields = new Field[width * height];
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    public Terrain terrainAt(int x, int y) {
+        return contains(x, y) ? TERRAINS[terrain[y * width + x]] : Terrain.WALL;
+    }
+
+    public void setTerrain(int x, int y, Terrain type) {
+        if (!contains(x, y) || terrain[y * width + x] == type.ordinal()) {
+            return;
+        }
+        int cell = y * width + x;
+        terrain[cell] = (byte) type.ordinal();
+        invalidate(cell);
+    }
+
+    // Боец в клетке - половинное укрытие для тех, кто за ним; вызывает CombatGrid
+    public void setOccupied(int x, int y, boolean value) {
+        if (!contains(x, y) || occupied[y * width + x] == value) {
+            return;
+        }
+        int cell = y * width + x;
+        occupied[cell] = value;
+        invalidate(cell);
+    }
+
+    /**
+     * Укрытие цели в (toX, toY) от наблюдателя в (fromX, fromY); симметрично -
+     * худшее из полей зрения обеих клеток.
+     * Клетки вне карты считаются открытыми: о них карта ничего не знает.
+     */
+    public Cover cover(int fromX, int fromY, int toX, int toY) {
+        if (!contains(fromX, fromY) || !contains(toX, toY)) {
+            return Cover.NONE;
+        }
+        if (fromX == toX && fromY == toY) {
+            return Cover.NONE;
+        }
+        byte forward = field(fromX, fromY).cover[toY * width + toX];
+        if (forward == NOT_VISIBLE) {
+            return Cover.TOTAL;
+        }
+        byte backward = field(toX, toY).cover[fromY * width + fromX];
+        return COVERS[Math.max(forward, backward)];
+    }
+
+    public boolean hasLineOfSight(int fromX, int fromY, int toX, int toY) {
+        return cover(fromX, fromY, toX, toY) != Cover.TOTAL;
+    }
+
+    // Сколько полей зрения сейчас в кеше
+    public int cachedFields() {
+        return cached.size();
+    }
+
+    private Field field(int x, int y) {
+        int origin = y * width + x;
+        Field field = fields[origin];
+        if (field == null) {
+            field = new Field(width * height);
+            fields[origin] = field;
+        }
+        if (field.cachedIndex < 0) {
+            compute(field, x, y);
+            field.cachedIndex = cached.size();
+            cached.add(field);
+        }
+        return field;
+    }
+
+    // Сбрасывает поля, из которых клетка была видна
+    private void invalidate(int cell) {
+        for (int i = cached.size() - 1; i >= 0; i--) {
+            Field field = cached.get(i);
+            if (field.cover[cell] != NOT_VISIBLE) {
+                Field last = cached.remove(cached.size() - 1);
+                if (last != field) {
+                    cached.set(i, last);
+                    last.cachedIndex = i;
+                }
+                field.cachedIndex = -1;
+            }
+        }
+    }
+
+    private void compute(Field field, int x, int y) {
+        Arrays.fill(field.cover, NOT_VISIBLE);
+        field.cover[y * width + x] = (byte) Cover.NONE.ordinal();
+        castAll(field, x, y, Terrain.WALL.ordinal(), false, Cover.THREE_QUARTERS);
+        castAll(field, x, y, Terrain.HIGH.ordinal(), false, Cover.HALF);
+        castAll(field, x, y, Terrain.LOW.ordinal(), true, Cover.NONE);
+    }
+
+    private void castAll(Field field, int x, int y, int blockFrom, boolean creaturesBlock, Cover level) {
+        for (int octant = 0; octant < 8; octant++) {
+            castLight(field, x, y, 1, 1.0, 0.0, OCTANTS[0][octant], OCTANTS[1][octant],
+                    OCTANTS[2][octant], OCTANTS[3][octant], blockFrom, creaturesBlock, (byte) level.ordinal());
+        }
+    }
+
+    // Рекурсивный shadowcasting одного октанта; видимые клетки получают уровень не хуже level
+    private void castLight(Field field, int cx, int cy, int row, double start, double end,
+                           int xx, int xy, int yx, int yy, int blockFrom, boolean creaturesBlock, byte level) {
+        if (start < end) {
+            return;
+        }
+        double newStart = 0;
+        for (int j = row; j <= radius; j++) {
+            boolean blocked = false;
+            for (int dx = -j, dy = -j; dx <= 0; dx++) {
+                double leftSlope = (dx - 0.5) / (dy + 0.5);
+                double rightSlope = (dx + 0.5) / (dy - 0.5);
+                if (start < rightSlope) {
+                    continue;
+                } else if (end > leftSlope) {
+                    break;
+                }
+                int x = cx + dx * xx + dy * xy;
+                int y = cy + dx * yx + dy * yy;
+                boolean opaque;
+                if (contains(x, y)) {
+                    int cell = y * width + x;
+                    if (field.cover[cell] > level) {
+                        field.cover[cell] = level;
+                    }
+                    opaque = terrain[cell] >= blockFrom || (creaturesBlock && occupied[cell]);
+                } else {
+                    opaque = true;
+                }
+                if (blocked) {
+                    if (opaque) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (opaque && j < radius) {
+                    blocked = true;
+                    castLight(field, cx, cy, j + 1, start, leftSlope, xx, xy, yx, yy,
+                            blockFrom, creaturesBlock, level);
+                    newStart = rightSlope;
+                }
+            }
+            if (blocked) {
+                return;
+            }
+        }
+    }
+
+    // Поле зрения из одной клетки: уровень Cover.ordinal() для каждой клетки карты
+    private static final class Field {
+        final byte[] cover;
+        int cachedIndex = -1;
+
+        Field(int cells) {
+            this.cover = new byte[cells];
+        }
+    }
+}
@@ -5,8 +5,10 @@ import androidx.room.Room;
 import androidx.room.RoomDatabase;
 
 import com.HG.heroesglory.core.entities.CharacterClass;
+import com.HG.heroesglory.core.entities.CombatLogEntry;
 import com.HG.heroesglory.core.entities.Dialog;
 import com.HG.heroesglory.core.entities.DialogChoice;
+import com.HG.heroesglory.core.entities.EnemyPrototype;
 import com.HG.heroesglory.core.entities.GameSession;
 import com.HG.heroesglory.core.entities.Item;
 import com.HG.heroesglory.core.entities.Location;
@@ -15,7 +17,9 @@ import com.HG.heroesglory.core.entities.Quest;
 import com.HG.heroesglory.core.entities.QuestStep;
 import com.HG.heroesglory.core.entities.Story;
 import com.HG.heroesglory.data.local.dao.CharacterClassDao;
+import com.HG.heroesglory.data.local.dao.CombatLogDao;
 import com.HG.heroesglory.data.local.dao.DialogDao;
+import com.HG.heroesglory.data.local.dao.EnemyPrototypeDao;
 import com.HG.heroesglory.data.local.dao.GameSessionDao;
 import com.HG.heroesglory.data.local.dao.ItemDao;
 import com.HG.heroesglory.data.local.dao.LocationDao;
@@ -35,9 +39,11 @@ import com.HG.heroesglory.data.local.dao.StoryDao;
                 Dialog.class,        // ✅ ДОБАВЛЕНО
                 DialogChoice.class,  // ✅ ДОБАВЛЕНО
                 Item.class, // ✅ ДОБАВЛЕНО
-                QuestStep.class
+                QuestStep.class,
+                CombatLogEntry.class,
+                EnemyPrototype.class
         },
-        version = 6,  // ✅ УВЕЛИЧИВАЕМ ВЕРСИЮ
+        version = 9,  // ✅ УВЕЛИЧИВАЕМ ВЕРСИЮ
         exportSchema = false
 )
 public abstract class AppDatabase extends RoomDatabase {
@@ -52,6 +58,8 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract DialogDao dialogDao();        // ✅ ДОБАВЛЕНО
     public abstract ItemDao itemDao();  // ✅ ДОБАВЛЕНО
     public abstract QuestStepDao questStepDao();
+    public abstract CombatLogDao combatLogDao();
+    public abstract EnemyPrototypeDao enemyPrototypeDao();
 
 
     public static AppDatabase getInstance(android.content.Context context) {
@@ -0,0 +1,39 @@
+package com.HG.heroesglory.data.local.dao;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.HG.heroesglory.core.entities.CombatLogEntry;
+
+import java.util.List;
+
+@Dao
+public interface CombatLogDao {
+
+    /**
+     * Сохранить журнал боя
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertCombatLog(CombatLogEntry entry);
+
+    /**
+     * Получить журнал по ID (синхронно)
+     */
+    @Query("SELECT * FROM combat_logs WHERE id = :logId")
+    CombatLogEntry getCombatLogByIdSync(String logId);
+
+    /**
+     * Получить журналы боев сессии, новые первыми
+     */
+    @Query("SELECT * FROM combat_logs WHERE sessionId = :sessionId ORDER BY createdAt DESC")
+    LiveData<List<CombatLogEntry>> getCombatLogsBySession(String sessionId);
+
+    /**
+     * Удалить журналы сессии
+     */
+    @Query("DELETE FROM combat_logs WHERE sessionId = :sessionId")
+    void deleteCombatLogsBySession(String sessionId);
+}
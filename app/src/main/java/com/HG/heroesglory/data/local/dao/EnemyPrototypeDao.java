@@ -0,0 +1,35 @@
+package com.HG.heroesglory.data.local.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.HG.heroesglory.core.entities.EnemyPrototype;
+
+import java.util.List;
+
+@Dao
+public interface EnemyPrototypeDao {
+
+    /**
+     * Сохранить шаблон врага
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertPrototype(EnemyPrototype prototype);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertPrototypes(List<EnemyPrototype> prototypes);
+
+    /**
+     * Все шаблоны - для заполнения реестра при старте (синхронно)
+     */
+    @Query("SELECT * FROM enemy_prototypes")
+    List<EnemyPrototype> getAllPrototypesSync();
+
+    @Query("SELECT * FROM enemy_prototypes WHERE id = :enemyId")
+    EnemyPrototype getPrototypeByIdSync(String enemyId);
+
+    @Query("DELETE FROM enemy_prototypes")
+    void clearAllPrototypes();
+}
@@ -4,18 +4,50 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.EnemyPrototype;
+import com.HG.heroesglory.core.simulation.EncounterBalancer;
+import com.HG.heroesglory.core.systems.EnemyRegistry;
+import com.HG.heroesglory.data.local.dao.EnemyPrototypeDao;
 import com.HG.heroesglory.data.remote.FirebaseEnemyDataSource;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class EnemyRepository {
+    // Общий на все экраны: кеш подобранных столкновений живет дольше репозитория
+    private static final EncounterBalancer BALANCER = new EncounterBalancer();
+    // Шаблоны врагов тоже общие: разбираются из Firestore один раз за процесс
+    private static final EnemyRegistry REGISTRY = new EnemyRegistry();
+    // Пул подбора - один боец на шаблон: кеш урона балансировщика держится за эти объекты
+    private static final Map<EnemyPrototype, Combatant> POOL =
+            Collections.synchronizedMap(new WeakHashMap<EnemyPrototype, Combatant>());
+    // Один фоновый поток на процесс: подбор и запись шаблонов не плодят потоки на каждый экран
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
     private final FirebaseEnemyDataSource enemyDataSource;
+    private final EnemyPrototypeDao prototypeDao;
 
     public EnemyRepository(FirebaseEnemyDataSource enemyDataSource) {
+        this(enemyDataSource, null);
+    }
+
+    // С DAO шаблоны, сохраненные в прошлых запусках, попадают в реестр сразу
+    public EnemyRepository(FirebaseEnemyDataSource enemyDataSource, EnemyPrototypeDao prototypeDao) {
         this.enemyDataSource = enemyDataSource;
+        this.prototypeDao = prototypeDao;
+        if (prototypeDao != null) {
+            EXECUTOR.execute(() -> REGISTRY.putAllAbsent(prototypeDao.getAllPrototypesSync()));
+        }
+    }
+
+    public static EnemyRegistry getRegistry() {
+        return REGISTRY;
     }
 
     /**
@@ -143,6 +175,33 @@ public class EnemyRepository {
         return result;
     }
 
+    /**
+     * Враги локации, подобранные под группу и целевую сложность.
+     * Первый подбор для группы и локации идет в фоне с симуляцией, повторные берутся из кеша
+     */
+    public LiveData<List<Combatant>> getBalancedEnemies(String locationId, List<Combatant> party,
+                                                        EncounterBalancer.Target target) {
+        MutableLiveData<List<Combatant>> result = new MutableLiveData<>();
+
+        enemyDataSource.getEnemiesByLocation(locationId, new FirebaseEnemyDataSource.EnemyDataCallback() {
+            @Override
+            public void onSuccess(List<Map<String, Object>> enemiesData) {
+                List<Combatant> pool = convertToPool(enemiesData);
+                EXECUTOR.execute(() -> {
+                    EncounterBalancer.BalancedEncounter encounter = BALANCER.balance(locationId, party, pool, target);
+                    result.postValue(encounter != null ? encounter.spawn() : new ArrayList<>());
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                result.setValue(new ArrayList<>());
+            }
+        });
+
+        return result;
+    }
+
     /**
      * Конвертировать данные Firestore в Combatant
      */
@@ -160,52 +219,46 @@ public class EnemyRepository {
         return enemies;
     }
 
+    // Бойцы пула подбора: тот же объект, пока шаблон в реестре не изменился
+    private List<Combatant> convertToPool(List<Map<String, Object>> enemiesData) {
+        List<Combatant> pool = new ArrayList<>();
+        for (Map<String, Object> enemyData : enemiesData) {
+            String enemyId = (String) enemyData.get("id");
+            Combatant enemy = convertToCombatant(enemyData, enemyId);
+            EnemyPrototype prototype = enemy != null ? REGISTRY.get(enemyId) : null;
+            if (prototype != null) {
+                Combatant member = POOL.get(prototype);
+                if (member == null) {
+                    member = enemy;
+                    POOL.put(prototype, member);
+                }
+                pool.add(member);
+            }
+        }
+        return pool;
+    }
+
     /**
-     * Конвертировать данные одного врага в Combatant
+     * Конвертировать данные одного врага в Combatant: шаблон берется из реестра
+     * и собирается заново, только если данные в Firestore изменились
      */
     private Combatant convertToCombatant(Map<String, Object> enemyData, String enemyId) {
         if (enemyData == null) return null;
 
         try {
-            String name = (String) enemyData.get("name");
-            String type = (String) enemyData.get("type");
-            Number maxHpNumber = (Number) enemyData.get("maxHP");
-            Number armorClassNumber = (Number) enemyData.get("armorClass");
-
-            int maxHp = maxHpNumber != null ? maxHpNumber.intValue() : 20;
-            int armorClass = armorClassNumber != null ? armorClassNumber.intValue() : 10;
-
-            Combatant enemy = new Combatant(enemyId, name, "ENEMY", maxHp, armorClass);
-
-            // Устанавливаем характеристики
-            Number strength = (Number) enemyData.get("strength");
-            Number dexterity = (Number) enemyData.get("dexterity");
-            Number constitution = (Number) enemyData.get("constitution");
-            Number intelligence = (Number) enemyData.get("intelligence");
-            Number wisdom = (Number) enemyData.get("wisdom");
-            Number charisma = (Number) enemyData.get("charisma");
-
-            if (strength != null) enemy.setStrength(strength.intValue());
-            if (dexterity != null) enemy.setDexterity(dexterity.intValue());
-            if (constitution != null) enemy.setConstitution(constitution.intValue());
-            if (intelligence != null) enemy.setIntelligence(intelligence.intValue());
-            if (wisdom != null) enemy.setWisdom(wisdom.intValue());
-            if (charisma != null) enemy.setCharisma(charisma.intValue());
-
-            // Боевые модификаторы
-            Number attackBonus = (Number) enemyData.get("attackBonus");
-            Number damageBonus = (Number) enemyData.get("damageBonus");
-
-            if (attackBonus != null) enemy.setAttackBonus(attackBonus.intValue());
-            if (damageBonus != null) enemy.setDamageBonus(damageBonus.intValue());
-
-            // Изображение
-            String imageUrl = (String) enemyData.get("imageUrl");
-            if (imageUrl != null) {
-                enemy.setImageUrl(imageUrl);
+            EnemyPrototype known = REGISTRY.get(enemyId);
+            EnemyPrototype prototype = REGISTRY.resolve(enemyId, enemyData);
+            if (prototype == null) {
+                return null;
             }
-
-            return enemy;
+            if (prototype != known) {
+                // Шаблон новый или пересобран - пулы локаций изменились, подобранные столкновения устарели
+                BALANCER.clearCache();
+                if (prototypeDao != null) {
+                    EXECUTOR.execute(() -> prototypeDao.insertPrototype(prototype));
+                }
+            }
+            return prototype.spawn();
 
         } catch (Exception e) {
             e.printStackTrace();
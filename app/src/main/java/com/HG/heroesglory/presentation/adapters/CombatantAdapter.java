@@ -12,19 +12,43 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.HG.heroesglory.R;
+import com.HG.heroesglory.core.combat.AttackPreview;
+import com.HG.heroesglory.core.combat.CombatDelta;
+import com.HG.heroesglory.core.combat.CombatEngine;
+import com.HG.heroesglory.core.combat.CombatState;
+import com.HG.heroesglory.core.combat.CombatantState;
+import com.HG.heroesglory.core.entities.AttackType;
 import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.Squad;
 import com.bumptech.glide.Glide;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class CombatantAdapter extends RecyclerView.Adapter<CombatantAdapter.CombatantViewHolder> {
 
+    // Payload частичных обновлений: биты того, что изменилось у бойца
+    public static final int PAYLOAD_HP = 1;
+    public static final int PAYLOAD_STATUS = 1 << 1;
+    public static final int PAYLOAD_TURN = 1 << 2;
+    public static final int PAYLOAD_PREVIEW = 1 << 3;
+
     private List<Combatant> combatants;
     private OnCombatantClickListener listener;
+    private final Map<String, Integer> positions = new HashMap<>();
+    // Прогноз атак для игрока, чей сейчас ход; null - прогноз скрыт
+    private final AttackPreview preview = new AttackPreview();
+    // Прогноз считается по состоянию боя движка, а не по бойцам экрана
+    private CombatState previewState;
+    private CombatantState previewAttacker;
+    private CombatEngine previewEngine;
 
     public CombatantAdapter(List<Combatant> combatants, OnCombatantClickListener listener) {
         this.combatants = combatants;
         this.listener = listener;
+        indexPositions();
     }
 
     @NonNull
@@ -39,6 +63,34 @@ public class CombatantAdapter extends RecyclerView.Adapter<CombatantAdapter.Comb
     public void onBindViewHolder(@NonNull CombatantViewHolder holder, int position) {
         Combatant combatant = combatants.get(position);
         holder.bind(combatant, listener);
+        bindPreview(holder, combatant);
+    }
+
+    // Частичная перепривязка без перезагрузки портрета
+    @Override
+    public void onBindViewHolder(@NonNull CombatantViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        int flags = 0;
+        for (Object payload : payloads) {
+            if (payload instanceof Integer) {
+                flags |= (Integer) payload;
+            }
+        }
+        Combatant combatant = combatants.get(position);
+        if ((flags & PAYLOAD_HP) != 0) holder.bindHp(combatant);
+        if ((flags & PAYLOAD_STATUS) != 0) holder.bindStatus(combatant);
+        if ((flags & PAYLOAD_TURN) != 0) holder.bindTurn(combatant);
+        if ((flags & PAYLOAD_PREVIEW) != 0) bindPreview(holder, combatant);
+    }
+
+    private void bindPreview(CombatantViewHolder holder, Combatant combatant) {
+        int slot = previewAttacker != null ? previewState.indexOf(combatant.getId()) : -1;
+        CombatantState target = slot >= 0 ? previewState.get(slot) : null;
+        int cover = target != null ? previewEngine.coverBonus(previewAttacker, target) : 0;
+        holder.bindPreview(target, previewAttacker, cover, preview);
     }
 
     @Override
@@ -48,16 +100,90 @@ public class CombatantAdapter extends RecyclerView.Adapter<CombatantAdapter.Comb
 
     public void updateCombatants(List<Combatant> newCombatants) {
         this.combatants = newCombatants;
+        preview.clear();
+        indexPositions();
         notifyDataSetChanged();
     }
 
+    /**
+     * Показывает прогноз атак attacker по всем его противникам в состоянии state.
+     * Таблица прогноза пересчитывает только пары, где изменились бонусы, КД или состояния,
+     * поэтому повторный вызов на каждом действии дешев.
+     */
+    public void setPreviewAttacker(CombatEngine engine, CombatState state, CombatantState attacker) {
+        previewEngine = engine;
+        previewState = state;
+        previewAttacker = attacker;
+        if (getItemCount() > 0) {
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_PREVIEW);
+        }
+    }
+
+    /**
+     * Применяет итог действия: соседние позиции с одинаковыми изменениями
+     * объединяются в один notifyItemRangeChanged с payload.
+     * Сами объекты Combatant к этому моменту уже должны быть обновлены.
+     */
+    public void applyDelta(CombatDelta delta) {
+        if (delta.isRosterChanged()) {
+            notifyDataSetChanged();
+            return;
+        }
+        int count = getItemCount();
+        if (count == 0) {
+            return;
+        }
+        int[] flags = new int[count];
+        for (String id : delta.getHpChanges().keySet()) mark(flags, id, PAYLOAD_HP);
+        for (String id : delta.getDefeated()) mark(flags, id, PAYLOAD_STATUS | PAYLOAD_HP);
+        for (String id : delta.getStatusChanges().keySet()) mark(flags, id, PAYLOAD_STATUS | PAYLOAD_PREVIEW);
+        if (delta.isTurnChanged()) {
+            mark(flags, delta.getPreviousTurnId(), PAYLOAD_TURN);
+            mark(flags, delta.getCurrentTurnId(), PAYLOAD_TURN);
+        }
+
+        int start = 0;
+        while (start < count) {
+            if (flags[start] == 0) {
+                start++;
+                continue;
+            }
+            int end = start + 1;
+            while (end < count && flags[end] == flags[start]) {
+                end++;
+            }
+            notifyItemRangeChanged(start, end - start, flags[start]);
+            start = end;
+        }
+    }
+
+    private void mark(int[] flags, String combatantId, int flag) {
+        Integer position = combatantId != null ? positions.get(combatantId) : null;
+        if (position != null) {
+            flags[position] |= flag;
+        }
+    }
+
+    private void indexPositions() {
+        positions.clear();
+        if (combatants != null) {
+            for (int i = 0; i < combatants.size(); i++) {
+                positions.put(combatants.get(i).getId(), i);
+            }
+        }
+    }
+
     static class CombatantViewHolder extends RecyclerView.ViewHolder {
+        // Типы атак, доступные игроку в бою
+        private static final AttackType[] PREVIEW_TYPES = {AttackType.MELEE, AttackType.RANGED, AttackType.SPELL};
+
         private ImageView combatantImage;
         private TextView combatantNameText;
         private TextView combatantHpText;
         private ProgressBar hpProgressBar;
         private TextView statusText;
         private View turnIndicator;
+        private TextView attackPreviewText;
 
         public CombatantViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -67,15 +193,44 @@ public class CombatantAdapter extends RecyclerView.Adapter<CombatantAdapter.Comb
             hpProgressBar = itemView.findViewById(R.id.hpProgressBar);
             statusText = itemView.findViewById(R.id.statusText);
             turnIndicator = itemView.findViewById(R.id.turnIndicator);
+            attackPreviewText = itemView.findViewById(R.id.attackPreviewText);
         }
 
         public void bind(Combatant combatant, OnCombatantClickListener listener) {
             combatantNameText.setText(combatant.getName());
 
+            bindHp(combatant);
+            bindTurn(combatant);
+            bindStatus(combatant);
+
+            // Загрузка изображения
+            if (combatant.getImageUrl() != null && !combatant.getImageUrl().isEmpty()) {
+                Glide.with(itemView.getContext())
+                        .load(combatant.getImageUrl())
+                        .placeholder(R.drawable.character_placeholder)
+                        .into(combatantImage);
+            }
+
+            // Клик для выбора цели
+            itemView.setOnClickListener(v -> {
+                if (listener != null && combatant.isAlive()) {
+                    listener.onCombatantClick(combatant);
+                }
+            });
+        }
+
+        void bindHp(Combatant combatant) {
             // Отображение HP
             int currentHp = combatant.getCurrentHp();
             int maxHp = combatant.getMaxHp();
-            combatantHpText.setText(String.format("%d/%d", currentHp, maxHp));
+            if (combatant instanceof Squad) {
+                // Отряд - одна карточка: число живых и HP переднего бойца
+                Squad squad = (Squad) combatant;
+                combatantNameText.setText(squad.countLabel());
+                combatantHpText.setText(String.format("%d/%d", squad.frontHp(), squad.getMemberHp()));
+            } else {
+                combatantHpText.setText(String.format("%d/%d", currentHp, maxHp));
+            }
 
             // Прогресс бар HP
             hpProgressBar.setMax(maxHp);
@@ -89,37 +244,45 @@ public class CombatantAdapter extends RecyclerView.Adapter<CombatantAdapter.Comb
             } else {
                 hpProgressBar.setProgressTintList(ContextCompat.getColorStateList(itemView.getContext(), R.color.success));
             }
+        }
 
+        void bindTurn(Combatant combatant) {
             // Индикатор текущего хода
             turnIndicator.setVisibility(combatant.isCurrentTurn() ? View.VISIBLE : View.INVISIBLE);
+        }
 
+        // Строка на тип атаки: "MELEE 65% (5%) ~4.2"
+        void bindPreview(CombatantState target, CombatantState attacker, int cover, AttackPreview preview) {
+            if (attacker == null || target == null || !target.isAlive() || target.isPlayer() == attacker.isPlayer()) {
+                attackPreviewText.setVisibility(View.GONE);
+                return;
+            }
+            AttackPreview.Entry entry = preview.get(attacker, target, cover);
+            StringBuilder text = new StringBuilder();
+            for (AttackType type : PREVIEW_TYPES) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(String.format(Locale.ROOT, "%s %.0f%% (%.0f%%) ~%.1f", type.name(),
+                        entry.hitChance(type) * 100, entry.critChance(type) * 100, entry.expectedDamage(type)));
+            }
+            attackPreviewText.setText(text);
+            attackPreviewText.setVisibility(View.VISIBLE);
+        }
+
+        void bindStatus(Combatant combatant) {
             // Статус (мертв, отравлен и т.д.)
             if (!combatant.isAlive()) {
                 statusText.setText("МЕРТВ");
                 statusText.setTextColor(ContextCompat.getColor(itemView.getContext(), R.color.danger));
                 statusText.setVisibility(View.VISIBLE);
             } else if (combatant.hasStatusEffect()) {
-                statusText.setText(combatant.getStatusEffect());
+                statusText.setText(combatant.statusLabel());
                 statusText.setTextColor(ContextCompat.getColor(itemView.getContext(), R.color.warning));
                 statusText.setVisibility(View.VISIBLE);
             } else {
                 statusText.setVisibility(View.GONE);
             }
-
-            // Загрузка изображения
-            if (combatant.getImageUrl() != null && !combatant.getImageUrl().isEmpty()) {
-                Glide.with(itemView.getContext())
-                        .load(combatant.getImageUrl())
-                        .placeholder(R.drawable.character_placeholder)
-                        .into(combatantImage);
-            }
-
-            // Клик для выбора цели
-            itemView.setOnClickListener(v -> {
-                if (listener != null && combatant.isAlive()) {
-                    listener.onCombatantClick(combatant);
-                }
-            });
         }
     }
 
@@ -10,6 +10,8 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.HG.heroesglory.R;
+import com.HG.heroesglory.core.combat.CombatState;
+import com.HG.heroesglory.core.combat.CombatantState;
 import com.HG.heroesglory.core.entities.Skill;
 
 import java.util.List;
@@ -18,12 +20,23 @@ public class SkillsAdapter extends RecyclerView.Adapter<SkillsAdapter.SkillViewH
 
     private List<Skill> skills;
     private OnSkillClickListener listener;
+    // Боец и раунд, по которым считаются откаты; null - откатов нет
+    private CombatantState combatant;
+    private int round;
 
     public SkillsAdapter(List<Skill> skills, OnSkillClickListener listener) {
         this.skills = skills;
         this.listener = listener;
     }
 
+    // Откаты навыков бойца - из состояния боя движка, единственного их источника
+    public void setCombatState(CombatState state, String combatantId) {
+        int slot = state != null && combatantId != null ? state.indexOf(combatantId) : -1;
+        this.combatant = slot >= 0 ? state.get(slot) : null;
+        this.round = state != null ? state.getRound() : 0;
+        notifyDataSetChanged();
+    }
+
     @NonNull
     @Override
     public SkillViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -35,7 +48,8 @@ public class SkillsAdapter extends RecyclerView.Adapter<SkillsAdapter.SkillViewH
     @Override
     public void onBindViewHolder(@NonNull SkillViewHolder holder, int position) {
         Skill skill = skills.get(position);
-        holder.bind(skill, listener);
+        int cooldownLeft = combatant != null ? combatant.cooldownLeft(skill, round) : 0;
+        holder.bind(skill, cooldownLeft, listener);
     }
 
     @Override
@@ -64,7 +78,7 @@ public class SkillsAdapter extends RecyclerView.Adapter<SkillsAdapter.SkillViewH
             useButton = itemView.findViewById(R.id.useButton);
         }
 
-        public void bind(Skill skill, OnSkillClickListener listener) {
+        public void bind(Skill skill, int cooldownLeft, OnSkillClickListener listener) {
             skillNameText.setText(skill.getName());
             skillDescriptionText.setText(skill.getDescription());
 
@@ -84,12 +98,14 @@ public class SkillsAdapter extends RecyclerView.Adapter<SkillsAdapter.SkillViewH
             setSkillTypeBackground(skillTypeText, skill.getType());
 
             // Проверка доступности навыка
-            boolean isAvailable = skill.isAvailable();
+            boolean isAvailable = skill.isAvailable() && cooldownLeft == 0;
             useButton.setEnabled(isAvailable);
             useButton.setAlpha(isAvailable ? 1.0f : 0.5f);
 
             if (isAvailable) {
                 useButton.setText("Use");
+            } else if (cooldownLeft > 0) {
+                useButton.setText("Cooldown: " + cooldownLeft);
             } else {
                 useButton.setText("Not Available");
             }
@@ -14,6 +14,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.HG.heroesglory.R;
+import com.HG.heroesglory.core.combat.CombatState;
 import com.HG.heroesglory.core.entities.Combatant;
 import com.HG.heroesglory.core.entities.Skill;
 import com.HG.heroesglory.presentation.adapters.SkillsAdapter;
@@ -31,6 +32,7 @@ public class SkillsDialog extends DialogFragment implements SkillsAdapter.OnSkil
     private String combatantId;
     private SkillSelectedListener skillSelectedListener;
     private SkillsAdapter skillsAdapter;
+    private CombatState combatState;
 
     public static SkillsDialog newInstance(String combatantId) {
         SkillsDialog dialog = new SkillsDialog();
@@ -41,13 +43,18 @@ public class SkillsDialog extends DialogFragment implements SkillsAdapter.OnSkil
     }
 
     public interface SkillSelectedListener {
-        void onSkillSelected(String skill, Combatant target);
+        void onSkillSelected(Skill skill, Combatant target);
     }
 
     public void setSkillSelectedListener(SkillSelectedListener listener) {
         this.skillSelectedListener = listener;
     }
 
+    // Состояние боя движка: откаты берутся из него; без состояния навыки считаются готовыми
+    public void setCombatState(CombatState combatState) {
+        this.combatState = combatState;
+    }
+
     @NonNull
     @Override
     public Dialog onCreateDialog(@Nullable Bundle savedInstanceState) {
@@ -79,6 +86,7 @@ public class SkillsDialog extends DialogFragment implements SkillsAdapter.OnSkil
 
         // ✅ ВЫПОЛНЕНО: Создать SkillsAdapter
         skillsAdapter = new SkillsAdapter(skills, this);
+        skillsAdapter.setCombatState(combatState, combatantId);
         skillsRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         skillsRecyclerView.setAdapter(skillsAdapter);
     }
@@ -98,6 +106,7 @@ public class SkillsDialog extends DialogFragment implements SkillsAdapter.OnSkil
         fireball.setActionCost(1);
         fireball.setRange(3);
         fireball.setTargetType("AREA");
+        fireball.setCooldown(3);
         skills.add(fireball);
 
         Skill heal = new Skill("heal", "Heal", "Restores health to a single ally", "HEAL");
@@ -128,12 +137,12 @@ public class SkillsDialog extends DialogFragment implements SkillsAdapter.OnSkil
         cancelButton.setOnClickListener(v -> dismiss());
     }
 
-    // Реализация OnSkillClickListener
+    // Реализация OnSkillClickListener; откат и ману списывает бой по событию SkillUsed, если движок принял навык.
+    // Цель здесь не выбирается - берется выбранная на поле
     @Override
     public void onSkillClick(Skill skill) {
         if (skillSelectedListener != null) {
-            // TODO: Выбор цели для навыка
-            skillSelectedListener.onSkillSelected(skill.getName(), null);
+            skillSelectedListener.onSkillSelected(skill, null);
         }
         dismiss();
     }
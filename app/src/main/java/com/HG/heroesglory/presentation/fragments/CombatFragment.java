@@ -1,6 +1,8 @@
 package com.HG.heroesglory.presentation.fragments;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,18 +11,37 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.Observer;
 import androidx.navigation.Navigation;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.HG.heroesglory.R;
-import com.HG.heroesglory.core.dice.CombatSystem;
+import com.HG.heroesglory.core.combat.CombatActions;
+import com.HG.heroesglory.core.combat.CombatCommand;
+import com.HG.heroesglory.core.combat.CombatDelta;
+import com.HG.heroesglory.core.combat.CombatEngine;
+import com.HG.heroesglory.core.combat.CombatEvent;
+import com.HG.heroesglory.core.combat.CombatLog;
+import com.HG.heroesglory.core.combat.CombatState;
+import com.HG.heroesglory.core.combat.CombatantState;
+import com.HG.heroesglory.core.combat.EnemyTurnPlanner;
+import com.HG.heroesglory.core.dice.RngStream;
+import com.HG.heroesglory.core.dice.SessionRng;
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.CombatLogEntry;
 import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.GameSession;
 import com.HG.heroesglory.core.entities.Item;
 import com.HG.heroesglory.core.entities.Player;
-import com.HG.heroesglory.core.systems.TurnManager;
+import com.HG.heroesglory.core.entities.Squad;
+import com.HG.heroesglory.core.entities.StatusEffect;
+import com.HG.heroesglory.core.simulation.EncounterBalancer;
+import com.HG.heroesglory.core.systems.TriggerRegistry;
 import com.HG.heroesglory.data.local.AppDatabase;
+import com.HG.heroesglory.data.local.dao.CombatLogDao;
+import com.HG.heroesglory.data.local.dao.GameSessionDao;
 import com.HG.heroesglory.data.local.dao.PlayerDao;
 import com.HG.heroesglory.data.remote.FirebaseEnemyDataSource;
 import com.HG.heroesglory.data.remote.FirebaseInventoryDataSource;
@@ -32,13 +53,18 @@ import com.HG.heroesglory.presentation.adapters.CombatantAdapter;
 import com.HG.heroesglory.presentation.adapters.InventoryAdapter;
 import com.HG.heroesglory.presentation.dialogs.InventoryDialog;
 import com.HG.heroesglory.presentation.dialogs.SkillsDialog;
+import com.google.firebase.firestore.Blob;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class CombatFragment extends BaseFragment implements
-        CombatSystem.CombatEventListener,
+        CombatEngine.Listener,
         CombatantAdapter.OnCombatantClickListener {
 
     private TextView combatTitleText;
@@ -50,11 +76,35 @@ public class CombatFragment extends BaseFragment implements
     private Button fleeButton;
     private TextView combatLogText;
 
-    private CombatSystem combatSystem;
-    private TurnManager turnManager;
+    // Генератор боя - ветка генератора сессии (зерно хранится в GameSession)
+    private volatile SessionRng sessionRng;
+    // Логика боя выполняется в CombatEngine на отдельном потоке, фрагмент только отображает события
+    private volatile CombatEngine combatEngine;
+    // Состав на начало боя и все команды - для проверки воспроизведения в конце боя
+    private List<Combatant> startingRoster;
+    // Бойцы экрана по id: движок, MCTS и проверка воспроизведения читают свои копии, UI пишет только в эти
+    private final Map<String, Combatant> displayed = new HashMap<>();
+    private final List<CombatCommand> executedCommands = new ArrayList<>();
+    private ExecutorService combatExecutor;
+    private Handler mainHandler;
+    private CombatState combatState;
+    // Двоичный журнал всех бросков боя; сохраняется одним блоком в Room (и в combat_results)
+    private CombatLog combatLog;
+    private CombatLogDao combatLogDao;
+    private GameSessionDao gameSessionDao;
+    private ExecutorService logWriter;
+    // Ходы врагов считаются заранее на своем потоке, пока проигрывается предыдущее действие
+    private EnemyTurnPlanner enemyPlanner;
+    private ExecutorService aiExecutor;
+    // Триггеры экипировки по id бойца; движок снимает с них копию в начале боя
+    private final TriggerRegistry triggers = new TriggerRegistry();
     private CombatantAdapter combatantAdapter;
     private List<Combatant> combatants;
     private Combatant selectedTarget;
+    // Состав собирается из двух загрузок; бой стартует один раз, когда готовы обе
+    private List<Combatant> loadedPlayers;
+    private List<Combatant> loadedEnemies;
+    private boolean combatStarted;
 
     // ✅ Firestore репозитории
     private String sessionId;
@@ -68,6 +118,12 @@ public class CombatFragment extends BaseFragment implements
     private static final String ARG_SESSION_ID = "session_id";
     private static final String ARG_ENCOUNTER_ID = "encounter_id";
     private static final String ARG_COMBAT_ID = "combat_id";
+    // Доля побед группы для подобранного столкновения, если в нем не задана своя
+    private static final double DEFAULT_TARGET_WIN_RATE = 0.75;
+    // Прикладывать журнал боя к документу combat_results
+    private static final boolean UPLOAD_COMBAT_LOG = true;
+    // Пауза перед ходом врага, чтобы игрок успел увидеть прошлое действие
+    private static final long ENEMY_TURN_DELAY_MS = 600;
 
     /**
      * Создание нового экземпляра CombatFragment с передачей параметров
@@ -116,8 +172,8 @@ public class CombatFragment extends BaseFragment implements
 
         initViews(view);
         setupFirestoreRepositories();
-        loadCombatData();
         setupCombatSystems();
+        loadCombatData();
         setupCombatantsGrid();
         setupActionButtons();
     }
@@ -139,12 +195,14 @@ public class CombatFragment extends BaseFragment implements
 
         // Player repository с Firestore
         PlayerDao playerDao = appDatabase.playerDao();
+        combatLogDao = appDatabase.combatLogDao();
+        gameSessionDao = appDatabase.gameSessionDao();
         FirebasePlayerDataSource firebasePlayerDataSource = new FirebasePlayerDataSource();
         playerRepository = new PlayerRepository(playerDao, firebasePlayerDataSource);
 
         // Enemy repository с Firestore
         FirebaseEnemyDataSource firebaseEnemyDataSource = new FirebaseEnemyDataSource();
-        enemyRepository = new EnemyRepository(firebaseEnemyDataSource);
+        enemyRepository = new EnemyRepository(firebaseEnemyDataSource, appDatabase.enemyPrototypeDao());
 
         // Inventory repository с Firestore
         FirebaseInventoryDataSource firebaseInventoryDataSource = new FirebaseInventoryDataSource();
@@ -177,37 +235,76 @@ public class CombatFragment extends BaseFragment implements
         loadEncounterDataFromFirestore();
     }
 
-    private void loadPlayersFromFirestore() {
-        playerRepository.getPlayersBySession(sessionId).observe(getViewLifecycleOwner(), new Observer<List<Player>>() {
+    // Room переиздает список после каждой синхронизации с Firestore - для состава боя нужен только первый
+    private <T> void observeOnce(LiveData<T> data, Observer<T> observer) {
+        data.observe(getViewLifecycleOwner(), new Observer<T>() {
             @Override
-            public void onChanged(List<Player> players) {
-                if (players != null && !players.isEmpty()) {
-                    combatants = convertPlayersToCombatants(players);
-                    checkAllDataLoaded();
-                } else {
-                    showError("No players found in Firestore");
-                    setupCombatWithSampleData();
+            public void onChanged(T value) {
+                data.removeObserver(this);
+                observer.onChanged(value);
+            }
+        });
+    }
+
+    private void loadPlayersFromFirestore() {
+        observeOnce(playerRepository.getPlayersBySession(sessionId), players -> {
+            if (players != null && !players.isEmpty()) {
+                List<Combatant> party = convertPlayersToCombatants(players);
+                for (int i = 0; i < players.size(); i++) {
+                    triggers.equip(party.get(i), players.get(i).getEquippedItems(), null);
                 }
+                loadedPlayers = party;
+                checkAllDataLoaded();
+            } else {
+                showError("No players found in Firestore");
+                setupCombatWithSampleData();
             }
         });
     }
 
     private void loadEnemiesFromFirestore() {
-        enemyRepository.getEnemiesByEncounter(encounterId).observe(getViewLifecycleOwner(), new Observer<List<Combatant>>() {
-            @Override
-            public void onChanged(List<Combatant> enemies) {
-                if (enemies != null && !enemies.isEmpty()) {
-                    if (combatants == null) {
-                        combatants = new ArrayList<>();
+        observeOnce(enemyRepository.getEnemiesByEncounter(encounterId), enemies -> {
+            if (enemies != null && !enemies.isEmpty()) {
+                // Большие орды собираются в отряды, чтобы сетка и очередь ходов оставались короткими
+                loadedEnemies = Squad.groupHorde(enemies);
+                checkAllDataLoaded();
+            } else {
+                // Столкновение шага квеста без заданных врагов подбирается под группу
+                loadBalancedEnemies();
+            }
+        });
+    }
+
+    /**
+     * Враги локации столкновения (поле locationId), подобранные EncounterBalancer под
+     * группу сессии и долю побед targetWinRate. Без локации - тестовые враги, как раньше.
+     */
+    private void loadBalancedEnemies() {
+        observeOnce(enemyRepository.getEncounterById(encounterId), encounterData -> {
+            Object locationId = encounterData != null ? encounterData.get("locationId") : null;
+            if (!(locationId instanceof String)) {
+                showError("No enemies found for this encounter");
+                addSampleEnemies();
+                return;
+            }
+            Object winRate = encounterData.get("targetWinRate");
+            EncounterBalancer.Target target = EncounterBalancer.Target.winRate(
+                    winRate instanceof Number ? ((Number) winRate).doubleValue() : DEFAULT_TARGET_WIN_RATE);
+            observeOnce(playerRepository.getPlayersBySession(sessionId), players -> {
+                if (players == null || players.isEmpty()) {
+                    return; // без группы подбирать не под кого; ошибку покажет loadPlayersFromFirestore
+                }
+                observeOnce(enemyRepository.getBalancedEnemies((String) locationId,
+                        convertPlayersToCombatants(players), target), enemies -> {
+                    if (enemies == null || enemies.isEmpty()) {
+                        showError("No enemies found for this encounter");
+                        addSampleEnemies();
+                        return;
                     }
-                    combatants.addAll(enemies);
+                    loadedEnemies = Squad.groupHorde(enemies);
                     checkAllDataLoaded();
-                } else {
-                    showError("No enemies found for this encounter");
-                    // Добавляем тестовых врагов
-                    addSampleEnemies();
-                }
-            }
+                });
+            });
         });
     }
 
@@ -233,8 +330,8 @@ public class CombatFragment extends BaseFragment implements
     }
 
     private void loadPlayerInventoryFromFirestore() {
-        Combatant currentPlayer = turnManager.getCurrentCombatant();
-        if (currentPlayer != null && "PLAYER".equals(currentPlayer.getType())) {
+        Combatant currentPlayer = getCurrentCombatant();
+        if (currentPlayer != null && currentPlayer.isPlayer()) {
             String playerId = currentPlayer.getId();
 
             inventoryRepository.getPlayerInventory(sessionId, playerId).observe(getViewLifecycleOwner(), new Observer<List<Item>>() {
@@ -302,32 +399,36 @@ public class CombatFragment extends BaseFragment implements
     }
 
     private void addSampleEnemies() {
-        if (combatants == null) {
-            combatants = new ArrayList<>();
-        }
-        List<Combatant> sampleEnemies = createSampleEnemies();
-        combatants.addAll(sampleEnemies);
+        loadedEnemies = createSampleEnemies();
         checkAllDataLoaded();
     }
 
+    /**
+     * Бой стартует один раз, когда загружены и группа, и враги: движок без одной
+     * из сторон сразу закончил бы бой, сохранил результат и потратил номер боя сессии.
+     * Подбор врагов (симуляции боев) приходит позже остальных данных.
+     */
     private void checkAllDataLoaded() {
-        // Проверяем что все данные загружены
-        if (combatants != null && combatants.size() > 0 && combatTitleText.getText().length() > 0) {
-            showLoading(false);
-            initializeCombat();
+        if (combatStarted || loadedPlayers == null || loadedEnemies == null
+                || combatTitleText.getText().length() == 0) {
+            return;
         }
+        combatStarted = true;
+        combatants = new ArrayList<>(loadedPlayers);
+        combatants.addAll(loadedEnemies);
+        showLoading(false);
+        initializeCombat();
     }
 
     private void applyItemEffects(Item item) {
-        Combatant currentPlayer = turnManager.getCurrentCombatant();
+        Combatant currentPlayer = getCurrentCombatant();
 
-        if (currentPlayer != null && "PLAYER".equals(currentPlayer.getType())) {
+        if (currentPlayer != null && currentPlayer.isPlayer()) {
             switch (item.getType()) {
                 case "CONSUMABLE":
-                    applyConsumableEffect(item, currentPlayer);
-                    break;
                 case "SCROLL":
-                    applyScrollEffect(item, currentPlayer);
+                    // Эффект предмета (лечение и т.д.) применяет движок
+                    submitCommand(CombatCommand.useItem(currentPlayer.getId(), item, null));
                     break;
                 default:
                     combatLogText.append("\nThis item cannot be used in combat");
@@ -336,38 +437,9 @@ public class CombatFragment extends BaseFragment implements
 
             // ✅ Обновляем инвентарь в Firestore
             decreaseItemQuantityInFirestore(item);
-
-            combatLogText.append("\nUsed " + item.getName() + " successfully!");
         }
     }
 
-    private void applyConsumableEffect(Item item, Combatant target) {
-        switch (item.getName()) {
-            case "Health Potion":
-                int healAmount = 10;
-                target.heal(healAmount);
-                combatLogText.append(String.format("\n%s healed for %d HP!", target.getName(), healAmount));
-                break;
-            case "Mana Potion":
-                combatLogText.append("\nMana restored!");
-                break;
-        }
-
-        combatantAdapter.updateCombatants(turnManager.getCombatants());
-    }
-
-    private void applyScrollEffect(Item item, Combatant target) {
-        switch (item.getName()) {
-            case "Scroll of Healing":
-                int healAmount = 15;
-                target.heal(healAmount);
-                combatLogText.append(String.format("\n%s healed for %d HP by scroll!", target.getName(), healAmount));
-                break;
-        }
-
-        combatantAdapter.updateCombatants(turnManager.getCombatants());
-    }
-
     private void decreaseItemQuantityInFirestore(Item item) {
         String playerId = getCurrentPlayerId();
 
@@ -399,48 +471,174 @@ public class CombatFragment extends BaseFragment implements
         combatResult.put("encounterId", encounterId);
         combatResult.put("victory", victory);
         combatResult.put("endTime", System.currentTimeMillis());
-        combatResult.put("rounds", turnManager.getCurrentRound());
+        combatResult.put("rounds", combatState.getRound());
 
         // Сохраняем оставшихся в живых игроков
         List<String> survivingPlayers = new ArrayList<>();
-        for (Combatant combatant : turnManager.getPlayers()) {
-            if (combatant.isAlive()) {
+        for (Combatant combatant : combatants) {
+            if (combatant.isPlayer() && combatant.isAlive()) {
                 survivingPlayers.add(combatant.getId());
                 // Обновляем статистику игроков
                 updatePlayerStatsInFirestore(combatant);
             }
         }
         combatResult.put("survivingPlayers", survivingPlayers);
+        combatResult.put("rng", sessionRng.snapshot().toMap());
+
+        byte[] log = combatLog.toBlob();
+        saveCombatLog(log, victory);
+        if (UPLOAD_COMBAT_LOG) {
+            combatResult.put("log", Blob.fromBytes(log));
+            combatResult.put("logRecords", combatLog.getRecordCount());
+        }
 
         enemyRepository.saveCombatResult(combatResult);
     }
 
+    private void saveCombatLog(byte[] log, boolean victory) {
+        if (combatLogDao == null) {
+            return;
+        }
+        CombatLogEntry entry = new CombatLogEntry("combat_" + System.currentTimeMillis(),
+                sessionId, encounterId, log);
+        entry.setRngSeed(String.valueOf(sessionRng.getRootSeed()));
+        entry.setVictory(victory);
+        entry.setRounds(combatState.getRound());
+        StringBuilder roster = new StringBuilder();
+        for (CombatantState combatant : combatState.getCombatants()) {
+            if (roster.length() > 0) {
+                roster.append(',');
+            }
+            roster.append(combatant.getId());
+        }
+        entry.setRosterIds(roster.toString());
+        logWriter.execute(() -> combatLogDao.insertCombatLog(entry));
+    }
+
     private void setupCombatSystems() {
-        combatSystem = new CombatSystem();
-        combatSystem.addListener(this);
-        turnManager = new TurnManager();
+        // Движок создается в initializeCombat, когда известно зерно сессии
+        combatLog = new CombatLog();
+        combatExecutor = Executors.newSingleThreadExecutor();
+        logWriter = Executors.newSingleThreadExecutor();
+        aiExecutor = Executors.newSingleThreadExecutor();
+        enemyPlanner = new EnemyTurnPlanner(aiExecutor, EnemyTurnPlanner.bossAware(new CombatActions()));
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (combatEngine != null) {
+            combatEngine.removeListener(this);
+        }
+        if (combatExecutor != null) {
+            combatExecutor.shutdownNow();
+        }
+        if (enemyPlanner != null) {
+            enemyPlanner.cancel();
+        }
+        if (aiExecutor != null) {
+            aiExecutor.shutdownNow();
+        }
+        if (logWriter != null) {
+            // Журнал боя дописывается даже после ухода с экрана
+            logWriter.shutdown();
+        }
+        if (mainHandler != null) {
+            mainHandler.removeCallbacksAndMessages(null);
+        }
+    }
+
+    // Команда выполняется на потоке движка; результат придет пакетом в onCombatDelta
+    private void submitCommand(CombatCommand command) {
+        if (combatEngine == null) {
+            return;
+        }
+        combatExecutor.execute(() -> executeCommand(command));
+    }
+
+    // Только на потоке движка: команда запоминается для проверки воспроизведения
+    private void executeCommand(CombatCommand command) {
+        executedCommands.add(command);
+        combatEngine.execute(command);
     }
 
     private void setupCombatWithSampleData() {
+        if (combatStarted) {
+            return;
+        }
+        combatStarted = true;
         combatants = createSampleCombatants();
         playerInventory = createSampleItems();
         initializeCombat();
     }
 
     private void initializeCombat() {
-        turnManager.initializeCombat(combatants);
-        turnManager.rollInitiative();
-
-        if (combatTitleText.getText().length() == 0) {
-            combatTitleText.setText("Bandit Ambush!");
+        // Копии снимаются на главном потоке, пока бойцов экрана никто не меняет
+        List<Combatant> participants = new ArrayList<>(combatants.size());
+        List<Combatant> roster = new ArrayList<>(combatants.size());
+        displayed.clear();
+        for (Combatant combatant : combatants) {
+            displayed.put(combatant.getId(), combatant);
+            participants.add(combatant.copy());
+            roster.add(combatant.copy());
         }
-        updateRoundDisplay();
+        combatExecutor.execute(() -> {
+            sessionRng = createCombatRng();
+            CombatEngine engine = new CombatEngine(sessionRng);
+            engine.setSummons(EnemyRepository.getRegistry());
+            engine.setTriggers(triggers);
+            engine.addListener(this);
+            engine.addListener(combatLog);
+            startingRoster = roster;
+            executedCommands.clear();
+            combatEngine = engine;
+            engine.start(participants);
+        });
+    }
 
-        if (combatLogText.getText().length() == 0) {
-            combatLogText.setText("Combat started! Prepare for battle!");
+    /**
+     * Зерно боя выводится из зерна сессии и номера боя в ней, поэтому бой
+     * воспроизводим по сохраненной сессии. Без сессии в базе - случайное зерно.
+     * Вызывается на потоке движка (синхронный доступ к Room).
+     */
+    private SessionRng createCombatRng() {
+        GameSession session = sessionId != null && gameSessionDao != null
+                ? gameSessionDao.getSessionByIdSync(sessionId) : null;
+        if (session == null) {
+            return new SessionRng(RngStream.randomSeed());
         }
+        SessionRng root = SessionRng.forSession(session);
+        long combatIndex = session.nextCombatIndex();
+        // Сохраняем зерно (если оно только что создано) и счетчик боев
+        gameSessionDao.updateSession(session);
+        return root.fork(combatIndex);
+    }
 
-        showSuccess("Combat started!");
+    /**
+     * Повтор боя с тем же зерном и теми же командами на отдельном движке.
+     * Расхождение журнала генератора или исхода означает недетерминизм в правилах -
+     * такой бой нельзя восстановить по сохраненному зерну.
+     */
+    private void verifyReplay(CombatState.Outcome outcome) {
+        SessionRng.Log rngLog = sessionRng.snapshot();
+        List<Combatant> roster = startingRoster;
+        List<CombatCommand> commands = new ArrayList<>(executedCommands);
+        // Повтор идет на тех же реакциях, что и бой, а не на текущей экипировке
+        TriggerRegistry startTriggers = combatEngine != null ? combatEngine.getTriggers() : null;
+        if (roster == null) {
+            return;
+        }
+        logWriter.execute(() -> {
+            CombatEngine replay = new CombatEngine(rngLog.replay());
+            replay.setSummons(EnemyRepository.getRegistry());
+            replay.setTriggers(startTriggers);
+            replay.replay(roster, commands);
+            if (!rngLog.matches(replay.getRng()) || replay.getState().getOutcome() != outcome) {
+                android.util.Log.w("CombatFragment", "Combat replay diverged: seed "
+                        + rngLog.getRootSeed() + ", commands " + commands.size());
+            }
+        });
     }
 
     private void setupCombatantsGrid() {
@@ -459,7 +657,7 @@ public class CombatFragment extends BaseFragment implements
     }
 
     private void performAttack() {
-        Combatant currentAttacker = turnManager.getCurrentCombatant();
+        Combatant currentAttacker = getCurrentCombatant();
 
         if (selectedTarget == null) {
             showError("Select a target first!");
@@ -471,134 +669,329 @@ public class CombatFragment extends BaseFragment implements
             return;
         }
 
-        if (currentAttacker != null && "PLAYER".equals(currentAttacker.getType())) {
-            CombatSystem.AttackResult result = combatSystem.performAttack(
-                    currentAttacker, selectedTarget, "MELEE"
-            );
-
-            turnManager.nextTurn();
-            updateRoundDisplay();
-            combatantAdapter.updateCombatants(turnManager.getCombatants());
-
-            checkCombatEnd();
+        if (currentAttacker != null && currentAttacker.isPlayer()) {
+            submitCommand(CombatCommand.attack(currentAttacker.getId(), selectedTarget.getId(), AttackType.MELEE));
         }
     }
 
     private void showSkills() {
-        Combatant currentCombatant = turnManager.getCurrentCombatant();
-        if (currentCombatant != null && "PLAYER".equals(currentCombatant.getType())) {
+        Combatant currentCombatant = getCurrentCombatant();
+        if (currentCombatant != null && currentCombatant.isPlayer()) {
             SkillsDialog skillsDialog = SkillsDialog.newInstance(currentCombatant.getId());
+            skillsDialog.setCombatState(combatState);
             skillsDialog.setSkillSelectedListener((skill, target) -> {
-                combatLogText.append("\nUsing skill: " + skill);
-                turnManager.nextTurn();
-                updateRoundDisplay();
+                // Цели навыка по площади выбирает движок; враждебному навыку - выбранный противник, иначе себе
+                String targetId = null;
+                if (target != null) {
+                    targetId = target.getId();
+                } else if (!skill.targetKind().isMultiple() && skill.targetKind().isHostile()) {
+                    if (selectedTarget == null || !selectedTarget.isAlive()) {
+                        showError("Select a target first!");
+                        return;
+                    }
+                    targetId = selectedTarget.getId();
+                }
+                submitCommand(CombatCommand.useSkill(currentCombatant.getId(), skill, targetId));
             });
             skillsDialog.show(getParentFragmentManager(), "skills_dialog");
         }
     }
 
     private void useItem() {
-        Combatant currentCombatant = turnManager.getCurrentCombatant();
-        if (currentCombatant != null && "PLAYER".equals(currentCombatant.getType())) {
+        Combatant currentCombatant = getCurrentCombatant();
+        if (currentCombatant != null && currentCombatant.isPlayer()) {
             // ✅ Загружаем инвентарь из Firestore
             loadPlayerInventoryFromFirestore();
 
             InventoryDialog inventoryDialog = InventoryDialog.newInstance(playerInventory, sessionId, getCurrentPlayerId());
-            inventoryDialog.setItemUseListener(item -> {
-                combatLogText.append("\nUsed item: " + item.getName());
-                applyItemEffects(item);
-                turnManager.nextTurn();
-                updateRoundDisplay();
-            });
+            inventoryDialog.setItemUseListener(this::applyItemEffects);
             inventoryDialog.show(getParentFragmentManager(), "inventory_dialog");
         }
     }
 
     private void attemptFlee() {
-        List<Combatant> players = turnManager.getPlayers();
-        boolean fleeSuccess = combatSystem.attemptFlee(players);
+        Combatant current = getCurrentCombatant();
+        if (current != null && current.isPlayer()) {
+            submitCommand(CombatCommand.flee(current.getId()));
+        }
+    }
 
-        if (fleeSuccess) {
-            combatLogText.append("\nSuccessfully fled from combat!");
-            // ✅ Сохраняем результат побега в Firestore
-            saveCombatResultToFirestore(false);
-            Navigation.findNavController(requireView())
-                    .navigate(R.id.action_combatFragment_to_gameMainFragment);
-        } else {
-            combatLogText.append("\nFailed to flee! Enemies block your escape!");
-            turnManager.nextTurn();
+    // Реализация CombatEngine.Listener: итог команды приходит с потока движка одним пакетом
+    @Override
+    public void onCombatDelta(CombatDelta delta, CombatState state) {
+        if (EnemyTurnPlanner.needsPlan(state)) {
+            // План начинает считаться до отрисовки дельты
+            enemyPlanner.plan(state);
+        }
+        mainHandler.post(() -> renderDelta(delta, state));
+    }
+
+    private void renderDelta(CombatDelta delta, CombatState state) {
+        if (getView() == null) {
+            return;
+        }
+        if (state != null) {
+            combatState = state;
+        }
+
+        StringBuilder log = new StringBuilder();
+        CombatEvent.CombatEnded ended = null;
+        for (CombatEvent event : delta.getEvents()) {
+            if (event instanceof CombatEvent.CombatEnded) {
+                ended = (CombatEvent.CombatEnded) event;
+            } else {
+                renderEvent(event, state, log);
+            }
+        }
+        if (log.length() > 0) {
+            combatLogText.append(log);
+        }
+        // Переносим изменения в бойцов и обновляем только затронутые ячейки
+        if (state != null) {
+            for (String id : delta.getHpChanges().keySet()) syncCombatant(state, id);
+            for (String id : delta.getDefeated()) syncCombatant(state, id);
+            for (String id : delta.getStatusChanges().keySet()) syncCombatant(state, id);
+        }
+        if (delta.isTurnChanged()) {
+            setTurnFlag(delta.getPreviousTurnId(), false);
+            setTurnFlag(delta.getCurrentTurnId(), true);
             updateRoundDisplay();
         }
+        if (delta.isRosterChanged()) {
+            combatantAdapter.updateCombatants(combatants);
+        } else {
+            combatantAdapter.applyDelta(delta);
+        }
+        if (delta.isTurnChanged() || delta.isRosterChanged()) {
+            CombatantState current = state != null ? state.getCurrent() : null;
+            combatantAdapter.setPreviewAttacker(combatEngine, state,
+                    current != null && current.isPlayer() ? current : null);
+        }
+
+        if (ended != null) {
+            onCombatEnded(ended);
+        } else if (delta.isTurnChanged() && EnemyTurnPlanner.needsPlan(state)) {
+            scheduleEnemyTurn(state);
+        }
     }
 
-    // Реализация CombatEventListener
-    @Override
-    public void onAttackHit(Combatant attacker, Combatant target, int damage, boolean critical) {
-        String message = String.format("\n%s hits %s for %d damage%s",
-                attacker.getName(), target.getName(), damage, critical ? " (CRITICAL!)" : "");
-        combatLogText.append(message);
+    // К концу паузы план обычно готов, и враг ходит без задержки
+    private void scheduleEnemyTurn(CombatState state) {
+        Future<CombatCommand> plan = enemyPlanner.plan(state);
+        mainHandler.postDelayed(() -> combatExecutor.execute(() -> {
+            if (combatEngine.getState() == state) {
+                executeCommand(EnemyTurnPlanner.await(plan, state));
+            }
+        }), ENEMY_TURN_DELAY_MS);
+    }
 
-        if (!target.isAlive()) {
-            combatLogText.append(String.format("\n%s is defeated!", target.getName()));
+    private void renderEvent(CombatEvent event, CombatState state, StringBuilder log) {
+        switch (event.getType()) {
+            case COMBAT_STARTED:
+                // Порядок инициативы задает движок
+                combatants = new ArrayList<>();
+                for (CombatantState combatant : state.getCombatants()) {
+                    combatants.add(displayed(combatant));
+                }
+                if (combatTitleText.getText().length() == 0) {
+                    combatTitleText.setText("Bandit Ambush!");
+                }
+                if (combatLogText.getText().length() == 0) {
+                    combatLogText.setText("Combat started! Prepare for battle!");
+                }
+                showSuccess("Combat started!");
+                break;
+            case ATTACK_HIT: {
+                CombatEvent.AttackHit hit = (CombatEvent.AttackHit) event;
+                log.append(String.format("\n%s hits %s for %d damage%s",
+                        state.get(hit.getAttackerSlot()).getName(), state.get(hit.getTargetSlot()).getName(),
+                        hit.getDamage(), hit.isCritical() ? " (CRITICAL!)" : ""));
+                break;
+            }
+            case ATTACK_MISSED: {
+                CombatEvent.AttackMissed miss = (CombatEvent.AttackMissed) event;
+                log.append(String.format("\n%s misses %s!",
+                        state.get(miss.getAttackerSlot()).getName(), state.get(miss.getTargetSlot()).getName()));
+                break;
+            }
+            case COMBATANT_DEFEATED: {
+                CombatantState defeated = state.get(((CombatEvent.CombatantDefeated) event).getSlot());
+                if (selectedTarget != null && selectedTarget.getId().equals(defeated.getId())) {
+                    selectedTarget = null;
+                }
+                log.append(String.format("\n%s is defeated!", defeated.getName()));
+                break;
+            }
+            case HEALED: {
+                CombatEvent.Healed healed = (CombatEvent.Healed) event;
+                log.append(String.format("\n%s healed for %d HP!",
+                        state.get(healed.getTargetSlot()).getName(), healed.getAmount()));
+                break;
+            }
+            case SKILL_RESOLVED: {
+                CombatEvent.SkillResolved resolved = (CombatEvent.SkillResolved) event;
+                for (int i = 0; i < resolved.getTargetCount(); i++) {
+                    String name = state.get(resolved.getTargetSlot(i)).getName();
+                    log.append(resolved.isHeal()
+                            ? String.format("\n%s healed for %d HP!", name, resolved.getAmount(i))
+                            : String.format("\n%s takes %d damage%s", name, resolved.getAmount(i),
+                                    resolved.isSaved(i) ? " (saved)" : ""));
+                }
+                break;
+            }
+            case STATUS_APPLIED: {
+                CombatEvent.StatusApplied applied = (CombatEvent.StatusApplied) event;
+                log.append(String.format("\n%s is %s!",
+                        state.get(applied.getTargetSlot()).getName(), applied.getEffect().name()));
+                break;
+            }
+            case STATUS_TICKED: {
+                CombatEvent.StatusTicked tick = (CombatEvent.StatusTicked) event;
+                String name = state.get(tick.getSlot()).getName();
+                if (tick.getHpDelta() < 0) {
+                    log.append(String.format("\n%s takes %d damage from %s",
+                            name, -tick.getHpDelta(), tick.getEffect().name()));
+                } else if (tick.getHpDelta() > 0) {
+                    log.append(String.format("\n%s regains %d HP from %s",
+                            name, tick.getHpDelta(), tick.getEffect().name()));
+                }
+                if (tick.isExpired()) {
+                    log.append(String.format("\n%s is no longer %s", name, tick.getEffect().name()));
+                }
+                break;
+            }
+            case TURN_SKIPPED:
+                log.append(String.format("\n%s cannot act and loses the turn!",
+                        state.get(((CombatEvent.TurnSkipped) event).getSlot()).getName()));
+                break;
+            case SKILL_USED: {
+                CombatEvent.SkillUsed used = (CombatEvent.SkillUsed) event;
+                syncCombatant(state, state.get(used.getActorSlot()).getId());
+                log.append("\nUsing skill: ").append(used.getSkillName());
+                break;
+            }
+            case STAT_MODIFIED: {
+                CombatEvent.StatModified modified = (CombatEvent.StatModified) event;
+                syncCombatant(state, state.get(modified.getTargetSlot()).getId());
+                log.append(String.format("\n%s: %s %+d%s", state.get(modified.getTargetSlot()).getName(),
+                        modified.getStat().name(), modified.getDelta(),
+                        modified.getRounds() > 0 ? " for " + modified.getRounds() + " rounds" : ""));
+                break;
+            }
+            case SUMMONED: {
+                CombatEvent.Summoned summoned = (CombatEvent.Summoned) event;
+                // Список бойцов адаптера перерисуется целиком по isRosterChanged
+                combatants.add(displayed(state.get(summoned.getSlot())));
+                log.append(String.format("\n%s summons %s!", state.get(summoned.getCasterSlot()).getName(),
+                        state.get(summoned.getSlot()).getName()));
+                break;
+            }
+            case ITEM_USED:
+                log.append("\nUsed ").append(((CombatEvent.ItemUsed) event).getItemName()).append(" successfully!");
+                break;
+            case FLEE_ATTEMPTED:
+                log.append(((CombatEvent.FleeAttempted) event).isSuccess()
+                        ? "\nSuccessfully fled from combat!"
+                        : "\nFailed to flee! Enemies block your escape!");
+                break;
+            case COMMAND_REJECTED:
+                showError(((CombatEvent.CommandRejected) event).getReason());
+                break;
+            default:
+                break;
         }
     }
 
-    @Override
-    public void onAttackMiss(Combatant attacker, Combatant target) {
-        combatLogText.append(String.format("\n%s misses %s!", attacker.getName(), target.getName()));
+    private void setTurnFlag(String combatantId, boolean currentTurn) {
+        Combatant combatant = combatantId != null ? displayed.get(combatantId) : null;
+        if (combatant != null) {
+            combatant.setCurrentTurn(currentTurn);
+        }
     }
 
-    @Override
-    public void onCombatantDefeated(Combatant combatant) {
-        turnManager.removeCombatant(combatant);
-        combatantAdapter.updateCombatants(turnManager.getCombatants());
+    // Боец экрана для состояния движка; призванных копируем - их базу движок делит с MCTS
+    private Combatant displayed(CombatantState combatantState) {
+        Combatant combatant = displayed.get(combatantState.getId());
+        if (combatant == null) {
+            combatant = combatantState.getBase().copy();
+            displayed.put(combatant.getId(), combatant);
+        }
+        return combatant;
     }
 
-    @Override
-    public void onCombatEnd(boolean victory) {
-        // Обрабатывается в checkCombatEnd()
+    // Бойцы движка не меняются - переносим HP, ману, живость и состояния из состояния боя в бойца экрана
+    private void syncCombatant(CombatState state, String combatantId) {
+        int slot = state.indexOf(combatantId);
+        Combatant combatant = displayed.get(combatantId);
+        if (slot < 0 || combatant == null) {
+            return;
+        }
+        CombatantState combatantState = state.get(slot);
+        combatant.setCurrentHp(combatantState.getCurrentHp());
+        combatant.setMana(combatantState.getMana());
+        combatant.setAlive(combatantState.isAlive());
+        for (StatusEffect effect : StatusEffect.values()) {
+            if (combatantState.hasStatus(effect)) {
+                combatant.setStatus(effect, combatantState.statusDuration(effect), combatantState.statusStacks(effect));
+            } else {
+                combatant.clearStatus(effect);
+            }
+        }
     }
 
     @Override
     public void onCombatantClick(Combatant combatant) {
-        if ("ENEMY".equals(combatant.getType()) && combatant.isAlive()) {
+        if (combatant.isEnemy() && combatant.isAlive()) {
             selectedTarget = combatant;
             combatLogText.append("\nSelected target: " + combatant.getName());
         }
     }
 
     private void updateRoundDisplay() {
-        Combatant current = turnManager.getCurrentCombatant();
+        Combatant current = getCurrentCombatant();
         if (current != null) {
             roundText.setText(String.format("Round %d - %s's turn",
-                    turnManager.getCurrentRound(), current.getName()));
+                    combatState.getRound(), current.getName()));
         }
     }
 
-    private void checkCombatEnd() {
-        if (turnManager.isCombatOver()) {
-            boolean victory = turnManager.isPlayerVictory();
+    private void onCombatEnded(CombatEvent.CombatEnded event) {
+        verifyReplay(event.getOutcome());
+        if (event.getOutcome() == CombatState.Outcome.FLED) {
+            // ✅ Сохраняем результат побега в Firestore
+            saveCombatResultToFirestore(false);
+            Navigation.findNavController(requireView())
+                    .navigate(R.id.action_combatFragment_to_gameMainFragment);
+            return;
+        }
 
-            if (victory) {
-                combatLogText.append("\n\nVICTORY! All enemies defeated!");
-                showSuccess("Combat Victory!");
-            } else {
-                combatLogText.append("\n\nDEFEAT! Your party has been overcome...");
-                showError("Combat Defeat!");
-            }
+        boolean victory = event.isVictory();
+        if (victory) {
+            combatLogText.append("\n\nVICTORY! All enemies defeated!");
+            showSuccess("Combat Victory!");
+        } else {
+            combatLogText.append("\n\nDEFEAT! Your party has been overcome...");
+            showError("Combat Defeat!");
+        }
 
-            // ✅ Сохраняем результат боя в Firestore
-            saveCombatResultToFirestore(victory);
+        // ✅ Сохраняем результат боя в Firestore
+        saveCombatResultToFirestore(victory);
 
-            new android.os.Handler().postDelayed(() -> {
+        mainHandler.postDelayed(() -> {
+            if (getView() != null) {
                 Navigation.findNavController(requireView())
                         .navigate(R.id.action_combatFragment_to_gameMainFragment);
-            }, 3000);
-        }
+            }
+        }, 3000);
+    }
+
+    private Combatant getCurrentCombatant() {
+        CombatantState current = combatState != null ? combatState.getCurrent() : null;
+        return current != null ? displayed.get(current.getId()) : null;
     }
 
     private String getCurrentPlayerId() {
-        Combatant current = turnManager.getCurrentCombatant();
+        Combatant current = getCurrentCombatant();
         return current != null ? current.getId() : null;
     }
 
@@ -0,0 +1,435 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.dice.SessionRng;
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.EnemyPrototype;
+import com.HG.heroesglory.core.entities.Item;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.entities.Squad;
+import com.HG.heroesglory.core.entities.StatusEffect;
+import com.HG.heroesglory.core.systems.EnemyRegistry;
+import com.HG.heroesglory.core.systems.SkillPlan;
+import com.HG.heroesglory.core.systems.TriggerRegistry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Правила движка боя: порядок ходов, проверка команд, тики состояний и события.
+ */
+public class CombatEngineTest {
+
+    @Test
+    public void start_leavesInputCombatantsUnchanged() {
+        List<Combatant> roster = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Combatant combatant = combatant("c" + i, i % 2 == 0 ? "PLAYER" : "ENEMY", 20);
+            combatant.setDexterity(10 + i);
+            combatant.setInitiative(-1);
+            roster.add(combatant);
+        }
+        List<Combatant> input = new ArrayList<>(roster);
+
+        CombatEngine engine = new CombatEngine(new SessionRng(3));
+        engine.start(roster);
+
+        assertEquals(input, roster);
+        for (Combatant combatant : roster) {
+            assertEquals(-1, combatant.getInitiative());
+            assertFalse(combatant.isCurrentTurn());
+        }
+        // Порядок ходов - перестановка входного состава
+        assertEquals(roster.size(), engine.getState().size());
+        for (CombatantState state : engine.getState().getCombatants()) {
+            assertTrue(roster.contains(state.getBase()));
+        }
+    }
+
+    @Test
+    public void poisonTicksAtTurnStartAndKills() {
+        Combatant hero = combatant("hero", "PLAYER", 20);
+        Combatant rat = combatant("rat", "ENEMY", 4);
+        rat.setStatus(StatusEffect.POISONED, 3, 2);
+        CombatEngine engine = new CombatEngine(new SessionRng(5));
+        List<CombatEvent> events = new ArrayList<>(engine.start(Arrays.asList(hero, rat)));
+        events.addAll(passUntilOver(engine));
+
+        int ratSlot = engine.getState().indexOf("rat");
+        CombatEvent.StatusTicked tick = null;
+        for (CombatEvent event : events) {
+            if (event instanceof CombatEvent.StatusTicked) {
+                tick = (CombatEvent.StatusTicked) event;
+            }
+        }
+        assertNotNull(tick);
+        assertEquals(ratSlot, tick.getSlot());
+        assertEquals(-4, tick.getHpDelta());
+        assertEquals(CombatState.Outcome.VICTORY, engine.getState().getOutcome());
+        assertFalse(engine.getState().get(ratSlot).isAlive());
+        assertEquals(0, engine.getState().get(ratSlot).statusMask());
+        // Исходные бойцы не меняются
+        assertEquals(4, rat.getCurrentHp());
+    }
+
+    @Test
+    public void stunnedCombatantLosesTurnsUntilExpiry() {
+        Combatant hero = combatant("hero", "PLAYER", 20);
+        Combatant ogre = combatant("ogre", "ENEMY", 30);
+        ogre.setStatus(StatusEffect.STUNNED, 2, 1);
+        CombatEngine engine = new CombatEngine(new SessionRng(8));
+        List<CombatEvent> events = new ArrayList<>(engine.start(Arrays.asList(hero, ogre)));
+        int ogreSlot = engine.getState().indexOf("ogre");
+
+        for (int step = 0; step < 10 && engine.getState().getCurrentSlot() != ogreSlot; step++) {
+            events.addAll(engine.execute(CombatCommand.endTurn(engine.getState().getCurrent().getId())));
+        }
+
+        int skipped = 0;
+        for (CombatEvent event : events) {
+            if (event instanceof CombatEvent.TurnSkipped) {
+                assertEquals(ogreSlot, ((CombatEvent.TurnSkipped) event).getSlot());
+                skipped++;
+            }
+        }
+        assertEquals(2, skipped);
+        CombatantState ogreState = engine.getState().getCurrent();
+        assertEquals("ogre", ogreState.getId());
+        assertTrue(ogreState.canAct());
+        assertFalse(ogreState.hasStatus(StatusEffect.STUNNED));
+    }
+
+    @Test
+    public void incapacitatedActorMayOnlyEndTurn() {
+        Combatant hero = combatant("hero", "PLAYER", 20);
+        hero.setStatus(StatusEffect.PARALYZED, 2, 1);
+        Combatant ogre = combatant("ogre", "ENEMY", 30);
+        CombatEngine engine = new CombatEngine(new SessionRng(1),
+                CombatState.initial(Arrays.asList(hero, ogre)));
+
+        List<CombatEvent> rejected = engine.execute(CombatCommand.attack("hero", "ogre", "MELEE"));
+        assertEquals(1, rejected.size());
+        assertEquals("Combatant cannot act", ((CombatEvent.CommandRejected) rejected.get(0)).getReason());
+
+        engine.execute(CombatCommand.endTurn("hero"));
+        assertEquals(1, engine.getState().get(0).statusDuration(StatusEffect.PARALYZED));
+        assertEquals("ogre", engine.getState().getCurrent().getId());
+    }
+
+    @Test
+    public void statusSkillStacksOnTarget() {
+        Combatant hero = combatant("hero", "PLAYER", 20);
+        Combatant ogre = combatant("ogre", "ENEMY", 30);
+        Skill ignite = new Skill("ignite", "Ignite", "", "ATTACK");
+        ignite.setEffects("status BURNING 2 1");
+        CombatEngine engine = new CombatEngine(new SessionRng(2),
+                CombatState.initial(Arrays.asList(hero, ogre)));
+
+        engine.execute(CombatCommand.useSkill("hero", ignite, "ogre"));
+        // Горение тикает в начале хода носителя, сразу после каста
+        CombatantState burning = engine.getState().get(1);
+        assertEquals(1, burning.statusDuration(StatusEffect.BURNING));
+        assertEquals(1, burning.statusStacks(StatusEffect.BURNING));
+        assertEquals(27, burning.getCurrentHp());
+
+        engine.execute(CombatCommand.endTurn("ogre"));
+        engine.execute(CombatCommand.useSkill("hero", ignite, "ogre"));
+        burning = engine.getState().get(1);
+        // Стаки складываются, длительность - наибольшая из оставшейся и новой
+        assertEquals(2, burning.statusStacks(StatusEffect.BURNING));
+        assertEquals(1, burning.statusDuration(StatusEffect.BURNING));
+        assertEquals(27 - 6, burning.getCurrentHp());
+    }
+
+    @Test
+    public void areaSkillHitsEveryEnemyWithOneEvent() {
+        List<Combatant> roster = new ArrayList<>();
+        roster.add(combatant("mage", "PLAYER", 20));
+        roster.add(combatant("ally", "PLAYER", 20));
+        for (int i = 0; i < 3; i++) {
+            roster.add(combatant("goblin" + i, "ENEMY", 7));
+        }
+        Skill fireball = new Skill("fireball", "Fireball", "", "ATTACK");
+        fireball.setTargetType("ALL_ENEMIES");
+        fireball.setDamageDice("2d6+30");
+        CombatEngine engine = new CombatEngine(new SessionRng(4), CombatState.initial(roster));
+
+        // Выбранная цель не сужает навык по площади
+        List<CombatEvent> events = engine.execute(CombatCommand.useSkill("mage", fireball, "goblin0"));
+
+        CombatEvent.SkillResolved resolved = null;
+        int defeated = 0;
+        for (CombatEvent event : events) {
+            if (event instanceof CombatEvent.SkillResolved) {
+                assertNull("one event per cast", resolved);
+                resolved = (CombatEvent.SkillResolved) event;
+            } else if (event instanceof CombatEvent.CombatantDefeated) {
+                defeated++;
+            }
+        }
+        assertNotNull(resolved);
+        assertEquals(3, resolved.getTargetCount());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(engine.getState().get(resolved.getTargetSlot(i)).isEnemy());
+        }
+        assertEquals(3, defeated);
+        assertEquals(CombatState.Outcome.VICTORY, engine.getState().getOutcome());
+        assertEquals(20, engine.getState().get(1).getCurrentHp());
+    }
+
+    @Test
+    public void areaSkillHitsEverySquadMember() {
+        Combatant mage = combatant("mage", "PLAYER", 20);
+        Squad goblins = Squad.of(combatant("goblin", "ENEMY", 7), 20);
+        Skill fireball = new Skill("fireball", "Fireball", "", "ATTACK");
+        fireball.setTargetType("ALL_ENEMIES");
+        fireball.setDamageDice("2d6+30");
+        CombatEngine engine = new CombatEngine(new SessionRng(4),
+                CombatState.initial(Arrays.asList(mage, goblins)));
+
+        engine.execute(CombatCommand.useSkill("mage", fireball, null));
+
+        // Даже половина урона больше HP гоблина: отряд выбит целиком, а не на один удар
+        assertEquals(0, engine.getState().get(1).getCurrentHp());
+        assertEquals(CombatState.Outcome.VICTORY, engine.getState().getOutcome());
+    }
+
+    @Test
+    public void squadVolleyIsCappedPerTarget() {
+        int[] hpLeft = new int[2];
+        int[] sizes = {Squad.MAX_ATTACKERS_PER_TARGET, 40};
+        for (int i = 0; i < sizes.length; i++) {
+            Squad goblins = Squad.of(combatant("goblin", "ENEMY", 7), sizes[i]);
+            Combatant hero = combatant("hero", "PLAYER", 1000);
+            CombatEngine engine = new CombatEngine(new SessionRng(8),
+                    CombatState.initial(Arrays.asList(goblins, hero)));
+            engine.execute(CombatCommand.attack("goblin", "hero", "MELEE"));
+            hpLeft[i] = engine.getState().get(1).getCurrentHp();
+        }
+        // Сверх MAX_ATTACKERS_PER_TARGET бойцы отряда не добавляют бросков
+        assertEquals(hpLeft[0], hpLeft[1]);
+        assertTrue(hpLeft[0] < 1000);
+    }
+
+    @Test
+    public void hordeIsGroupedByTemplateNotByName() {
+        Map<String, Object> grunt = new HashMap<>();
+        grunt.put("name", "Goblin");
+        grunt.put("maxHP", 7);
+        Map<String, Object> brute = new HashMap<>(grunt);
+        brute.put("damageBonus", 4);
+        brute.put("strength", 3);
+        List<Combatant> enemies = new ArrayList<>();
+        enemies.addAll(EnemyPrototype.fromMap("goblin", grunt).spawn(10));
+        enemies.addAll(EnemyPrototype.fromMap("goblin_brute", brute).spawn(5));
+
+        List<Combatant> grouped = Squad.groupHorde(enemies);
+
+        // Одинаковые имя, HP и КД, но разные шаблоны - два отряда, а не один на 15 бойцов
+        assertEquals(2, grouped.size());
+        assertEquals(10, ((Squad) grouped.get(0)).getSize());
+        assertEquals(5, ((Squad) grouped.get(1)).getSize());
+        assertEquals(4, grouped.get(1).getDamageBonus());
+    }
+
+    @Test
+    public void skillOnCooldownIsRejectedUntilReady() {
+        Combatant hero = combatant("hero", "PLAYER", 20);
+        Combatant ogre = combatant("ogre", "ENEMY", 200);
+        Skill smite = new Skill("smite", "Smite", "", "ATTACK");
+        smite.setDamageDice("1d4");
+        smite.setCooldown(2);
+        CombatActions actions = new CombatActions().setSkills("hero", Arrays.asList(smite));
+        CombatEngine engine = new CombatEngine(new SessionRng(6),
+                CombatState.initial(Arrays.asList(hero, ogre)));
+
+        engine.execute(CombatCommand.useSkill("hero", smite, "ogre"));
+        engine.execute(CombatCommand.endTurn("ogre"));
+        assertEquals(1, engine.getState().getCurrent().cooldownLeft(smite, engine.getState().getRound()));
+        for (CombatCommand candidate : actions.candidates(engine.getState())) {
+            assertNotEquals(CombatCommand.Type.USE_SKILL, candidate.getType());
+        }
+        List<CombatEvent> rejected = engine.execute(CombatCommand.useSkill("hero", smite, "ogre"));
+        assertEquals("Skill is on cooldown", ((CombatEvent.CommandRejected) rejected.get(0)).getReason());
+
+        engine.execute(CombatCommand.endTurn("hero"));
+        engine.execute(CombatCommand.endTurn("ogre"));
+        assertTrue(engine.getState().getCurrent().isSkillReady(smite, engine.getState().getRound()));
+        List<CombatEvent> accepted = engine.execute(CombatCommand.useSkill("hero", smite, "ogre"));
+        assertEquals(CombatEvent.Type.SKILL_USED, accepted.get(0).getType());
+        // Исходный навык движок не трогает: откат живет в состоянии боя
+        assertFalse(smite.isOnCooldown());
+    }
+
+    @Test
+    public void skillSpendsManaAndIsRejectedWithoutIt() {
+        Combatant hero = combatant("hero", "PLAYER", 20);
+        hero.setMaxMana(5);
+        hero.setMana(5);
+        Combatant ogre = combatant("ogre", "ENEMY", 200);
+        Skill bolt = new Skill("bolt", "Bolt", "", "ATTACK");
+        bolt.setDamageDice("1d4");
+        bolt.setManaCost(3);
+        CombatActions actions = new CombatActions().setSkills("hero", Arrays.asList(bolt));
+        CombatEngine engine = new CombatEngine(new SessionRng(3),
+                CombatState.initial(Arrays.asList(hero, ogre)));
+
+        engine.execute(CombatCommand.useSkill("hero", bolt, "ogre"));
+        assertEquals(2, engine.getState().get(0).getMana());
+        assertEquals(5, hero.getMana());
+        engine.execute(CombatCommand.endTurn("ogre"));
+        for (CombatCommand candidate : actions.candidates(engine.getState())) {
+            assertNotEquals(CombatCommand.Type.USE_SKILL, candidate.getType());
+        }
+        List<CombatEvent> rejected = engine.execute(CombatCommand.useSkill("hero", bolt, "ogre"));
+        assertEquals("Not enough mana", ((CombatEvent.CommandRejected) rejected.get(0)).getReason());
+    }
+
+    @Test
+    public void statSkillRaisesArmorUntilExpiry() {
+        Combatant hero = combatant("hero", "PLAYER", 20);
+        Combatant ogre = combatant("ogre", "ENEMY", 200);
+        Skill shield = new Skill("shield", "Shield", "", "BUFF");
+        shield.setEffects("self stat AC 5 2");
+        CombatEngine engine = new CombatEngine(new SessionRng(4),
+                CombatState.initial(Arrays.asList(hero, ogre)));
+
+        List<CombatEvent> events = engine.execute(CombatCommand.useSkill("hero", shield, null));
+        assertEquals(CombatEvent.Type.STAT_MODIFIED, events.get(1).getType());
+        assertEquals(17, engine.getState().get(0).getArmorClass());
+        assertEquals(12, hero.getArmorClass());
+        engine.execute(CombatCommand.endTurn("ogre"));
+        engine.execute(CombatCommand.endTurn("hero"));
+        assertEquals(17, engine.getState().get(0).getArmorClass());
+        engine.execute(CombatCommand.endTurn("ogre"));
+        // Через два раунда изменение снимается
+        assertEquals(3, engine.getState().getRound());
+        assertEquals(12, engine.getState().get(0).getArmorClass());
+    }
+
+    @Test
+    public void summonJoinsCasterSideAndTakesTurns() {
+        Combatant hero = combatant("hero", "PLAYER", 20);
+        Combatant ogre = combatant("ogre", "ENEMY", 200);
+        Skill callWolf = new Skill("call_wolf", "Call Wolf", "", "SUMMON");
+        callWolf.setEffects("self summon wolf 2");
+        Map<String, Object> wolf = new HashMap<>();
+        wolf.put("name", "Wolf");
+        wolf.put("maxHP", 9);
+        EnemyRegistry summons = new EnemyRegistry();
+        summons.put(EnemyPrototype.fromMap("wolf", wolf));
+        CombatEngine engine = new CombatEngine(new SessionRng(5),
+                CombatState.initial(Arrays.asList(hero, ogre)));
+        engine.setSummons(summons);
+
+        engine.execute(CombatCommand.useSkill("hero", callWolf, null));
+        CombatState state = engine.getState();
+        assertEquals(4, state.size());
+        assertEquals(3, state.getAlivePlayers());
+        assertEquals("wolf@hero#2", state.get(2).getId());
+        assertTrue(state.get(3).isPlayer());
+        assertEquals(9, state.get(3).getCurrentHp());
+        engine.execute(CombatCommand.endTurn("ogre"));
+        assertEquals("wolf@hero#2", engine.getState().getCurrent().getId());
+    }
+
+    @Test
+    public void equippedOnHitTriggerAppliesStatusAfterHit() {
+        Combatant hero = combatant("hero", "PLAYER", 200);
+        hero.setAttackBonus(20);
+        Combatant ogre = combatant("ogre", "ENEMY", 200);
+        Item sword = new Item("flame_sword", "Flame Sword", "WEAPON", "RARE", 1, 3.0);
+        sword.setEquipped(true);
+        Map<String, Object> stats = new HashMap<>();
+        stats.put(TriggerRegistry.ITEM_TRIGGERS_KEY, Collections.singletonMap("on_hit", "status BURNING 2"));
+        sword.setStats(stats);
+        TriggerRegistry triggers = new TriggerRegistry();
+        triggers.equip(hero, Arrays.asList(sword), null);
+        CombatEngine engine = new CombatEngine(new SessionRng(2),
+                CombatState.initial(Arrays.asList(hero, ogre)));
+        engine.setTriggers(triggers);
+
+        List<CombatEvent> events = engine.execute(CombatCommand.attack("hero", "ogre", "MELEE"));
+        assertEquals(CombatEvent.Type.ATTACK_HIT, events.get(0).getType());
+        assertEquals(CombatEvent.Type.STATUS_APPLIED, events.get(1).getType());
+        assertTrue(engine.getState().get(1).hasStatus(StatusEffect.BURNING));
+        // Эффект триггера не срабатывает повторно и не трогает исходного бойца
+        assertFalse(ogre.hasStatus(StatusEffect.BURNING));
+    }
+
+    @Test
+    public void startSnapshotsTriggersAgainstLaterEquipmentChanges() {
+        Combatant hero = combatant("hero", "PLAYER", 40);
+        Skill focus = new Skill("focus", "Focus", "", "PASSIVE");
+        focus.setTrigger("on_hit");
+        focus.setEffects("self stat ATTACK 1");
+        TriggerRegistry triggers = new TriggerRegistry();
+        triggers.equip(hero, null, Arrays.asList(focus));
+        CombatEngine engine = new CombatEngine(new SessionRng(3));
+        engine.setTriggers(triggers);
+        engine.start(Arrays.asList(hero, combatant("ogre", "ENEMY", 40)));
+
+        triggers.unequip(hero);
+        assertNull(triggers.plans(TriggerRegistry.Event.ON_HIT, "hero"));
+        assertNotNull(engine.getTriggers().plans(TriggerRegistry.Event.ON_HIT, "hero"));
+    }
+
+    @Test
+    public void passiveTriggersFireOnTurnStartKillAndLowHp() {
+        Combatant hero = combatant("hero", "PLAYER", 40);
+        hero.setAttackBonus(20);
+        Combatant imp = combatant("imp", "ENEMY", 1);
+        Combatant ogre = combatant("ogre", "ENEMY", 60);
+        ogre.setCurrentHp(16);
+        Skill focus = new Skill("focus", "Focus", "", "PASSIVE");
+        focus.setTrigger("turn_start");
+        focus.setEffects("self stat ATTACK 1");
+        Skill frenzy = new Skill("frenzy", "Frenzy", "", "PASSIVE");
+        frenzy.setTrigger("on_kill");
+        frenzy.setEffects("self stat DAMAGE 2");
+        Skill rage = new Skill("rage", "Rage", "", "PASSIVE");
+        rage.setTrigger("low_hp");
+        rage.setEffects("self stat AC 3");
+        TriggerRegistry triggers = new TriggerRegistry();
+        triggers.equip(hero, null, Arrays.asList(focus, frenzy));
+        triggers.equip(ogre, null, Arrays.asList(rage));
+        CombatEngine engine = new CombatEngine(new SessionRng(1),
+                CombatState.initial(Arrays.asList(hero, imp, ogre)));
+        engine.setTriggers(triggers);
+
+        engine.execute(CombatCommand.attack("hero", "imp", "MELEE"));
+        assertFalse(engine.getState().get(1).isAlive());
+        assertEquals(2, engine.getState().get(0).statBonus(SkillPlan.Stat.DAMAGE));
+        engine.execute(CombatCommand.endTurn("ogre"));
+        // Ход героя в новом раунде
+        assertEquals(1, engine.getState().get(0).statBonus(SkillPlan.Stat.ATTACK));
+        engine.execute(CombatCommand.attack("hero", "ogre", "MELEE"));
+        // Удар опускает огра ниже четверти HP, но не добивает
+        CombatantState ogreState = engine.getState().get(2);
+        assertTrue(ogreState.isAlive());
+        assertTrue(ogreState.getCurrentHp() * 4 < ogreState.getMaxHp());
+        assertEquals(3, ogreState.statBonus(SkillPlan.Stat.AC));
+    }
+
+    // Все бойцы пропускают ходы, пока бой не закончится
+    private static List<CombatEvent> passUntilOver(CombatEngine engine) {
+        List<CombatEvent> events = new ArrayList<>();
+        for (int step = 0; step < 100 && !engine.getState().isOver(); step++) {
+            events.addAll(engine.execute(CombatCommand.endTurn(engine.getState().getCurrent().getId())));
+        }
+        return events;
+    }
+
+    static Combatant combatant(String id, String type, int hp) {
+        Combatant combatant = new Combatant(id, id, type, hp, 12);
+        combatant.setStrength(14);
+        return combatant;
+    }
+}
@@ -0,0 +1,242 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.dice.SessionRng;
+import com.HG.heroesglory.core.entities.Combatant;
+import com.HG.heroesglory.core.entities.EnemyPrototype;
+import com.HG.heroesglory.core.entities.Skill;
+import com.HG.heroesglory.core.entities.StatusEffect;
+import com.HG.heroesglory.core.systems.EnemyRegistry;
+import com.HG.heroesglory.core.systems.SkillPlan;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Двоичный журнал боя: toBlob -> decode -> stateAt восстанавливает живое состояние,
+ * в том числе после вытеснения старых записей; испорченный блок дает IllegalArgumentException.
+ */
+public class CombatLogTest {
+
+    @Test
+    public void roundTrip_matchesLiveStateAfterEveryEvent() {
+        for (int capacity : new int[]{CombatLog.DEFAULT_CAPACITY, 256, 64}) {
+            CombatLog log = new CombatLog(capacity);
+            List<CombatState> states = new ArrayList<>();
+            List<byte[]> blobs = new ArrayList<>();
+            CombatEngine engine = new CombatEngine(new SessionRng(capacity));
+            engine.addListener(log);
+            engine.addListener(new CombatEngine.Listener() {
+                @Override
+                public void onCombatEvent(CombatEvent event, CombatState state) {
+                    states.add(state);
+                    blobs.add(log.toBlob());
+                }
+            });
+
+            fight(engine);
+
+            List<Combatant> roster = rosterOf(engine.getState());
+            boolean overflowed = false;
+            for (int i = 0; i < states.size(); i++) {
+                CombatLogReplayer replayer = CombatLogReplayer.decode(blobs.get(i));
+                overflowed |= replayer.isTruncated();
+                assertSameState("capacity " + capacity + ", event " + i, states.get(i),
+                        replayer.stateAt(roster, replayer.getRecordCount()));
+            }
+            assertEquals(capacity < CombatLog.DEFAULT_CAPACITY, overflowed);
+        }
+    }
+
+    @Test
+    public void stateAt_prefixReplaysIntermediateStates() {
+        CombatLog log = new CombatLog();
+        List<CombatState> states = new ArrayList<>();
+        CombatEngine engine = new CombatEngine(new SessionRng(9));
+        engine.addListener(log);
+        engine.addListener(new CombatEngine.Listener() {
+            @Override
+            public void onCombatEvent(CombatEvent event, CombatState state) {
+                if (event.getType() != CombatEvent.Type.COMBAT_STARTED) {
+                    states.add(state);
+                }
+            }
+        });
+
+        fight(engine);
+
+        CombatLogReplayer replayer = CombatLogReplayer.decode(log.toBlob());
+        List<Combatant> roster = rosterOf(engine.getState());
+        assertEquals(states.size(), replayer.getRecordCount());
+        for (int i = 0; i < states.size(); i++) {
+            assertSameState("record " + i, states.get(i), replayer.stateAt(roster, i + 1));
+        }
+    }
+
+    @Test
+    public void decode_readsVersionOneBlob() {
+        byte[] blob = blob(CombatLog.CODE_HIT, 0, 0, 12, 3);
+        // Версия 1 - без числа состояний, маны и изменений характеристик в заголовке бойца
+        byte[] legacy = new byte[blob.length - 3];
+        System.arraycopy(blob, 0, legacy, 0, 7);
+        System.arraycopy(blob, 10, legacy, 7, blob.length - 10);
+        legacy[0] = 1;
+        CombatLogReplayer replayer = CombatLogReplayer.decode(legacy);
+        assertEquals(1, replayer.getRecordCount());
+        assertEquals(7, replayer.stateAt(1).get(0).getCurrentHp());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsUnknownStatusEffect() {
+        CombatLogReplayer.decode(blob(CombatLog.CODE_TICK, 0, StatusEffect.COUNT, -1, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsUnknownOutcome() {
+        CombatLogReplayer.decode(blob(CombatLog.CODE_END, 0, 0, 0, CombatState.Outcome.values().length));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsSlotOutOfRange() {
+        CombatLogReplayer.decode(blob(CombatLog.CODE_HIT, 0, 5, 12, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsRecordCountBeyondData() {
+        byte[] valid = blob(CombatLog.CODE_TURN, 0, 0, 1, 0);
+        // Счетчик записей - последний байт перед единственной записью
+        valid[valid.length - 6] = 100;
+        CombatLogReplayer.decode(valid);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsTruncatedBlob() {
+        byte[] valid = blob(CombatLog.CODE_TURN, 0, 0, 1, 0);
+        byte[] cut = new byte[valid.length - 1];
+        System.arraycopy(valid, 0, cut, 0, cut.length);
+        CombatLogReplayer.decode(cut);
+    }
+
+    /**
+     * Весь бой по простой тактике: текущий боец бьет первого живого противника,
+     * жрица сначала призывает волка, затем, пока хватает маны, поджигает противника
+     * и поднимает себе КД. Часть бойцов начинает бой с состояниями.
+     */
+    private static void fight(CombatEngine engine) {
+        List<Combatant> roster = new ArrayList<>();
+        roster.add(combatant("knight", "PLAYER", 34, 16));
+        roster.add(combatant("cleric", "PLAYER", 26, 14));
+        for (int i = 0; i < 4; i++) {
+            roster.add(combatant("bandit" + i, "ENEMY", 11, 12));
+        }
+        roster.get(0).setStatus(StatusEffect.REGENERATING, Combatant.STATUS_PERMANENT, 1);
+        roster.get(2).setStatus(StatusEffect.BLEEDING, 4, 2);
+        roster.get(3).setStatus(StatusEffect.ASLEEP, 2, 1);
+        roster.get(1).setMaxMana(6);
+        roster.get(1).setMana(6);
+        Skill ignite = new Skill("ignite", "Ignite", "", "ATTACK");
+        ignite.setEffects("status BURNING 2 1; self stat AC 2 1");
+        ignite.setManaCost(2);
+        Skill callWolf = new Skill("call_wolf", "Call Wolf", "", "SUMMON");
+        callWolf.setEffects("self summon wolf 1");
+        callWolf.setCooldown(100);
+        Map<String, Object> wolf = new HashMap<>();
+        wolf.put("name", "Wolf");
+        wolf.put("maxHP", 9);
+        EnemyRegistry summons = new EnemyRegistry();
+        summons.put(EnemyPrototype.fromMap("wolf", wolf));
+        engine.setSummons(summons);
+
+        engine.start(roster);
+        for (int step = 0; step < 1000 && !engine.getState().isOver(); step++) {
+            CombatState state = engine.getState();
+            CombatantState actor = state.getCurrent();
+            CombatCommand command = CombatCommand.endTurn(actor.getId());
+            for (CombatantState other : state.getCombatants()) {
+                if (other.isAlive() && other.isPlayer() != actor.isPlayer()) {
+                    if (!"cleric".equals(actor.getId())) {
+                        command = CombatCommand.attack(actor.getId(), other.getId(), "MELEE");
+                    } else if (actor.isSkillReady(callWolf, state.getRound())) {
+                        command = CombatCommand.useSkill(actor.getId(), callWolf, null);
+                    } else if (actor.getMana() >= ignite.getManaCost()) {
+                        command = CombatCommand.useSkill(actor.getId(), ignite, other.getId());
+                    } else {
+                        command = CombatCommand.attack(actor.getId(), other.getId(), "MELEE");
+                    }
+                    break;
+                }
+            }
+            engine.execute(command);
+        }
+        assertTrue(engine.getState().isOver());
+    }
+
+    private static List<Combatant> rosterOf(CombatState state) {
+        List<Combatant> roster = new ArrayList<>();
+        for (CombatantState combatant : state.getCombatants()) {
+            roster.add(combatant.getBase());
+        }
+        return roster;
+    }
+
+    private static void assertSameState(String message, CombatState expected, CombatState actual) {
+        assertEquals(message, expected.size(), actual.size());
+        assertEquals(message, expected.getCurrentSlot(), actual.getCurrentSlot());
+        assertEquals(message, expected.getRound(), actual.getRound());
+        assertEquals(message, expected.getOutcome(), actual.getOutcome());
+        assertEquals(message, expected.getAlivePlayers(), actual.getAlivePlayers());
+        assertEquals(message, expected.getAliveEnemies(), actual.getAliveEnemies());
+        for (int slot = 0; slot < expected.size(); slot++) {
+            assertEquals(message + ", slot " + slot, expected.get(slot).getCurrentHp(), actual.get(slot).getCurrentHp());
+            assertEquals(message + ", slot " + slot, expected.get(slot).isAlive(), actual.get(slot).isAlive());
+            assertEquals(message + ", slot " + slot, expected.get(slot).statusMask(), actual.get(slot).statusMask());
+            assertEquals(message + ", slot " + slot, expected.get(slot).getMana(), actual.get(slot).getMana());
+            for (SkillPlan.Stat stat : SkillPlan.Stat.values()) {
+                assertEquals(message + ", slot " + slot + ", " + stat,
+                        expected.get(slot).statBonus(stat), actual.get(slot).statBonus(stat));
+            }
+            for (StatusEffect effect : StatusEffect.values()) {
+                assertEquals(message + ", slot " + slot + ", " + effect,
+                        expected.get(slot).statusDuration(effect), actual.get(slot).statusDuration(effect));
+                assertEquals(message + ", slot " + slot + ", " + effect,
+                        expected.get(slot).statusStacks(effect), actual.get(slot).statusStacks(effect));
+            }
+        }
+    }
+
+    // Блок из одного бойца и одной записи
+    private static byte[] blob(int code, int actor, int target, int roll, int amount) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(CombatLog.FORMAT_VERSION);
+        out.write(0);
+        out.write(1);           // бойцов
+        out.write(1);           // тип
+        out.write(10);          // макс. HP
+        out.write(10);          // HP
+        out.write(1);           // жив
+        out.write(0);           // состояний
+        out.write(0);           // мана
+        out.write(0);           // изменений характеристик
+        out.write(0);           // слот хода
+        out.write(1);           // раунд
+        out.write(1);           // записей
+        out.write(code);
+        out.write(actor);
+        out.write(target);
+        out.write(CombatLog.zigZag(roll));
+        out.write(amount);
+        return out.toByteArray();
+    }
+
+    private static Combatant combatant(String id, String type, int hp, int armorClass) {
+        Combatant combatant = new Combatant(id, id, type, hp, armorClass);
+        combatant.setStrength(14);
+        return combatant;
+    }
+}
@@ -0,0 +1,105 @@
+package com.HG.heroesglory.core.combat;
+
+import com.HG.heroesglory.core.dice.SessionRng;
+import com.HG.heroesglory.core.entities.Combatant;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Бой с тем же зерном, составом и командами повторяется бит в бит:
+ * совпадают журнал генератора, исход и HP каждого бойца.
+ */
+public class CombatReplayTest {
+
+    @Test
+    public void replay_reproducesRecordedCombat() {
+        List<Combatant> roster = roster();
+        List<Combatant> startingRoster = copies(roster);
+        CombatEngine live = new CombatEngine(new SessionRng(42).fork(3));
+        List<CombatCommand> commands = new ArrayList<>();
+
+        live.start(roster);
+        while (!live.getState().isOver() && commands.size() < 500) {
+            CombatCommand command = nextAttack(live.getState());
+            commands.add(command);
+            live.execute(command);
+        }
+        assertTrue(live.getState().isOver());
+
+        SessionRng.Log log = live.getRng().snapshot();
+        CombatEngine replay = new CombatEngine(log.replay());
+        replay.replay(startingRoster, commands);
+
+        assertTrue(log.matches(replay.getRng()));
+        CombatState expected = live.getState();
+        CombatState actual = replay.getState();
+        assertEquals(expected.getOutcome(), actual.getOutcome());
+        assertEquals(expected.getRound(), actual.getRound());
+        assertEquals(expected.size(), actual.size());
+        for (int slot = 0; slot < expected.size(); slot++) {
+            assertEquals(expected.get(slot).getId(), actual.get(slot).getId());
+            assertEquals(expected.get(slot).getCurrentHp(), actual.get(slot).getCurrentHp());
+            assertEquals(expected.get(slot).isAlive(), actual.get(slot).isAlive());
+        }
+    }
+
+    @Test
+    public void replay_detectsDifferentCommands() {
+        List<Combatant> roster = roster();
+        List<Combatant> startingRoster = copies(roster);
+        CombatEngine live = new CombatEngine(new SessionRng(7));
+        live.start(roster);
+        CombatCommand first = nextAttack(live.getState());
+        live.execute(first);
+        SessionRng.Log log = live.getRng().snapshot();
+
+        // Лишняя команда: генератор уходит дальше записанного
+        List<CombatCommand> commands = new ArrayList<>();
+        commands.add(first);
+        commands.add(nextAttack(live.getState()));
+        CombatEngine replay = new CombatEngine(log.replay());
+        replay.replay(startingRoster, commands);
+
+        assertFalse(log.matches(replay.getRng()));
+    }
+
+    // Текущий боец бьет первого живого противника
+    private static CombatCommand nextAttack(CombatState state) {
+        CombatantState actor = state.getCurrent();
+        for (CombatantState other : state.getCombatants()) {
+            if (other.isAlive() && other.isPlayer() != actor.isPlayer()) {
+                return CombatCommand.attack(actor.getId(), other.getId(), "MELEE");
+            }
+        }
+        return CombatCommand.endTurn(actor.getId());
+    }
+
+    private static List<Combatant> roster() {
+        List<Combatant> roster = new ArrayList<>();
+        roster.add(combatant("warrior", "PLAYER", 30, 16, 16));
+        roster.add(combatant("rogue", "PLAYER", 22, 14, 12));
+        roster.add(combatant("goblin1", "ENEMY", 9, 13, 10));
+        roster.add(combatant("goblin2", "ENEMY", 9, 13, 10));
+        roster.add(combatant("orc", "ENEMY", 18, 13, 16));
+        return roster;
+    }
+
+    private static List<Combatant> copies(List<Combatant> roster) {
+        List<Combatant> copies = new ArrayList<>(roster.size());
+        for (Combatant combatant : roster) {
+            copies.add(combatant.copy());
+        }
+        return copies;
+    }
+
+    private static Combatant combatant(String id, String type, int hp, int armorClass, int strength) {
+        Combatant combatant = new Combatant(id, id, type, hp, armorClass);
+        combatant.setStrength(strength);
+        return combatant;
+    }
+}
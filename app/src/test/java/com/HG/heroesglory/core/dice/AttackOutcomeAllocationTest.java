@@ -0,0 +1,114 @@
+package com.HG.heroesglory.core.dice;
+
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.CheckSkill;
+import com.HG.heroesglory.core.entities.Combatant;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * resolveAttack и resolveSkillCheck после прогрева не выделяют память:
+ * итог пишется в переиспользуемые AttackOutcome и SkillCheckOutcome.
+ */
+public class AttackOutcomeAllocationTest {
+    private static final int WARM_UP = 200_000;
+    private static final int ATTACKS = 1_000_000;
+
+    @Test
+    public void resolveAttack_allocatesNothingAfterWarmUp() {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        CombatSystem combatSystem = new CombatSystem(new SessionRng(11));
+        Combatant attacker = combatant("hero", "PLAYER", 20, 12);
+        Combatant target = combatant("ogre", "ENEMY", 1_000_000, 11);
+        AttackProfile profile = AttackProfile.of(AttackType.MELEE);
+        CombatSystem.AttackOutcome outcome = new CombatSystem.AttackOutcome();
+
+        runAttacks(combatSystem, attacker, target, profile, outcome, WARM_UP);
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long damage = runAttacks(combatSystem, attacker, target, profile, outcome, ATTACKS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(damage > 0);
+        assertEquals("bytes allocated by " + ATTACKS + " attacks", 0, allocated);
+    }
+
+    @Test
+    public void resolveSkillCheck_allocatesNothingAfterWarmUp() {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        CombatSystem combatSystem = new CombatSystem(new SessionRng(12));
+        Combatant rogue = combatant("rogue", "PLAYER", 20, 14);
+        CombatSystem.SkillCheckOutcome outcome = new CombatSystem.SkillCheckOutcome();
+
+        runChecks(combatSystem, rogue, outcome, WARM_UP);
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int successes = runChecks(combatSystem, rogue, outcome, ATTACKS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(successes > 0 && successes < ATTACKS);
+        assertEquals("bytes allocated by " + ATTACKS + " checks", 0, allocated);
+    }
+
+    @Test
+    public void resolveAttack_matchesPerformAttack() {
+        CombatSystem fast = new CombatSystem(new SessionRng(5));
+        CombatSystem slow = new CombatSystem(new SessionRng(5));
+        Combatant attacker = combatant("hero", "PLAYER", 20, 12);
+        Combatant fastTarget = combatant("ogre", "ENEMY", 100_000, 13);
+        Combatant slowTarget = combatant("ogre", "ENEMY", 100_000, 13);
+        AttackProfile profile = AttackProfile.of(AttackType.MELEE);
+        CombatSystem.AttackOutcome outcome = new CombatSystem.AttackOutcome();
+
+        for (int i = 0; i < 10_000; i++) {
+            int damage = fast.resolveAttack(attacker, fastTarget, profile, outcome);
+            CombatSystem.AttackResult result = slow.performAttack(attacker, slowTarget, profile);
+            assertEquals(result.isHit(), outcome.isHit());
+            assertEquals(result.isCritical(), outcome.isCritical());
+            assertEquals(result.getDamage(), damage);
+            assertEquals(result.getAttackRoll().getNaturalRoll(), outcome.getNaturalRoll());
+        }
+        assertEquals(slowTarget.getCurrentHp(), fastTarget.getCurrentHp());
+    }
+
+    private static long runAttacks(CombatSystem combatSystem, Combatant attacker, Combatant target,
+                                   AttackProfile profile, CombatSystem.AttackOutcome outcome, int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += combatSystem.resolveAttack(attacker, target, profile, outcome);
+            if (target.getCurrentHp() < target.getMaxHp() / 2) {
+                target.heal(target.getMaxHp());
+            }
+        }
+        return total;
+    }
+
+    private static int runChecks(CombatSystem combatSystem, Combatant combatant,
+                                 CombatSystem.SkillCheckOutcome outcome, int count) {
+        int successes = 0;
+        for (int i = 0; i < count; i++) {
+            if (combatSystem.resolveSkillCheck(combatant, CheckSkill.STEALTH, 15, outcome)) {
+                successes++;
+            }
+        }
+        return successes;
+    }
+
+    private static Combatant combatant(String id, String type, int hp, int armorClass) {
+        Combatant combatant = new Combatant(id, id, type, hp, armorClass);
+        combatant.setStrength(16);
+        combatant.setDexterity(14);
+        return combatant;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
@@ -0,0 +1,38 @@
+package com.HG.heroesglory.core.dice;
+
+import com.HG.heroesglory.core.entities.AttackType;
+import com.HG.heroesglory.core.entities.Skill;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Кэш выражений и замена битых строк из данных.
+ */
+public class DiceExpressionTest {
+
+    @Test
+    public void compile_returnsCachedInstance() {
+        assertSame(DiceExpression.compile("2d6+STR"), DiceExpression.compile("2d6+STR"));
+    }
+
+    @Test
+    public void compileOrDefault_fallsBackOnMalformedSource() {
+        DiceExpression fallback = DiceExpression.compile("1d4");
+        assertSame(fallback, DiceExpression.compileOrDefault("2d", fallback));
+        assertSame(fallback, DiceExpression.compileOrDefault("2d", fallback));
+        assertSame(fallback, DiceExpression.compileOrDefault(null, fallback));
+        assertEquals("1d8", DiceExpression.compileOrDefault("1d8", fallback).getSource());
+    }
+
+    @Test
+    public void skill_malformedDamageUsesSpellDie() {
+        Skill skill = new Skill();
+        skill.setDamageDice("d8+");
+        assertSame(AttackProfile.of(AttackType.SPELL).getDamage(), skill.damageExpression());
+
+        skill.setDamageDice("");
+        assertNull(skill.damageExpression());
+    }
+}
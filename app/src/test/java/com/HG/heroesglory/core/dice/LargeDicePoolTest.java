@@ -0,0 +1,219 @@
+package com.HG.heroesglory.core.dice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Статистическая эквивалентность быстрых путей rollMultipleDice пошаговому броску.
+ */
+public class LargeDicePoolTest {
+    private static final int SAMPLES = 200_000;
+
+    @Test
+    public void tablePath_matchesExactDistribution() {
+        int count = 40;
+        int sides = 6;
+        assertTrue(LargePoolSampler.usesTable(count, sides));
+
+        DiceRollSystem dice = new DiceRollSystem(new RngStream(42));
+        DiceDistribution exact = DiceDistribution.sum(DiceDistribution.uniform(sides), count);
+        int[] observed = new int[exact.getMax() - exact.getMin() + 1];
+        for (int i = 0; i < SAMPLES; i++) {
+            int total = dice.rollMultipleDice(count, sides, 0).getTotal();
+            assertTrue(total >= count && total <= count * sides);
+            observed[total - exact.getMin()]++;
+        }
+
+        assertChiSquareFits(exact, observed);
+    }
+
+    @Test
+    public void tablePath_matchesPerDieRolling() {
+        int count = 20;
+        int sides = 8;
+        DiceRollSystem fast = new DiceRollSystem(new RngStream(1));
+        DiceRollSystem slow = new DiceRollSystem(new RngStream(2));
+        slow.setLargePoolThreshold(Integer.MAX_VALUE);
+
+        double fastSum = 0;
+        double slowSum = 0;
+        double fastSq = 0;
+        double slowSq = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            int a = fast.rollMultipleDice(count, sides, 0).getTotal();
+            int b = slow.rollMultipleDice(count, sides, 0).getTotal();
+            fastSum += a;
+            slowSum += b;
+            fastSq += (double) a * a;
+            slowSq += (double) b * b;
+        }
+
+        double fastMean = fastSum / SAMPLES;
+        double slowMean = slowSum / SAMPLES;
+        double fastVar = fastSq / SAMPLES - fastMean * fastMean;
+        double slowVar = slowSq / SAMPLES - slowMean * slowMean;
+        assertEquals(slowMean, fastMean, 0.1);
+        assertEquals(slowVar, fastVar, slowVar * 0.03);
+    }
+
+    @Test
+    public void normalPath_hasExactMomentsAndStaysInSupport() {
+        int count = 5000;
+        int sides = 6;
+        assertFalse(LargePoolSampler.usesTable(count, sides));
+
+        DiceRollSystem dice = new DiceRollSystem(new RngStream(7));
+        double expectedMean = count * (sides + 1) / 2.0;
+        double expectedVar = count * (sides * sides - 1) / 12.0;
+
+        double sum = 0;
+        double sq = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            int total = dice.rollMultipleDice(count, sides, 0).getTotal();
+            assertTrue(total >= count && total <= count * sides);
+            sum += total;
+            sq += (double) total * total;
+        }
+
+        double mean = sum / SAMPLES;
+        double variance = sq / SAMPLES - mean * mean;
+        assertEquals(expectedMean, mean, 5 * Math.sqrt(expectedVar / SAMPLES));
+        assertEquals(expectedVar, variance, expectedVar * 0.03);
+    }
+
+    @Test
+    public void normalPath_tailProbabilitiesMatchExact() {
+        // 50d100 вне таблицы, но точное распределение еще считается свертками
+        int count = 50;
+        int sides = 100;
+        assertFalse(LargePoolSampler.usesTable(count, sides));
+
+        DiceDistribution exact = DiceDistribution.sum(DiceDistribution.uniform(sides), count);
+        double mean = exact.mean();
+        double sd = Math.sqrt(exact.variance());
+        for (double z : new double[]{3.0, 3.5, 4.0, 5.0, 6.0, 8.0}) {
+            int value = (int) Math.ceil(mean + z * sd);
+            double expected = exact.probabilityAtLeast(value);
+            double actual = LargePoolSampler.probabilityAtLeast(count, sides, value);
+            assertEquals("upper tail at z=" + z, 1.0, actual / expected, 0.01);
+
+            int mirrored = exact.getMin() + exact.getMax() - value;
+            double lower = 1.0 - exact.probabilityAtLeast(mirrored + 1);
+            double actualLower = 1.0 - LargePoolSampler.probabilityAtLeast(count, sides, mirrored + 1);
+            assertEquals("lower tail at z=" + z, 1.0, actualLower / lower, 0.01);
+        }
+        double allMax = Math.pow(sides, -count);
+        assertEquals(allMax, LargePoolSampler.probabilityAtLeast(count, sides, count * sides), allMax * 1e-9);
+    }
+
+    @Test
+    public void normalPath_tailFrequenciesMatchExact() {
+        int count = 50;
+        int sides = 100;
+        int samples = 2_000_000;
+        DiceDistribution exact = DiceDistribution.sum(DiceDistribution.uniform(sides), count);
+        double mean = exact.mean();
+        double sd = Math.sqrt(exact.variance());
+        double[] edges = {3.0, 3.5, 4.0, 4.5};
+
+        DiceRollSystem dice = new DiceRollSystem(new RngStream(2024));
+        int[] observed = new int[edges.length];
+        for (int i = 0; i < samples; i++) {
+            int total = dice.rollMultipleDice(count, sides, 0).getTotal();
+            assertTrue(total >= count && total <= count * sides);
+            double z = Math.abs(total - mean) / sd;
+            for (int bin = edges.length - 1; bin >= 0; bin--) {
+                if (z >= edges[bin]) {
+                    observed[bin]++;
+                    break;
+                }
+            }
+        }
+
+        // Ячейки по |z| (оба хвоста вместе), последняя - до конца хвоста
+        for (int bin = 0; bin < edges.length; bin++) {
+            double expected = twoSided(exact, mean, sd, edges[bin]);
+            if (bin + 1 < edges.length) {
+                expected -= twoSided(exact, mean, sd, edges[bin + 1]);
+            }
+            expected *= samples;
+            assertEquals("tail bin |z| >= " + edges[bin], expected, observed[bin], 4 * Math.sqrt(expected) + 1);
+        }
+    }
+
+    // P(|S - mean| >= z * sd)
+    private static double twoSided(DiceDistribution exact, double mean, double sd, double z) {
+        int upper = (int) Math.ceil(mean + z * sd);
+        int lower = (int) Math.floor(mean - z * sd);
+        return exact.probabilityAtLeast(upper) + (1.0 - exact.probabilityAtLeast(lower + 1));
+    }
+
+    @Test
+    public void sameSeed_givesSameRolls() {
+        DiceRollSystem first = new DiceRollSystem(new RngStream(99));
+        DiceRollSystem second = new DiceRollSystem(new RngStream(99));
+        for (int i = 0; i < 1000; i++) {
+            int count = 1 + (i % 300);
+            assertEquals(first.rollMultipleDice(count, 6, 2).getTotal(),
+                    second.rollMultipleDice(count, 6, 2).getTotal());
+        }
+    }
+
+    @Test
+    public void smallPools_stayOnPerDiePath() {
+        DiceRollSystem dice = new DiceRollSystem(new RngStream(5));
+        RngStream reference = new RngStream(5);
+        for (int i = 0; i < 1000; i++) {
+            int expected = 0;
+            for (int d = 0; d < DiceRollSystem.DEFAULT_LARGE_POOL_THRESHOLD; d++) {
+                expected += reference.nextInt(6) + 1;
+            }
+            assertEquals(expected, dice.rollMultipleDice(DiceRollSystem.DEFAULT_LARGE_POOL_THRESHOLD, 6, 0).getTotal());
+        }
+    }
+
+    @Test
+    public void keep_smallPoolIsExact() {
+        // 4d6, три лучших: среднее 15869 / 1296
+        DiceDistribution best = DiceDistribution.keep(DiceDistribution.uniform(6), 4, 3, true);
+        assertEquals(15869.0 / 1296, best.mean(), 1e-9);
+        assertEquals(3, best.getMin());
+        assertEquals(18, best.getMax());
+    }
+
+    @Test
+    public void keep_largePoolIsApproximatedWithoutOverflow() {
+        int count = DiceExpression.MAX_DICE;
+        DiceDistribution best = DiceDistribution.keep(DiceDistribution.uniform(6), count, count / 2, true);
+        DiceDistribution worst = DiceDistribution.keep(DiceDistribution.uniform(6), count, count / 2, false);
+        assertTrue(best.getMin() >= count / 2 && best.getMax() <= count * 3);
+        assertEquals(1.0, best.probabilityOf(best.getMin()) + best.probabilityAtLeast(best.getMin() + 1), 1e-9);
+        // Лучшая и худшая половины в сумме дают весь пул: 3.5 на куб
+        assertEquals(count * 3.5, best.mean() + worst.mean(), 1.0);
+        assertTrue(best.mean() > count * 2.4 && best.mean() < count * 2.5);
+    }
+
+    // Критерий хи-квадрат по ячейкам с ожидаемой частотой не меньше 5; редкие хвосты объединяются
+    private static void assertChiSquareFits(DiceDistribution exact, int[] observed) {
+        double chiSquare = 0;
+        int bins = 0;
+        double pooledExpected = 0;
+        double pooledObserved = 0;
+        for (int i = 0; i < observed.length; i++) {
+            pooledExpected += exact.probabilityOf(exact.getMin() + i) * SAMPLES;
+            pooledObserved += observed[i];
+            if (pooledExpected >= 5) {
+                double diff = pooledObserved - pooledExpected;
+                chiSquare += diff * diff / pooledExpected;
+                bins++;
+                pooledExpected = 0;
+                pooledObserved = 0;
+            }
+        }
+        int degrees = bins - 1;
+        // Порог примерно соответствует уровню значимости 0.001
+        double critical = degrees + 4.4 * Math.sqrt(2.0 * degrees);
+        assertTrue("chi-square " + chiSquare + " over " + degrees + " dof", chiSquare < critical);
+    }
+}